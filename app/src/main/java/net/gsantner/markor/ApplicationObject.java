@@ -7,12 +7,15 @@
 #########################################################*/
 package net.gsantner.markor;
 
+import android.os.Build;
 import android.webkit.WebView;
 
 import androidx.multidex.MultiDexApplication;
 
 import net.gsantner.markor.model.AppSettings;
 
+import other.de.stanetz.jpencconverter.JavaPasswordbasedCryption;
+
 public class ApplicationObject extends MultiDexApplication {
     // Make resources not marked as unused
     @SuppressWarnings("unused")
@@ -47,4 +50,13 @@ public class ApplicationObject extends MultiDexApplication {
         } catch (Exception ignored) {
         }
     }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+        // App went to background, don't keep keys derived from passwords in memory
+        if (level >= TRIM_MEMORY_UI_HIDDEN && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            JavaPasswordbasedCryption.clearKeyCache();
+        }
+    }
 }
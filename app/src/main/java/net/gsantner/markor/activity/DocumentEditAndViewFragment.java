@@ -53,6 +53,8 @@ import net.gsantner.markor.R;
 import net.gsantner.markor.format.ActionButtonBase;
 import net.gsantner.markor.format.FormatRegistry;
 import net.gsantner.markor.format.TextConverterBase;
+import net.gsantner.markor.format.todotxt.TodoTxtSnapshot;
+import net.gsantner.markor.format.wikitext.WikitextNotebookIndex;
 import net.gsantner.markor.frontend.DraggableScrollbarScrollView;
 import net.gsantner.markor.frontend.FileInfoDialog;
 import net.gsantner.markor.frontend.MarkorDialogFactory;
@@ -198,7 +200,7 @@ public class DocumentEditAndViewFragment extends MarkorBaseFragment implements F
         _editorHolder.setBackgroundColor(editorBackgroundColor);
         _hlEditor.setTextColor(_appSettings.getEditorForegroundColor());
         _hlEditor.setGravity(_appSettings.isEditorStartEditingInCenter() ? Gravity.CENTER : Gravity.NO_GRAVITY);
-        _hlEditor.setHighlightingEnabled(_appSettings.getDocumentHighlightState(_document.path, _hlEditor.getText()));
+        _hlEditor.setHighlightingEnabled(_appSettings.getDocumentHighlightState(_document.path));
         _hlEditor.setAutoFormatEnabled(_appSettings.getDocumentAutoFormatEnabled(_document.path));
         _hlEditor.setSaveInstanceState(false); // We will reload from disk
         _hlEditor.setOverScrollMode(View.OVER_SCROLL_ALWAYS);
@@ -334,6 +336,10 @@ public class DocumentEditAndViewFragment extends MarkorBaseFragment implements F
         _appSettings.setLastEditScrollY(_document.path, _verticalScrollView.getScrollY());
         _appSettings.setLastEditHeight(_document.path, _verticalScrollView.getHeight());
         if (_document.path.equals(_appSettings.getTodoFile().getAbsolutePath())) {
+            // Share the saved tasks with the widget, so it doesn't have to load and parse the file again
+            if (_document.isContentSame(_hlEditor.getText())) {
+                TodoTxtSnapshot.update(_document.file, _hlEditor.getText());
+            }
             TodoWidgetProvider.updateTodoWidgets();
         }
         super.onPause();
@@ -1123,7 +1129,12 @@ public class DocumentEditAndViewFragment extends MarkorBaseFragment implements F
                 Toast.makeText(activity, message, Toast.LENGTH_SHORT).show();
                 return true;
             }
+            final boolean isNewFile = !_document.file.exists();
             if (_document.saveContent(getActivity(), text, _cu, forceSaveEmpty)) {
+                if (isNewFile && _document.getFormat() == FormatRegistry.FORMAT_WIKITEXT) {
+                    // Links to the new page resolve right away, without waiting for the next index validation
+                    WikitextNotebookIndex.invalidate();
+                }
                 checkTextChangeState();
                 return true;
             } else {
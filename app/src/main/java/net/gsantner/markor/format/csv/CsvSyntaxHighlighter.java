@@ -57,7 +57,7 @@ public class CsvSyntaxHighlighter extends MarkdownSyntaxHighlighter {
         int colNumner = -1;
         int from = m_startOfCol;
         int to;
-        while (from < _spannable.length()) {
+        while (from < getRegionEnd()) { // Columns depend on all previous rows, so always start from the beginning
             if (m_isEndOfRow) colNumner = -1; // -1 == skip coloring
             to = nextDelimiterPos(from);
 
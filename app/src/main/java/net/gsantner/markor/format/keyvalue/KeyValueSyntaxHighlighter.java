@@ -29,6 +29,11 @@ public class KeyValueSyntaxHighlighter extends SyntaxHighlighterBase {
         super(as);
     }
 
+    @Override
+    protected boolean isLineLocal() {
+        return true;
+    }
+
     @Override
     protected void generateSpans() {
 
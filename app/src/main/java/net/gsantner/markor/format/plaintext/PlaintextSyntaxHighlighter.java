@@ -9,19 +9,15 @@ package net.gsantner.markor.format.plaintext;
 
 import android.util.Log;
 
-import net.gsantner.markor.format.plaintext.highlight.CodeTheme;
+import net.gsantner.markor.format.plaintext.highlight.CompiledSyntax;
 import net.gsantner.markor.format.plaintext.highlight.HighlightConfigLoader;
-import net.gsantner.markor.format.plaintext.highlight.Syntax;
 import net.gsantner.markor.frontend.textview.SyntaxHighlighterBase;
 import net.gsantner.markor.model.AppSettings;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
 public class PlaintextSyntaxHighlighter extends SyntaxHighlighterBase {
     public final static HighlightConfigLoader configLoader = new HighlightConfigLoader();
-    private ArrayList<Syntax.Rule> rules;
-    private HashMap<String, CodeTheme.ThemeValue> styles;
+    private CompiledSyntax compiledSyntax;
+    private HighlightSpan[] tokenSpans; // Theme colors resolved once, cloned per match
 
     public PlaintextSyntaxHighlighter(AppSettings as) {
         super(as);
@@ -30,36 +26,35 @@ public class PlaintextSyntaxHighlighter extends SyntaxHighlighterBase {
     public PlaintextSyntaxHighlighter(AppSettings appSettings, String extension) {
         super(appSettings);
 
-        Syntax syntax = null;
         try {
-            syntax = configLoader.getSyntax(appSettings.getContext(), extension);
+            compiledSyntax = configLoader.getCompiledSyntax(appSettings.getContext(), extension, "default");
         } catch (Exception e) {
             Log.e(getClass().getName(), e.toString());
         }
-        if (syntax != null) {
-            rules = syntax.rules;
-            CodeTheme codeTheme = configLoader.getTheme(appSettings.getContext(), "default");
-            if (codeTheme != null) {
-                styles = codeTheme.styles;
+        if (compiledSyntax != null) {
+            tokenSpans = new HighlightSpan[compiledSyntax.getTokenCount()];
+            for (int i = 0; i < tokenSpans.length; i++) {
+                tokenSpans[i] = new HighlightSpan().setForeColor(compiledSyntax.getTokenColor(i));
             }
         }
     }
 
+    // Syntax rules may match multiple lines (e.g. block comments)
+    @Override
+    protected boolean isLineLocal() {
+        return compiledSyntax == null;
+    }
+
     @Override
     protected void generateSpans() {
         createTabSpans(_tabSize);
         createUnderlineHexColorsSpans();
         createSmallBlueLinkSpans();
 
-        if (rules == null || styles == null) {
+        if (compiledSyntax == null) {
             return;
         }
 
-        for (Syntax.Rule rule : rules) {
-            CodeTheme.ThemeValue style = styles.get(rule.type);
-            if (style != null) {
-                createColorSpanForMatches(rule.getPattern(), style.getColor());
-            }
-        }
+        compiledSyntax.findTokens(_spannable, getRegionStart(), getRegionEnd(), (token, start, end) -> addSpanGroup(tokenSpans[token].callback(null), start, end));
     }
 }
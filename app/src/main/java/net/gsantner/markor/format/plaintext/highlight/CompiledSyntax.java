@@ -0,0 +1,146 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.plaintext.highlight;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A syntax compiled for highlighting: all rules which have a style in the theme are merged
+ * into one alternation, so the text is scanned once instead of once per rule.
+ * <p>
+ * Every rule is wrapped in its own capturing group, the group which took part in a match
+ * identifies the token type. Numbered groups are used as named groups are not available
+ * on all supported Android versions. Rules must therefore not use back references.
+ * <p>
+ * If multiple rules match at the same position, the rule defined later wins.
+ * This matches what was visible when every rule was applied on its own (later spans are drawn on top).
+ * Text matched by a token is scanned again with the rules defined after the token's rule only,
+ * as only those were drawn on top of it (e.g. escape chars inside of strings). Nested tokens are
+ * reported after the token containing them.
+ */
+public class CompiledSyntax {
+    public interface TokenConsumer {
+        void onToken(int token, int start, int end);
+    }
+
+    private final Pattern[] _patterns; // [i] = alternation of the first i tokens, created on demand
+    private final List<String> _alternatives = new ArrayList<>();
+    private final int[] _tokenGroups;
+    private final String[] _tokenTypes;
+    private final int[] _tokenColors;
+
+    /**
+     * @param rules  Rules of a syntax, in the order of definition
+     * @param colors Color per rule type, rules without color are skipped
+     */
+    public CompiledSyntax(final List<Syntax.Rule> rules, final Map<String, Integer> colors) {
+        final List<Syntax.Rule> used = new ArrayList<>();
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            final Syntax.Rule rule = rules.get(i);
+            if (colors.get(rule.type) != null) {
+                used.add(rule);
+            }
+        }
+
+        _tokenGroups = new int[used.size()];
+        _tokenTypes = new String[used.size()];
+        _tokenColors = new int[used.size()];
+
+        final StringBuilder regex = new StringBuilder();
+        int group = 1;
+        for (int i = 0; i < used.size(); i++) {
+            final Syntax.Rule rule = used.get(i);
+            _tokenGroups[i] = group;
+            _tokenTypes[i] = rule.type;
+            _tokenColors[i] = colors.get(rule.type);
+            regex.append(i > 0 ? "|(" : "(").append(rule.regex).append(')');
+            _alternatives.add(regex.toString());
+            group += 1 + rule.getPattern().matcher("").groupCount();
+        }
+
+        _patterns = new Pattern[used.size() + 1];
+    }
+
+    // Tokens are ordered from the last defined rule to the first, so the rules defined after a token's rule are a prefix
+    private Pattern getPattern(final int tokenCount) {
+        if (tokenCount <= 0) {
+            return null;
+        }
+        synchronized (_patterns) {
+            if (_patterns[tokenCount] == null) {
+                _patterns[tokenCount] = Pattern.compile(_alternatives.get(tokenCount - 1));
+            }
+            return _patterns[tokenCount];
+        }
+    }
+
+    public static CompiledSyntax compile(final Syntax syntax, final CodeTheme theme) {
+        final Map<String, Integer> colors = new HashMap<>();
+        for (final Map.Entry<String, CodeTheme.ThemeValue> entry : theme.styles.entrySet()) {
+            colors.put(entry.getKey(), entry.getValue().getColor());
+        }
+        return new CompiledSyntax(syntax.rules, colors);
+    }
+
+    public int getTokenCount() {
+        return _tokenTypes.length;
+    }
+
+    public String getTokenType(final int token) {
+        return _tokenTypes[token];
+    }
+
+    public int getTokenColor(final int token) {
+        return _tokenColors[token];
+    }
+
+    /**
+     * Scan text once and report every non-empty token
+     *
+     * @param text     Text to scan
+     * @param consumer Called with token index (see {@link #getTokenType(int)}), start and end
+     */
+    public void findTokens(final CharSequence text, final TokenConsumer consumer) {
+        findTokens(text, 0, text.length(), consumer);
+    }
+
+    /**
+     * Scan the region [start, end) of text once and report every non-empty token.
+     * Text outside of the region is visible to lookarounds.
+     */
+    public void findTokens(final CharSequence text, final int start, final int end, final TokenConsumer consumer) {
+        findTokens(text, start, end, _tokenTypes.length, consumer);
+    }
+
+    private void findTokens(final CharSequence text, final int start, final int end, final int tokenCount, final TokenConsumer consumer) {
+        final Pattern pattern = getPattern(tokenCount);
+        if (pattern == null || start >= end) {
+            return;
+        }
+
+        final Matcher m = pattern.matcher(text);
+        m.region(start, end).useTransparentBounds(true).useAnchoringBounds(false);
+        while (m.find()) {
+            if (m.end() <= m.start()) {
+                continue;
+            }
+            for (int i = 0; i < tokenCount; i++) {
+                if (m.start(_tokenGroups[i]) >= 0) {
+                    consumer.onToken(i, m.start(), m.end());
+                    findTokens(text, m.start(), m.end(), i, consumer);
+                    break;
+                }
+            }
+        }
+    }
+}
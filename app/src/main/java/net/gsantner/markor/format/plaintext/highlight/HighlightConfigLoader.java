@@ -7,13 +7,15 @@ import com.google.gson.Gson;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class HighlightConfigLoader {
     private final Gson gson = new Gson();
     private final Properties map = new Properties();
-    private final SyntaxCache syntaxCache = new SyntaxCache();
+    private final LruCache<Syntax> syntaxCache = new LruCache<>();
+    private final LruCache<CompiledSyntax> compiledCache = new LruCache<>();
     private CodeTheme codeTheme;
 
     public static final String MAP_PATH = "highlight/languages/map.properties";
@@ -28,7 +30,7 @@ public class HighlightConfigLoader {
 
     private void loadSyntax(Context context, String lang) {
         Syntax syntax = loadConfig(context, "highlight/languages/" + lang + ".json", Syntax.class);
-        syntaxCache.putSyntax(lang, syntax);
+        syntaxCache.put(lang, syntax);
     }
 
     private void loadTheme(Context context, String name) {
@@ -42,7 +44,22 @@ public class HighlightConfigLoader {
      * @param lang    Language name.
      * @return Language syntax.
      */
-    public Syntax getSyntax(Context context, String lang) {
+    public synchronized Syntax getSyntax(Context context, String lang) {
+        final String key = getSyntaxKey(context, lang);
+        if (key == null) {
+            return null;
+        }
+
+        Syntax syntax = syntaxCache.get(key);
+        if (syntax == null) {
+            loadSyntax(context, key);
+        }
+
+        return syntaxCache.get(key);
+    }
+
+    // Map a language name / file extension to the name of the syntax file
+    private String getSyntaxKey(Context context, String lang) {
         lang = lang.replaceAll("^\\.+", "").toLowerCase();
         if (map.isEmpty()) {
             try {
@@ -51,59 +68,57 @@ public class HighlightConfigLoader {
                 throw new RuntimeException(e);
             }
         }
-
-        String key = map.getProperty(lang);
-        Syntax syntax = syntaxCache.getSyntax(key);
-        if (syntax == null) {
-            loadSyntax(context, key);
-        }
-
-        return syntaxCache.getSyntax(key);
+        return map.getProperty(lang);
     }
 
-    public CodeTheme getTheme(Context context, String name) {
+    public synchronized CodeTheme getTheme(Context context, String name) {
         if (codeTheme == null || !codeTheme.name.equals(name)) {
             loadTheme(context, name);
         }
         return codeTheme;
     }
 
-    static class SyntaxCache {
-        public static final int CACHE_SIZE = 5;
-        private final HashMap<String, Syntax> syntaxMap = new HashMap<>();
-        private final HashMap<String, Integer> usageMap = new HashMap<>();
+    /**
+     * Get language syntax compiled against a theme. Compiled syntaxes are cached and can be
+     * shared by all highlighters of the same language.
+     *
+     * @param context   Android Context.
+     * @param lang      Language name (or file extension).
+     * @param themeName Theme name.
+     * @return Compiled syntax or null if there is no syntax for this language
+     */
+    public synchronized CompiledSyntax getCompiledSyntax(Context context, String lang, String themeName) {
+        final String key = getSyntaxKey(context, lang);
+        if (key == null) {
+            return null;
+        }
 
-        public Syntax getSyntax(String key) {
-            Syntax syntax = syntaxMap.get(key);
-            if (syntax == null) {
+        CompiledSyntax compiled = compiledCache.get(key + "@" + themeName);
+        if (compiled == null) {
+            final Syntax syntax = getSyntax(context, lang);
+            final CodeTheme theme = getTheme(context, themeName);
+            if (syntax == null || syntax.rules == null || theme == null || theme.styles == null) {
                 return null;
             }
-
-            Integer usage = usageMap.get(key);
-            usageMap.put(key, 1 + (usage == null ? 0 : usage));
-            return syntax;
+            compiled = CompiledSyntax.compile(syntax, theme);
+            compiledCache.put(key + "@" + themeName, compiled);
         }
+        return compiled;
+    }
 
-        public void putSyntax(String key, Syntax syntax) {
-            if (syntaxMap.size() > CACHE_SIZE) {
-                String entryKey = null;
-                int min = Integer.MAX_VALUE;
-                for (HashMap.Entry<String, Integer> entry : usageMap.entrySet()) {
-                    int value = entry.getValue();
-                    if (value < min) {
-                        min = value;
-                        entryKey = entry.getKey();
-                    }
-                }
-
-                if (entryKey != null) {
-                    syntaxMap.remove(entryKey);
-                    usageMap.remove(entryKey);
-                }
-            }
+    /**
+     * Least recently used cache
+     */
+    static class LruCache<T> extends LinkedHashMap<String, T> {
+        public static final int CACHE_SIZE = 5;
+
+        LruCache() {
+            super(CACHE_SIZE + 1, 0.75f, true);
+        }
 
-            syntaxMap.put(key, syntax);
-            usageMap.put(key, 0);
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, T> eldest) {
+            return size() > CACHE_SIZE;
         }
     }
 }
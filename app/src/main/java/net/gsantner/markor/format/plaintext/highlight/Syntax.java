@@ -11,7 +11,7 @@ public class Syntax {
     public static class Rule {
         public String type;
         public String regex;
-        private Pattern m_pattern;
+        private transient Pattern m_pattern;
 
         public Pattern getPattern() {
             if (m_pattern == null) {
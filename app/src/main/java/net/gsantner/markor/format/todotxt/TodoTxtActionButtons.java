@@ -13,6 +13,7 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.os.Bundle;
 import android.text.Editable;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.StringRes;
@@ -79,21 +80,7 @@ public class TodoTxtActionButtons extends ActionButtonBase {
         switch (action) {
             case R.string.abid_todotxt_toggle_done: {
                 final String doneMark = "x" + (_appSettings.isTodoAddCompletionDateEnabled() ? (" " + TodoTxtTask.getToday()) : "") + " ";
-                final String bodyWithPri = "(.*)(\\spri:([A-Z])(?=\\s|$))(.*)"; // +1 = pre, +2 = full tag, +3 = pri, +4 = post
-                final String doneWithDate = "^([Xx]\\s(?:" + TodoTxtTask.PT_DATE + "\\s)?)";
-                final String startingPriority = "^\\(([A-Z])\\)\\s";
-                runRegexReplaceAction(
-                        // If task not done and starts with a priority and contains a pri tag
-                        new ReplacePattern(startingPriority + bodyWithPri, doneMark + "$2 pri:$1$5"),
-                        // else if task not done and starts with a priority and does not contain a pri tag
-                        new ReplacePattern(startingPriority + "(.*)(\\s*)", doneMark + "$2 pri:$1"),
-                        // else if task is done and contains a pri tag
-                        new ReplacePattern(doneWithDate + bodyWithPri, "($4) $2$5"),
-                        // else if task is done and does not contain a pri tag
-                        new ReplacePattern(doneWithDate, ""),
-                        // else replace task start with 'x ...'
-                        new ReplacePattern("^", doneMark)
-                );
+                TodoTxtBatchEdit.apply(_hlEditor, TodoTxtBatchEdit.toggleDone(doneMark));
                 return true;
             }
             case R.string.abid_todotxt_add_context: {
@@ -119,15 +106,10 @@ public class TodoTxtActionButtons extends ActionButtonBase {
                 return true;
             }
             case R.string.abid_todotxt_sort_todo: {
-                MarkorDialogFactory.showSttSortDialogue(getActivity(), (orderBy, descending) -> new Thread() {
-                    @Override
-                    public void run() {
-                        final List<TodoTxtTask> tasks = TodoTxtTask.getAllTasks(_hlEditor.getText());
-                        TodoTxtTask.sortTasks(tasks, orderBy, descending);
-                        setEditorTextAsync(TodoTxtTask.tasksToString(tasks));
-                        _appSettings.setStringList(LAST_SORT_ORDER_KEY, Arrays.asList(orderBy, Boolean.toString(descending)));
-                    }
-                }.start());
+                MarkorDialogFactory.showSttSortDialogue(getActivity(), (orderBy, descending) -> {
+                    sortAllTasks(orderBy, descending);
+                    _appSettings.setStringList(LAST_SORT_ORDER_KEY, Arrays.asList(orderBy, Boolean.toString(descending)));
+                });
                 return true;
             }
             default: {
@@ -151,9 +133,7 @@ public class TodoTxtActionButtons extends ActionButtonBase {
             case R.string.abid_todotxt_sort_todo: {
                 final List<String> last = _appSettings.getStringList(LAST_SORT_ORDER_KEY);
                 if (last != null && last.size() == 2) {
-                    final List<TodoTxtTask> tasks = TodoTxtTask.getAllTasks(_hlEditor.getText());
-                    TodoTxtTask.sortTasks(tasks, last.get(0), Boolean.parseBoolean(last.get(1)));
-                    setEditorTextAsync(TodoTxtTask.tasksToString(tasks));
+                    sortAllTasks(last.get(0), Boolean.parseBoolean(last.get(1)));
                 }
                 return true;
             }
@@ -235,16 +215,26 @@ public class TodoTxtActionButtons extends ActionButtonBase {
 
             if (!move.isEmpty() && _document.testCreateParent()) {
                 final File doneFile = new File(_document.file.getParentFile(), doneName);
-                final StringBuilder doneContents = new StringBuilder();
-                if (doneFile.exists() && doneFile.canRead()) {
-                    doneContents.append(GsFileUtils.readTextFileFast(doneFile).first.trim()).append("\n");
+                final String moveString = TodoTxtTask.tasksToString(move);
+                final boolean written;
+                if (Document.isEncrypted(doneFile)) {
+                    // Encrypted done files can't be appended to, these are rewritten as a whole
+                    final StringBuilder doneContents = new StringBuilder();
+                    if (doneFile.exists() && doneFile.canRead()) {
+                        doneContents.append(GsFileUtils.readTextFileFast(doneFile).first.trim()).append("\n");
+                    }
+                    doneContents.append(moveString).append("\n");
+                    written = new Document(doneFile).saveContent(getActivity(), doneContents.toString());
+                } else {
+                    final File archive = TodoTxtArchive.getArchiveFile(doneFile, _appSettings.getTodoArchiveRotation(), moveString.length(), System.currentTimeMillis());
+                    written = archive != null && TodoTxtArchive.append(archive, moveString);
                 }
-                doneContents.append(TodoTxtTask.tasksToString(move)).append("\n");
 
-                // Write to done file
-                if (new Document(doneFile).saveContent(getActivity(), doneContents.toString())) {
-                    final String tasksString = TodoTxtTask.tasksToString(keep);
-                    _hlEditor.setText(tasksString);
+                // Remove the archived tasks as one change, only once they are safely written
+                if (written) {
+                    final TextViewUtils.ChunkedEditable chunk = TextViewUtils.ChunkedEditable.wrap(_hlEditor.getText());
+                    chunk.replace(0, chunk.length(), TodoTxtTask.tasksToString(keep));
+                    chunk.applyChanges();
                     TextViewUtils.setSelectionFromOffsets(_hlEditor, offsets);
                 }
             }
@@ -264,12 +254,33 @@ public class TodoTxtActionButtons extends ActionButtonBase {
         return true;
     }
 
+    /**
+     * Sort all tasks in the background and apply the result as a single, minimal change.
+     * Nothing is changed if the text was edited while sorting.
+     */
+    private void sortAllTasks(final String orderBy, final boolean descending) {
+        final String original = _hlEditor.getText().toString();
+        new Thread(() -> {
+            final List<TodoTxtTask> tasks = TodoTxtTask.getAllTasks(original);
+            TodoTxtTask.sortTasks(tasks, orderBy, descending);
+            final String sorted = TodoTxtTask.tasksToString(tasks);
+            _hlEditor.post(() -> {
+                final Editable text = _hlEditor.getText();
+                if (TextUtils.equals(text, original)) {
+                    final TextViewUtils.ChunkedEditable chunk = TextViewUtils.ChunkedEditable.wrap(text);
+                    chunk.replace(0, chunk.length(), sorted);
+                    chunk.applyChanges();
+                }
+            });
+        }).start();
+    }
+
     private void addRemoveItems(
             final String prefix,
             final int titleResId,
             final GsCallback.r1<Collection<String>, List<TodoTxtTask>> keyGetter
     ) {
-        final Set<String> all = new TreeSet<>(keyGetter.callback(TodoTxtTask.getAllTasks(_hlEditor.getText())));
+        final Set<String> all = new TreeSet<>(keyGetter.callback(TodoTxtIndex.forEditor(_hlEditor).getTasks()));
         final TodoTxtTask additional = new TodoTxtTask(_appSettings.getTodotxtAdditionalContextsAndProjects());
         all.addAll(keyGetter.callback(Collections.singletonList(additional)));
 
@@ -279,12 +290,25 @@ public class TodoTxtActionButtons extends ActionButtonBase {
 
         MarkorDialogFactory.showUpdateItemsDialog(getActivity(), titleResId, all, current,
                 updated -> {
+                    // Several tasks are edited at once, a single task may get the item inserted at the cursor
+                    if (append || TextViewUtils.getSelectedLines(_hlEditor.getText()).contains("\n")) {
+                        final List<GsCallback.r1<String, String>> edits = new ArrayList<>();
+                        for (final String item : GsCollectionUtils.setDiff(current, updated)) {
+                            edits.add(TodoTxtBatchEdit.removeItem(prefix + item));
+                        }
+                        for (final String item : GsCollectionUtils.setDiff(updated, current)) {
+                            edits.add(TodoTxtBatchEdit.appendUniqueItem(prefix + item));
+                        }
+                        TodoTxtBatchEdit.apply(_hlEditor, edits);
+                        return;
+                    }
+
                     final TextViewUtils.ChunkedEditable chunk = TextViewUtils.ChunkedEditable.wrap(_hlEditor.getText());
                     for (final String item : GsCollectionUtils.setDiff(current, updated)) {
                         removeItem(chunk, prefix + item);
                     }
                     for (final String item : GsCollectionUtils.setDiff(updated, current)) {
-                        insertUniqueItem(chunk, prefix + item, append);
+                        insertUniqueItem(chunk, prefix + item);
                     }
                     chunk.applyChanges();
                 });
@@ -300,30 +324,17 @@ public class TodoTxtActionButtons extends ActionButtonBase {
         );
     }
 
-    private static void insertUniqueItem(final Editable editable, final String item, final boolean append) {
+    // Insert the item at the cursor of a single task, unless the task has it already
+    private static void insertUniqueItem(final Editable editable, final String item) {
 
         // Pattern to match <space><literal string><space OR end of line>
         // i.e. to check if a word is present in the line
         final Pattern pattern = Pattern.compile(String.format("\\s\\Q%s\\E(:?\\s|$)", item));
-        final String lines = TextViewUtils.getSelectedLines(editable);
-        // Multiline or setting
-        if (append || lines.contains("\n")) {
-            runRegexReplaceAction(
-                    editable,
-                    // Replace existing item with itself. i.e. do nothing
-                    new ReplacePattern(pattern, "$0"),
-                    // Append to end
-                    new ReplacePattern("\\s*$", " " + item)
-            );
-        } else if (!pattern.matcher(lines).find()) {
+        if (!pattern.matcher(TextViewUtils.getSelectedLines(editable)).find()) {
             insertInline(editable, item);
         }
     }
 
-    private void trimLeadingWhiteSpace() {
-        runRegexReplaceAction("^\\s*", "");
-    }
-
     private static void insertInline(final Editable editable, String thing) {
         final int[] sel = TextViewUtils.getSelection(editable);
         if (sel[0] < 0) {
@@ -346,16 +357,7 @@ public class TodoTxtActionButtons extends ActionButtonBase {
     }
 
     private void setPriority(char priority) {
-        ArrayList<ReplacePattern> patterns = new ArrayList<>();
-        if (priority == TodoTxtTask.PRIORITY_NONE) {
-            patterns.add(new ReplacePattern(TodoTxtTask.PATTERN_PRIORITY_ANY, ""));
-        } else {
-            final String _priority = String.format("(%c) ", priority);
-            patterns.add(new ReplacePattern(TodoTxtTask.PATTERN_PRIORITY_ANY, _priority));
-            patterns.add(new ReplacePattern("^\\s*", _priority));
-        }
-        runRegexReplaceAction(patterns);
-        trimLeadingWhiteSpace();
+        TodoTxtBatchEdit.apply(_hlEditor, TodoTxtBatchEdit.setPriority(priority));
     }
 
     private static Calendar parseDateString(final String dateString, final Calendar fallback) {
@@ -403,17 +405,11 @@ public class TodoTxtActionButtons extends ActionButtonBase {
         final DatePickerDialog.OnDateSetListener listener = (_view, year, month, day) -> {
             Calendar fmtCal = Calendar.getInstance();
             fmtCal.set(year, month, day);
-            final String newDue = "due:" + TodoTxtTask.DATEF_YYYY_MM_DD.format(fmtCal.getTime());
-            runRegexReplaceAction(
-                    // Replace due date
-                    new ReplacePattern(TodoTxtTask.PATTERN_DUE_DATE, "$1" + newDue + "$4"),
-                    // Add due date to end if none already exists. Will correctly handle trailing whitespace.
-                    new ReplacePattern("\\s*$", " " + newDue)
-            );
+            TodoTxtBatchEdit.apply(_hlEditor, TodoTxtBatchEdit.setDueDate(TodoTxtTask.DATEF_YYYY_MM_DD.format(fmtCal.getTime())));
         };
 
         final DatePickerDialog.OnClickListener clear = (dialog, which) -> {
-            runRegexReplaceAction(new ReplacePattern(TodoTxtTask.PATTERN_DUE_DATE, "$4"));
+            TodoTxtBatchEdit.apply(_hlEditor, TodoTxtBatchEdit.clearDueDate());
         };
 
         new DateFragment()
@@ -0,0 +1,112 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+
+/**
+ * Append-only archive of done tasks.
+ * <p>
+ * Tasks are appended to the done file with one write to a file opened in append mode, followed by a sync.
+ * The existing content of the done file is never read or rewritten, so archiving does not get slower
+ * as the done file grows. Optionally, done files are rotated by year or by size.
+ */
+public final class TodoTxtArchive {
+    public static final String ROTATE_NONE = "none";
+    public static final String ROTATE_YEARLY = "yearly";
+    public static final String ROTATE_SIZE = "size";
+
+    // Done files are rotated when they would grow over this size
+    public static final long ROTATE_MAX_SIZE = 1024 * 1024;
+
+    private TodoTxtArchive() {
+    }
+
+    /**
+     * Get the file to append to. For {@link #ROTATE_YEARLY} this is e.g. done.2025.txt next to done.txt.
+     * For {@link #ROTATE_SIZE} a full done file is renamed to the next free name (done.1.txt, done.2.txt, ...)
+     * first, and the tasks go to a new done file.
+     *
+     * @param doneFile   Done file as selected by the user
+     * @param rotation   One of the ROTATE_ constants
+     * @param appendSize Number of bytes which will be appended
+     * @param now        Time of archiving, in millis
+     * @return File to append to, null if the full done file could not be rotated
+     */
+    public static @Nullable File getArchiveFile(final File doneFile, final String rotation, final long appendSize, final long now) {
+        if (ROTATE_YEARLY.equals(rotation)) {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(now);
+            return withSuffix(doneFile, Integer.toString(calendar.get(Calendar.YEAR)));
+        } else if (ROTATE_SIZE.equals(rotation) && doneFile.length() > 0 && doneFile.length() + appendSize > ROTATE_MAX_SIZE) {
+            for (int i = 1; i < Integer.MAX_VALUE; i++) {
+                final File rotated = withSuffix(doneFile, Integer.toString(i));
+                if (!rotated.exists()) {
+                    if (doneFile.renameTo(rotated)) {
+                        break;
+                    } else if (!rotated.exists()) {
+                        // Not a name taken in the meantime, appending would grow the full done file
+                        Log.w(TodoTxtArchive.class.getName(), "Can't rotate " + doneFile);
+                        return null;
+                    }
+                }
+            }
+        }
+        return doneFile;
+    }
+
+    // done.txt -> done.<suffix>.txt
+    private static File withSuffix(final File file, final String suffix) {
+        final String name = file.getName();
+        final int dot = name.lastIndexOf('.');
+        final String rotated = dot > 0 ? name.substring(0, dot) + "." + suffix + name.substring(dot) : name + "." + suffix;
+        return new File(file.getParentFile(), rotated);
+    }
+
+    /**
+     * Append the tasks as lines to the file. A line break is added first if the file does not end with one.
+     *
+     * @return true if the tasks were written and synced to disk
+     */
+    public static boolean append(final File file, final String tasks) {
+        if (tasks.isEmpty()) {
+            return true;
+        }
+        final String text = (endsWithLineBreak(file) ? "" : "\n") + tasks + (tasks.endsWith("\n") ? "" : "\n");
+        try (final FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            Log.e(TodoTxtArchive.class.getName(), "Can't append to " + file, e);
+            return false;
+        }
+    }
+
+    // True for missing and empty files too
+    private static boolean endsWithLineBreak(final File file) {
+        if (!file.exists() || file.length() == 0) {
+            return true;
+        }
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.gsantner.markor.format.todotxt;
 
+import android.graphics.Paint;
 import android.graphics.Typeface;
 
 import net.gsantner.markor.frontend.textview.SyntaxHighlighterBase;
@@ -22,31 +23,44 @@ public class TodoTxtBasicSyntaxHighlighter extends SyntaxHighlighterBase {
     private final static int COLOR_DATE_DARK = COLOR_DONE_DARK;
     private final static int COLOR_DATE_LIGHT = 0xcc6d6d6d;
 
+    // Span per token type of TodoTxtTokenizer, copied for every token
+    private final HighlightSpan[] _tokenSpans = new HighlightSpan[TodoTxtTokenizer.TOKEN_COUNT];
+
     public TodoTxtBasicSyntaxHighlighter(final AppSettings as) {
         super(as);
     }
 
     @Override
-    public void generateSpans() {
-        createSmallBlueLinkSpans();
-        createColorSpanForMatches(TodoTxtTask.PATTERN_CONTEXTS, COLOR_CONTEXT);
-        createColorSpanForMatches(TodoTxtTask.PATTERN_PROJECTS, COLOR_CATEGORY);
-        createStyleSpanForMatches(TodoTxtTask.PATTERN_KEY_VALUE_PAIRS, Typeface.ITALIC);
-
-        // Priorities
-        createSpanForMatches(TodoTxtTask.PATTERN_PRIORITY_A, new HighlightSpan().setForeColor(COLOR_PRIORITY_A).setBold(true));
-        createSpanForMatches(TodoTxtTask.PATTERN_PRIORITY_B, new HighlightSpan().setForeColor(COLOR_PRIORITY_B).setBold(true));
-        createSpanForMatches(TodoTxtTask.PATTERN_PRIORITY_C, new HighlightSpan().setForeColor(COLOR_PRIORITY_C).setBold(true));
-        createSpanForMatches(TodoTxtTask.PATTERN_PRIORITY_D, new HighlightSpan().setForeColor(COLOR_PRIORITY_D).setBold(true));
-        createSpanForMatches(TodoTxtTask.PATTERN_PRIORITY_E, new HighlightSpan().setForeColor(COLOR_PRIORITY_E).setBold(true));
-        createSpanForMatches(TodoTxtTask.PATTERN_PRIORITY_F, new HighlightSpan().setForeColor(COLOR_PRIORITY_F).setBold(true));
-        createStyleSpanForMatches(TodoTxtTask.PATTERN_PRIORITY_G_TO_Z, Typeface.BOLD);
-
-        createColorSpanForMatches(TodoTxtTask.PATTERN_CREATION_DATE, _isDarkMode ? COLOR_DATE_DARK : COLOR_DATE_LIGHT, 1);
-        createColorSpanForMatches(TodoTxtTask.PATTERN_DUE_DATE, COLOR_PRIORITY_A, 2, 3);
+    public SyntaxHighlighterBase configure(final Paint paint) {
+        super.configure(paint);
+
+        final int[] priorityColors = {COLOR_PRIORITY_A, COLOR_PRIORITY_B, COLOR_PRIORITY_C, COLOR_PRIORITY_D, COLOR_PRIORITY_E, COLOR_PRIORITY_F};
+        for (int i = 0; i < priorityColors.length; i++) {
+            _tokenSpans[TodoTxtTokenizer.TOKEN_PRIORITY_A + i] = new HighlightSpan().setForeColor(priorityColors[i]).setBold(true);
+        }
+        _tokenSpans[TodoTxtTokenizer.TOKEN_PRIORITY_OTHER] = new HighlightSpan().setTypeface(Typeface.BOLD);
+        _tokenSpans[TodoTxtTokenizer.TOKEN_CREATION_DATE] = new HighlightSpan().setForeColor(_isDarkMode ? COLOR_DATE_DARK : COLOR_DATE_LIGHT);
+        _tokenSpans[TodoTxtTokenizer.TOKEN_CONTEXT] = new HighlightSpan().setForeColor(COLOR_CONTEXT);
+        _tokenSpans[TodoTxtTokenizer.TOKEN_PROJECT] = new HighlightSpan().setForeColor(COLOR_CATEGORY);
+        _tokenSpans[TodoTxtTokenizer.TOKEN_KEY_VALUE] = new HighlightSpan().setTypeface(Typeface.ITALIC);
+        _tokenSpans[TodoTxtTokenizer.TOKEN_DUE_DATE] = new HighlightSpan().setForeColor(COLOR_PRIORITY_A);
+        _tokenSpans[TodoTxtTokenizer.TOKEN_LINK] = new HighlightSpan().setForeColor(0xff1ea3fd).setItalic(true).setTextScale(0.85f);
 
         // Strike out done tasks
         // Note - as we now sort by start, projects, contexts, tags and due date will be highlighted for done tasks
-        createSpanForMatches(TodoTxtTask.PATTERN_DONE, new HighlightSpan().setForeColor(_isDarkMode ? COLOR_DONE_DARK : COLOR_DONE_LIGHT).setStrike(true));
+        _tokenSpans[TodoTxtTokenizer.TOKEN_DONE] = new HighlightSpan().setForeColor(_isDarkMode ? COLOR_DONE_DARK : COLOR_DONE_LIGHT).setStrike(true);
+
+        return this;
+    }
+
+    @Override
+    protected boolean isLineLocal() {
+        return true;
+    }
+
+    // All lines of the region are tokenized in one pass, instead of matching every pattern on its own
+    @Override
+    public void generateSpans() {
+        TodoTxtTokenizer.findTokens(_spannable, getRegionStart(), getRegionEnd(), (token, start, end) -> addSpanGroup(_tokenSpans[token].callback(null), start, end));
     }
-}
\ No newline at end of file
+}
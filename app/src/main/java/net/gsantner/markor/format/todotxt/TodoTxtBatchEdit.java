@@ -0,0 +1,221 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import android.text.Editable;
+import android.text.TextUtils;
+import android.widget.EditText;
+
+import net.gsantner.markor.frontend.textview.HighlightingEditor;
+import net.gsantner.markor.frontend.textview.TextViewUtils;
+import net.gsantner.opoc.wrapper.GsCallback;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Edits of all selected tasks at once, e.g. setting the priority or adding a project to hundreds of tasks.
+ * <p>
+ * An edit is a list of line transformations, which are applied to each selected line in order.
+ * All new lines are computed first (in the background for large selections) and then committed as
+ * one minimal replace, so text watchers, highlighting, line numbers and undo see a single change.
+ * Nothing is changed if the text was edited in the meantime.
+ */
+public final class TodoTxtBatchEdit {
+
+    // Selections with fewer lines are edited right away
+    private static final int BACKGROUND_MIN_LINES = 200;
+
+    private TodoTxtBatchEdit() {
+    }
+
+    /**
+     * Replace the first match of the first matching pattern, like ActionButtonBase.runRegexReplaceAction
+     */
+    private static final class Rule {
+        final Pattern pattern;
+        final String replacement;
+
+        Rule(final Pattern pattern, final String replacement) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+
+        Rule(final String pattern, final String replacement) {
+            this(Pattern.compile(pattern), replacement);
+        }
+    }
+
+    private static GsCallback.r1<String, String> firstOf(final Rule... rules) {
+        return line -> {
+            for (final Rule rule : rules) {
+                final Matcher matcher = rule.pattern.matcher(line);
+                if (matcher.find()) {
+                    return "$0".equals(rule.replacement) ? line : matcher.replaceFirst(rule.replacement);
+                }
+            }
+            return line;
+        };
+    }
+
+    // Transformations
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Mark a task done or undone. The priority of a task is kept as pri:X tag while it is done.
+     *
+     * @param doneMark "x " or "x yyyy-MM-dd "
+     */
+    public static GsCallback.r1<String, String> toggleDone(final String doneMark) {
+        final String mark = Matcher.quoteReplacement(doneMark);
+        final String bodyWithPri = "(.*)(\\spri:([A-Z])(?=\\s|$))(.*)"; // +1 = pre, +2 = full tag, +3 = pri, +4 = post
+        final String doneWithDate = "^([Xx]\\s(?:" + TodoTxtTask.PT_DATE + "\\s)?)";
+        final String startingPriority = "^\\(([A-Z])\\)\\s";
+        return firstOf(
+                // If task not done and starts with a priority and contains a pri tag
+                new Rule(startingPriority + bodyWithPri, mark + "$2 pri:$1$5"),
+                // else if task not done and starts with a priority and does not contain a pri tag
+                new Rule(startingPriority + "(.*)(\\s*)", mark + "$2 pri:$1"),
+                // else if task is done and contains a pri tag
+                new Rule(doneWithDate + bodyWithPri, "($4) $2$5"),
+                // else if task is done and does not contain a pri tag
+                new Rule(doneWithDate, ""),
+                // else replace task start with 'x ...'
+                new Rule("^", mark)
+        );
+    }
+
+    /**
+     * @param priority Priority letter, or {@link TodoTxtTask#PRIORITY_NONE} to remove the priority
+     */
+    public static GsCallback.r1<String, String> setPriority(final char priority) {
+        final GsCallback.r1<String, String> set;
+        if (priority == TodoTxtTask.PRIORITY_NONE) {
+            set = firstOf(new Rule(TodoTxtTask.PATTERN_PRIORITY_ANY, ""));
+        } else {
+            final String prefix = Matcher.quoteReplacement(String.format("(%c) ", priority));
+            set = firstOf(new Rule(TodoTxtTask.PATTERN_PRIORITY_ANY, prefix), new Rule("^\\s*", prefix));
+        }
+        final GsCallback.r1<String, String> trimLeadingWhitespace = firstOf(new Rule("^\\s*", ""));
+        return line -> trimLeadingWhitespace.callback(set.callback(line));
+    }
+
+    /**
+     * @param date Due date as yyyy-MM-dd, replaces an existing due date or is appended
+     */
+    public static GsCallback.r1<String, String> setDueDate(final String date) {
+        final String due = Matcher.quoteReplacement("due:" + date);
+        return firstOf(
+                new Rule(TodoTxtTask.PATTERN_DUE_DATE, "$1" + due + "$4"),
+                // Handles trailing whitespace
+                new Rule("\\s*$", " " + due)
+        );
+    }
+
+    public static GsCallback.r1<String, String> clearDueDate() {
+        return firstOf(new Rule(TodoTxtTask.PATTERN_DUE_DATE, "$4"));
+    }
+
+    /**
+     * @param item Project or context with prefix, appended to tasks which don't have it yet
+     */
+    public static GsCallback.r1<String, String> appendUniqueItem(final String item) {
+        return firstOf(
+                // Keep tasks having the item
+                new Rule(String.format("\\s\\Q%s\\E(:?\\s|$)", item), "$0"),
+                new Rule("\\s*$", " " + Matcher.quoteReplacement(item))
+        );
+    }
+
+    /**
+     * @param item Project or context with prefix
+     */
+    public static GsCallback.r1<String, String> removeItem(final String item) {
+        return firstOf(
+                // In the middle - replace with space
+                new Rule(String.format("\\s\\Q%s\\E\\s", item), " "),
+                // In the end - remove
+                new Rule(String.format("\\s\\Q%s\\E$", item), "")
+        );
+    }
+
+    // Applying
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Apply the transformations to each line of lines, which are separated by '\n'
+     */
+    static String transformLines(final String lines, final List<GsCallback.r1<String, String>> transforms) {
+        final StringBuilder result = new StringBuilder(lines.length() + 16);
+        int lineStart = 0;
+        while (true) {
+            final int lineEnd = lines.indexOf('\n', lineStart);
+            String line = lines.substring(lineStart, lineEnd < 0 ? lines.length() : lineEnd);
+            for (final GsCallback.r1<String, String> transform : transforms) {
+                line = transform.callback(line);
+            }
+            result.append(line);
+            if (lineEnd < 0) {
+                return result.toString();
+            }
+            result.append('\n');
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    @SafeVarargs
+    public static void apply(final EditText editor, final GsCallback.r1<String, String>... transforms) {
+        apply(editor, Arrays.asList(transforms));
+    }
+
+    /**
+     * Apply the transformations to all lines touched by the selection of the editor, as one change.
+     * The selection is kept at the same line and distance from line end.
+     */
+    public static void apply(final EditText editor, final List<GsCallback.r1<String, String>> transforms) {
+        final Editable text = editor.getText();
+        final int[] sel = TextViewUtils.getSelection(text);
+        if (sel[0] < 0 || transforms.isEmpty()) {
+            return;
+        }
+        final int[] region = TextViewUtils.getLineSelection(text, sel);
+        final int[][] offsets = TextViewUtils.getLineOffsetFromIndex(text, sel);
+        final String lines = text.subSequence(region[0], region[1]).toString();
+
+        if (offsets[1][0] - offsets[0][0] < BACKGROUND_MIN_LINES) {
+            commit(editor, region, transformLines(lines, transforms), offsets);
+        } else {
+            final String original = text.toString();
+            new Thread(() -> {
+                final String transformed = transformLines(lines, transforms);
+                editor.post(() -> {
+                    if (TextUtils.equals(editor.getText(), original)) {
+                        commit(editor, region, transformed, offsets);
+                    }
+                });
+            }).start();
+        }
+    }
+
+    private static void commit(final EditText editor, final int[] region, final String replacement, final int[][] offsets) {
+        final GsCallback.a0 replace = () -> {
+            final Editable text = editor.getText();
+            final TextViewUtils.ChunkedEditable chunk = TextViewUtils.ChunkedEditable.wrap(text);
+            chunk.replace(region[0], region[1], replacement);
+            chunk.applyChanges();
+            TextViewUtils.setSelectionFromOffsets(text, offsets);
+        };
+        if (editor instanceof HighlightingEditor) {
+            ((HighlightingEditor) editor).withAutoFormatDisabled(replace);
+        } else {
+            replace.callback();
+        }
+    }
+}
@@ -10,7 +10,6 @@ import androidx.annotation.VisibleForTesting;
 import net.gsantner.markor.R;
 import net.gsantner.markor.format.todotxt.TodoTxtTask.TodoDueState;
 import net.gsantner.opoc.model.GsSharedPreferencesPropertyBackend;
-import net.gsantner.opoc.wrapper.GsCallback;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -19,11 +18,8 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.EmptyStackException;
 import java.util.List;
-import java.util.Set;
 import java.util.Stack;
-import java.util.TreeSet;
 
 public class TodoTxtFilter {
 
@@ -41,7 +37,6 @@ public class TodoTxtFilter {
     public static final String STRING_NONE = "-";
     private static final String TITLE = "TITLE";
     private static final String QUERY = "QUERY";
-    private static final String NULL_SENTINEL = "NULL SENTINEL";
 
     public static final int MAX_RECENT_VIEWS = 10;
 
@@ -62,51 +57,33 @@ public class TodoTxtFilter {
     }
 
     public static List<SttFilterKey> getKeys(final Context context, final List<TodoTxtTask> tasks, final TYPE type) {
-        if (type == TYPE.PROJECT) {
-            return getStringListKeys(tasks, TodoTxtTask::getProjects);
-        } else if (type == TYPE.CONTEXT) {
-            return getStringListKeys(tasks, TodoTxtTask::getContexts);
-        } else if (type == TYPE.PRIORITY) {
-            return getStringListKeys(tasks, t -> t.getPriority() == TodoTxtTask.PRIORITY_NONE ? null : Collections.singletonList(Character.toString(Character.toUpperCase(t.getPriority()))));
-        } else if (type == TYPE.DUE) {
-            return getDueKeys(context, tasks);
-        } else {
-            return Collections.emptyList();
-        }
+        return getKeys(context, new TodoTxtIndex(TodoTxtTask.tasksToString(tasks)), type);
     }
 
-    private static List<SttFilterKey> getStringListKeys(final List<TodoTxtTask> tasks, final GsCallback.r1<List<String>, TodoTxtTask> keyGetter) {
-        final List<String> all = new ArrayList<>();
-        for (final TodoTxtTask task : tasks) {
-            if (!task.isDone()) {
-                final List<String> tKeys = keyGetter.callback(task);
-                all.addAll(tKeys == null || tKeys.isEmpty() ? Collections.singletonList(NULL_SENTINEL) : tKeys);
-            }
+    // Keys and counts are taken from the index, tasks are not parsed again
+    public static List<SttFilterKey> getKeys(final Context context, final TodoTxtIndex index, final TYPE type) {
+        if (type == TYPE.DUE) {
+            return getDueKeys(context, index);
         }
 
         final List<SttFilterKey> keys = new ArrayList<>();
-        final Set<String> unique = new TreeSet<>(all);
-        if (unique.remove(NULL_SENTINEL)) {
-            keys.add(new SttFilterKey(STRING_NONE, Collections.frequency(all, NULL_SENTINEL), null));
+        final int withoutCount = index.getCount(type, null);
+        if (withoutCount > 0) {
+            keys.add(new SttFilterKey(STRING_NONE, withoutCount, null));
         }
-        for (final String key : unique) {
-            keys.add(new SttFilterKey(key, Collections.frequency(all, key), key));
+        for (final String key : index.getKeys(type)) {
+            keys.add(new SttFilterKey(key, index.getCount(type, key), key));
         }
-
         return keys;
     }
 
-    public static List<SttFilterKey> getDueKeys(final Context context, final List<TodoTxtTask> tasks) {
-        final List<TodoTxtTask.TodoDueState> all = new ArrayList<>();
-        for (final TodoTxtTask task : tasks) {
-            all.add(task.getDueStatus());
-        }
+    public static List<SttFilterKey> getDueKeys(final Context context, final TodoTxtIndex index) {
+        final String today = TodoTxtTask.getToday();
         final List<SttFilterKey> keys = new ArrayList<>();
-        keys.add(new SttFilterKey(context.getString(R.string.due_future), Collections.frequency(all, TodoDueState.FUTURE), QUERY_DUE_FUTURE));
-        keys.add(new SttFilterKey(context.getString(R.string.due_today), Collections.frequency(all, TodoDueState.TODAY), QUERY_DUE_TODAY));
-        keys.add(new SttFilterKey(context.getString(R.string.due_overdue), Collections.frequency(all, TodoDueState.OVERDUE), QUERY_DUE_OVERDUE));
-        keys.add(new SttFilterKey(STRING_NONE, Collections.frequency(all, TodoDueState.NONE), null));
-
+        keys.add(new SttFilterKey(context.getString(R.string.due_future), index.getDueCount(TodoDueState.FUTURE, today), QUERY_DUE_FUTURE));
+        keys.add(new SttFilterKey(context.getString(R.string.due_today), index.getDueCount(TodoDueState.TODAY, today), QUERY_DUE_TODAY));
+        keys.add(new SttFilterKey(context.getString(R.string.due_overdue), index.getDueCount(TodoDueState.OVERDUE, today), QUERY_DUE_OVERDUE));
+        keys.add(new SttFilterKey(STRING_NONE, index.getDueCount(TodoDueState.NONE, today), null));
         return keys;
     }
 
@@ -218,16 +195,16 @@ public class TodoTxtFilter {
     // Query matching
     // -------------------------------------------------------------------------------------------
 
+    // The query is parsed once into a plan, see TodoTxtQuery. A malformed query matches nothing.
     public static boolean isMatchQuery(final TodoTxtTask task, final CharSequence query) {
-        try {
-            final CharSequence expression = parseQuery(task, query);
-            return evaluateExpression(expression);
-        } catch (EmptyStackException | IllegalArgumentException e) {
-            // TODO - display a useful message somehow
-            return false;
-        }
+        // TODO - display a useful message for malformed queries somehow
+        return TodoTxtQuery.compile(query).matches(task);
     }
 
+    // Per task query evaluation, not used by the app anymore. Kept for TodoTxtQuerySyntaxTests and as the
+    // reference TodoTxtQueryTest compares TodoTxtQuery against.
+    // ---------------------------------------------------------------------------------------------
+
     // Pre-process the query to simplify the syntax
     private static String preProcess(final CharSequence query) {
         return String.format(" %s ", query)                  // Leading and trailing spaces
@@ -302,6 +279,7 @@ public class TodoTxtFilter {
         return stack.isEmpty() || stack.peek() == '(';
     }
 
+    @VisibleForTesting
     public static boolean isValue(final Stack<Character> stack) {
         if (!stack.isEmpty()) {
             final char top = stack.peek();
@@ -314,6 +292,7 @@ public class TodoTxtFilter {
         return v ? 'T' : 'F';
     }
 
+    @VisibleForTesting
     public static void evaluateOperations(final Stack<Character> stack) {
         while (!isStart(stack) && isValue(stack)) {
             final char rhs = stack.pop();
@@ -334,6 +313,7 @@ public class TodoTxtFilter {
         }
     }
 
+    @VisibleForTesting
     public static boolean evaluateExpression(final CharSequence expression) {
         final Stack<Character> stack = new Stack<>();
         for (int i = 0; i < expression.length(); i++) {
@@ -0,0 +1,350 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import android.widget.EditText;
+
+import net.gsantner.markor.format.todotxt.TodoTxtTask.TodoDueState;
+import net.gsantner.opoc.wrapper.GsCallback;
+import net.gsantner.opoc.wrapper.GsTextWatcherAdapter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+/**
+ * Live model of a todo.txt document: the parsed task of every line, and inverted indexes from
+ * projects, contexts, priorities and due dates to the tasks having them.
+ * <p>
+ * The model follows the edits of a text through {@link #onBeforeChange} / {@link #onChange}.
+ * Only the lines touched by an edit are parsed again, so key lists and counts are available without
+ * parsing the whole text. Blank lines are kept as lines, but are not indexed.
+ * Like the filter keys, project, context and priority indexes leave out done tasks.
+ */
+public final class TodoTxtIndex {
+
+    private static final Map<EditText, TodoTxtIndex> _editorIndexes = new WeakHashMap<>();
+
+    /**
+     * Get the index of the editor, which is created and attached to the editor on first use
+     */
+    public static TodoTxtIndex forEditor(final EditText editor) {
+        TodoTxtIndex index = _editorIndexes.get(editor);
+        if (index == null) {
+            final TodoTxtIndex created = index = new TodoTxtIndex(editor.getText());
+            editor.addTextChangedListener(new GsTextWatcherAdapter() {
+                @Override
+                public void beforeTextChanged(final CharSequence s, final int start, final int count, final int after) {
+                    created.onBeforeChange(s, start, count);
+                }
+
+                @Override
+                public void onTextChanged(final CharSequence s, final int start, final int before, final int count) {
+                    created.onChange(s, start, count);
+                }
+            });
+            _editorIndexes.put(editor, index);
+        }
+        index.validate(editor.getText());
+        return index;
+    }
+
+    private final List<TodoTxtTask> _lines = new ArrayList<>();
+    private final Map<TodoTxtFilter.TYPE, Map<String, Set<TodoTxtTask>>> _keys = new EnumMap<>(TodoTxtFilter.TYPE.class);
+    private final Map<TodoTxtFilter.TYPE, Set<TodoTxtTask>> _withoutKey = new EnumMap<>(TodoTxtFilter.TYPE.class);
+    private final TreeMap<String, Set<TodoTxtTask>> _dueDates = new TreeMap<>();
+    private final Set<TodoTxtTask> _withoutDueDate = new HashSet<>();
+
+    // Position of a line start, to find lines without counting from the start of the text
+    private int _hintOffset = 0, _hintLine = 0;
+
+    // Pending edit, between before and after a change
+    private int _editLine = -1, _editLineStart, _editLineCount;
+    private int _length = 0;
+
+    // Built for queries on demand, dropped on every change
+    private TodoTxtQuery.Index _queryIndex;
+
+    public TodoTxtIndex(final CharSequence text) {
+        for (final TodoTxtFilter.TYPE type : new TodoTxtFilter.TYPE[]{TodoTxtFilter.TYPE.PROJECT, TodoTxtFilter.TYPE.CONTEXT, TodoTxtFilter.TYPE.PRIORITY}) {
+            _keys.put(type, new HashMap<>());
+            _withoutKey.put(type, new HashSet<>());
+        }
+        rebuild(text);
+    }
+
+    // Rebuild everything if the text went out of sync, e.g. edits which were missed
+    private void validate(final CharSequence text) {
+        if (text.length() != _length || _editLine >= 0) {
+            rebuild(text);
+        }
+    }
+
+    private void rebuild(final CharSequence text) {
+        for (final Map<String, Set<TodoTxtTask>> map : _keys.values()) {
+            map.clear();
+        }
+        for (final Set<TodoTxtTask> set : _withoutKey.values()) {
+            set.clear();
+        }
+        _dueDates.clear();
+        _withoutDueDate.clear();
+        _lines.clear();
+        _lines.addAll(parseLines(text, 0, text.length()));
+        for (final TodoTxtTask task : _lines) {
+            add(task);
+        }
+        _hintOffset = _hintLine = 0;
+        _editLine = -1;
+        _length = text.length();
+        _queryIndex = null;
+    }
+
+    // Tasks of all lines from the line containing start to the line containing end
+    private static List<TodoTxtTask> parseLines(final CharSequence text, final int start, final int end) {
+        final List<TodoTxtTask> tasks = new ArrayList<>();
+        int lineStart = start;
+        for (int i = start; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == '\n') {
+                tasks.add(new TodoTxtTask(text.subSequence(lineStart, i)));
+                lineStart = i + 1;
+                if (i >= end) {
+                    break;
+                }
+            }
+        }
+        return tasks;
+    }
+
+    private static int countLineBreaks(final CharSequence text, final int start, final int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            count += text.charAt(i) == '\n' ? 1 : 0;
+        }
+        return count;
+    }
+
+    void onBeforeChange(final CharSequence text, final int start, final int count) {
+        if (text.length() != _length) {
+            _editLine = -1;
+            return;
+        }
+
+        // Find the line of start, counting from the closest known line start before it
+        if (_hintOffset > start) {
+            _hintOffset = _hintLine = 0;
+        }
+        int lineStart = _hintOffset, line = _hintLine;
+        for (int i = _hintOffset; i < start; i++) {
+            if (text.charAt(i) == '\n') {
+                lineStart = i + 1;
+                line++;
+            }
+        }
+        _editLine = line;
+        _editLineStart = lineStart;
+        _editLineCount = countLineBreaks(text, start, start + count) + 1;
+    }
+
+    void onChange(final CharSequence text, final int start, final int count) {
+        if (_editLine < 0) {
+            rebuild(text);
+            return;
+        }
+
+        // Replace the tasks of all lines touched by the edit
+        final List<TodoTxtTask> replaced = _lines.subList(_editLine, Math.min(_lines.size(), _editLine + _editLineCount));
+        for (final TodoTxtTask task : replaced) {
+            remove(task);
+        }
+        final List<TodoTxtTask> parsed = parseLines(text, _editLineStart, start + count);
+        replaced.clear();
+        replaced.addAll(parsed);
+        for (final TodoTxtTask task : parsed) {
+            add(task);
+        }
+
+        _hintOffset = _editLineStart;
+        _hintLine = _editLine;
+        _editLine = -1;
+        _length = text.length();
+        _queryIndex = null;
+    }
+
+    private static boolean isBlank(final TodoTxtTask task) {
+        return task.getLine().trim().isEmpty();
+    }
+
+    private static List<String> getKeys(final TodoTxtTask task, final TodoTxtFilter.TYPE type) {
+        switch (type) {
+            case PROJECT:
+                return task.getProjects();
+            case CONTEXT:
+                return task.getContexts();
+            default:
+                return task.getPriority() == TodoTxtTask.PRIORITY_NONE ? Collections.emptyList() : Collections.singletonList(Character.toString(task.getPriority()));
+        }
+    }
+
+    private static <K> void addTo(final Map<K, Set<TodoTxtTask>> map, final K key, final TodoTxtTask task) {
+        Set<TodoTxtTask> set = map.get(key);
+        if (set == null) {
+            map.put(key, set = new HashSet<>());
+        }
+        set.add(task);
+    }
+
+    private static <K> void removeFrom(final Map<K, Set<TodoTxtTask>> map, final K key, final TodoTxtTask task) {
+        final Set<TodoTxtTask> set = map.get(key);
+        if (set != null && set.remove(task) && set.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private void add(final TodoTxtTask task) {
+        if (isBlank(task)) {
+            return;
+        }
+        final String due = task.getDueDate();
+        if (due.isEmpty()) {
+            _withoutDueDate.add(task);
+        } else {
+            addTo(_dueDates, due, task);
+        }
+        if (!task.isDone()) {
+            for (final TodoTxtFilter.TYPE type : _keys.keySet()) {
+                final List<String> keys = getKeys(task, type);
+                if (keys.isEmpty()) {
+                    _withoutKey.get(type).add(task);
+                }
+                for (final String key : keys) {
+                    addTo(_keys.get(type), key, task);
+                }
+            }
+        }
+    }
+
+    private void remove(final TodoTxtTask task) {
+        if (isBlank(task)) {
+            return;
+        }
+        final String due = task.getDueDate();
+        if (due.isEmpty()) {
+            _withoutDueDate.remove(task);
+        } else {
+            removeFrom(_dueDates, due, task);
+        }
+        if (!task.isDone()) {
+            for (final TodoTxtFilter.TYPE type : _keys.keySet()) {
+                _withoutKey.get(type).remove(task);
+                for (final String key : getKeys(task, type)) {
+                    removeFrom(_keys.get(type), key, task);
+                }
+            }
+        }
+    }
+
+    // Queries
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @return Tasks of all lines, in line order
+     */
+    public List<TodoTxtTask> getTasks() {
+        return Collections.unmodifiableList(_lines);
+    }
+
+    public int getLineCount() {
+        return _lines.size();
+    }
+
+    /**
+     * @return Indices of the lines with tasks matching the filter
+     */
+    public List<Integer> findLines(final GsCallback.b1<TodoTxtTask> filter) {
+        final List<Integer> lines = new ArrayList<>();
+        for (int i = 0; i < _lines.size(); i++) {
+            if (filter.callback(_lines.get(i))) {
+                lines.add(i);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @param query A {@link TodoTxtFilter} query
+     * @return Indices of the lines with tasks matching the query, found through the inverted indexes of {@link TodoTxtQuery.Index}
+     */
+    public List<Integer> findLines(final String query) {
+        if (_queryIndex == null) {
+            _queryIndex = new TodoTxtQuery.Index(new ArrayList<>(_lines));
+        }
+        final BitSet found = TodoTxtQuery.compile(query).find(_queryIndex);
+        final List<Integer> lines = new ArrayList<>(found.cardinality());
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            lines.add(i);
+        }
+        return lines;
+    }
+
+    /**
+     * @return Sorted projects, contexts or priorities of all tasks which are not done
+     */
+    public List<String> getKeys(final TodoTxtFilter.TYPE type) {
+        final Map<String, Set<TodoTxtTask>> map = _keys.get(type);
+        return map != null ? new ArrayList<>(new TreeSet<>(map.keySet())) : Collections.emptyList();
+    }
+
+    /**
+     * @param key Key to count, or null to count tasks without any key of this type
+     * @return Number of tasks which are not done with this project, context or priority
+     */
+    public int getCount(final TodoTxtFilter.TYPE type, final String key) {
+        if (!_keys.containsKey(type)) {
+            return 0;
+        } else if (key == null) {
+            return _withoutKey.get(type).size();
+        }
+        final Set<TodoTxtTask> tasks = _keys.get(type).get(key);
+        return tasks != null ? tasks.size() : 0;
+    }
+
+    /**
+     * @param today Today as yyyy-MM-dd, see {@link TodoTxtTask#getToday()}
+     * @return Number of tasks (done or not) in the due state
+     */
+    public int getDueCount(final TodoDueState state, final String today) {
+        switch (state) {
+            case NONE:
+                return _withoutDueDate.size();
+            case TODAY:
+                return sizeOf(_dueDates.subMap(today, true, today, true));
+            case OVERDUE:
+                return sizeOf(_dueDates.headMap(today, false));
+            default:
+                return sizeOf(_dueDates.tailMap(today, false));
+        }
+    }
+
+    private static int sizeOf(final Map<String, Set<TodoTxtTask>> map) {
+        int size = 0;
+        for (final Set<TodoTxtTask> tasks : map.values()) {
+            size += tasks.size();
+        }
+        return size;
+    }
+}
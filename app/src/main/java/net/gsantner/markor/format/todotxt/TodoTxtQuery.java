@@ -0,0 +1,419 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import net.gsantner.markor.format.todotxt.TodoTxtTask.TodoDueState;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EmptyStackException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.TreeMap;
+
+/**
+ * A {@link TodoTxtFilter} query, parsed once into a plan of elements combined by !, &amp;, | and parens.
+ * <p>
+ * Operators have no precedence, each one is applied as soon as its right operand is complete, strictly
+ * left to right: {@code a | b & c} means {@code (a | b) & c}. {@code !} negates the following element
+ * or parenthesized group.
+ * Against an {@link Index} of many tasks, projects, contexts, priorities, due dates and done tasks are
+ * looked up as sets of lines and combined with set operations. Plain text elements are only checked on
+ * the lines which can still match at that point, with lowercased lines cached in the index.
+ * A malformed query matches no task.
+ */
+public final class TodoTxtQuery {
+
+    // Element and operation kinds
+    private static final int NONE = 0;
+    private static final int AND = 1;
+    private static final int OR = 2;
+    private static final int NOT = 3;
+    private static final int PRIORITY_ANY = 4;
+    private static final int PRIORITY = 5;
+    private static final int DUE_TODAY = 6;
+    private static final int DUE_OVERDUE = 7;
+    private static final int DUE_FUTURE = 8;
+    private static final int DUE_ANY = 9;
+    private static final int DONE = 10;
+    private static final int CONTEXT_ANY = 11;
+    private static final int PROJECT_ANY = 12;
+    private static final int CONTEXT = 13;
+    private static final int PROJECT = 14;
+    private static final int TEXT = 15;
+
+    private static final class Node {
+        final int kind;
+        final String key;
+        final Node left, right;
+        final boolean hasText;
+
+        Node(final int kind, final String key) {
+            this(kind, key, null, null);
+        }
+
+        Node(final int kind, final Node left, final Node right) {
+            this(kind, null, left, right);
+        }
+
+        private Node(final int kind, final String key, final Node left, final Node right) {
+            this.kind = kind;
+            this.key = key;
+            this.left = left;
+            this.right = right;
+            hasText = kind == TEXT || (left != null && left.hasText) || (right != null && right.hasText);
+        }
+    }
+
+    private static final Node MATCH_NONE = new Node(NONE, null);
+
+    private static TodoTxtQuery _last;
+
+    public final String query;
+    private final Node _root;
+
+    private TodoTxtQuery(final String query, final Node root) {
+        this.query = query;
+        _root = root;
+    }
+
+    /**
+     * Get the plan of a query. The last plan is kept, as the same query is usually applied to many tasks in a row.
+     */
+    public static TodoTxtQuery compile(final CharSequence query) {
+        final String str = query.toString();
+        synchronized (TodoTxtQuery.class) {
+            if (_last != null && _last.query.equals(str)) {
+                return _last;
+            }
+        }
+        Node root;
+        try {
+            root = parse(str);
+        } catch (EmptyStackException | IllegalArgumentException e) {
+            root = MATCH_NONE;
+        }
+        final TodoTxtQuery compiled = new TodoTxtQuery(str, root);
+        synchronized (TodoTxtQuery.class) {
+            _last = compiled;
+        }
+        return compiled;
+    }
+
+    // Parsing
+    // ---------------------------------------------------------------------------------------------
+
+    // Space separated words are elements, single ! & | ( ) are syntax. Elements and operators are pushed on
+    // a stack, which is reduced left to right whenever an operand is complete, see reduce.
+    private static Node parse(final String query) {
+        final Stack<Object> stack = new Stack<>();
+        final String[] parts = String.format(" %s ", query)
+                .replace(" !", " ! ")
+                .replace(" (", " ( ")
+                .replace(") ", " ) ")
+                .split(" ");
+        for (final String part : parts) {
+            if (part.isEmpty()) {
+                continue;
+            } else if (part.length() == 1 && isSyntax(part.charAt(0))) {
+                final char c = part.charAt(0);
+                if (c == ')') {
+                    final Object value = stack.pop();
+                    if (!isChar(stack.pop(), '(')) {
+                        throw new IllegalArgumentException("Mismatched parenthesis");
+                    }
+                    stack.push(value);
+                } else {
+                    stack.push(c);
+                }
+            } else {
+                stack.push(parseElement(part));
+            }
+            reduce(stack);
+        }
+        if (stack.size() == 1 && stack.peek() instanceof Node) {
+            return (Node) stack.pop();
+        }
+        throw new IllegalArgumentException("Malformed expression");
+    }
+
+    private static boolean isSyntax(final char c) {
+        return c == '!' || c == '|' || c == '&' || c == '(' || c == ')';
+    }
+
+    private static boolean isChar(final Object o, final char c) {
+        return o instanceof Character && (Character) o == c;
+    }
+
+    private static boolean isStart(final Stack<Object> stack) {
+        return stack.isEmpty() || isChar(stack.peek(), '(');
+    }
+
+    // Anything else than an element on the left of an operator counts as false, e.g. the ! in "! & a"
+    private static Node popOperand(final Stack<Object> stack) {
+        final Object o = stack.pop();
+        return o instanceof Node ? (Node) o : MATCH_NONE;
+    }
+
+    private static void reduce(final Stack<Object> stack) {
+        while (!isStart(stack) && stack.peek() instanceof Node) {
+            final Node rhs = (Node) stack.pop();
+            if (isStart(stack)) {
+                stack.push(rhs);
+                return;
+            }
+            final Object op = stack.pop();
+            if (isChar(op, '|')) {
+                stack.push(new Node(OR, popOperand(stack), rhs));
+            } else if (isChar(op, '&')) {
+                stack.push(new Node(AND, popOperand(stack), rhs));
+            } else if (isChar(op, '!')) {
+                stack.push(new Node(NOT, rhs, null));
+            } else {
+                throw new IllegalArgumentException("Unexpected character");
+            }
+        }
+    }
+
+    private static Node parseElement(final String element) {
+        if (element.startsWith(TodoTxtFilter.QUERY_PRIORITY_ANY)) {
+            if (TodoTxtFilter.QUERY_PRIORITY_ANY.equals(element)) {
+                return new Node(PRIORITY_ANY, null);
+            } else if (element.length() == 5 && element.charAt(3) == ':') {
+                return new Node(PRIORITY, element.substring(4));
+            }
+            return MATCH_NONE;
+        } else if (TodoTxtFilter.QUERY_DUE_TODAY.equals(element)) {
+            return new Node(DUE_TODAY, null);
+        } else if (TodoTxtFilter.QUERY_DUE_OVERDUE.equals(element)) {
+            return new Node(DUE_OVERDUE, null);
+        } else if (TodoTxtFilter.QUERY_DUE_FUTURE.equals(element)) {
+            return new Node(DUE_FUTURE, null);
+        } else if (TodoTxtFilter.QUERY_DUE_ANY.equals(element)) {
+            return new Node(DUE_ANY, null);
+        } else if (TodoTxtFilter.QUERY_DONE.equals(element)) {
+            return new Node(DONE, null);
+        } else if (element.equals("@")) {
+            return new Node(CONTEXT_ANY, null);
+        } else if (element.equals("+")) {
+            return new Node(PROJECT_ANY, null);
+        } else if (element.startsWith("@")) {
+            return new Node(CONTEXT, element.substring(1));
+        } else if (element.startsWith("+")) {
+            return new Node(PROJECT, element.substring(1));
+        }
+        return new Node(TEXT, element.toLowerCase());
+    }
+
+    // Evaluation of single tasks
+    // ---------------------------------------------------------------------------------------------
+
+    public boolean matches(final TodoTxtTask task) {
+        return matches(_root, task, new String[1]);
+    }
+
+    // The lowercased line is computed once per task, on the first text element
+    private static boolean matches(final Node node, final TodoTxtTask task, final String[] lowerLine) {
+        switch (node.kind) {
+            case AND:
+                return matches(node.left, task, lowerLine) && matches(node.right, task, lowerLine);
+            case OR:
+                return matches(node.left, task, lowerLine) || matches(node.right, task, lowerLine);
+            case NOT:
+                return !matches(node.left, task, lowerLine);
+            case PRIORITY_ANY:
+                return task.getPriority() != TodoTxtTask.PRIORITY_NONE;
+            case PRIORITY:
+                return task.getPriority() == node.key.charAt(0);
+            case DUE_TODAY:
+                return task.getDueStatus() == TodoDueState.TODAY;
+            case DUE_OVERDUE:
+                return task.getDueStatus() == TodoDueState.OVERDUE;
+            case DUE_FUTURE:
+                return task.getDueStatus() == TodoDueState.FUTURE;
+            case DUE_ANY:
+                return task.getDueStatus() != TodoDueState.NONE;
+            case DONE:
+                return task.isDone();
+            case CONTEXT_ANY:
+                return !task.getContexts().isEmpty();
+            case PROJECT_ANY:
+                return !task.getProjects().isEmpty();
+            case CONTEXT:
+                return task.getContexts().contains(node.key);
+            case PROJECT:
+                return task.getProjects().contains(node.key);
+            case TEXT:
+                if (lowerLine[0] == null) {
+                    lowerLine[0] = task.getLine().toLowerCase();
+                }
+                return lowerLine[0].contains(node.key);
+            default:
+                return false;
+        }
+    }
+
+    // Evaluation against an index
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * @return Indices of the lines with tasks matching the query
+     */
+    public BitSet find(final Index index) {
+        final BitSet all = new BitSet(index._size);
+        all.set(0, index._size);
+        return find(_root, index, all, TodoTxtTask.getToday());
+    }
+
+    // Lines of candidates matching the node. Index lookups go first, so text is checked on as few lines as possible.
+    private static BitSet find(final Node node, final Index index, final BitSet candidates, final String today) {
+        switch (node.kind) {
+            case AND: {
+                final boolean swap = node.left.hasText && !node.right.hasText;
+                final BitSet first = find(swap ? node.right : node.left, index, candidates, today);
+                return first.isEmpty() ? first : find(swap ? node.left : node.right, index, first, today);
+            }
+            case OR: {
+                final boolean swap = node.left.hasText && !node.right.hasText;
+                final BitSet first = find(swap ? node.right : node.left, index, candidates, today);
+                final BitSet rest = (BitSet) candidates.clone();
+                rest.andNot(first);
+                if (!rest.isEmpty()) {
+                    first.or(find(swap ? node.left : node.right, index, rest, today));
+                }
+                return first;
+            }
+            case NOT: {
+                final BitSet result = (BitSet) candidates.clone();
+                result.andNot(find(node.left, index, candidates, today));
+                return result;
+            }
+            case TEXT: {
+                final BitSet result = new BitSet(index._size);
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    if (index.getLowerLine(i).contains(node.key)) {
+                        result.set(i);
+                    }
+                }
+                return result;
+            }
+            default: {
+                final BitSet result = (BitSet) candidates.clone();
+                result.and(index.lookup(node, today));
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Inverted indexes of the tasks of a file, from projects, contexts, priorities, due dates and done state to the lines having them.
+     * Built once in one pass over the tasks; create a new index when the tasks change.
+     */
+    public static final class Index {
+        private static final BitSet EMPTY = new BitSet();
+
+        private final List<TodoTxtTask> _tasks;
+        private final int _size;
+        private final String[] _lowerLines;
+        private final BitSet _done = new BitSet(), _withPriority = new BitSet(), _withContext = new BitSet(), _withProject = new BitSet(), _withDue = new BitSet();
+        private final Map<Character, BitSet> _priorities = new HashMap<>();
+        private final Map<String, BitSet> _contexts = new HashMap<>();
+        private final Map<String, BitSet> _projects = new HashMap<>();
+        private final TreeMap<String, BitSet> _dueDates = new TreeMap<>();
+
+        public Index(final List<TodoTxtTask> tasks) {
+            _tasks = tasks;
+            _size = tasks.size();
+            _lowerLines = new String[_size];
+            for (int i = 0; i < _size; i++) {
+                final TodoTxtTask task = tasks.get(i);
+                _done.set(i, task.isDone());
+                if (task.getPriority() != TodoTxtTask.PRIORITY_NONE) {
+                    _withPriority.set(i);
+                    bitsOf(_priorities, task.getPriority()).set(i);
+                }
+                _withContext.set(i, !task.getContexts().isEmpty());
+                for (final String context : task.getContexts()) {
+                    bitsOf(_contexts, context).set(i);
+                }
+                _withProject.set(i, !task.getProjects().isEmpty());
+                for (final String project : task.getProjects()) {
+                    bitsOf(_projects, project).set(i);
+                }
+                final String due = task.getDueDate();
+                if (!due.isEmpty()) {
+                    _withDue.set(i);
+                    bitsOf(_dueDates, due).set(i);
+                }
+            }
+        }
+
+        public int size() {
+            return _size;
+        }
+
+        private static <K> BitSet bitsOf(final Map<K, BitSet> map, final K key) {
+            BitSet bits = map.get(key);
+            if (bits == null) {
+                map.put(key, bits = new BitSet());
+            }
+            return bits;
+        }
+
+        private static BitSet union(final Collection<BitSet> sets) {
+            final BitSet result = new BitSet();
+            for (final BitSet bits : sets) {
+                result.or(bits);
+            }
+            return result;
+        }
+
+        private static BitSet orEmpty(final BitSet bits) {
+            return bits != null ? bits : EMPTY;
+        }
+
+        private synchronized String getLowerLine(final int i) {
+            if (_lowerLines[i] == null) {
+                _lowerLines[i] = _tasks.get(i).getLine().toLowerCase();
+            }
+            return _lowerLines[i];
+        }
+
+        // Lines having the element. Due states depend on the day, so they are looked up by date range.
+        private BitSet lookup(final Node node, final String today) {
+            switch (node.kind) {
+                case PRIORITY_ANY:
+                    return _withPriority;
+                case PRIORITY:
+                    return orEmpty(_priorities.get(node.key.charAt(0)));
+                case DUE_TODAY:
+                    return orEmpty(_dueDates.get(today));
+                case DUE_OVERDUE:
+                    return union(_dueDates.headMap(today, false).values());
+                case DUE_FUTURE:
+                    return union(_dueDates.tailMap(today, false).values());
+                case DUE_ANY:
+                    return _withDue;
+                case DONE:
+                    return _done;
+                case CONTEXT_ANY:
+                    return _withContext;
+                case PROJECT_ANY:
+                    return _withProject;
+                case CONTEXT:
+                    return orEmpty(_contexts.get(node.key));
+                case PROJECT:
+                    return orEmpty(_projects.get(node.key));
+                default:
+                    return EMPTY;
+            }
+        }
+    }
+}
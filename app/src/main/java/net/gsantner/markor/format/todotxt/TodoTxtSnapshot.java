@@ -0,0 +1,168 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import net.gsantner.opoc.format.GsTextUtils;
+import net.gsantner.opoc.util.GsFileUtils;
+import net.gsantner.opoc.wrapper.GsCallback;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed tasks of a todo.txt file, cached in memory and shared between the editor and the todo widget.
+ * <p>
+ * A snapshot is valid as long as modification time and size of the file are unchanged. When the file changed,
+ * the content is only compared by checksum and the tasks of unchanged lines are taken over from the previous
+ * snapshot, with their parsed fields and ids. Ids of lines are stable as long as the line text is unchanged,
+ * also when the line moves.
+ */
+public final class TodoTxtSnapshot {
+
+    public static final class Line {
+        public final long id;
+        public final int index;
+        public final TodoTxtTask task;
+
+        private Line(final long id, final int index, final TodoTxtTask task) {
+            this.id = id;
+            this.index = index;
+            this.task = task;
+        }
+    }
+
+    // Todo files of the editor and the widgets, the least recently used snapshots are dropped
+    private static final int MAX_CACHED_SNAPSHOTS = 8;
+
+    private static final Map<File, TodoTxtSnapshot> _snapshots = new LinkedHashMap<File, TodoTxtSnapshot>(MAX_CACHED_SNAPSHOTS + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<File, TodoTxtSnapshot> eldest) {
+            return size() > MAX_CACHED_SNAPSHOTS;
+        }
+    };
+    private static long _nextId = 1;
+
+    public final File file;
+    public final long modTime;
+    public final long size;
+    public final long checksum;
+    public final List<Line> lines;
+    private TodoTxtQuery.Index _queryIndex;
+
+    private TodoTxtSnapshot(final File file, final long modTime, final long size, final long checksum, final List<Line> lines) {
+        this.file = file;
+        this.modTime = modTime;
+        this.size = size;
+        this.checksum = checksum;
+        this.lines = Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Get the snapshot of the file, loading the file content only if the file changed since the last snapshot
+     *
+     * @param loader Loads the file content, may return null on failure
+     * @return Snapshot, or null if the file can't be loaded
+     */
+    public static TodoTxtSnapshot get(final File file, final GsCallback.s0 loader) {
+        final TodoTxtSnapshot previous;
+        synchronized (_snapshots) {
+            previous = _snapshots.get(file);
+        }
+        final long modTime = file.lastModified(), size = file.length();
+        if (previous != null && previous.modTime == modTime && previous.size == size) {
+            return previous;
+        }
+        final String content = loader.callback();
+        return content != null ? put(previous, file, content, modTime, size) : null;
+    }
+
+    /**
+     * Update the snapshot with content that was just written to the file, e.g. by the editor.
+     * Saves the next {@link #get} from loading the file again.
+     */
+    public static TodoTxtSnapshot update(final File file, final CharSequence content) {
+        final TodoTxtSnapshot previous;
+        synchronized (_snapshots) {
+            previous = _snapshots.get(file);
+        }
+        return put(previous, file, content.toString(), file.lastModified(), file.length());
+    }
+
+    private static TodoTxtSnapshot put(final TodoTxtSnapshot previous, final File file, final String content, final long modTime, final long size) {
+        final TodoTxtSnapshot snapshot = create(previous, file, content, modTime, size);
+        synchronized (_snapshots) {
+            _snapshots.put(file, snapshot);
+        }
+        return snapshot;
+    }
+
+    static TodoTxtSnapshot create(final TodoTxtSnapshot previous, final File file, final String content, final long modTime, final long size) {
+        final long checksum = GsFileUtils.crc32(content);
+        if (previous != null && previous.checksum == checksum) {
+            return new TodoTxtSnapshot(file, modTime, size, checksum, previous.lines);
+        }
+
+        // Lines of the previous snapshot by text, in order, to take over task and id
+        final Map<String, ArrayDeque<Line>> previousLines = new HashMap<>();
+        if (previous != null) {
+            for (final Line line : previous.lines) {
+                ArrayDeque<Line> same = previousLines.get(line.task.getLine());
+                if (same == null) {
+                    previousLines.put(line.task.getLine(), same = new ArrayDeque<>());
+                }
+                same.add(line);
+            }
+        }
+
+        final String[] texts = content.split("\n");
+        final List<Line> lines = new ArrayList<>(texts.length);
+        synchronized (_snapshots) {
+            for (int i = 0; i < texts.length; i++) {
+                final ArrayDeque<Line> same = previousLines.get(texts[i]);
+                final Line reused = same != null ? same.poll() : null;
+                lines.add(reused != null ? new Line(reused.id, i, reused.task) : new Line(_nextId++, i, new TodoTxtTask(texts[i])));
+            }
+        }
+        return new TodoTxtSnapshot(file, modTime, size, checksum, lines);
+    }
+
+    /**
+     * @param query A {@link TodoTxtFilter} query, or empty for all lines
+     * @return Lines with tasks matching the query
+     */
+    public List<Line> filter(final String query) {
+        if (GsTextUtils.isNullOrEmpty(query)) {
+            return lines;
+        }
+        final BitSet found = TodoTxtQuery.compile(query).find(getQueryIndex());
+        final List<Line> matching = new ArrayList<>(found.cardinality());
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            matching.add(lines.get(i));
+        }
+        return matching;
+    }
+
+    // Built on the first filter, snapshots don't change
+    private synchronized TodoTxtQuery.Index getQueryIndex() {
+        if (_queryIndex == null) {
+            final List<TodoTxtTask> tasks = new ArrayList<>(lines.size());
+            for (final Line line : lines) {
+                tasks.add(line.task);
+            }
+            _queryIndex = new TodoTxtQuery.Index(tasks);
+        }
+        return _queryIndex;
+    }
+}
@@ -40,12 +40,9 @@ public class TodoTxtSyntaxHighlighter extends TodoTxtBasicSyntaxHighlighter {
     }
 
     @Override
-    public void generateSpans() {
-
+    protected void generateNonLocalSpans() {
         // Single span for the whole text - highly performant
         addSpanGroup(_paragraphSpan, 0, _spannable.length(), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
-
-        super.generateSpans();
     }
 
     // Adds spacing and divider line between paragraphs
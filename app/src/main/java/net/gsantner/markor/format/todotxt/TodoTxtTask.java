@@ -9,7 +9,7 @@
 #########################################################*/
 package net.gsantner.markor.format.todotxt;
 
-import android.text.TextUtils;
+import android.os.Build;
 import android.widget.TextView;
 
 import net.gsantner.markor.frontend.textview.TextViewUtils;
@@ -24,7 +24,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.TreeSet;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class TodoTxtTask {
@@ -135,14 +134,7 @@ public class TodoTxtTask {
     //
 
     private final String line;
-    private List<String> contexts = null;
-    private List<String> projects = null;
-    private Character priority = null;
-    private Boolean done = null;
-    private String creationDate = null;
-    private String completionDate = null;
-    private String dueDate = null;
-    private String description = null;
+    private TodoTxtTaskFields fields = null;
     private TodoDueState dueStatus = null;
 
     public TodoTxtTask(final CharSequence line) {
@@ -153,47 +145,33 @@ public class TodoTxtTask {
         return line;
     }
 
-    public boolean isDone() {
-        if (done == null) {
-            done = isPatternFindable(line, PATTERN_DONE);
+    // All fields are extracted at once, on first access
+    private TodoTxtTaskFields fields() {
+        if (fields == null) {
+            fields = TodoTxtTaskFields.parse(line);
         }
-        return done;
+        return fields;
+    }
+
+    public boolean isDone() {
+        return fields().done;
     }
 
+    // The description is what is left when all structured parts of the task are removed
     public String getDescription() {
-        if (description == null) {
-            // The description is what is left when all structured parts of the task are removed
-            description = getLine()
-                    .replaceAll(PATTERN_COMPLETION_DATE.pattern(), "")
-                    .replaceAll(PATTERN_PRIORITY_ANY.pattern(), "")
-                    .replaceAll(PATTERN_CREATION_DATE.pattern(), "")
-                    .replaceAll(PATTERN_CONTEXTS.pattern(), "")
-                    .replaceAll(PATTERN_PROJECTS.pattern(), "")
-                    .replaceAll(PATTERN_KEY_VALUE_PAIRS.pattern(), "");
-        }
-        return description;
+        return fields().description;
     }
 
     public char getPriority() {
-        if (priority == null) {
-            final String ret = parseOneValueOrDefault(line, PATTERN_PRIORITY_ANY, "");
-            priority = ret.isEmpty() ? PRIORITY_NONE : Character.toUpperCase(ret.charAt(0));
-        }
-        return priority;
+        return fields().priority;
     }
 
     public List<String> getContexts() {
-        if (contexts == null) {
-            contexts = parseAllMatches(line, PATTERN_CONTEXTS);
-        }
-        return contexts;
+        return fields().contexts;
     }
 
     public List<String> getProjects() {
-        if (projects == null) {
-            projects = parseAllMatches(line, PATTERN_PROJECTS);
-        }
-        return projects;
+        return fields().projects;
     }
 
     public String getCreationDate() {
@@ -201,10 +179,8 @@ public class TodoTxtTask {
     }
 
     public String getCreationDate(final String defaultValue) {
-        if (creationDate == null) {
-            creationDate = parseOneValueOrDefault(line, PATTERN_CREATION_DATE, defaultValue);
-        }
-        return creationDate;
+        final String date = fields().creationDate;
+        return date != null ? date : defaultValue;
     }
 
     public String getDueDate() {
@@ -212,10 +188,8 @@ public class TodoTxtTask {
     }
 
     public String getDueDate(final String defaultValue) {
-        if (dueDate == null) {
-            dueDate = parseOneValueOrDefault(line, PATTERN_DUE_DATE, 3, defaultValue);
-        }
-        return dueDate;
+        final String date = fields().dueDate;
+        return date != null ? date : defaultValue;
     }
 
     public TodoDueState getDueStatus() {
@@ -236,43 +210,102 @@ public class TodoTxtTask {
     }
 
     public String getCompletionDate(final String defaultValue) {
-        if (completionDate == null) {
-            completionDate = parseOneValueOrDefault(line, PATTERN_COMPLETION_DATE, defaultValue);
-        }
-        return completionDate;
+        final String date = fields().completionDate;
+        return date != null ? date : defaultValue;
     }
 
-    // Only captures the first group of each match
-    private static List<String> parseAllMatches(final String text, final Pattern pattern) {
-        List<String> ret = new ArrayList<>();
-        for (Matcher m = pattern.matcher(text); m.find(); ) {
-            if (m.groupCount() > 0) {
-                ret.add(m.group(1));
-            }
+    // Lists with at least this many tasks are sorted in parallel (where available)
+    private static final int PARALLEL_SORT_MIN_SIZE = 5000;
+
+    /**
+     * Key to sort a task by, created once per task. Orders like {@link SttTaskSimpleComparator}.
+     * The value to sort by is normalized ahead, due date and priority are packed into one number,
+     * so that comparisons do no parsing or allocation.
+     */
+    private static final class TaskSortKey {
+        final TodoTxtTask task;
+        final boolean done;
+        final boolean isValueEmpty;
+        final String value;
+        final long dueAndPriority;
+
+        TaskSortKey(final String orderBy, final TodoTxtTask task) {
+            this.task = task;
+            this.done = task.isDone();
+            final String value = getSortValue(orderBy, task);
+            this.isValueEmpty = GsTextUtils.isNullOrEmpty(value);
+            this.value = isValueEmpty ? "" : value.trim().toLowerCase();
+
+            // Empty due dates last, then by date and priority
+            final String due = task.getDueDate();
+            long packed = due.isEmpty() ? (1L << 48) : ((long) Integer.parseInt(due.replace("-", "")) << 16);
+            packed |= Character.toString(task.getPriority()).toLowerCase().charAt(0);
+            this.dueAndPriority = packed;
         }
-        return ret;
     }
 
-    private static String parseOneValueOrDefault(final String text, final Pattern pattern, final String defaultValue) {
-        return parseOneValueOrDefault(text, pattern, 1, defaultValue);
-    }
-
-    private static String parseOneValueOrDefault(final String text, final Pattern pattern, final int group, final String defaultValue) {
-        for (final Matcher m = pattern.matcher(text); m.find(); ) {
-            if (m.groupCount() >= group) {  // Groups are 1-indexed
-                return m.group(group);
-            }
+    private static String getSortValue(final String orderBy, final TodoTxtTask task) {
+        switch (orderBy) {
+            case SttTaskSimpleComparator.BY_PRIORITY:
+                return Character.toString(task.getPriority());
+            case SttTaskSimpleComparator.BY_CONTEXT:
+                return joinSorted(task.getContexts());
+            case SttTaskSimpleComparator.BY_PROJECT:
+                return joinSorted(task.getProjects());
+            case SttTaskSimpleComparator.BY_CREATION_DATE:
+                return task.getCreationDate();
+            case SttTaskSimpleComparator.BY_DUE_DATE:
+                return task.getDueDate();
+            case SttTaskSimpleComparator.BY_DESCRIPTION:
+                return task.getDescription();
+            case SttTaskSimpleComparator.BY_LINE:
+                return task.getLine();
+            default:
+                return null;
         }
-        return defaultValue;
     }
 
-    private static boolean isPatternFindable(final String text, final Pattern pattern) {
-        return pattern.matcher(text).find();
+    private static String joinSorted(final List<String> items) {
+        final List<String> sorted = new ArrayList<>(items);
+        Collections.sort(sorted);
+        final StringBuilder sb = new StringBuilder();
+        for (final String item : sorted) {
+            sb.append(item);
+        }
+        return sb.toString();
     }
 
     // Sort tasks array and return it. Changes input array.
     public static List<TodoTxtTask> sortTasks(List<TodoTxtTask> tasks, final String orderBy, final boolean descending) {
-        Collections.sort(tasks, new SttTaskSimpleComparator(orderBy, descending));
+        final TaskSortKey[] keys = new TaskSortKey[tasks.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new TaskSortKey(orderBy, tasks.get(i));
+        }
+
+        // Done tasks are always at the bottom, independent of the direction
+        final int direction = descending ? -1 : 1;
+        final Comparator<TaskSortKey> comparator = (a, b) -> {
+            if (a.done != b.done) {
+                return a.done ? 1 : -1;
+            }
+            int result = Boolean.compare(a.isValueEmpty, b.isValueEmpty);
+            if (result == 0) {
+                result = a.value.compareTo(b.value);
+            }
+            if (result == 0) {
+                result = Long.compare(a.dueAndPriority, b.dueAndPriority);
+            }
+            return direction * result;
+        };
+        if (keys.length >= PARALLEL_SORT_MIN_SIZE && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            Arrays.parallelSort(keys, comparator);
+        } else {
+            Arrays.sort(keys, comparator);
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            tasks.set(i, keys[i].task);
+        }
         return tasks;
     }
 
@@ -368,9 +401,7 @@ public class TodoTxtTask {
         }
 
         private int compare(final List<String> x, final List<String> y) {
-            Collections.sort(x);
-            Collections.sort(y);
-            return compare(TextUtils.join("", x), TextUtils.join("", y));
+            return compare(joinSorted(x), joinSorted(y));
         }
 
         private int compare(final String x, final String y) {
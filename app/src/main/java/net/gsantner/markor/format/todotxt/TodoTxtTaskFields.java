@@ -0,0 +1,218 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable fields of a single todo.txt line, extracted by {@link #parse(String)} in one scan of the line.
+ * <p>
+ * The results are the same as matching the patterns of {@link TodoTxtTask} against the line
+ * (e.g. {@link TodoTxtTask#PATTERN_CONTEXTS}, {@link TodoTxtTask#PATTERN_CREATION_DATE}),
+ * without running a regex per field.
+ */
+final class TodoTxtTaskFields {
+    final boolean done;
+    final char priority;
+    final List<String> contexts;
+    final List<String> projects;
+    final String creationDate;      // null if not set
+    final String completionDate;    // null if not set
+    final String dueDate;           // null if not set
+    final String description;
+
+    private TodoTxtTaskFields(
+            final boolean done, final char priority,
+            final List<String> contexts, final List<String> projects,
+            final String creationDate, final String completionDate, final String dueDate,
+            final String description
+    ) {
+        this.done = done;
+        this.priority = priority;
+        this.contexts = contexts;
+        this.projects = projects;
+        this.creationDate = creationDate;
+        this.completionDate = completionDate;
+        this.dueDate = dueDate;
+        this.description = description;
+    }
+
+    static TodoTxtTaskFields parse(final String line) {
+        final int length = line.length();
+
+        // Prefix: [x [completion date]] [(priority)] [creation date]
+        final boolean done = isDoneMarker(line, 0, length);
+        final String completionDate = (done && isDate(line, 2, length)) ? line.substring(2, 12) : null;
+        final char priority = isPriority(line, 0, length) ? Character.toUpperCase(line.charAt(1)) : TodoTxtTask.PRIORITY_NONE;
+        int end = creationDateEnd(line, 0, length);
+        final String creationDate = end >= 0 ? line.substring(end - TodoTxtTask.DATEF_YYYY_MM_DD_LEN, end) : null;
+
+        // The description starts after completion date, priority and creation date, which are removed in that order
+        int descStart = done ? (completionDate != null ? 12 : 2) : 0;
+        descStart += isPriority(line, descStart, length) ? 4 : 0;
+        end = creationDateEnd(line, descStart, length);
+        descStart = end >= 0 ? end : descStart;
+
+        // Tokens are separated by whitespace
+        List<String> contexts = null, projects = null;
+        String dueDate = null;
+        final StringBuilder description = new StringBuilder(Math.max(0, length - descStart));
+        for (int i = 0; i < length; ) {
+            if (isWhitespace(line.charAt(i))) {
+                if (i >= descStart) {
+                    description.append(line.charAt(i));
+                }
+                i++;
+                continue;
+            }
+
+            final int start = i;
+            while (i < length && !isWhitespace(line.charAt(i))) {
+                i++;
+            }
+
+            final String tag = tagValue(line, start, i);
+            if (tag != null && line.charAt(start) == '@') {
+                (contexts = contexts != null ? contexts : new ArrayList<>()).add(tag);
+            } else if (tag != null) {
+                (projects = projects != null ? projects : new ArrayList<>()).add(tag);
+            } else if (dueDate == null && isDueDate(line, start, i)) {
+                dueDate = line.substring(start + 4, i);
+            }
+
+            // Tags are removed together with the whitespace before them, key:value pairs are removed as is
+            if (i > descStart) {
+                final int tokenStart = Math.max(start, descStart);
+                if (tagValue(line, tokenStart, i) != null) {
+                    if (tokenStart > descStart) {
+                        description.setLength(description.length() - 1);
+                    }
+                } else {
+                    appendWithoutKeyValues(description, line, tokenStart, i);
+                }
+            }
+        }
+
+        return new TodoTxtTaskFields(
+                done, priority,
+                contexts != null ? Collections.unmodifiableList(contexts) : Collections.<String>emptyList(),
+                projects != null ? Collections.unmodifiableList(projects) : Collections.<String>emptyList(),
+                creationDate, completionDate, dueDate,
+                description.toString());
+    }
+
+    // Same as \s
+    static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    static boolean isLetter(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Helpers below look at line[i, end) only, so that they can be used on a line of a larger text
+
+    static boolean isDoneMarker(final CharSequence line, final int i, final int end) {
+        return i + 1 < end && (line.charAt(i) == 'x' || line.charAt(i) == 'X') && line.charAt(i + 1) == ' ';
+    }
+
+    // (A) followed by whitespace
+    static boolean isPriority(final CharSequence line, final int i, final int end) {
+        return i + 3 < end && line.charAt(i) == '(' && isLetter(line.charAt(i + 1))
+                && line.charAt(i + 2) == ')' && isWhitespace(line.charAt(i + 3));
+    }
+
+    // yyyy-MM-dd, digits only
+    static boolean isDate(final CharSequence line, final int i, final int end) {
+        if (i < 0 || i + 10 > end) {
+            return false;
+        }
+        for (int j = 0; j < 10; j++) {
+            final char c = line.charAt(i + j);
+            if ((j == 4 || j == 7) ? c != '-' : !isDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * End of the creation date when found at position i, or -1.
+     * Like {@link TodoTxtTask#PATTERN_CREATION_DATE}, priority and completion marker with date are optional and
+     * tried first, in that order.
+     */
+    static int creationDateEnd(final CharSequence line, final int i, final int end) {
+        final int[] starts = isPriority(line, i, end) ? new int[]{i + 4, i} : new int[]{i};
+        for (final int start : starts) {
+            if (isDoneMarker(line, start, end) && isDate(line, start + 2, end) && start + 12 < end
+                    && line.charAt(start + 12) == ' ' && isDate(line, start + 13, end)) {
+                return start + 23;
+            }
+            if (isDate(line, start, end)) {
+                return start + 10;
+            }
+        }
+        return -1;
+    }
+
+    // The token [start, end) is due:yyyy-MM-dd
+    static boolean isDueDate(final CharSequence line, final int start, final int end) {
+        return end - start == 14 && line.charAt(start) == 'd' && line.charAt(start + 1) == 'u'
+                && line.charAt(start + 2) == 'e' && line.charAt(start + 3) == ':' && isDate(line, start + 4, end);
+    }
+
+    /**
+     * Value of a context (@) or project (+) token, or null if the token is neither.
+     * Leading markers are skipped, a token of markers only has the marker as value.
+     */
+    private static String tagValue(final String line, final int start, final int end) {
+        final char marker = line.charAt(start);
+        if ((marker != '@' && marker != '+') || end - start < 2) {
+            return null;
+        }
+        int i = start;
+        while (i < end && line.charAt(i) == marker) {
+            i++;
+        }
+        return i < end ? line.substring(i, end) : String.valueOf(marker);
+    }
+
+    // Append line[start, end), without key:value pairs as in TodoTxtTask.PATTERN_KEY_VALUE_PAIRS
+    private static void appendWithoutKeyValues(final StringBuilder sb, final String line, final int start, final int end) {
+        for (int i = start; i < end; ) {
+            if (!isLetter(line.charAt(i))) {
+                sb.append(line.charAt(i++));
+                continue;
+            }
+
+            int j = i;
+            while (j < end && isLetter(line.charAt(j))) {
+                j++;
+            }
+            if (j < end && line.charAt(j) == ':') {
+                int k = j + 1;
+                while (k < end && (isLetter(line.charAt(k)) || isDigit(line.charAt(k)) || line.charAt(k) == '_' || line.charAt(k) == '-')) {
+                    k++;
+                }
+                if (k > j + 1) {
+                    i = k;
+                    continue;
+                }
+                j++;
+            }
+            sb.append(line, i, j);
+            i = j;
+        }
+    }
+}
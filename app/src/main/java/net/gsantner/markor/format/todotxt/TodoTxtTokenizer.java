@@ -0,0 +1,174 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import net.gsantner.markor.frontend.textview.SyntaxHighlighterBase;
+
+import java.util.regex.Matcher;
+
+/**
+ * Splits todo.txt text into highlighting tokens, scanning each line once.
+ * <p>
+ * Tokens are the parts the patterns of {@link TodoTxtTask} used to be matched against one by one
+ * (priority, dates, contexts, projects, key:value pairs, done tasks), plus links.
+ * Token ranges cover the token itself, without surrounding whitespace.
+ * Tokens starting at the same position are reported in the order the patterns used to be applied.
+ */
+final class TodoTxtTokenizer {
+    public interface TokenConsumer {
+        void onToken(int token, int start, int end);
+    }
+
+    // Priorities A to F have a token each, all other letters share one
+    static final int TOKEN_PRIORITY_A = 0;
+    static final int TOKEN_PRIORITY_OTHER = 6;
+    static final int TOKEN_CREATION_DATE = 7;
+    static final int TOKEN_CONTEXT = 8;
+    static final int TOKEN_PROJECT = 9;
+    static final int TOKEN_KEY_VALUE = 10;
+    static final int TOKEN_DUE_DATE = 11;
+    static final int TOKEN_LINK = 12;
+    static final int TOKEN_DONE = 13;
+    static final int TOKEN_COUNT = 14;
+
+    private TodoTxtTokenizer() {
+    }
+
+    /**
+     * Report the tokens of all lines in the region [start, end) of text.
+     * Lines partially in the region are tokenized as a whole.
+     */
+    static void findTokens(final CharSequence text, final int start, final int end, final TokenConsumer consumer) {
+        final int length = text.length();
+
+        // A line break at start belongs to the line before
+        int lineStart = Math.max(0, Math.min(start, length));
+        if (lineStart < length && lineStart < end && text.charAt(lineStart) == '\n') {
+            lineStart++;
+        }
+        while (lineStart > 0 && text.charAt(lineStart - 1) != '\n') {
+            lineStart--;
+        }
+
+        Matcher links = null;
+        while (true) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            links = findLineTokens(text, lineStart, lineEnd, consumer, links);
+            if (lineEnd >= Math.min(end, length)) {
+                break;
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    // Returns the link matcher, which is only created when a line contains a link
+    private static Matcher findLineTokens(final CharSequence text, final int lineStart, final int lineEnd, final TokenConsumer consumer, Matcher links) {
+        if (TodoTxtTaskFields.isPriority(text, lineStart, lineEnd)) {
+            final int priority = Character.toUpperCase(text.charAt(lineStart + 1)) - 'A';
+            consumer.onToken(priority < TOKEN_PRIORITY_OTHER ? TOKEN_PRIORITY_A + priority : TOKEN_PRIORITY_OTHER, lineStart, lineStart + 3);
+        }
+        final int creationDateEnd = TodoTxtTaskFields.creationDateEnd(text, lineStart, lineEnd);
+        if (creationDateEnd >= 0) {
+            consumer.onToken(TOKEN_CREATION_DATE, creationDateEnd - TodoTxtTask.DATEF_YYYY_MM_DD_LEN, creationDateEnd);
+        }
+
+        for (int i = lineStart; i < lineEnd; ) {
+            if (TodoTxtTaskFields.isWhitespace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            final int wordStart = i;
+            boolean hasColon = false;
+            while (i < lineEnd && !TodoTxtTaskFields.isWhitespace(text.charAt(i))) {
+                hasColon |= text.charAt(i) == ':';
+                i++;
+            }
+
+            if (hasColon && containsScheme(text, wordStart, i)) {
+                if (links == null) {
+                    links = SyntaxHighlighterBase.URL.matcher(text);
+                }
+                links.region(wordStart, i).useTransparentBounds(true).useAnchoringBounds(false);
+                while (links.find()) {
+                    consumer.onToken(TOKEN_LINK, links.start(), links.end());
+                }
+            }
+
+            final char marker = text.charAt(wordStart);
+            if ((marker == '@' || marker == '+') && i - wordStart >= 2) {
+                consumer.onToken(marker == '@' ? TOKEN_CONTEXT : TOKEN_PROJECT, wordStart, i);
+            }
+            if (hasColon) {
+                findKeyValues(text, wordStart, i, consumer);
+                if (TodoTxtTaskFields.isDueDate(text, wordStart, i)) {
+                    consumer.onToken(TOKEN_DUE_DATE, wordStart, i);
+                }
+            }
+        }
+
+        if (TodoTxtTaskFields.isDoneMarker(text, lineStart, lineEnd)) {
+            consumer.onToken(TOKEN_DONE, lineStart, lineEndWithoutTerminator(text, lineStart, lineEnd));
+        }
+        return links;
+    }
+
+    // key:value pairs as in TodoTxtTask.PATTERN_KEY_VALUE_PAIRS, i.e. letters, colon, [a-z0-9_-]+
+    private static void findKeyValues(final CharSequence text, final int start, final int end, final TokenConsumer consumer) {
+        for (int i = start; i < end; ) {
+            if (!TodoTxtTaskFields.isLetter(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < end && TodoTxtTaskFields.isLetter(text.charAt(j))) {
+                j++;
+            }
+            if (j < end && text.charAt(j) == ':') {
+                int k = j + 1;
+                while (k < end && isValueChar(text.charAt(k))) {
+                    k++;
+                }
+                if (k > j + 1) {
+                    consumer.onToken(TOKEN_KEY_VALUE, i, k);
+                    i = k;
+                    continue;
+                }
+                j++;
+            }
+            i = j;
+        }
+    }
+
+    private static boolean isValueChar(final char c) {
+        return TodoTxtTaskFields.isLetter(c) || TodoTxtTaskFields.isDigit(c) || c == '_' || c == '-';
+    }
+
+    // Links need a "://", checked before running the link pattern
+    private static boolean containsScheme(final CharSequence text, final int start, final int end) {
+        for (int i = start + 4; i + 2 < end; i++) {
+            if (text.charAt(i) == ':' && text.charAt(i + 1) == '/' && text.charAt(i + 2) == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A done task is struck out up to the first line terminator, like .* does
+    private static int lineEndWithoutTerminator(final CharSequence text, final int lineStart, final int lineEnd) {
+        for (int i = lineStart; i < lineEnd; i++) {
+            final char c = text.charAt(i);
+            if (c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return i;
+            }
+        }
+        return lineEnd;
+    }
+}
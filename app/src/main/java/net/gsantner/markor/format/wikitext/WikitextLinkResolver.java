@@ -125,14 +125,7 @@ public class WikitextLinkResolver {
     }
 
     private static File findNotebookRootDir(File currentPage) {
-        if (currentPage != null && currentPage.exists()) {
-            if (GsFileUtils.join(currentPage, "notebook.zim").exists()) {
-                return currentPage;
-            } else {
-                return findNotebookRootDir(currentPage.getParentFile());
-            }
-        }
-        return null;
+        return WikitextNotebookIndex.findNotebookRootDir(currentPage);
     }
 
     private String findFirstPageTraversingUpToRoot(File currentPage, String relativeLinkToCheck) {
@@ -144,8 +137,9 @@ public class WikitextLinkResolver {
 
         File parentFolder = currentPage.getParentFile();
         File candidateFile = GsFileUtils.join(parentFolder, relativeLinkToCheck);
-        if (candidateFile.exists()) {
-            return candidateFile.toString();
+        String existingPage = WikitextNotebookIndex.findExistingPage(_notebookRootDir, candidateFile);
+        if (existingPage != null) {
+            return existingPage;
         } else {
             return findFirstPageTraversingUpToRoot(parentFolder, relativeLinkToCheck);
         }
@@ -0,0 +1,301 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.wikitext;
+
+import androidx.arch.core.util.Function;
+
+import net.gsantner.opoc.format.GsTextUtils;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Translates Wikitext to Markdown in a single pass over the text.
+ * <p>
+ * Lines are scanned in place (no intermediate String[]), every line is written into one
+ * StringBuilder and a rule is only run when the line contains its literal marker.
+ * Code block placeholders are resolved while writing the line they occur in and link
+ * resolution results are cached for the lifetime of the translator (= one conversion).
+ */
+class WikitextMarkdownTranslator {
+    private static final String LINE_END = String.format("%n");
+    private static final String LINE_BREAK = "  "; // line breaks must be made explicit in markdown by two spaces
+
+    private static final Pattern PREFORMATTED_MULTILINE_LINE = Pattern.compile("^'''$");
+    private static final Pattern ITALICS_MARKER = Pattern.compile("^/+|/+$");
+    private static final Pattern LIST_ORDERED_MARKER = Pattern.compile("[0-9a-zA-Z]+\\.");
+    private static final Pattern SUPERSCRIPT_MARKER = Pattern.compile("^\\^\\{|\\}$");
+    private static final Pattern SUBSCRIPT_MARKER = Pattern.compile("^_\\{|\\}$");
+    private static final Pattern HEADING_MARKER = Pattern.compile("^=+\\s*|\\s*=+$");
+    private static final Pattern CHECKBOX = Pattern.compile("\\[([ *x><])]");
+    private static final Pattern IMAGE_TAGS = Pattern.compile("(id|width|height|href)=(.+)", Pattern.CASE_INSENSITIVE);
+
+    private final File _file;
+    private final File _notebookDir;
+    private final boolean _isDynamicNotebookRoot;
+    private final boolean _isExportInLightMode;
+
+    private final Matcher _heading = WikitextSyntaxHighlighter.HEADING.matcher("");
+    private final Matcher _italics = WikitextSyntaxHighlighter.ITALICS.matcher("");
+    private final Matcher _highlighted = WikitextSyntaxHighlighter.HIGHLIGHTED.matcher("");
+    private final Matcher _preformattedInline = WikitextSyntaxHighlighter.PREFORMATTED_INLINE.matcher("");
+    private final Matcher _preformattedMultiline = PREFORMATTED_MULTILINE_LINE.matcher("");
+    private final Matcher _listOrdered = WikitextSyntaxHighlighter.LIST_ORDERED.matcher("");
+    private final Matcher _checklist = WikitextSyntaxHighlighter.CHECKLIST.matcher("");
+    private final Matcher _superscript = WikitextSyntaxHighlighter.SUPERSCRIPT.matcher("");
+    private final Matcher _subscript = WikitextSyntaxHighlighter.SUBSCRIPT.matcher("");
+    private final Matcher _link = WikitextSyntaxHighlighter.LINK.matcher("");
+    private final Matcher _image = WikitextSyntaxHighlighter.IMAGE.matcher("");
+
+    private final StringBuffer _lineBuffer = new StringBuffer();
+    private final Map<String, String> _linkCache = new HashMap<>();
+
+    WikitextMarkdownTranslator(final File file, final File notebookDir, final boolean isDynamicNotebookRoot, final boolean isExportInLightMode) {
+        _file = file;
+        _notebookDir = notebookDir;
+        _isDynamicNotebookRoot = isDynamicNotebookRoot;
+        _isExportInLightMode = isExportInLightMode;
+    }
+
+    /**
+     * Translate a whole Wikitext document (including an optional Zim header) to Markdown
+     *
+     * @param markup Wikitext markup
+     * @return Markdown text
+     */
+    public String translate(final String markup) {
+        String content = markup.replaceFirst(WikitextSyntaxHighlighter.ZIMHEADER.toString(), "");
+
+        // Extract multiline code blocks before the per-line transformation so their content
+        // is not mangled by inline rules like IMAGE ({{X}} -> image embed).
+        final List<String> savedCodeBlocks = new ArrayList<>();
+        content = WikitextTextConverter.preprocessCodeBlocks(content, savedCodeBlocks);
+
+        final StringBuilder out = new StringBuilder(content.length() + (content.length() >> 2));
+        final int length = content.length();
+        if (length == 0) {
+            appendLine(out, "", savedCodeBlocks);
+            return out.toString();
+        }
+
+        // Same line semantics as String.split("\\r\\n|\\r|\\n"): trailing empty lines are dropped
+        int pendingEmptyLines = 0;
+        int start = 0;
+        while (start <= length) {
+            int end = start;
+            while (end < length && content.charAt(end) != '\n' && content.charAt(end) != '\r') {
+                end++;
+            }
+
+            if (end == start) {
+                pendingEmptyLines++;
+            } else {
+                for (; pendingEmptyLines > 0; pendingEmptyLines--) {
+                    out.append(LINE_BREAK).append(LINE_END);
+                }
+                appendLine(out, content.substring(start, end), savedCodeBlocks);
+            }
+
+            if (end >= length) {
+                break;
+            }
+            start = end + ((content.charAt(end) == '\r' && end + 1 < length && content.charAt(end + 1) == '\n') ? 2 : 1);
+            if (start == length) {
+                break;
+            }
+        }
+
+        return out.toString();
+    }
+
+    private void appendLine(final StringBuilder out, final String wikitextLine, final List<String> savedCodeBlocks) {
+        final String line = getMarkdownEquivalentLine(wikitextLine);
+        if (!savedCodeBlocks.isEmpty() && line.indexOf(WikitextTextConverter.CODE_BLOCK_PLACEHOLDER_SUFFIX) >= 0) {
+            String resolved = line;
+            for (int i = 0; i < savedCodeBlocks.size(); i++) {
+                resolved = resolved.replace(WikitextTextConverter.codeBlockPlaceholder(i), savedCodeBlocks.get(i));
+            }
+            out.append(resolved);
+        } else {
+            out.append(line);
+        }
+        out.append(LINE_BREAK).append(LINE_END);
+    }
+
+    private String getMarkdownEquivalentLine(String line) {
+        // Headings
+        if (line.contains("==")) {
+            line = replaceAll(_heading, line, this::convertHeading);
+        }
+
+        // bold syntax is the same as for markdown
+        if (line.contains("//")) {
+            line = replaceAll(_italics, line, fullMatch -> ITALICS_MARKER.matcher(fullMatch).replaceAll("*"));
+        }
+        if (line.contains("__")) {
+            line = replaceAll(_highlighted, line, this::convertHighlighted);
+        }
+        // strikethrough syntax is the same as for markdown
+
+        if (line.contains("''")) {
+            line = replaceAll(_preformattedInline, line, fullMatch -> "`$1`");
+            line = replaceAll(_preformattedMultiline, line, fullMatch -> "```");  // preformatted multiline
+        }
+
+        // unordered list syntax is compatible with markdown
+        if (line.indexOf('.') >= 0) {
+            line = replaceAll(_listOrdered, line, fullMatch -> LIST_ORDERED_MARKER.matcher(fullMatch).replaceAll("1."));    // why does this work?
+        }
+        if (line.indexOf('[') >= 0) {
+            line = replaceAll(_checklist, line, this::convertChecklist);
+        }
+
+        if (line.contains("^{")) {
+            line = replaceAll(_superscript, line, fullMatch -> String.format("<sup>%s</sup>",
+                    SUPERSCRIPT_MARKER.matcher(fullMatch).replaceAll("")));
+        }
+        if (line.contains("_{")) {
+            line = replaceAll(_subscript, line, fullMatch -> String.format("<sub>%s</sub>",
+                    SUBSCRIPT_MARKER.matcher(fullMatch).replaceAll("")));
+        }
+        if (line.contains("[[")) {
+            line = replaceAll(_link, line, this::convertLink);
+        }
+        if (line.contains("{{")) {
+            line = replaceAll(_image, line, this::convertImage);
+        }
+
+        return line;
+    }
+
+    /**
+     * Replace all matches of the (reused) matcher in line, returns the line itself when nothing matched
+     */
+    private String replaceAll(final Matcher matcher, final String line, final Function<String, String> replaceMatchWithMarkdown) {
+        matcher.reset(line);
+        if (!matcher.find()) {
+            return line;
+        }
+        _lineBuffer.setLength(0);
+        do {
+            matcher.appendReplacement(_lineBuffer, replaceMatchWithMarkdown.apply(matcher.group()));
+        } while (matcher.find());
+        matcher.appendTail(_lineBuffer);
+        return _lineBuffer.toString();
+    }
+
+    private String convertHeading(final String group) {
+        // Header level 1 has 6 equal signs (=)x6; while MD's top level is one hash (#)
+        int equalSignsCount = 0;
+        while (group.charAt(equalSignsCount) == '=')
+            equalSignsCount++;
+
+        // Maximum header level is 5, and has two equal signs
+        int markdownLevel = 7 - Math.min(6, equalSignsCount);
+
+        return GsTextUtils.repeatChars('#', markdownLevel) + " " + HEADING_MARKER.matcher(group).replaceAll("");
+    }
+
+    private String convertHighlighted(final String fullMatch) {
+        String content = fullMatch.substring(2, fullMatch.length() - 2);
+        return "<span style=\"background-color: " + (_isExportInLightMode ? "#ffff00" : "#FFA062") + "\">" + content + "</span>";
+    }
+
+    private String convertChecklist(final String fullMatch) {
+        // TODO: convert to more than two checkstates
+        Matcher matcher = CHECKBOX.matcher(fullMatch);
+        matcher.find();
+        String checkboxContent = matcher.group(1);
+        if ("*".equals(checkboxContent)) {
+            return matcher.replaceFirst("- [x]");
+        }
+        return matcher.replaceFirst("- [ ]");
+    }
+
+    private String convertLink(final String group) {
+        String markdownLink = _linkCache.get(group);
+        if (markdownLink == null) {
+            markdownLink = resolveLink(group);
+            _linkCache.put(group, markdownLink);
+        }
+        return markdownLink;
+    }
+
+    private String resolveLink(final String group) {
+        WikitextLinkResolver resolver = WikitextLinkResolver.resolve(group, _notebookDir, _file, _isDynamicNotebookRoot);
+
+        String markdownLink;
+        if (resolver.isWebLink()) {
+            markdownLink = resolver.getResolvedLink().replace(" ", "%20");
+        } else {
+            markdownLink = "file://" + resolver.getResolvedLink();
+        }
+
+        String linkDescription = resolver.getLinkDescription() != null ? resolver.getLinkDescription() : resolver.getWikitextPath();
+        linkDescription = linkDescription.replace("+", "&#43;");
+
+        return "[" + linkDescription + "](" + markdownLink + ")";
+    }
+
+    private String convertImage(final String fullMatch) {
+        String imagePathFromPageFolder = fullMatch.substring(2, fullMatch.length() - 2);
+        String currentPageFileName = _file.getName();
+        String currentPageFolderName = currentPageFileName.replaceFirst(".txt$", "");
+        String markdownPathToImage = FilenameUtils.concat(currentPageFolderName, imagePathFromPageFolder);
+
+        // Zim may insert in the image link, after a '?' character, the 'id', 'width',
+        // 'height', 'type', and 'href' tags, separating them with a '&' character, so
+        // you may not want to use '?' and '&' as directory or file name:
+        // https://github.com/zim-desktop-wiki/zim-desktop-wiki/blob/c88cf3cb53896bf272e87704826b77e82eddb3ef/zim/formats/__init__.py#L903
+        final int pos = markdownPathToImage.indexOf("?");
+        if (pos != -1) {
+            final String image = markdownPathToImage.substring(0, pos);
+            final String[] options = markdownPathToImage.substring(pos + 1).split("&");
+            String link = null; // <a href="link"></a> or [![name](image)](link)
+            StringBuilder attributes = new StringBuilder(); // <img id="" width="" height="" />
+            // The 'type' tag is for backward compatibility of image generators before
+            // Zim version 0.70.  Here, it probably may be ignored:
+            // https://github.com/zim-desktop-wiki/zim-desktop-wiki/blob/c88cf3cb53896bf272e87704826b77e82eddb3ef/zim/formats/wiki.py#586
+            for (String item : options) {
+                final Matcher data = IMAGE_TAGS.matcher(item);
+                if (data.matches()) {
+                    final String key = Objects.requireNonNull(data.group(1)).toLowerCase();
+                    String value = data.group(2);
+                    try {
+                        value = URLDecoder.decode(value, "UTF-8");
+                    } catch (UnsupportedEncodingException e) {
+                        e.printStackTrace();
+                    }
+                    if (key.equals("href")) {
+                        link = value;
+                    } else {
+                        attributes.append(String.format("%s=\"%s\" ", key, value));
+                    }
+                }
+            }
+            String html = String.format("<img src=\"%s\" alt=\"%s\" %s/>", image, currentPageFileName, attributes);
+            if (link != null) {
+                link = WikitextLinkResolver.resolveAttachmentPath(link, _notebookDir, _file, _isDynamicNotebookRoot);
+                html = String.format("<a href=\"%s\">%s</a>", link, html);
+            }
+            return html;
+        }
+
+        return String.format("![%s](%s)", currentPageFileName, markdownPathToImage);
+    }
+}
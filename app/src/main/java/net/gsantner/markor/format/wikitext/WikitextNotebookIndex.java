@@ -0,0 +1,254 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.wikitext;
+
+import net.gsantner.opoc.util.GsFileUtils;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory index of wikitext notebooks, used by {@link WikitextLinkResolver}.
+ * <p>
+ * A notebook page with many links would otherwise walk up the parent folders looking for
+ * notebook.zim and probe the filesystem level by level for every single link.
+ * This keeps the detected notebook root per page and the set of existing pages per notebook root.
+ * <p>
+ * Page indexes are built and validated on a background thread, lookups never wait for them.
+ * Until the index of a notebook is ready, pages are checked on the filesystem like before.
+ * At most every {@link #VALIDATION_INTERVAL_MS}, the modification time of every indexed folder
+ * is compared and the index is rebuilt on change. Root lookups are redone after the same interval.
+ */
+public class WikitextNotebookIndex {
+    public static final long VALIDATION_INTERVAL_MS = 2000;
+    private static final int MAX_INDEXED_PAGES = 30000;
+    private static final int MAX_CACHED_NOTEBOOKS = 4;
+    private static final int MAX_CACHED_ROOT_LOOKUPS = 500;
+    private static final String PAGE_EXTENSION = ".txt";
+
+    private static class RootLookup {
+        final File root;
+        final long checkedAt;
+
+        RootLookup(final File root, final long checkedAt) {
+            this.root = root;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    private static final ExecutorService _executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "WikitextNotebookIndex");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static final Map<String, RootLookup> _rootLookups = new LinkedHashMap<String, RootLookup>(MAX_CACHED_ROOT_LOOKUPS + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, RootLookup> eldest) {
+            return size() > MAX_CACHED_ROOT_LOOKUPS;
+        }
+    };
+    private static final Map<String, WikitextNotebookIndex> _notebooks = new LinkedHashMap<String, WikitextNotebookIndex>(MAX_CACHED_NOTEBOOKS + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, WikitextNotebookIndex> eldest) {
+            return size() > MAX_CACHED_NOTEBOOKS;
+        }
+    };
+
+    private final File _root;
+    private final String _rootPrefix;
+
+    // Replaced as a whole by the background thread. Null until built, or if the notebook is too big to be indexed.
+    private volatile Set<String> _pages = null;
+    private Map<String, Long> _folderModTimes = Collections.emptyMap(); // folder path -> lastModified, background thread only
+    private boolean _isScheduled = false;
+    private long _lastValidation = 0;
+
+    private WikitextNotebookIndex(final File root) {
+        _root = root.getAbsoluteFile();
+        _rootPrefix = _root.getPath().endsWith(File.separator) ? _root.getPath() : (_root.getPath() + File.separator);
+    }
+
+    /**
+     * Find the closest ancestor of currentPage (inclusive) with a notebook.zim file in it.
+     * The result is cached per page.
+     *
+     * @param currentPage Page to start searching from
+     * @return The notebook root, or null if none was found
+     */
+    public static File findNotebookRootDir(final File currentPage) {
+        if (currentPage == null) {
+            return null;
+        }
+
+        // Relative and absolute paths of a page share an entry, getCanonicalPath would ask the filesystem each time
+        final String key = currentPage.getAbsolutePath();
+        final long now = System.currentTimeMillis();
+        synchronized (_rootLookups) {
+            final RootLookup cached = _rootLookups.get(key);
+            if (cached != null && (now - cached.checkedAt) < VALIDATION_INTERVAL_MS) {
+                return cached.root;
+            }
+        }
+
+        final File root = findNotebookRootDirOnDisk(currentPage);
+        synchronized (_rootLookups) {
+            _rootLookups.put(key, new RootLookup(root, now));
+        }
+        return root;
+    }
+
+    private static File findNotebookRootDirOnDisk(File currentPage) {
+        while (currentPage != null && currentPage.exists()) {
+            if (GsFileUtils.join(currentPage, "notebook.zim").exists()) {
+                return currentPage;
+            }
+            currentPage = currentPage.getParentFile();
+        }
+        return null;
+    }
+
+    /**
+     * Check if a page exists, using the index of the notebook at notebookRoot.
+     * Falls back to the filesystem if the page is not located inside of the notebook,
+     * the index is not built yet, or the notebook is too big to be indexed.
+     *
+     * @param notebookRoot Root directory of the notebook (may be null)
+     * @param page         Page to check
+     * @return Path of the existing page, or null if it doesn't exist
+     */
+    public static String findExistingPage(final File notebookRoot, final File page) {
+        final String path = page.getAbsolutePath();
+        if (notebookRoot != null && path.toLowerCase(Locale.ROOT).endsWith(PAGE_EXTENSION) && !path.contains("..")) {
+            final WikitextNotebookIndex index = get(notebookRoot);
+            if (path.startsWith(index._rootPrefix)) {
+                final Set<String> pages = index.getPages();
+                if (pages != null) {
+                    return pages.contains(path) ? page.toString() : null;
+                }
+            }
+        }
+        return page.exists() ? page.toString() : null;
+    }
+
+    /**
+     * Drop all cached notebook information, e.g. after pages were created, moved or deleted
+     */
+    public static void invalidate() {
+        synchronized (_rootLookups) {
+            _rootLookups.clear();
+        }
+        synchronized (_notebooks) {
+            _notebooks.clear();
+        }
+    }
+
+    private static WikitextNotebookIndex get(final File notebookRoot) {
+        final String key = notebookRoot.getAbsolutePath();
+        synchronized (_notebooks) {
+            WikitextNotebookIndex index = _notebooks.get(key);
+            if (index == null) {
+                index = new WikitextNotebookIndex(notebookRoot);
+                _notebooks.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Wait until the index of the notebook is built, for tests
+     */
+    static boolean awaitIndexed(final File notebookRoot, final long timeoutMs) throws InterruptedException {
+        final WikitextNotebookIndex index = get(notebookRoot);
+        final long until = System.currentTimeMillis() + timeoutMs;
+        while (index.getPages() == null) {
+            if (System.currentTimeMillis() > until) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    // Current pages, schedules a validation in the background if due
+    private Set<String> getPages() {
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            if (!_isScheduled && (_lastValidation == 0 || (now - _lastValidation) >= VALIDATION_INTERVAL_MS)) {
+                _isScheduled = true;
+                _executor.execute(this::validate);
+            }
+        }
+        return _pages;
+    }
+
+    // Rebuild if this is the first run, or if any indexed folder changed since the last build
+    private void validate() {
+        try {
+            if (_folderModTimes.isEmpty() || hasFolderChanged()) {
+                rebuild();
+            }
+        } finally {
+            synchronized (this) {
+                _lastValidation = System.currentTimeMillis();
+                _isScheduled = false;
+            }
+        }
+    }
+
+    private boolean hasFolderChanged() {
+        for (final Map.Entry<String, Long> entry : _folderModTimes.entrySet()) {
+            if (new File(entry.getKey()).lastModified() != entry.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void rebuild() {
+        final Set<String> pages = new HashSet<>();
+        final Map<String, Long> folderModTimes = new HashMap<>();
+
+        final ArrayDeque<File> folders = new ArrayDeque<>();
+        folders.add(_root);
+        while (!folders.isEmpty()) {
+            final File folder = folders.removeFirst();
+            final File[] children = folder.listFiles();
+            folderModTimes.put(folder.getPath(), folder.lastModified());
+            if (children == null) {
+                continue;
+            }
+
+            for (final File child : children) {
+                if (child.getPath().toLowerCase(Locale.ROOT).endsWith(PAGE_EXTENSION)) {
+                    pages.add(child.getPath());
+                } else if (child.isDirectory()) {
+                    folders.add(child);
+                }
+            }
+
+            if (pages.size() > MAX_INDEXED_PAGES) {
+                // Too big, only watch the root to retry when it changes
+                _folderModTimes = Collections.singletonMap(_root.getPath(), _root.lastModified());
+                _pages = null;
+                return;
+            }
+        }
+        _folderModTimes = folderModTimes;
+        _pages = pages;
+    }
+}
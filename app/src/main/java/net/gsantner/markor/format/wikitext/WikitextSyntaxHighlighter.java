@@ -45,7 +45,7 @@ public class WikitextSyntaxHighlighter extends SyntaxHighlighterBase {
     public final static Pattern ZIMHEADER = Pattern.compile(
             "^Content-Type: text/x-zim-wiki(\r\n|\r|\n)" +
                     "Wiki-Format: zim \\d+\\.\\d+(\r\n|\r|\n)" +
-                    "Creation-Date: \\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}[.+:-\\d]+");
+                    "Creation-Date: \\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}[.+:\\d-]+");
 
     // groups for matching individual parts of the checklist regex
     public static final int CHECKBOX_LEFT_BRACKET_GROUP = 2;
@@ -54,7 +54,9 @@ import net.gsantner.markor.activity.DocumentActivity;
 import net.gsantner.markor.format.ActionButtonBase;
 import net.gsantner.markor.format.todotxt.TodoTxtBasicSyntaxHighlighter;
 import net.gsantner.markor.format.todotxt.TodoTxtFilter;
+import net.gsantner.markor.format.todotxt.TodoTxtIndex;
 import net.gsantner.markor.format.todotxt.TodoTxtTask;
+import net.gsantner.markor.frontend.filebrowser.MarkorFileBrowserFactory;
 import net.gsantner.markor.frontend.filesearch.FileSearchDialog;
 import net.gsantner.markor.frontend.filesearch.FileSearchEngine;
 import net.gsantner.markor.frontend.filesearch.FileSearchResultSelectorDialog;
@@ -65,6 +67,7 @@ import net.gsantner.markor.model.AppSettings;
 import net.gsantner.opoc.format.GsTextUtils;
 import net.gsantner.opoc.frontend.GsSearchOrCustomTextDialog;
 import net.gsantner.opoc.frontend.GsSearchOrCustomTextDialog.DialogOptions;
+import net.gsantner.opoc.frontend.filebrowser.GsFolderListingCache;
 import net.gsantner.opoc.util.GsCollectionUtils;
 import net.gsantner.opoc.util.GsContextUtils;
 import net.gsantner.opoc.util.GsFileUtils;
@@ -296,7 +299,7 @@ public class MarkorDialogFactory {
             options.add(title);
             icons.add(R.drawable.empty_blank);
             callbacks.add(() -> {
-                final DialogOptions doptView = makeSttLineSelectionDialog(activity, text, t -> TodoTxtFilter.isMatchQuery(t, query));
+                final DialogOptions doptView = makeSttLineSelectionDialog(activity, text, query);
                 setQueryTitle(doptView, title, query);
 
                 // Delete view
@@ -346,8 +349,7 @@ public class MarkorDialogFactory {
         // Populate options
         // -------------------------------------
 
-        final List<TodoTxtTask> allTasks = TodoTxtTask.getAllTasks(text.getText());
-        final List<TodoTxtFilter.SttFilterKey> keys = TodoTxtFilter.getKeys(activity, allTasks, queryType);
+        final List<TodoTxtFilter.SttFilterKey> keys = TodoTxtFilter.getKeys(activity, TodoTxtIndex.forEditor(text), queryType);
 
         // Add other cases
         final List<String> data = new ArrayList<>();
@@ -395,7 +397,7 @@ public class MarkorDialogFactory {
             }
             final String query = TodoTxtFilter.makeQuery(queryKeys, useAnd[0], queryType);
 
-            final DialogOptions doptSel = makeSttLineSelectionDialog(activity, text, t -> TodoTxtFilter.isMatchQuery(t, query));
+            final DialogOptions doptSel = makeSttLineSelectionDialog(activity, text, query);
             setQueryTitle(doptSel, activity.getString(title), query);
             addSaveQuery(activity, doptSel, () -> query);
 
@@ -443,17 +445,37 @@ public class MarkorDialogFactory {
             final Activity activity,
             final EditText text,
             final GsCallback.b1<TodoTxtTask> filter
+    ) {
+        final TodoTxtIndex index = TodoTxtIndex.forEditor(text);
+        return makeSttLineSelectionDialog(activity, text, index, index.findLines(filter));
+    }
+
+    /**
+     * Make a dialog for searching and selecting the lines of a todo-txt file matching a query
+     *
+     * @param query {@link TodoTxtFilter} query, evaluated through the index of the file
+     */
+    public static DialogOptions makeSttLineSelectionDialog(
+            final Activity activity,
+            final EditText text,
+            final String query
+    ) {
+        final TodoTxtIndex index = TodoTxtIndex.forEditor(text);
+        return makeSttLineSelectionDialog(activity, text, index, index.findLines(query));
+    }
+
+    private static DialogOptions makeSttLineSelectionDialog(
+            final Activity activity,
+            final EditText text,
+            final TodoTxtIndex index,
+            final List<Integer> lineIndices
     ) {
         final AppSettings as = AppSettings.get(activity);
         final DialogOptions dopt = baseConf(activity);
-        final List<TodoTxtTask> allTasks = TodoTxtTask.getAllTasks(text.getText());
+        final List<TodoTxtTask> allTasks = index.getTasks();
         final List<String> lines = new ArrayList<>();
-        final List<Integer> lineIndices = new ArrayList<>();
-        for (int i = 0; i < allTasks.size(); i++) {
-            if (filter.callback(allTasks.get(i))) {
-                lines.add(allTasks.get(i).getLine());
-                lineIndices.add(i);
-            }
+        for (final int i : lineIndices) {
+            lines.add(allTasks.get(i).getLine());
         }
         dopt.data = lines;
         dopt.titleText = R.string.search;
@@ -725,7 +747,7 @@ public class MarkorDialogFactory {
             final DialogOptions dopt2 = baseConf(activity);
             dopt2.titleText = R.string.select;
             dopt2.isSearchEnabled = true;
-            dopt2.data = GsCollectionUtils.map(found, File::getPath);
+            dopt2.data = found != null ? GsCollectionUtils.map(found, File::getPath) : new ArrayList<>();
             if (found != null) {
                 dopt2.positionCallback = (result) -> callback.callback(found.get(result.get(0)));
             }
@@ -1095,6 +1117,8 @@ public class MarkorDialogFactory {
         opt.isOnlyFirstContentMatch = false;
         opt.ignoredDirectories = as.getFileSearchIgnorelist();
         opt.maxSearchDepth = Integer.MAX_VALUE;  // Search entire notebook
+        opt.listingCache = GsFolderListingCache.get(activity);
+        opt.fileIndex = MarkorFileBrowserFactory.getNotebookIndex(activity);
         if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
             opt.password = as.getDefaultPassword();
         }
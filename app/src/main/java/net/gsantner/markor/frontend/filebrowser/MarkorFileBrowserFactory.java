@@ -19,9 +19,12 @@ import net.gsantner.opoc.frontend.filebrowser.GsFileBrowserDialog;
 import net.gsantner.opoc.frontend.filebrowser.GsFileBrowserListAdapter;
 import net.gsantner.opoc.frontend.filebrowser.GsFileBrowserOptions;
 import net.gsantner.opoc.util.GsContextUtils;
+import net.gsantner.opoc.util.GsFileTreeIndex;
 import net.gsantner.opoc.wrapper.GsCallback;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 public class MarkorFileBrowserFactory {
     public static GsCallback.b2<Context, File> IsMimeText = (context, file) -> file != null && GsContextUtils.instance.getMimeType(context, file).startsWith("text/");
@@ -29,6 +32,14 @@ public class MarkorFileBrowserFactory {
     public static GsCallback.b2<Context, File> IsMimeAudio = (context, file) -> file != null && GsContextUtils.instance.getMimeType(context, file).startsWith("audio/");
     public static GsCallback.b2<Context, File> IsMimeVideo = (context, file) -> file != null && GsContextUtils.instance.getMimeType(context, file).startsWith("video/");
 
+    // Not worth indexing and watching, listed from disk when needed
+    private static final List<String> NOTEBOOK_INDEX_IGNORED_NAMES = Arrays.asList("\".git\"", "\".tmp\"");
+
+    // Index of the notebook, shared by file browser, search and dialogs
+    public static GsFileTreeIndex getNotebookIndex(final Context context) {
+        return GsFileTreeIndex.get(AppSettings.get(context).getNotebookDirectory(), NOTEBOOK_INDEX_IGNORED_NAMES);
+    }
+
     public static GsFileBrowserOptions.Options prepareFsViewerOpts(
             final Context context,
             final boolean doSelectFolder,
@@ -84,6 +95,7 @@ public class MarkorFileBrowserFactory {
         opts.favouriteFiles = appSettings.getFavouriteFiles();
         opts.recentFiles = appSettings.getRecentFiles();
         opts.popularFiles = appSettings.getPopularFiles();
+        opts.fileIndex = getNotebookIndex(context);
 
         opts.descriptionFormat = appSettings.getString(R.string.pref_key__file_description_format, "");
 
@@ -19,6 +19,7 @@ import androidx.appcompat.widget.AppCompatEditText;
 import androidx.core.content.ContextCompat;
 
 import net.gsantner.markor.R;
+import net.gsantner.markor.frontend.filebrowser.MarkorFileBrowserFactory;
 import net.gsantner.markor.model.AppSettings;
 import net.gsantner.opoc.util.GsContextUtils;
 import net.gsantner.opoc.wrapper.GsCallback;
@@ -154,6 +155,7 @@ public class FileSearchDialog {
                 opt.isOnlyFirstContentMatch = onlyFirstContentMatchCheckBox.isChecked();
                 opt.ignoredDirectories = appSettings.getFileSearchIgnorelist();
                 opt.maxSearchDepth = appSettings.getSearchMaxDepth();
+                opt.fileIndex = MarkorFileBrowserFactory.getNotebookIndex(activity);
                 if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
                     opt.password = appSettings.getDefaultPassword();
                 }
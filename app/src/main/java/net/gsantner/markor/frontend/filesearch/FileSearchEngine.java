@@ -13,28 +13,32 @@ import androidx.annotation.Nullable;
 import com.google.android.material.snackbar.Snackbar;
 
 import net.gsantner.markor.R;
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
+import net.gsantner.opoc.frontend.filebrowser.GsFolderListingCache;
 import net.gsantner.opoc.util.GsCollectionUtils;
 import net.gsantner.opoc.util.GsFileUtils;
+import net.gsantner.opoc.util.GsFileTreeIndex;
+import net.gsantner.opoc.util.GsFileWalker;
 import net.gsantner.opoc.wrapper.GsCallback;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.ref.WeakReference;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -75,6 +79,12 @@ public class FileSearchEngine {
         public boolean isShowMatchPreview = true;
         public char[] password = new char[0];
         public int message = 0;
+
+        // Used for folder listings when searching file names only, null to always list from disk
+        public GsFolderListingCache listingCache;
+
+        // Used for listings of the folders it covers, null to not use an index
+        public GsFileTreeIndex fileIndex;
     }
 
     public static class FitFile {
@@ -120,22 +130,26 @@ public class FileSearchEngine {
         private final SearchOptions _config;
         private final GsCallback.a1<List<FitFile>> _callback;
 
-        // _matcher.reset() is _not_ thread safe. Will need alternate approach when we make search parallel
-        private final Matcher _matcher;
+        // Folders are searched in parallel, so each match creates its own matcher
+        private final Pattern _pattern;
+        private final GsFileWalker _walker;
 
         private Snackbar _snackBar;
-        private Integer _countCheckedFiles = 0;
-        private final List<FitFile> _result = new ArrayList<>();
-        private final Set<Matcher> _ignoredRegexDirs = new HashSet<>();
-        private final Set<String> _ignoredExactDirs = new HashSet<>();
+        private final AtomicInteger _countCheckedFiles = new AtomicInteger(0);
+        private final List<FitFile> _result = Collections.synchronizedList(new ArrayList<>());
 
         public QueueSearchFilesTask(final SearchOptions config, final GsCallback.a1<List<FitFile>> callback) {
             _config = config;
             _callback = callback;
 
             _config.query = _config.isCaseSensitiveQuery ? _config.query : _config.query.toLowerCase();
-            splitRegexExactFiles(config.ignoredDirectories, _ignoredExactDirs, _ignoredRegexDirs);
-            splitRegexExactFiles(FileSearchEngine.defaultIgnoredDirs, _ignoredExactDirs, _ignoredRegexDirs);
+            _walker = new GsFileWalker()
+                    .setIgnoredNames(config.ignoredDirectories, !_config.isCaseSensitiveQuery, this::showInvalidPattern)
+                    .addIgnoredNames(FileSearchEngine.defaultIgnoredDirs, this::showInvalidPattern)
+                    .setMaxDepth(_config.maxSearchDepth)
+                    .setCancelledCheck(this::isCancelled)
+                    .setLister(this::listDirectory)
+                    .setParallel();
 
             Pattern pattern = null;
             if (_config.isRegexQuery) {
@@ -143,20 +157,24 @@ public class FileSearchEngine {
                     _config.query = _config.query.replaceAll("(?<![.])[*]", ".*");
                     pattern = Pattern.compile(_config.query);
                 } catch (Exception ex) {
-                    final Activity a = activity.get().get();
-                    if (a != null) {
-                        final String errorMessage = a.getString(R.string.regex_can_not_be_compiled) + ": " + _config.query;
-                        Toast.makeText(a, errorMessage, Toast.LENGTH_LONG).show();
-                    }
+                    showInvalidPattern(_config.query);
                 }
             }
-            _matcher = pattern != null ? pattern.matcher("") : null;
+            _pattern = pattern;
+        }
+
+        private void showInvalidPattern(final String pattern) {
+            final Activity a = activity.get().get();
+            if (a != null) {
+                final String errorMessage = a.getString(R.string.regex_can_not_be_compiled) + ": " + pattern;
+                Toast.makeText(a, errorMessage, Toast.LENGTH_LONG).show();
+            }
         }
 
         @Override
         protected void onPreExecute() {
             super.onPreExecute();
-            if (_config.isRegexQuery && _matcher == null) {
+            if (_config.isRegexQuery && _pattern == null) {
                 cancel(true);
                 return;
             }
@@ -191,80 +209,100 @@ public class FileSearchEngine {
 
         @Override
         protected List<FitFile> doInBackground(final Void... ignored) {
-            final ArrayDeque<Pair<File, Integer>> stack = new ArrayDeque<>();
-            stack.add(Pair.create(_config.rootSearchDir, 0));
             final int trimLength = _config.rootSearchDir.getAbsolutePath().length() + 1;
 
-            Pair<File, Integer> pair;
-            while ((pair = stack.pollLast()) != null && !isCancelled()) {
-                final int depth = pair.second;
-                final File dir = pair.first;
+            // Reading (and decrypting) files is slow compared to listing, so files are searched in parallel too
+            final ExecutorService contentExecutor = _config.isSearchInContent ? Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors())) : null;
+            final List<Future<?>> contentSearches = Collections.synchronizedList(new ArrayList<>());
+            try {
+                _walker.walk(_config.rootSearchDir, (entry, depth) -> {
+                    if (contentExecutor != null && !entry.isDirectory) {
+                        contentSearches.add(contentExecutor.submit(() -> handleEntry(entry, trimLength)));
+                    } else {
+                        handleEntry(entry, trimLength);
+                    }
+                    if (entry.isDirectory) {
+                        publishProgress(depth, _result.size(), _countCheckedFiles.get());
+                    }
+                    return true;
+                });
 
-                if (depth < _config.maxSearchDepth && dir.canRead()) {
-                    handleDirectory(dir, trimLength, depth, stack::addLast);
-                    publishProgress(stack.size(), depth, _result.size(), _countCheckedFiles);
+                for (final Future<?> search : new ArrayList<>(contentSearches)) {
+                    if (isCancelled()) {
+                        break;
+                    }
+                    try {
+                        search.get();
+                    } catch (ExecutionException ignored) {
+                    }
+                }
+            } catch (InterruptedException ignored) {
+            } finally {
+                if (contentExecutor != null) {
+                    contentExecutor.shutdownNow();
                 }
             }
 
-            GsCollectionUtils.keySort(_result, f -> f.relPath.toLowerCase());
+            final List<FitFile> result = new ArrayList<>(_result);
+            GsCollectionUtils.keySort(result, f -> f.relPath.toLowerCase());
 
-            return _result;
+            return result;
         }
 
-        private void handleDirectory(
-                final File dir,
-                final int trimSize,
-                final int depth,
-                final GsCallback.a1<Pair<File, Integer>> pushToStack
-        ) {
+        // Called concurrently for entries of different folders
+        private void handleEntry(final GsFileEntry entry, final int trimSize) {
+            _countCheckedFiles.incrementAndGet();
 
-            final File[] files = dir.listFiles();
+            final File file = entry.file;
+            final String name = _config.isCaseSensitiveQuery ? entry.name : entry.name.toLowerCase();
+            final boolean isDir = entry.isDirectory;
+            final String relPath = file.getAbsolutePath().substring(trimSize);
 
-            if (files == null) {
-                return;
+            boolean isContentMatch = false;
+            if (_config.isSearchInContent && !isDir && file.canRead() && GsFileUtils.isTextFile(file)) {
+                isContentMatch = getContentMatches(file, relPath, _config.isOnlyFirstContentMatch);
             }
 
-            _countCheckedFiles += files.length;
-
-            for (final File file : files) {
-
-                if (isCancelled()) {
-                    return;
+            // Search name if directory or not already included due to content
+            if (isDir || !isContentMatch) {
+                if (_config.isRegexQuery ? _pattern.matcher(name).matches() : name.contains(_config.query)) {
+                    _result.add(new FitFile(file, relPath, isDir, null));
                 }
+            }
+        }
 
-                final String name = _config.isCaseSensitiveQuery ? file.getName() : file.getName().toLowerCase();
-
-                if (!isIgnored(name)) {
-
-                    final boolean isDir = file.isDirectory();
-                    final String relPath = file.getAbsolutePath().substring(trimSize);
+        // Children of dir, taken from the index or from the listing cache if only names are searched
+        private List<GsFileEntry> listDirectory(final File dir) {
+            final List<GsFileEntry> indexed = _config.fileIndex != null ? _config.fileIndex.list(dir) : null;
+            if (indexed != null) {
+                return indexed;
+            }
 
-                    final int beforeContentCount = _result.size();
-                    if (_config.isSearchInContent && !isDir && file.canRead() && GsFileUtils.isTextFile(file)) {
-                        getContentMatches(file, relPath, _config.isOnlyFirstContentMatch);
-                    }
+            final GsFolderListingCache cache = _config.isSearchInContent ? null : _config.listingCache;
+            if (cache == null) {
+                return GsFileWalker.listFolder(dir);
+            }
 
-                    // Search name if directory or not already included due to content
-                    if (isDir || _result.size() == beforeContentCount) {
-                        if (_config.isRegexQuery ? _matcher.reset(name).matches() : name.contains(_config.query)) {
-                            _result.add(new FitFile(file, relPath, isDir, null));
-                        }
-                    }
+            // Only a listing taken at the current modification time of dir is used
+            final long dirModTime = dir.lastModified();
+            final List<GsFileEntry> cached = cache.read(dir, null, dirModTime);
+            if (cached != null) {
+                return cached;
+            }
 
-                    // Only check for symbolic link directories
-                    if (isDir && depth < _config.maxSearchDepth && !GsFileUtils.isSymbolicLink(file)) {
-                        pushToStack.callback(Pair.create(file, depth + 1));
-                    }
-                }
+            final List<GsFileEntry> entries = GsFileWalker.listFolder(dir);
+            if (entries != null) {
+                cache.write(dir, dirModTime, "", entries);
             }
+            return entries;
         }
 
         @Override
         protected void onProgressUpdate(Integer... values) {
             super.onProgressUpdate(values);
             if (_snackBar != null) {
-                // _currentQueueLength, _currentSearchDepth, _result.size(), _countCheckedFiles
-                _snackBar.setText("⭕" + values[2] + " || \uD83D\uDD0D" + values[0] + " || ⬇️ " + values[1] + " || \uD83D\uDC41️" + values[3] + "\n" + _config.query);
+                // _currentSearchDepth, _result.size(), _countCheckedFiles
+                _snackBar.setText("⭕" + values[1] + " || ⬇️ " + values[0] + " || \uD83D\uDC41️" + values[2] + "\n" + _config.query);
             }
         }
 
@@ -289,45 +327,16 @@ public class FileSearchEngine {
             FileSearchEngine.isSearchExecuting.set(false);
         }
 
-        private void splitRegexExactFiles(final List<String> list, final Set<String> exactList, final Set<Matcher> regexList) {
-            for (String pattern : (list != null ? list : new ArrayList<String>())) {
-                if (pattern.isEmpty()) {
-                    continue;
-                }
-                if (!_config.isCaseSensitiveQuery) {
-                    pattern = pattern.toLowerCase();
-                }
-
-                if (pattern.startsWith("\"")) {
-                    pattern = pattern.replace("\"", "");
-                    if (pattern.isEmpty()) {
-                        continue;
-                    }
-                    exactList.add(pattern);
-                } else {
-                    pattern = pattern.replaceAll("(?<![.])[*]", ".*");
-                    try {
-                        regexList.add(Pattern.compile(pattern).matcher(""));
-                    } catch (Exception ex) {
-                        final Activity a = activity.get().get();
-                        if (a != null) {
-                            final String errorMessage = a.getString(R.string.regex_can_not_be_compiled) + ": " + pattern;
-                            Toast.makeText(a, errorMessage, Toast.LENGTH_LONG).show();
-                        }
-                    }
-                }
-            }
-        }
-
         // Match line and return preview string. Preview will be null if no match found
         private String matchLine(final String line) {
             final String preparedLine = _config.isCaseSensitiveQuery ? line : line.toLowerCase();
 
             int start = -1, end = -1;
             if (_config.isRegexQuery) {
-                if (_matcher.reset(preparedLine).find()) {
-                    start = _matcher.start();
-                    end = _matcher.end();
+                final Matcher matcher = _pattern.matcher(preparedLine);
+                if (matcher.find()) {
+                    start = matcher.start();
+                    end = matcher.end();
                 }
             } else {
                 start = preparedLine.indexOf(_config.query);
@@ -353,7 +362,8 @@ public class FileSearchEngine {
             return null;
         }
 
-        private void getContentMatches(final File file, final String relPath, final boolean isFirstMatchOnly) {
+        // Add file to the result if it has matching lines, return true if it was added
+        private boolean getContentMatches(final File file, final String relPath, final boolean isFirstMatchOnly) {
             List<Pair<String, Integer>> contentMatches = null;
 
             try (final BufferedReader br = new BufferedReader(new InputStreamReader(getInputStream(file)))) {
@@ -383,27 +393,12 @@ public class FileSearchEngine {
                 }
             } catch (Exception ignored) {
             }
+            return contentMatches != null;
         }
 
-        private boolean isIgnored(final String dirName) {
-            for (final String pattern : _ignoredExactDirs) {
-                if (dirName.equals(pattern)) {
-                    return true;
-                }
-            }
-
-            for (final Matcher matcher : _ignoredRegexDirs) {
-                if (matcher.reset(dirName).matches()) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        private InputStream getInputStream(File file) throws FileNotFoundException {
+        private InputStream getInputStream(File file) throws IOException {
             if (isEncryptedFile(file)) {
-                final byte[] encryptedContext = GsFileUtils.readCloseStreamWithSize(new FileInputStream(file), (int) file.length());
-                return new ByteArrayInputStream(JavaPasswordbasedCryption.getDecryptedText(encryptedContext, _config.password.clone()).getBytes(StandardCharsets.UTF_8));
+                return JavaPasswordbasedCryption.decryptingInputStream(new FileInputStream(file), _config.password.clone());
             } else {
                 return new FileInputStream(file);
             }
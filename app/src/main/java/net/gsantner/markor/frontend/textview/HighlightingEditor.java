@@ -58,6 +58,7 @@ public class HighlightingEditor extends AppCompatEditText {
 
     final static int HIGHLIGHT_SHIFT_LINES = 8;              // Lines to scroll before hl updated
     final static float HIGHLIGHT_REGION_SIZE = 0.75f;        // Minimum extra screens to highlight (should be > 0.5 to cover screen)
+    final static float HIGHLIGHT_VIEWPORT_MARGIN = 1.5f;     // Extra screens to compute in viewport mode
 
     public final static String PLACE_CURSOR_HERE_TOKEN = "%%PLACE_CURSOR_HERE%%";
     public final static String INSERT_SELECTION_HERE_TOKEN = "%%INSERT_SELECTION_HERE%%";
@@ -70,6 +71,7 @@ public class HighlightingEditor extends AppCompatEditText {
     private final Rect _oldHlRect;        // Rect highlighting was previously applied to
     private final Rect _hlRect;           // Current rect
     private int _hlShiftThreshold = -1;   // How much to scroll before re-apply highlight
+    private final int _hlViewportMinLength; // Text length from which only the viewport is highlighted
     private InputFilter _autoFormatFilter;
     private TextWatcher _autoFormatModifier;
     private boolean _autoFormatEnabled;
@@ -90,6 +92,7 @@ public class HighlightingEditor extends AppCompatEditText {
         setAutoFormatters(null, null);
 
         _isSpellingRedUnderline = !as.isDisableSpellingRedUnderline();
+        _hlViewportMinLength = as.getHighlightingViewportModeMinLength();
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
             setFallbackLineSpacing(false);
@@ -176,25 +179,33 @@ public class HighlightingEditor extends AppCompatEditText {
     private boolean runHighlight(final boolean recompute) {
         return _hl != null && getLayout() != null &&
                 (getLocalVisibleRect(_hlRect) || recompute) &&
-                (recompute || _hl.hasSpans()) &&
+                (recompute || _hl.hasSpans() || _hl.isViewportMode()) &&
                 (recompute || isScrollSignificant());
     }
 
     private void updateHighlighting() {
         if (runHighlight(false)) {
+            final int[] region = hlRegion();
             // Do not batch as we do not want to reflow
-            _hl.clearDynamic().applyDynamic(hlRegion());
+            _hl.clearDynamic().applyDynamic(region);
             _oldHlRect.set(_hlRect);
+
+            // Scrolled out of the computed part of a large text
+            if (!_hl.isComputed(region)) {
+                recomputeHighlightingAsync();
+            }
         }
     }
 
     public void recomputeHighlighting() {
         if (_hlEnabled && runHighlight(true)) {
             this.saveScrollPositionForLayout();
+            updateViewportMode();
+            final int[] computeRegion = hlComputeRegion();
             batch(() -> _hl
                     .clearDynamic()
                     .clearStatic(false)
-                    .recompute()
+                    .recompute(computeRegion)
                     .addAdditional(_matches)
                     .applyStatic()
                     .applyDynamic(hlRegion())
@@ -211,26 +222,33 @@ public class HighlightingEditor extends AppCompatEditText {
      */
     private void recomputeHighlightingAsync() {
         if (_hlEnabled && runHighlight(true)) {
+            updateViewportMode();
+            final int[] computeRegion = hlComputeRegion();
             try {
-                executor.execute(this::_recomputeHighlightingWorker);
+                executor.execute(() -> _recomputeHighlightingWorker(computeRegion));
             } catch (RejectedExecutionException ignored) {
             }
         }
     }
 
-    private synchronized void _recomputeHighlightingWorker() {
+    private synchronized void _recomputeHighlightingWorker(final int[] computeRegion) {
         _textUnchangedWhileHighlighting.set(true);
-        _hl.compute();
+        _hl.compute(computeRegion);
         post(() -> {
             if (_textUnchangedWhileHighlighting.get()) {
-                batch(() -> _hl
+                final Runnable apply = () -> _hl
                         .clearStatic(false)
                         .clearDynamic()
                         .setComputed()
                         .addAdditional(_matches)
                         .applyStatic()
-                        .applyDynamic(hlRegion())
-                );
+                        .applyDynamic(hlRegion());
+                if (computeRegion != null) {
+                    // No static spans in viewport mode. Not batching keeps the scroll position.
+                    apply.run();
+                } else {
+                    batch(apply);
+                }
             }
         });
     }
@@ -256,6 +274,14 @@ public class HighlightingEditor extends AppCompatEditText {
         _hlShiftThreshold = Math.round(paint.getTextSize() * HIGHLIGHT_SHIFT_LINES);
         if (_hl != null) {
             _hl.setSpannable(getText()).configure(paint);
+            updateViewportMode();
+        }
+    }
+
+    // Only highlight around the visible region of large texts
+    private void updateViewportMode() {
+        if (_hl != null) {
+            _hl.setViewportMode(length() >= _hlViewportMinLength);
         }
     }
 
@@ -292,6 +318,15 @@ public class HighlightingEditor extends AppCompatEditText {
         return new int[]{rowStart(startY), rowEnd(endY)};
     }
 
+    // Region to compute spans for. Null (everything) if not in viewport mode
+    private int[] hlComputeRegion() {
+        if (_hl == null || !_hl.isViewportMode()) {
+            return null;
+        }
+        final int margin = Math.round(HIGHLIGHT_VIEWPORT_MARGIN * _hlRect.height());
+        return new int[]{rowStart(_hlRect.top - margin), rowEnd(_hlRect.bottom + margin)};
+    }
+
     private int rowStart(final int y) {
         final Layout layout = getLayout();
         return layout == null ? 0 : layout.getLineStart(layout.getLineForVertical(y));
@@ -12,10 +12,10 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Typeface;
+import android.text.GetChars;
 import android.text.Spannable;
 import android.text.Spanned;
 import android.text.TextPaint;
-import android.text.TextUtils;
 import android.text.style.CharacterStyle;
 import android.text.style.RelativeSizeSpan;
 import android.text.style.ReplacementSpan;
@@ -40,10 +40,14 @@ import net.gsantner.opoc.wrapper.GsCallback;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -89,10 +93,25 @@ import java.util.regex.Pattern;
  * - Instead consider using a span implementing `StaticSpan`
  * - If StaticSpans are present, the text is reflowed after applying them
  * - This happens once, and not for each span, which is much more efficient
+ * <p>
+ * Viewport mode:
+ * - For very large texts computing all spans takes too long, even in the background
+ * - In viewport mode only blocks of text around the requested region are computed
+ * - Blocks are cached until the text changes, so scrolling back and forth is cheap
+ * - Static spans are not used in viewport mode, as they would reflow the text while scrolling
+ * - Derived classes which scan the text themselves may restrict the scan to getRegionStart/End()
+ * <p>
+ * Line-local highlighting:
+ * - Highlighters whose spans only depend on the text of a single line can declare this via isLineLocal()
+ * - Spans are then cached per line text, and only lines with new text are run through generateSpans()
+ * - generateSpans() must honour getRegionStart/End() in this case
+ * - Spans which depend on the whole text go to generateNonLocalSpans(), which is run on every compute
  */
 public abstract class SyntaxHighlighterBase {
 
     protected final static int LONG_HIGHLIGHTING_DELAY = 2400;
+    protected final static int VIEWPORT_BLOCK_SIZE = 16384;
+    private final static int VIEWPORT_CACHED_BLOCKS = 12;
 
     private static final Pattern PATTERN_TAB = Pattern.compile("\t");
 
@@ -112,6 +131,15 @@ public abstract class SyntaxHighlighterBase {
     // All exceptions will be caught and handled
     protected abstract void generateSpans();
 
+    // Return true if all spans of generateSpans() depend only on the text of the line they are in
+    protected boolean isLineLocal() {
+        return false;
+    }
+
+    // Spans covering more than a line. Only called in addition to generateSpans() for line-local highlighters
+    protected void generateNonLocalSpans() {
+    }
+
     public int getHighlightingDelay() {
         return _delay;
     }
@@ -141,6 +169,10 @@ public abstract class SyntaxHighlighterBase {
         if (paint != null) {
             _tabSize = (int) (_appSettings.getTabWidth() * paint.measureText(" "));
         }
+        clearBlockCache();
+        synchronized (_lineCacheLock) {
+            _lineCache = new HashMap<>();
+        }
         return this;
     }
 
@@ -187,6 +219,20 @@ public abstract class SyntaxHighlighterBase {
     private boolean _staticApplied = false;
     private int _fixupAfter = -1, _fixupDelta = 0;
 
+    // Viewport mode
+    private boolean _viewportMode = false;
+    private int _regionStart = 0, _regionEnd = -1; // Region currently generated, end -1 = whole text
+    private int[] _bufferRegion = new int[]{0, 0}, _computedRegion = new int[]{0, 0};
+    private final AtomicInteger _textVersion = new AtomicInteger();
+    private Map<String, List<SpanGroup>> _lineCache = new HashMap<>(); // Line text -> spans relative to line start, never modified once set
+    private final Object _lineCacheLock = new Object(); // Highlighting is computed on the UI thread and in the background
+    private final Map<Integer, List<SpanGroup>> _blockCache = new LinkedHashMap<Integer, List<SpanGroup>>(VIEWPORT_CACHED_BLOCKS + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, List<SpanGroup>> eldest) {
+            return size() > VIEWPORT_CACHED_BLOCKS;
+        }
+    };
+
     protected Spannable _spannable;
     protected final AppSettings _appSettings;
 
@@ -264,11 +310,47 @@ public abstract class SyntaxHighlighterBase {
             _groups.clear();
             _appliedDynamic.clear();
             _spannable = spannable;
+            clearBlockCache();
         }
 
         return this;
     }
 
+    /**
+     * Enable or disable viewport mode. In viewport mode only the region passed to
+     * {@link #compute(int[])} (extended to whole blocks) is highlighted.
+     *
+     * @param enabled Whether to use viewport mode
+     * @return this
+     */
+    public SyntaxHighlighterBase setViewportMode(final boolean enabled) {
+        if (enabled != _viewportMode) {
+            _viewportMode = enabled;
+            clearBlockCache();
+        }
+        return this;
+    }
+
+    public boolean isViewportMode() {
+        return _viewportMode;
+    }
+
+    /**
+     * Check if the computed spans cover the region [start, end).
+     * Always true if not in viewport mode, as then everything is computed.
+     */
+    public boolean isComputed(final int[] region) {
+        return !_viewportMode || region == null || region.length < 2 ||
+                (region[0] >= _computedRegion[0] && region[1] <= _computedRegion[1]);
+    }
+
+    private void clearBlockCache() {
+        _textVersion.incrementAndGet();
+        synchronized (_blockCache) {
+            _blockCache.clear();
+        }
+    }
+
     // Get currently attached spannable
     public Spannable getSpannable() {
         return _spannable;
@@ -294,6 +376,7 @@ public abstract class SyntaxHighlighterBase {
      * @return this
      */
     public SyntaxHighlighterBase fixup(final int after, final int delta) {
+        clearBlockCache();
         if (_fixupAfter == -1) {
             _fixupAfter = after;
             _fixupDelta = delta;
@@ -409,6 +492,10 @@ public abstract class SyntaxHighlighterBase {
         return compute().setComputed();
     }
 
+    public final SyntaxHighlighterBase recompute(@Nullable final int[] region) {
+        return compute(region).setComputed();
+    }
+
     /**
      * Make computed spans current. References to existing spans will be lost.
      * Caller is responsible for calling 'clear()' before this, if necessary
@@ -421,6 +508,7 @@ public abstract class SyntaxHighlighterBase {
         _staticApplied = false;
         _groups.addAll(_groupBuffer);
         _groupBuffer.clear();
+        _computedRegion = _bufferRegion;
         clearFixup();
         return this;
     }
@@ -432,23 +520,228 @@ public abstract class SyntaxHighlighterBase {
      * @return this
      */
     public final SyntaxHighlighterBase compute() {
+        return compute(null);
+    }
+
+    /**
+     * Compute highlighting spans to a buffer.
+     * The buffer is not made current until one calls 'setComputed'
+     *
+     * @param region Region [start, end) which must be highlighted. Only used in viewport mode.
+     * @return this
+     */
+    public final SyntaxHighlighterBase compute(@Nullable final int[] region) {
         _groupBuffer.clear();
 
-        if (TextUtils.isEmpty(_spannable)) {
+        if (_spannable == null || _spannable.length() == 0) {
+            _bufferRegion = new int[]{0, 0};
             return this;
         }
 
-        // Highlighting cannot generate exceptions!
+        final int length = _spannable.length();
+        if (!_viewportMode || region == null || region.length < 2) {
+            if (isLineLocal()) {
+                computeLineLocal();
+                runSafely(this::generateNonLocalSpans);
+            } else {
+                generateRegion(0, -1);
+            }
+            _bufferRegion = new int[]{0, length};
+        } else {
+            final int version = _textVersion.get();
+            final int regionStart = Math.max(0, Math.min(region[0], length));
+            int first = regionStart / VIEWPORT_BLOCK_SIZE;
+            if (first > 0 && getBlockStart(first) > regionStart) {
+                // The block starts at the next line start, the region starts in the line before it
+                first--;
+            }
+            final int last = Math.max(0, Math.min(region[1], length)) / VIEWPORT_BLOCK_SIZE;
+            for (int block = first; block <= last; block++) {
+                List<SpanGroup> groups;
+                synchronized (_blockCache) {
+                    groups = _blockCache.get(block);
+                }
+
+                if (groups == null) {
+                    final int start = getBlockStart(block), end = getBlockStart(block + 1);
+                    final int offset = _groupBuffer.size();
+                    generateRegion(start, end);
+
+                    // Keep groups ending in this block, so that each group is owned by exactly one block
+                    groups = new ArrayList<>();
+                    for (int i = offset; i < _groupBuffer.size(); i++) {
+                        final SpanGroup group = _groupBuffer.get(i);
+                        final int owner = getOwnerPosition(group);
+                        if (!group.isStatic && owner >= start && owner < end) {
+                            groups.add(group);
+                        }
+                    }
+                    _groupBuffer.subList(offset, _groupBuffer.size()).clear();
+
+                    synchronized (_blockCache) {
+                        if (version == _textVersion.get()) {
+                            _blockCache.put(block, groups);
+                        }
+                    }
+                }
+                _groupBuffer.addAll(groups);
+            }
+            _bufferRegion = new int[]{getBlockStart(first), getBlockStart(last + 1)};
+        }
+
+        Collections.sort(_groupBuffer); // Dramatically improves performance
+        return this;
+    }
+
+    // Spans of lines with unchanged text are reused, runs of changed lines are generated together
+    private void computeLineLocal() {
+        final int length = _spannable.length();
+        final Map<String, List<SpanGroup>> previous, current = new HashMap<>();
+        synchronized (_lineCacheLock) {
+            previous = _lineCache;
+        }
+        final List<Integer> runLines = new ArrayList<>(); // Starts of changed lines in the current run
+
+        for (int lineStart = 0; lineStart < length; ) {
+            final int nl = indexOf(_spannable, '\n', lineStart);
+            final int next = nl < 0 ? length : nl + 1;
+            final String line = substring(_spannable, lineStart, next);
+
+            // Span objects can only be used once, so a repeated line with spans is generated again
+            List<SpanGroup> cached = previous.get(line);
+            if (cached != null && !cached.isEmpty() && current.containsKey(line)) {
+                cached = null;
+            }
+            if (cached != null) {
+                generateLines(runLines, lineStart, current);
+                for (final SpanGroup group : cached) {
+                    _groupBuffer.add(new SpanGroup(group.span, group.start + lineStart, group.end + lineStart, group.type));
+                }
+                current.put(line, cached);
+            } else {
+                runLines.add(lineStart);
+            }
+            lineStart = next;
+        }
+        generateLines(runLines, length, current);
+
+        synchronized (_lineCacheLock) {
+            // Not stored if the cache was cleared in the meantime, e.g. by configure()
+            if (_lineCache == previous) {
+                _lineCache = current;
+            }
+        }
+    }
+
+    private void generateLines(final List<Integer> lineStarts, final int end, final Map<String, List<SpanGroup>> cache) {
+        if (lineStarts.isEmpty()) {
+            return;
+        }
+
+        final int offset = _groupBuffer.size();
+        generateRegion(lineStarts.get(0), end);
+
+        // Groups owned by lines outside of the run (e.g. ending at the preceding line break)
+        // were already added for those lines and are dropped
+        final List<SpanGroup> generated = new ArrayList<>(_groupBuffer.subList(offset, _groupBuffer.size()));
+        _groupBuffer.subList(offset, _groupBuffer.size()).clear();
+
+        final List<List<SpanGroup>> lines = new ArrayList<>();
+        for (int i = 0; i < lineStarts.size(); i++) {
+            lines.add(new ArrayList<>());
+        }
+        for (final SpanGroup group : generated) {
+            final int owner = getOwnerPosition(group);
+            if (owner < lineStarts.get(0) || (owner >= end && end < _spannable.length())) {
+                continue;
+            }
+            int line = Collections.binarySearch(lineStarts, owner);
+            line = line >= 0 ? line : (-line - 2);
+            final int lineStart = lineStarts.get(line);
+            lines.get(line).add(new SpanGroup(group.span, group.start - lineStart, group.end - lineStart, group.type));
+            _groupBuffer.add(group);
+        }
+
+        for (int i = 0; i < lineStarts.size(); i++) {
+            final int lineStart = lineStarts.get(i);
+            final int lineEnd = i + 1 < lineStarts.size() ? lineStarts.get(i + 1) : end;
+            final String line = substring(_spannable, lineStart, lineEnd);
+            if (!cache.containsKey(line)) {
+                cache.put(line, lines.get(i));
+            }
+        }
+        lineStarts.clear();
+    }
+
+    // A group belongs to the line / block its last character is in. Matches may start at the preceding line break.
+    private static int getOwnerPosition(final SpanGroup group) {
+        return group.end > group.start ? group.end - 1 : group.start;
+    }
+
+    private void generateRegion(final int start, final int end) {
+        // The preceding line break is included, for patterns matching the start of a line with it
+        _regionStart = Math.max(0, start - 1);
+        _regionEnd = end;
+        try {
+            runSafely(this::generateSpans);
+        } finally {
+            _regionStart = 0;
+            _regionEnd = -1;
+        }
+    }
+
+    // Highlighting cannot generate exceptions!
+    private void runSafely(final GsCallback.a0 action) {
         try {
-            generateSpans();
-            Collections.sort(_groupBuffer); // Dramatically improves performance
+            action.callback();
         } catch (Exception ex) {
             Log.w(getClass().getName(), ex);
         } catch (Error er) {
             Log.w(getClass().getName(), er);
         }
+    }
 
-        return this;
+    // Blocks start at the beginning of a line, unless the line is longer than a block
+    private int getBlockStart(final int block) {
+        final int length = _spannable.length();
+        final int pos = block * VIEWPORT_BLOCK_SIZE;
+        if (pos <= 0 || pos >= length) {
+            return Math.max(0, Math.min(pos, length));
+        }
+        final int nl = indexOf(_spannable, '\n', pos - 1);
+        return (nl < 0 || nl - pos >= VIEWPORT_BLOCK_SIZE) ? pos : nl + 1;
+    }
+
+    // Plain CharSequence access instead of TextUtils, so that computing spans can be unit tested
+    private static int indexOf(final CharSequence text, final char ch, final int from) {
+        for (int i = Math.max(0, from); i < text.length(); i++) {
+            if (text.charAt(i) == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String substring(final CharSequence text, final int start, final int end) {
+        if (text instanceof GetChars) {
+            final char[] chars = new char[end - start];
+            ((GetChars) text).getChars(start, end, chars, 0);
+            return new String(chars);
+        }
+        return text.subSequence(start, end).toString();
+    }
+
+    /**
+     * Start of the region spans are currently generated for. Spans outside of the region are
+     * not required, derived classes scanning the text themselves may restrict their scan to it.
+     */
+    protected final int getRegionStart() {
+        return _regionEnd >= 0 ? _regionStart : 0;
+    }
+
+    // End of the region spans are currently generated for, see getRegionStart()
+    protected final int getRegionEnd() {
+        return _regionEnd >= 0 ? _regionEnd : _spannable.length();
     }
 
     //
@@ -472,6 +765,9 @@ public abstract class SyntaxHighlighterBase {
             groupsToMatch = new int[]{0};
         }
         final Matcher m = pattern.matcher(_spannable);
+        if (_regionEnd >= 0) {
+            m.region(_regionStart, _regionEnd).useTransparentBounds(true).useAnchoringBounds(false);
+        }
 
         while (m.find()) {
             final Object span = creator.callback(m);
@@ -28,6 +28,7 @@ import net.gsantner.markor.BuildConfig;
 import net.gsantner.markor.R;
 import net.gsantner.markor.activity.MarkorBaseActivity;
 import net.gsantner.markor.format.FormatRegistry;
+import net.gsantner.markor.format.todotxt.TodoTxtArchive;
 import net.gsantner.markor.util.MarkorContextUtils;
 import net.gsantner.markor.util.ShortcutUtils;
 import net.gsantner.opoc.format.GsTextUtils;
@@ -171,6 +172,11 @@ public class AppSettings extends GsSharedPreferencesPropertyBackend {
         return getBool(R.string.pref_key__is_highlighting_activated, true);
     }
 
+    // Texts of at least this length are only highlighted around the visible region
+    public int getHighlightingViewportModeMinLength() {
+        return _isDeviceGoodHardware ? 100000 : 35000;
+    }
+
     public boolean isLineNumbersEnabled() {
         return getBool(R.string.pref_key__enable_line_numbers, false);
     }
@@ -363,6 +369,14 @@ public class AppSettings extends GsSharedPreferencesPropertyBackend {
         return getString(R.string.pref_key__todotxt__last_used_archive_filename, "todo.archive.txt");
     }
 
+    public String getTodoArchiveRotation() {
+        return getString(R.string.pref_key__todotxt__archive_rotation, TodoTxtArchive.ROTATE_NONE);
+    }
+
+    public String getTodoWidgetQuery() {
+        return getString(R.string.pref_key__todotxt__widget_query, "").trim();
+    }
+
     public boolean isEditorStartOnBotttom() {
         return getBool(R.string.pref_key__editor_start_editing_on_bottom, true);
     }
@@ -383,21 +397,30 @@ public class AppSettings extends GsSharedPreferencesPropertyBackend {
         if (!listFileInRecents(file)) {
             return;
         }
-        final String path = GsFileUtils.getPath(file);
         if (!file.equals(getTodoFile()) && !file.equals(getQuickNoteFile())) {
-            ArrayList<String> recent = getRecentDocuments();
-            recent.add(0, path);
-            recent.remove(GsFileUtils.getPath(getTodoFile()));
-            recent.remove(GsFileUtils.getPath(getQuickNoteFile()));
-            recent.remove("");
-            recent.remove(null);
-
-            setInt(path, getInt(path, 0, _prefCache) + 1, _prefCache);
-            setRecentDocuments(recent);
+            getRecentFilesStore().addAccess(GsFileUtils.getPath(file));
         }
         ShortcutUtils.setShortcuts(_context);
     }
 
+    // Recent and popular documents. The lists which were stored in preferences before are imported once and then removed.
+    private RecentFilesStore getRecentFilesStore() {
+        final RecentFilesStore store = RecentFilesStore.get(_context);
+        if (contains(rstr(R.string.pref_key__recent_documents)) || contains(rstr(R.string.pref_key__popular_documents))) {
+            final Set<String> paths = new LinkedHashSet<>(getStringList(R.string.pref_key__recent_documents));
+            paths.addAll(getStringList(R.string.pref_key__popular_documents));
+            final List<Integer> counts = new ArrayList<>();
+            for (final String path : paths) {
+                counts.add(getInt(path, 0, _prefCache));
+                remove(path, _prefCache);
+            }
+            store.addAll(new ArrayList<>(paths), counts);
+            remove(R.string.pref_key__recent_documents);
+            remove(R.string.pref_key__popular_documents);
+        }
+        return store;
+    }
+
     public void setFavouriteFiles(final Collection<File> files) {
         final Set<String> set = new LinkedHashSet<>();
         for (final File f : files) {
@@ -635,37 +658,12 @@ public class AppSettings extends GsSharedPreferencesPropertyBackend {
         setBool(PREF_PREFIX_HIGHLIGHT_STATE + path, state);
     }
 
-    public boolean getDocumentHighlightState(final String path, final CharSequence chars) {
-        final boolean lengthOk = chars != null && chars.length() < (_isDeviceGoodHardware ? 100000 : 35000);
-        return getBool(PREF_PREFIX_HIGHLIGHT_STATE + path, lengthOk && isHighlightingEnabled());
-    }
-
-    private List<String> getPopularDocumentsSorted() {
-        List<String> popular = getRecentDocuments();
-        Collections.sort(popular, (o1, o2) -> Integer.compare(getInt(o1, 0, _prefCache), getInt(o2, 0, _prefCache)));
-        return popular;
-    }
-
-    public void setPopularDocuments(List<String> v) {
-        limitListTo(v, 20, true);
-        setStringList(R.string.pref_key__popular_documents, v, _prefApp);
-    }
-
-    public void setRecentDocuments(List<String> v) {
-        limitListTo(v, 20, true);
-        setStringList(R.string.pref_key__recent_documents, v, _prefApp);
-        setPopularDocuments(getPopularDocumentsSorted());
+    public boolean getDocumentHighlightState(final String path) {
+        return getBool(PREF_PREFIX_HIGHLIGHT_STATE + path, isHighlightingEnabled());
     }
 
     public ArrayList<String> getRecentDocuments() {
-        final ArrayList<String> list = getStringList(R.string.pref_key__recent_documents);
-        for (int i = 0; i < list.size(); i++) {
-            if (!new File(list.get(i)).isFile()) {
-                list.remove(i);
-                i--;
-            }
-        }
-        return list;
+        return new ArrayList<>(getRecentFilesStore().getRecent());
     }
 
     public ArrayList<File> getAsFileList(List<String> list) {
@@ -688,15 +686,23 @@ public class AppSettings extends GsSharedPreferencesPropertyBackend {
     }
 
     public Set<File> getFavouriteFiles() {
-        return getFileSet(getStringList(R.string.pref_key__favourite_files));
+        return getRecentFilesStore().filterExisting(getStringList(R.string.pref_key__favourite_files));
     }
 
     public Set<File> getRecentFiles() {
-        return getFileSet(getStringList(R.string.pref_key__recent_documents));
+        return getAsFileSet(getRecentFilesStore().getRecent());
     }
 
     public Set<File> getPopularFiles() {
-        return getFileSet(getStringList(R.string.pref_key__popular_documents));
+        return getAsFileSet(getRecentFilesStore().getPopular());
+    }
+
+    private static Set<File> getAsFileSet(final List<String> paths) {
+        final Set<File> set = new LinkedHashSet<>();
+        for (final String path : paths) {
+            set.add(new File(path));
+        }
+        return set;
     }
 
     public String getInjectedHeader() {
@@ -888,11 +894,7 @@ public class AppSettings extends GsSharedPreferencesPropertyBackend {
         setBool(GsFileUtils.getPath(file) + "_list_in_recents", value);
 
         if (!value) {
-            ArrayList<String> recent = getRecentDocuments();
-            if (recent.contains(GsFileUtils.getPath(file))) {
-                recent.remove(GsFileUtils.getPath(file));
-                setRecentDocuments(recent);
-            }
+            getRecentFilesStore().remove(GsFileUtils.getPath(file));
         }
     }
 
@@ -30,15 +30,23 @@ import net.gsantner.markor.util.MarkorContextUtils;
 import net.gsantner.opoc.util.GsContextUtils;
 import net.gsantner.opoc.util.GsFileUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Locale;
 
 import other.de.stanetz.jpencconverter.JavaPasswordbasedCryption;
@@ -46,6 +54,9 @@ import other.de.stanetz.jpencconverter.JavaPasswordbasedCryption;
 @SuppressWarnings({"WeakerAccess", "UnusedReturnValue", "unused", "UnnecessaryLocalVariable"})
 public class Document implements Serializable {
     private static final int MAX_TITLE_EXTRACTION_LENGTH = 25;
+    // Encrypted documents of at least this many chars are encrypted in segments while writing
+    private static final int ENCRYPTION_STREAMING_MIN_LENGTH = 512 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 8192;
 
     private static final String MOD_PREF_NAME = "DOCUMENT_MOD_TIMES";
     public static final String EXTRA_DOCUMENT = "EXTRA_DOCUMENT"; // Document
@@ -192,17 +203,17 @@ public class Document implements Serializable {
             content = "";
         } else if (isEncrypted() && (pw = getPasswordWithWarning(context)) != null) {
             try {
-                final byte[] encryptedContext = GsFileUtils.readCloseStreamWithSize(new FileInputStream(file), (int) file.length());
-                if (encryptedContext.length > JavaPasswordbasedCryption.Version.NAME_LENGTH) {
-                    content = JavaPasswordbasedCryption.getDecryptedText(encryptedContext, pw);
+                if (file.length() > JavaPasswordbasedCryption.Version.NAME_LENGTH) {
+                    // Decrypted while reading, the encrypted content is not kept in memory as a whole
+                    content = readDecrypted(file, pw);
                 } else {
-                    content = new String(encryptedContext, StandardCharsets.UTF_8);
+                    content = new String(GsFileUtils.readCloseStreamWithSize(new FileInputStream(file), (int) file.length()), StandardCharsets.UTF_8);
                 }
             } catch (FileNotFoundException e) {
                 Log.e(Document.class.getName(), "loadDocument:  File " + file + " not found.");
                 content = "";
             } catch (JavaPasswordbasedCryption.EncryptionFailedException |
-                     IllegalArgumentException e) {
+                     IllegalArgumentException | IOException e) {
                 Toast.makeText(context, R.string.could_not_decrypt_file_content_wrong_password_or_is_the_file_maybe_not_encrypted, Toast.LENGTH_LONG).show();
                 Log.e(Document.class.getName(), "loadDocument:  decrypt failed for File " + file + ". " + e.getMessage(), e);
                 content = "";
@@ -243,6 +254,31 @@ public class Document implements Serializable {
         }
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    private static String readDecrypted(final File file, final char[] pw) throws IOException {
+        try (final Reader reader = new InputStreamReader(JavaPasswordbasedCryption.decryptingInputStream(new FileInputStream(file), pw), StandardCharsets.UTF_8)) {
+            final StringBuilder sb = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE - 8));
+            final char[] buffer = new char[STREAM_BUFFER_SIZE];
+            int count;
+            while ((count = reader.read(buffer)) > 0) {
+                sb.append(buffer, 0, count);
+            }
+            return sb.toString();
+        }
+    }
+
+    // Writes content as UTF-8 in chunks, without creating a copy of the whole content
+    private static void writeChars(final OutputStream os, final CharSequence content) throws IOException {
+        final Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        final char[] buffer = new char[STREAM_BUFFER_SIZE];
+        for (int start = 0; start < content.length(); start += buffer.length) {
+            final int end = Math.min(content.length(), start + buffer.length);
+            TextUtils.getChars(content, start, end, buffer, 0);
+            writer.write(buffer, 0, end - start);
+        }
+        writer.flush();
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.M)
     private static char[] getPasswordWithWarning(final Context context) {
         final char[] pw = AppSettings.get(context).getDefaultPassword();
@@ -292,18 +328,38 @@ public class Document implements Serializable {
         }
 
         boolean success;
+        char[] pw = null;
         try {
-            final char[] pw;
-            final byte[] contentAsBytes;
+            final ContentWriter writer;
+            final long minLength;
             if (isEncrypted() && (pw = getPasswordWithWarning(context)) != null) {
-                contentAsBytes = new JavaPasswordbasedCryption(Build.VERSION.SDK_INT, new SecureRandom()).encrypt(content.toString(), pw);
+                final JavaPasswordbasedCryption.Version version = JavaPasswordbasedCryption.getVersionForAndroid(Build.VERSION.SDK_INT);
+                if (content.length() >= ENCRYPTION_STREAMING_MIN_LENGTH) {
+                    // Large documents are encrypted while writing. Small ones keep the single block format, readable by more tools.
+                    final JavaPasswordbasedCryption cryption = new JavaPasswordbasedCryption(version.toSegmented(), new SecureRandom());
+                    final char[] password = pw;
+                    writer = os -> {
+                        // Each write attempt consumes (wipes) the password
+                        try (final OutputStream encrypting = cryption.encryptingOutputStream(os, password.clone())) {
+                            writeChars(encrypting, content);
+                        }
+                    };
+                    minLength = content.length();
+                } else {
+                    final byte[] contentAsBytes = new JavaPasswordbasedCryption(version, new SecureRandom()).encrypt(content.toString(), pw);
+                    writer = os -> os.write(contentAsBytes);
+                    minLength = contentAsBytes.length;
+                }
             } else {
-                contentAsBytes = content.toString().getBytes();
+                final byte[] contentAsBytes = content.toString().getBytes();
+                writer = os -> os.write(contentAsBytes);
+                minLength = contentAsBytes.length;
             }
 
             cu = cu != null ? cu : new MarkorContextUtils(context);
             final boolean isContentResolverProxyFile = cu.isContentResolverProxyFile(file);
             if (cu.isUnderStorageAccessFolder(context, file, false) || isContentResolverProxyFile) {
+                final JavaPasswordbasedCryption.EncryptionFailedException[] encryptionFailed = {null};
                 cu.writeFile(context, file, false, (fileOpened, fos) -> {
                     try {
                         if (_fileInfo != null && _fileInfo.hasBom) {
@@ -311,36 +367,45 @@ public class Document implements Serializable {
                             fos.write(0xBB);
                             fos.write(0xBF);
                         }
-                        fos.write(contentAsBytes);
+                        writer.write(fos);
 
                         // Also overwrite content resolver proxy file in addition to writing back to the origin
                         if (isContentResolverProxyFile) {
-                            GsFileUtils.writeFile(file, contentAsBytes, _fileInfo);
+                            writeFile(writer);
                         }
 
+                    } catch (JavaPasswordbasedCryption.EncryptionFailedException e) {
+                        encryptionFailed[0] = e;
                     } catch (Exception e) {
                         Log.i(Document.class.toString(), e.getMessage());
                     }
                 });
+                if (encryptionFailed[0] != null) {
+                    throw encryptionFailed[0];
+                }
                 success = true;
             } else {
                 // Try write 2x
-                success = GsFileUtils.writeFile(file, contentAsBytes, _fileInfo);
-                if (!success || fileBytes() < contentAsBytes.length) {
-                    success = GsFileUtils.writeFile(file, contentAsBytes, _fileInfo);
+                success = writeFile(writer);
+                if (!success || fileBytes() < minLength) {
+                    success = writeFile(writer);
                 }
             }
 
             final long size = fileBytes();
-            if (fileBytes() < contentAsBytes.length) {
+            if (fileBytes() < minLength) {
                 success = false;
-                Log.i(Document.class.getName(), "File write failed; size = " + size + "; length = " + contentAsBytes.length + "; file=" + file);
+                Log.i(Document.class.getName(), "File write failed; size = " + size + "; length = " + minLength + "; file=" + file);
             }
 
         } catch (JavaPasswordbasedCryption.EncryptionFailedException e) {
             Log.e(Document.class.getName(), "writeContent:  encrypt failed for File " + path + ". " + e.getMessage(), e);
             Toast.makeText(context, R.string.could_not_encrypt_file_content_the_file_was_not_saved, Toast.LENGTH_LONG).show();
             success = false;
+        } finally {
+            if (pw != null) {
+                Arrays.fill(pw, Character.MIN_VALUE);
+            }
         }
 
         if (success) {
@@ -354,6 +419,29 @@ public class Document implements Serializable {
         return success;
     }
 
+    private interface ContentWriter {
+        void write(OutputStream os) throws IOException;
+    }
+
+    // Like GsFileUtils.writeFile, with content written by writer. Encryption failures are passed on to the caller.
+    private boolean writeFile(final ContentWriter writer) {
+        try (final OutputStream os = new BufferedOutputStream(new FileOutputStream(file, false), STREAM_BUFFER_SIZE)) {
+            if (_fileInfo != null && _fileInfo.hasBom) {
+                os.write(0xEF);
+                os.write(0xBB);
+                os.write(0xBF);
+            }
+            writer.write(os);
+            os.flush();
+            return true;
+        } catch (JavaPasswordbasedCryption.EncryptionFailedException e) {
+            throw e;
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            return false;
+        }
+    }
+
     public static String getMaskedContent(final String text) {
         final String httpToken = "§$§$§$§$";
         return text
@@ -0,0 +1,264 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import net.gsantner.opoc.util.GsFileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory store of recently opened documents and how often they were opened, shared by
+ * the file browser, widgets, shortcuts and dialogs.
+ * <p>
+ * The store is loaded once and written back as one small binary file per change, in the background.
+ * Whether the documents still exist is checked lazily, in one pass when a list is requested, and the
+ * result is kept for {@link #VALIDATE_INTERVAL_MS}. Documents which don't exist are left out of the lists,
+ * but are kept in the store, as they may come back (e.g. a removed SD card).
+ */
+public final class RecentFilesStore {
+    private static final int VERSION = 1;
+    public static final int MAX_RECENT = 20;
+    private static final int MAX_ENTRIES = 200;
+    static final long VALIDATE_INTERVAL_MS = 10 * 1000;
+
+    private static RecentFilesStore _instance;
+    private static final ExecutorService _executor = Executors.newSingleThreadExecutor();
+
+    private static class Entry {
+        final String path;
+        int accessCount;
+        long lastAccess;
+
+        Entry(final String path, final int accessCount, final long lastAccess) {
+            this.path = path;
+            this.accessCount = accessCount;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final File _storeFile;
+    private final Map<String, Entry> _entries = new HashMap<>();
+    private final Map<String, Boolean> _exists = new HashMap<>();
+    private long _validatedAt = 0;
+    private long _accessCounter = 0;
+    private boolean _persistPending = false;
+
+    RecentFilesStore(final File storeFile) {
+        _storeFile = storeFile;
+        load();
+    }
+
+    public static synchronized RecentFilesStore get(final Context context) {
+        if (_instance == null) {
+            _instance = new RecentFilesStore(new File(context.getApplicationContext().getFilesDir(), "recent_files.bin"));
+        }
+        return _instance;
+    }
+
+    /**
+     * Record that the document was opened. It moves to the front of the recent documents.
+     */
+    public synchronized void addAccess(@NonNull final String path) {
+        Entry entry = _entries.get(path);
+        if (entry == null) {
+            _entries.put(path, entry = new Entry(path, 0, 0));
+        }
+        entry.accessCount++;
+        entry.lastAccess = ++_accessCounter;
+        _exists.put(path, true);
+        trim();
+        schedulePersist();
+    }
+
+    /**
+     * Add documents in the order given, most recent first, with their access counts.
+     * Used once to import entries of an older version.
+     */
+    public synchronized void addAll(@NonNull final List<String> paths, @NonNull final List<Integer> accessCounts) {
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            final String path = paths.get(i);
+            if (path != null && !path.isEmpty() && !_entries.containsKey(path)) {
+                _entries.put(path, new Entry(path, Math.max(1, accessCounts.get(i)), ++_accessCounter));
+            }
+        }
+        trim();
+        schedulePersist();
+    }
+
+    /**
+     * Remove the document from recent and popular documents
+     */
+    public synchronized void remove(@NonNull final String path) {
+        if (_entries.remove(path) != null) {
+            schedulePersist();
+        }
+    }
+
+    /**
+     * @return Paths of existing documents, most recently opened first
+     */
+    public synchronized List<String> getRecent() {
+        return toPaths(getRecentEntries());
+    }
+
+    /**
+     * @return Paths of the most recent existing documents, most often opened first
+     */
+    public synchronized List<String> getPopular() {
+        final List<Entry> recent = getRecentEntries();
+        Collections.sort(recent, (a, b) -> a.accessCount != b.accessCount ? Integer.compare(b.accessCount, a.accessCount) : Long.compare(b.lastAccess, a.lastAccess));
+        return toPaths(recent);
+    }
+
+    public synchronized int getAccessCount(@NonNull final String path) {
+        final Entry entry = _entries.get(path);
+        return entry != null ? entry.accessCount : 0;
+    }
+
+    /**
+     * @return Existing files of paths, in the given order. Shares the existence checks with the recent documents.
+     */
+    public synchronized Set<File> filterExisting(@NonNull final Collection<String> paths) {
+        invalidateOutdated();
+        final Set<File> files = new LinkedHashSet<>();
+        for (final String path : paths) {
+            if (exists(path)) {
+                files.add(new File(path));
+            }
+        }
+        return files;
+    }
+
+    private static List<String> toPaths(final List<Entry> entries) {
+        final List<String> paths = new ArrayList<>(entries.size());
+        for (final Entry entry : entries) {
+            paths.add(entry.path);
+        }
+        return paths;
+    }
+
+    // Up to MAX_RECENT entries of existing documents, most recent first. Only checks as many entries as needed.
+    private List<Entry> getRecentEntries() {
+        invalidateOutdated();
+        final List<Entry> entries = new ArrayList<>(_entries.values());
+        Collections.sort(entries, (a, b) -> Long.compare(b.lastAccess, a.lastAccess));
+        final List<Entry> recent = new ArrayList<>(MAX_RECENT);
+        for (int i = 0; i < entries.size() && recent.size() < MAX_RECENT; i++) {
+            if (exists(entries.get(i).path)) {
+                recent.add(entries.get(i));
+            }
+        }
+        return recent;
+    }
+
+    private void invalidateOutdated() {
+        final long now = System.currentTimeMillis();
+        if (now - _validatedAt > VALIDATE_INTERVAL_MS || now < _validatedAt) {
+            _exists.clear();
+            _validatedAt = now;
+        }
+    }
+
+    private boolean exists(final String path) {
+        Boolean exists = _exists.get(path);
+        if (exists == null) {
+            _exists.put(path, exists = GsFileUtils.exists(new File(path)));
+        }
+        return exists;
+    }
+
+    // Forget the least recently opened entries
+    private void trim() {
+        if (_entries.size() > MAX_ENTRIES) {
+            final List<Entry> entries = new ArrayList<>(_entries.values());
+            Collections.sort(entries, (a, b) -> Long.compare(b.lastAccess, a.lastAccess));
+            for (final Entry entry : entries.subList(MAX_ENTRIES, entries.size())) {
+                _entries.remove(entry.path);
+            }
+        }
+    }
+
+    // Changes in quick succession are written once
+    private void schedulePersist() {
+        if (!_persistPending) {
+            _persistPending = true;
+            _executor.execute(this::persist);
+        }
+    }
+
+    void persist() {
+        final List<Entry> entries;
+        synchronized (this) {
+            _persistPending = false;
+            entries = new ArrayList<>(_entries.values());
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(a.lastAccess, b.lastAccess));
+
+        final File parent = _storeFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            return;
+        }
+        final File temp = new File(_storeFile.getPath() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (final Entry entry : entries) {
+                out.writeUTF(entry.path);
+                out.writeInt(entry.accessCount);
+            }
+        } catch (Exception e) {
+            Log.d(RecentFilesStore.class.getName(), e.toString());
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(_storeFile)) {
+            temp.delete();
+        }
+    }
+
+    // Entries are stored least recent first, the order gives the access order back
+    private void load() {
+        if (!_storeFile.isFile()) {
+            return;
+        }
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(_storeFile)))) {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                _entries.put(path, new Entry(path, in.readInt(), ++_accessCounter));
+            }
+        } catch (Exception e) {
+            Log.d(RecentFilesStore.class.getName(), e.toString());
+            _entries.clear();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.widget;
+
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.gsantner.markor.R;
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
+import net.gsantner.opoc.util.GsFileTreeIndex;
+import net.gsantner.opoc.util.GsFileUtils;
+import net.gsantner.opoc.wrapper.GsCallback;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorted listings of the folders shown by files widgets, shared by all widgets showing the same folder.
+ * <p>
+ * A listing is read once and kept until the folder is reported as changed, the modification time of the
+ * folder changed, or the sort order changed. On a change, the widgets of the folder are asked to reload,
+ * so widgets don't have to list and sort the folder on every refresh.
+ * <p>
+ * Folders watched by the {@link GsFileTreeIndex} are listed from the index, and changes are taken from the
+ * index change listener, i.e. only after the index applied them. Other folders are watched by a
+ * {@link FileObserver} of their own and listed from disk.
+ * Entries are snapshots, e.g. whether an entry is a folder is known without asking the filesystem again.
+ */
+public final class FilesWidgetListingCache {
+    private static final int WATCH_MASK = FileObserver.CREATE | FileObserver.DELETE | FileObserver.MOVED_FROM
+            | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    // Changes in quick succession (e.g. copying many files) update widgets once
+    private static final long NOTIFY_DELAY_MS = 500;
+
+    private static class Listing {
+        final File folder;
+        final Set<Integer> widgetIds = new HashSet<>();
+        FileObserver observer;
+        GsFileTreeIndex index; // Set if changes are taken from the index instead of observer
+        boolean stale = true;
+        long folderModTime;
+        String sortKey;
+        List<GsFileEntry> entries = Collections.emptyList();
+
+        Listing(final File folder) {
+            this.folder = folder;
+        }
+    }
+
+    private static final Map<File, Listing> _listings = new HashMap<>();
+    private static final Map<Integer, File> _widgetFolders = new HashMap<>();
+    private static final Handler _handler = new Handler(Looper.getMainLooper());
+    private static final GsCallback.a1<File> _indexListener = FilesWidgetListingCache::onIndexChanged;
+    private static GsFileTreeIndex _listenedIndex;
+    private static Context _context;
+
+    private FilesWidgetListingCache() {
+    }
+
+    /**
+     * Get the sorted listing of a folder for a widget. Listed only if nothing valid is cached.
+     * Changes of the folder are watched as long as a widget shows it.
+     *
+     * @param widgetId Id of the widget, a widget showing another folder before is moved to this folder
+     * @param folder   Folder shown by the widget
+     * @param order    Sort order, which also tells whether to list dot files
+     * @return Immutable, sorted snapshots of the children of folder
+     */
+    public static synchronized List<GsFileEntry> get(@NonNull final Context context, final int widgetId, @NonNull final File folder, @NonNull final GsFileUtils.SortOrder order) {
+        _context = context.getApplicationContext();
+        final Listing listing = attach(widgetId, folder);
+        watch(listing);
+        final String sortKey = order.toString();
+        final long folderModTime = folder.lastModified();
+        if (listing.stale || listing.folderModTime != folderModTime || !sortKey.equals(listing.sortKey)) {
+            listing.stale = false;
+            listing.folderModTime = folderModTime;
+            listing.sortKey = sortKey;
+            listing.entries = Collections.unmodifiableList(sort(readListing(folder, listing.index, order), order));
+        }
+        return listing.entries;
+    }
+
+    /**
+     * Sorted snapshots of files which are not children of one folder, e.g. recent files. Not cached.
+     */
+    public static List<GsFileEntry> getEntries(@NonNull final Collection<File> files, @NonNull final GsFileUtils.SortOrder order) {
+        final List<GsFileEntry> entries = new ArrayList<>(files.size());
+        for (final File file : files) {
+            entries.add(readEntry(file));
+        }
+        return sort(entries, order);
+    }
+
+    /**
+     * Forget the widgets, e.g. when they were removed. Folders shown by no widget anymore are not watched anymore.
+     */
+    public static synchronized void release(final int... widgetIds) {
+        for (final int widgetId : widgetIds) {
+            final File folder = _widgetFolders.remove(widgetId);
+            final Listing listing = folder != null ? _listings.get(folder) : null;
+            if (listing != null) {
+                listing.widgetIds.remove(widgetId);
+                if (listing.widgetIds.isEmpty()) {
+                    unwatch(listing);
+                    _listings.remove(folder);
+                }
+            }
+        }
+    }
+
+    // Caller holds the lock
+    private static Listing attach(final int widgetId, final File folder) {
+        final File previous = _widgetFolders.get(widgetId);
+        if (previous != null && !previous.equals(folder)) {
+            release(widgetId);
+        }
+        _widgetFolders.put(widgetId, folder);
+
+        Listing listing = _listings.get(folder);
+        if (listing == null) {
+            _listings.put(folder, listing = new Listing(folder));
+        }
+        listing.widgetIds.add(widgetId);
+        return listing;
+    }
+
+    // Caller holds the lock. Switches between index and observer, e.g. once the index is ready.
+    private static void watch(final Listing listing) {
+        final GsFileTreeIndex index = GsFileTreeIndex.getInstance();
+        final boolean useIndex = index != null && index.isWatched(listing.folder);
+        if (useIndex ? listing.index == index : listing.observer != null) {
+            return;
+        }
+
+        unwatch(listing);
+        listing.stale = true;
+        if (useIndex) {
+            if (_listenedIndex != index) {
+                if (_listenedIndex != null) {
+                    _listenedIndex.removeChangeListener(_indexListener);
+                }
+                index.addChangeListener(_indexListener);
+                _listenedIndex = index;
+            }
+            listing.index = index;
+        } else {
+            listing.observer = new FileObserver(listing.folder.getPath(), WATCH_MASK) {
+                @Override
+                public void onEvent(final int event, @Nullable final String path) {
+                    onFolderChanged(listing);
+                }
+            };
+            listing.observer.startWatching();
+        }
+    }
+
+    // Caller holds the lock
+    private static void unwatch(final Listing listing) {
+        if (listing.observer != null) {
+            listing.observer.stopWatching();
+            listing.observer = null;
+        }
+        listing.index = null;
+    }
+
+    // Called by the index after it applied a change of the children of folder
+    private static void onIndexChanged(final File folder) {
+        final List<Listing> changed = new ArrayList<>();
+        synchronized (FilesWidgetListingCache.class) {
+            for (final Listing listing : _listings.values()) {
+                final File shown = listing.folder.getAbsoluteFile();
+                // Removing or renaming the shown folder itself is reported as a change of its parent
+                if (listing.index != null && (folder.equals(shown) || folder.equals(shown.getParentFile()))) {
+                    changed.add(listing);
+                }
+            }
+        }
+        for (final Listing listing : changed) {
+            onFolderChanged(listing);
+        }
+    }
+
+    private static void onFolderChanged(final Listing listing) {
+        synchronized (FilesWidgetListingCache.class) {
+            if (listing.stale) {
+                return;
+            }
+            listing.stale = true;
+        }
+        _handler.postDelayed(() -> notifyWidgets(listing), NOTIFY_DELAY_MS);
+    }
+
+    private static void notifyWidgets(final Listing listing) {
+        final int[] ids;
+        synchronized (FilesWidgetListingCache.class) {
+            ids = new int[listing.widgetIds.size()];
+            int i = 0;
+            for (final Integer id : listing.widgetIds) {
+                ids[i++] = id;
+            }
+        }
+        final AppWidgetManager appWidgetManager = _context != null ? AppWidgetManager.getInstance(_context) : null;
+        if (appWidgetManager != null && ids.length > 0) {
+            appWidgetManager.notifyAppWidgetViewDataChanged(ids, R.id.widget_notes_list);
+        }
+    }
+
+    // Only listings notified by the index read from it, the index may not have applied a change yet
+    // which the observer of a listing already reported
+    private static List<GsFileEntry> readListing(final File folder, @Nullable final GsFileTreeIndex index, final GsFileUtils.SortOrder order) {
+        final List<GsFileEntry> indexed = index != null ? index.list(folder) : null;
+        final List<GsFileEntry> listing = new ArrayList<>();
+        if (indexed != null) {
+            for (final GsFileEntry entry : indexed) {
+                if (order.showDotFiles || !entry.name.startsWith(".")) {
+                    listing.add(entry);
+                }
+            }
+        } else if (folder.canRead()) {
+            final File[] files = folder.listFiles(file -> order.showDotFiles || !file.getName().startsWith("."));
+            if (files != null) {
+                for (final File file : files) {
+                    listing.add(GsFileEntry.read(file));
+                }
+            }
+        }
+        return listing;
+    }
+
+    private static GsFileEntry readEntry(final File file) {
+        final GsFileTreeIndex index = GsFileTreeIndex.getInstance();
+        final GsFileEntry indexed = index != null ? index.get(file) : null;
+        return indexed != null ? indexed : GsFileEntry.read(file);
+    }
+
+    private static List<GsFileEntry> sort(final List<GsFileEntry> entries, final GsFileUtils.SortOrder order) {
+        GsFileUtils.sortFileEntries(entries, order);
+        return entries;
+    }
+}
@@ -2,11 +2,13 @@ package net.gsantner.markor.widget;
 
 import android.content.Context;
 import android.content.Intent;
+import android.util.Pair;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
 import net.gsantner.markor.R;
-import net.gsantner.markor.format.todotxt.TodoTxtTask;
+import net.gsantner.markor.format.todotxt.TodoTxtFilter;
+import net.gsantner.markor.format.todotxt.TodoTxtSnapshot;
 import net.gsantner.markor.model.AppSettings;
 import net.gsantner.markor.model.Document;
 
@@ -18,13 +20,13 @@ public class TodoWidgetRemoteViewsFactory implements RemoteViewsService.RemoteVi
     private final Context _context;
     private final AppSettings _appSettings;
     private final Document _document;
-    private final List<TodoTxtTask> _tasks;
+    private final List<TodoTxtSnapshot.Line> _lines;
 
     public TodoWidgetRemoteViewsFactory(Context context, Intent intent) {
         _context = context;
         _appSettings = AppSettings.get(_context);
         _document = new Document(_appSettings.getTodoFile());
-        _tasks = new ArrayList<>();
+        _lines = new ArrayList<>();
     }
 
     @Override
@@ -32,35 +34,46 @@ public class TodoWidgetRemoteViewsFactory implements RemoteViewsService.RemoteVi
         onDataSetChanged();
     }
 
+    // Only lines changed since the last refresh are parsed, unchanged lines keep their id
     @Override
     public void onDataSetChanged() {
-        _tasks.clear();
-        final String content = _document.loadContent(_context);
-        if (content == null) {
-            return;
+        final TodoTxtSnapshot snapshot = TodoTxtSnapshot.get(_document.file, () -> _document.loadContent(_context));
+        _lines.clear();
+        if (snapshot != null) {
+            _lines.addAll(snapshot.filter(getQuery()));
         }
-        List<TodoTxtTask> tasks = TodoTxtTask.getAllTasks(content);
-        _tasks.addAll(tasks);
+    }
+
+    // The widget query is either the title of a saved todo.txt view, or a query
+    private String getQuery() {
+        final String query = _appSettings.getTodoWidgetQuery();
+        for (final Pair<String, String> saved : TodoTxtFilter.loadSavedFilters(_context)) {
+            if (saved.first.equals(query)) {
+                return saved.second;
+            }
+        }
+        return query;
     }
 
     @Override
     public void onDestroy() {
-        _tasks.clear();
+        _lines.clear();
     }
 
     @Override
     public int getCount() {
-        return _tasks.size();
+        return _lines.size();
     }
 
     @Override
     public RemoteViews getViewAt(int position) {
+        final TodoTxtSnapshot.Line line = _lines.get(position);
         RemoteViews views = new RemoteViews(_context.getPackageName(), R.layout.todo_widget_list_item);
-        views.setTextViewText(R.id.todo_widget_item_text, _tasks.get(position).getDescription());
+        views.setTextViewText(R.id.todo_widget_item_text, line.task.getDescription());
         views.setInt(R.id.todo_widget_item_text, "setTextColor", _appSettings.getEditorForegroundColor());
 
         final Intent fillInIntent = new Intent()
-                .putExtra(Document.EXTRA_FILE_LINE_NUMBER, position);
+                .putExtra(Document.EXTRA_FILE_LINE_NUMBER, line.index);
         views.setOnClickFillInIntent(R.id.todo_widget_item_text, fillInIntent);
 
         return views;
@@ -78,11 +91,11 @@ public class TodoWidgetRemoteViewsFactory implements RemoteViewsService.RemoteVi
 
     @Override
     public long getItemId(int position) {
-        return position;
+        return _lines.get(position).id;
     }
 
     @Override
     public boolean hasStableIds() {
-        return false;
+        return true;
     }
 }
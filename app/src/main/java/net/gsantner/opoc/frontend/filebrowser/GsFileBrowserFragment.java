@@ -331,6 +331,9 @@ public class GsFileBrowserFragment extends GsFragmentBase<GsSharedPreferencesPro
     public void onResume() {
         super.onResume();
         _dopt.listener.onFsViewerConfig(_dopt);
+        if (_dopt.fileIndex != null) {
+            _dopt.fileIndex.reconcileSoon();
+        }
         final File folder = getCurrentFolder();
         final Activity activity = getActivity();
         if (_reloadRequiredOnResume && isVisible() && folder != null && activity != null) {
@@ -414,10 +417,8 @@ public class GsFileBrowserFragment extends GsFragmentBase<GsSharedPreferencesPro
                         R.string.confirm_delete,
                         null,
                         GsCollectionUtils.map(_filesystemViewerAdapter.getCurrentSelection(), File::getName),
-                        () -> new Thread(() -> {
-                            WrMarkorSingleton.getInstance().deleteSelectedItems(currentSelection, getContext());
-                            _recyclerList.post(() -> _filesystemViewerAdapter.reloadCurrentFolder());
-                        }).start()
+                        () -> WrMarkorSingleton.getInstance().deleteSelectedItems(currentSelection, getActivity(),
+                                () -> _filesystemViewerAdapter.reloadCurrentFolder())
                 );
                 return true;
             }
@@ -583,9 +584,9 @@ public class GsFileBrowserFragment extends GsFragmentBase<GsSharedPreferencesPro
             @Override
             public void onFsViewerSelected(String request, File file, Integer lineNumber) {
                 super.onFsViewerSelected(request, file, null);
-                WrMarkorSingleton.getInstance().moveOrCopySelected(files, file, getActivity(), isMove);
+                WrMarkorSingleton.getInstance().moveOrCopySelected(files, file, getActivity(), isMove,
+                        () -> _filesystemViewerAdapter.reloadCurrentFolder());
                 _filesystemViewerAdapter.unselectAll();
-                _filesystemViewerAdapter.reloadCurrentFolder();
             }
 
             @Override
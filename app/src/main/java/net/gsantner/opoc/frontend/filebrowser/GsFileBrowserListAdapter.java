@@ -14,7 +14,7 @@ import android.os.Bundle;
 import android.os.Environment;
 import android.os.FileObserver;
 import android.os.Parcelable;
-import android.text.Spannable;
+import android.text.SpannableString;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.format.DateUtils;
@@ -31,9 +31,12 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.ColorInt;
+import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -41,25 +44,31 @@ import net.gsantner.markor.R;
 import net.gsantner.markor.frontend.textview.TextViewUtils;
 import net.gsantner.opoc.util.GsCollectionUtils;
 import net.gsantner.opoc.util.GsContextUtils;
+import net.gsantner.opoc.util.GsFileTreeIndex;
 import net.gsantner.opoc.util.GsFileUtils;
 import net.gsantner.opoc.wrapper.GsCallback;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowserListAdapter.FilesystemViewerViewHolder> implements Filterable, View.OnClickListener, View.OnLongClickListener {
@@ -80,6 +89,9 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
 
     private static final File GO_BACK_SIGNIFIER = new File("__GO_BACK__");
     private static final StrikethroughSpan STRIKE_THROUGH_SPAN = new StrikethroughSpan();
+    private static final Pattern DESCRIPTION_FILESIZE_PLACEHOLDER = Pattern.compile("FS(?=([^']*'[^']*')*[^']*$)");
+    private static final int MAX_ROW_MODEL_FOLDERS = 16;
+    private static final int MAX_ROW_MODELS = 20000;
 
     //########################
     //## Members
@@ -97,6 +109,10 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
     private LinearLayoutManager _layoutManager;
     private final Map<File, File> _virtualMapping = new LinkedHashMap<>();
     private final Map<File, Integer> _fileIdMap = new HashMap<>();
+    private volatile Map<File, GsFileEntry> _listingEntries = Collections.emptyMap(); // Snapshot of listed files, never modified once set
+    private volatile List<File> _shownFiles = Collections.emptyList(); // Copy of _adapterDataFiltered, never modified once set
+    private final Map<File, GsFileEntry> _extraEntries = new HashMap<>(); // Entries not part of the listing, only accessed on the UI thread
+    private final GsFolderListingCache _listingCache;
     private final Map<File, Parcelable> _folderScrollMap = new HashMap<>();
     private final Stack<File> _backStack = new Stack<>();
     private final int _userId = getUserId();
@@ -105,7 +121,13 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
             FileObserver.CREATE | FileObserver.DELETE | FileObserver.MOVED_FROM
                     | FileObserver.MOVED_TO | FileObserver.MODIFY;
     private FileObserver _folderObserver;
+    private GsFileTreeIndex _observedIndex;
+    private final GsCallback.a1<File> _indexListener = this::onIndexChanged;
     private final Runnable _folderReloadDebounced = TextViewUtils.makeDebounced(300, this::reloadCurrentFolder);
+    private final Map<File, Map<File, RowModel>> _rowModelCache = new LinkedHashMap<>(MAX_ROW_MODEL_FOLDERS + 1, 0.75f, true); // LRU by folder, guarded by itself
+    private Map<File, RowModel> _rowModels = new ConcurrentHashMap<>(); // Rows of the shown folder, set on the UI thread
+    private final int _primaryTextColor, _secondaryTextColor, _accentColor, _fileColor, _folderColor;
+    private final String _contentDescriptionFile, _contentDescriptionFolder, _contentDescriptionSelected;
 
     //########################
     //## Methods
@@ -116,6 +138,7 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
         _adapterDataFiltered = new ArrayList<>();
         _currentSelection = new HashSet<>();
         _context = context;
+        _listingCache = GsFolderListingCache.get(context);
         GsContextUtils.instance.setAppLocale(_context, Locale.getDefault());
 
         // Prevents view flicker - https://stackoverflow.com/a/32488059
@@ -144,6 +167,16 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
             _dopt.folderColor = cu.getResId(context, GsContextUtils.ResType.COLOR, "folder");
         }
 
+        // Resolved once, rows only use the values
+        _primaryTextColor = ContextCompat.getColor(_context, _dopt.primaryTextColor);
+        _secondaryTextColor = ContextCompat.getColor(_context, _dopt.secondaryTextColor);
+        _accentColor = ContextCompat.getColor(_context, _dopt.accentColor);
+        _fileColor = ContextCompat.getColor(_context, _dopt.fileColor);
+        _folderColor = ContextCompat.getColor(_context, _dopt.folderColor);
+        _contentDescriptionFile = _dopt.contentDescriptionFile != 0 ? _context.getString(_dopt.contentDescriptionFile) + " " : "";
+        _contentDescriptionFolder = _dopt.contentDescriptionFolder != 0 ? _context.getString(_dopt.contentDescriptionFolder) + " " : "";
+        _contentDescriptionSelected = _dopt.contentDescriptionSelected != 0 ? _context.getString(_dopt.contentDescriptionSelected) + " " : "";
+
         updateVirtualFolders();
         _filter = new StringFilter(this);
     }
@@ -195,6 +228,23 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
         return file != null && (canWrite(file) || isGoUp || _virtualMapping.containsKey(file));
     }
 
+    private boolean isEntryWriteable(final File displayFile, final GsFileEntry entry, final boolean isGoUp) {
+        return entry.canWrite || isGoUp || _virtualMapping.containsKey(displayFile) || isMountedStorage(displayFile, _dopt.mountedStorageFolder);
+    }
+
+    // Snapshot of a file in the current listing, read now if it is not part of it (e.g. the go up entry)
+    private GsFileEntry getEntry(final File displayFile) {
+        GsFileEntry entry = _listingEntries.get(displayFile);
+        if (entry == null) {
+            entry = _extraEntries.get(displayFile);
+        }
+        if (entry == null) {
+            entry = readEntry(resolveVirtualFile(displayFile));
+            _extraEntries.put(displayFile, entry);
+        }
+        return entry;
+    }
+
     @Override
     @SuppressWarnings("ConstantConditions")
     public void onBindViewHolder(@NonNull FilesystemViewerViewHolder holder, int position) {
@@ -205,67 +255,38 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
             return;
         }
 
-        final File file = resolveVirtualFile(displayFile);
+        final GsFileEntry entry = getEntry(displayFile);
 
         final boolean isGoUp = displayFile.equals(_goUpFile);
-        final boolean isVirtual = _virtualMapping.containsKey(displayFile);
         final boolean isSelected = _currentSelection.contains(displayFile);
         final boolean isFavourite = _dopt.favouriteFiles != null && _dopt.favouriteFiles.contains(displayFile);
-        final boolean isPopular = _dopt.popularFiles != null && _dopt.popularFiles.contains(displayFile);
-        final boolean isFile = displayFile.isFile();
-
-        String titleText = displayFile.getName();
-        if (isCurrentFolderVirtual() && "index.html".equals(titleText)) {
-            final String currentFolderName = _currentFolder != null ? _currentFolder.getName() : "";
-            titleText += " [" + currentFolderName + "]";
-        }
-
-        // Set title
-        holder.title.setText(isGoUp ? ".." : titleText, TextView.BufferType.SPANNABLE);
-        holder.title.setTextColor(ContextCompat.getColor(_context, _dopt.primaryTextColor));
-
-        if (!isFileWriteable(displayFile, isGoUp) && !isVirtual && holder.title.length() > 0) {
-            try {
-                ((Spannable) holder.title.getText()).setSpan(STRIKE_THROUGH_SPAN, 0, holder.title.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-            } catch (Exception ignored) {
-            }
-        }
 
-        // Set description
-        if (!_dopt.descModtimeInsteadOfParent || isGoUp) {
-            holder.description.setText(file.getAbsolutePath());
-        } else {
-            holder.description.setText(formatFileDescription(file, _dopt.descriptionFormat));
+        // Rows are usually prepared with the listing, only changed ones are made here
+        RowModel row = _rowModels.get(displayFile);
+        if (row == null || !row.isValidFor(entry, isGoUp, _dopt.descriptionFormat, _dopt.descModtimeInsteadOfParent)) {
+            row = createRowModel(displayFile, entry, isGoUp, null);
+            _rowModels.put(displayFile, row);
         }
-        holder.description.setTextColor(ContextCompat.getColor(_context, _dopt.secondaryTextColor));
 
-        // Set icon
-        if (isSelected) {
-            holder.image.setImageResource(_dopt.selectedItemImage);
-        } else if (_dopt.iconMaps != null && _dopt.iconMaps.containsKey(displayFile)) {
-            holder.image.setImageResource(_dopt.iconMaps.get(displayFile));
-        } else {
-            holder.image.setImageResource(isFile ? _dopt.fileImage : _dopt.folderImage);
-        }
+        holder.title.setText(row.title);
+        holder.title.setTextColor(_primaryTextColor);
+        holder.description.setText(row.description);
+        holder.description.setTextColor(_secondaryTextColor);
 
-        holder.image.setColorFilter(ContextCompat.getColor(
-                        _context,
-                        isSelected ? _dopt.accentColor : isFile ? _dopt.fileColor : _dopt.folderColor),
+        holder.image.setImageResource(isSelected ? _dopt.selectedItemImage : row.icon);
+        holder.image.setColorFilter(
+                isSelected ? _accentColor : (!isGoUp && isFavourite) ? FAVOURITE_COLOR : row.tint,
                 android.graphics.PorterDuff.Mode.SRC_ATOP
         );
 
-        if (!isSelected && !isGoUp && isFavourite) {
-            holder.image.setColorFilter(FAVOURITE_COLOR);
-        }
-
         // Some extras
         if (_dopt.itemSidePadding > 0) {
             int dp = (int) (_dopt.itemSidePadding * _context.getResources().getDisplayMetrics().density);
             holder.itemRoot.setPadding(dp, holder.itemRoot.getPaddingTop(), dp, holder.itemRoot.getPaddingBottom());
         }
 
-        final int descriptionRes = isSelected ? _dopt.contentDescriptionSelected : (displayFile.isDirectory() ? _dopt.contentDescriptionFolder : _dopt.contentDescriptionFile);
-        holder.itemRoot.setContentDescription((descriptionRes != 0 ? (_context.getString(descriptionRes) + " ") : "") + titleText + " " + holder.description.getText().toString());
+        final String descriptionPrefix = isSelected ? _contentDescriptionSelected : (entry.isDirectory ? _contentDescriptionFolder : _contentDescriptionFile);
+        holder.itemRoot.setContentDescription(descriptionPrefix + row.contentDescription);
         holder.image.setOnLongClickListener(view -> {
             Toast.makeText(_context, displayFile.getAbsolutePath(), Toast.LENGTH_SHORT).show();
             return true;
@@ -296,6 +317,15 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
         if (folder == null || !folder.isDirectory() || !folder.canRead()) {
             return;
         }
+
+        // The index already watches the folder, don't add another watch
+        final GsFileTreeIndex index = _dopt.fileIndex;
+        if (index != null && index.isWatched(folder)) {
+            _observedIndex = index;
+            index.addChangeListener(_indexListener);
+            return;
+        }
+
         _folderObserver = new FileObserver(folder.getAbsolutePath(), FOLDER_OBSERVER_MASK) {
             @Override
             public void onEvent(int event, @Nullable String path) {
@@ -308,19 +338,151 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
         _folderObserver.startWatching();
     }
 
+    private void onIndexChanged(final File folder) {
+        if (folder.equals(_currentFolder)) {
+            _folderReloadDebounced.run();
+        }
+    }
+
     private void stopFolderObserver() {
+        if (_observedIndex != null) {
+            _observedIndex.removeChangeListener(_indexListener);
+            _observedIndex = null;
+        }
         if (_folderObserver != null) {
             _folderObserver.stopWatching();
             _folderObserver = null;
         }
     }
 
+    // Precomputed content of a row, valid as long as the entry and the description options are unchanged
+    private static final class RowModel {
+        final GsFileEntry entry;
+        final boolean isGoUp;
+        final String format;
+        final boolean descModtime;
+        final CharSequence title;
+        final String description;
+        final String contentDescription; // Without the prefix for file / folder / selected
+        final @DrawableRes int icon;
+        final @ColorInt int tint;
+
+        RowModel(final GsFileEntry entry, final boolean isGoUp, final String format, final boolean descModtime, final CharSequence title,
+                 final String description, final String contentDescription, final int icon, final int tint) {
+            this.entry = entry;
+            this.isGoUp = isGoUp;
+            this.format = format;
+            this.descModtime = descModtime;
+            this.title = title;
+            this.description = description;
+            this.contentDescription = contentDescription;
+            this.icon = icon;
+            this.tint = tint;
+        }
+
+        boolean isValidFor(final GsFileEntry entry, final boolean isGoUp, final String format, final boolean descModtime) {
+            return this.isGoUp == isGoUp && this.descModtime == descModtime && TextUtils.equals(this.format, format)
+                    && (this.entry == entry || this.entry.hasSameAttributes(entry));
+        }
+    }
+
+    /**
+     * Compute everything shown in a row, can be called on any thread
+     *
+     * @param dateFormat Date format for the description format (see {@link #makeDateFormat}), null to create it when needed
+     */
+    private RowModel createRowModel(final File displayFile, final GsFileEntry entry, final boolean isGoUp, final @Nullable SimpleDateFormat dateFormat) {
+        String titleText = displayFile.getName();
+        if (isCurrentFolderVirtual() && "index.html".equals(titleText)) {
+            final String currentFolderName = _currentFolder != null ? _currentFolder.getName() : "";
+            titleText += " [" + currentFolderName + "]";
+        }
+
+        final CharSequence title;
+        if (isGoUp) {
+            title = "..";
+        } else if (!isEntryWriteable(displayFile, entry, false) && !_virtualMapping.containsKey(displayFile) && !titleText.isEmpty()) {
+            final SpannableString struck = new SpannableString(titleText);
+            struck.setSpan(STRIKE_THROUGH_SPAN, 0, struck.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            title = struck;
+        } else {
+            title = titleText;
+        }
+
+        final String format = _dopt.descriptionFormat;
+        final String description;
+        if (!_dopt.descModtimeInsteadOfParent || isGoUp) {
+            description = resolveVirtualFile(displayFile).getAbsolutePath();
+        } else {
+            description = dateFormat != null ? dateFormat.format(entry.lastModified) : formatFileDescription(entry, format);
+        }
+
+        final Integer mappedIcon = _dopt.iconMaps != null ? _dopt.iconMaps.get(displayFile) : null;
+        final int icon = mappedIcon != null ? mappedIcon : (entry.isFile ? _dopt.fileImage : _dopt.folderImage);
+        final int tint = entry.isFile ? _fileColor : _folderColor;
+
+        return new RowModel(entry, isGoUp, format, _dopt.descModtimeInsteadOfParent, title, description, titleText + " " + description, icon, tint);
+    }
+
+    // Date format which can be shared by all rows, null if the format depends on the file (or is the default)
+    private static @Nullable SimpleDateFormat makeDateFormat(final String format) {
+        return TextUtils.isEmpty(format) || DESCRIPTION_FILESIZE_PLACEHOLDER.matcher(format).find() ? null : new SimpleDateFormat(format, Locale.getDefault());
+    }
+
+    /**
+     * Row models of a listing (not called on the main thread). Models of the last listing of the folder are reused if still valid.
+     * Models of recently shown folders are kept, limited by number of folders and rows.
+     */
+    private Map<File, RowModel> buildRowModels(final File folder, final List<File> files, final @Nullable File goUp, final Map<File, GsFileEntry> entries) {
+        final String format = _dopt.descriptionFormat;
+        final boolean descModtime = _dopt.descModtimeInsteadOfParent;
+        final SimpleDateFormat dateFormat = descModtime ? makeDateFormat(format) : null;
+
+        final Map<File, RowModel> prev;
+        synchronized (_rowModelCache) {
+            prev = _rowModelCache.get(folder);
+        }
+
+        final Map<File, RowModel> rows = new ConcurrentHashMap<>();
+        if (goUp != null) {
+            rows.put(goUp, createRowModel(goUp, readEntry(resolveVirtualFile(goUp)), true, dateFormat));
+        }
+        for (final File file : files) {
+            final GsFileEntry entry = entries.get(file);
+            final RowModel old = prev != null ? prev.get(file) : null;
+            rows.put(file, old != null && old.isValidFor(entry, false, format, descModtime) ? old : createRowModel(file, entry, false, dateFormat));
+        }
+
+        synchronized (_rowModelCache) {
+            _rowModelCache.put(folder, rows);
+            int total = 0;
+            for (final Map<File, RowModel> cached : _rowModelCache.values()) {
+                total += cached.size();
+            }
+            final Iterator<Map<File, RowModel>> eldest = _rowModelCache.values().iterator();
+            while ((total > MAX_ROW_MODELS || _rowModelCache.size() > MAX_ROW_MODEL_FOLDERS) && eldest.hasNext()) {
+                final Map<File, RowModel> cached = eldest.next();
+                if (cached != rows) {
+                    total -= cached.size();
+                    eldest.remove();
+                }
+            }
+        }
+        return rows;
+    }
+
     public String formatFileDescription(final File file, String format) {
+        return formatFileDescription(readEntry(file), format);
+    }
+
+    public String formatFileDescription(final GsFileEntry entry, String format) {
         if (TextUtils.isEmpty(format)) {
-            return DateUtils.formatDateTime(_context, file.lastModified(), (DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_YEAR | DateUtils.FORMAT_NUMERIC_DATE));
+            return DateUtils.formatDateTime(_context, entry.lastModified, (DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_YEAR | DateUtils.FORMAT_NUMERIC_DATE));
         } else {
-            format = format.replaceAll("FS(?=([^']*'[^']*')*[^']*$)", '\'' + GsFileUtils.getHumanReadableByteCountSI(file.length()) + '\'');
-            return new SimpleDateFormat(format, Locale.getDefault()).format(file.lastModified());
+            if (format.contains("FS")) {
+                format = DESCRIPTION_FILESIZE_PLACEHOLDER.matcher(format).replaceAll('\'' + GsFileUtils.getHumanReadableByteCountSI(entry.length) + '\'');
+            }
+            return new SimpleDateFormat(format, Locale.getDefault()).format(entry.lastModified);
         }
     }
 
@@ -485,7 +647,7 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
         for (int i = 0; i < _adapterDataFiltered.size(); i++) {
             final TagContainer data = new TagContainer(_adapterDataFiltered.get(i), i);
             if (!_currentSelection.contains(data.file)) {
-                if (data.file.isDirectory() && getCurrentFolder().getParentFile() != null && getCurrentFolder().getParentFile().equals(data.file)) {
+                if (getEntry(data.file).isDirectory && getCurrentFolder().getParentFile() != null && getCurrentFolder().getParentFile().equals(data.file)) {
                     continue;
                 }
                 _currentSelection.add(data.file);
@@ -516,7 +678,7 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
 
     public boolean isFilesOnlySelected() {
         for (File f : _currentSelection) {
-            if (f.isDirectory()) {
+            if (getEntry(f).isDirectory) {
                 return false;
             }
         }
@@ -536,12 +698,13 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
                 clickHandled = true;
             } else if (_dopt.doSelectMultiple) {
                 // Multi selection
-                if (_dopt.doSelectFile && !data.file.isDirectory()) {
+                final boolean isDirectory = getEntry(data.file).isDirectory;
+                if (_dopt.doSelectFile && !isDirectory) {
                     // Multi selection - file
                     _currentSelection.add(data.file);
                     clickHandled = true;
                 }
-                if (_dopt.doSelectFolder && data.file.isDirectory()) {
+                if (_dopt.doSelectFolder && isDirectory) {
                     // Multi selection - folder
                     _currentSelection.add(data.file);
                     clickHandled = true;
@@ -549,7 +712,11 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
             }
         }
 
-        notifyItemChanged(data.position);
+        // The position of a bound row is stale if rows above it were inserted or removed since
+        final int position = _adapterDataFiltered.indexOf(data.file);
+        if (position >= 0) {
+            notifyItemChanged(position);
+        }
         _dopt.listener.onFsViewerDoUiUpdate(this);
 
         return clickHandled;
@@ -718,7 +885,66 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
 
     // This function is not called on the main thread
     private synchronized void _loadFolder(final boolean folderChanged, final @Nullable File toShow) {
+        final List<GsFileEntry> indexed = _dopt.fileIndex != null ? _dopt.fileIndex.list(_currentFolder) : null;
+        if (indexed != null) {
+            // The index is kept current, no need to list the folder
+            showListing(indexed, false, folderChanged, toShow, Pair.create(_shownFiles, _listingEntries));
+            return;
+        }
+
+        final boolean cacheable = isListingCacheable(_currentFolder);
+        if (folderChanged && cacheable) {
+            final List<GsFileEntry> cached = _listingCache.read(_currentFolder, _dopt.sortOrder.toString());
+            if (cached != null) {
+                // Show the cached listing right away, then reconcile with the live one
+                final Pair<List<File>, Map<File, GsFileEntry>> shown = showListing(cached, true, true, toShow, Pair.create(_shownFiles, _listingEntries));
+                showListing(readListing(_currentFolder, true), true, false, null, shown);
+                return;
+            }
+        }
+        showListing(readListing(_currentFolder, cacheable), cacheable, folderChanged, toShow, Pair.create(_shownFiles, _listingEntries));
+    }
+
+    // Snapshot all children of folder. If cacheable, they are sorted and written to the listing cache.
+    private List<GsFileEntry> readListing(final File folder, final boolean cacheable) {
+        final List<GsFileEntry> listing = new ArrayList<>();
+        if (folder.isDirectory() && folder.canRead()) {
+            final long folderModTime = folder.lastModified();
+            final File[] files = folder.listFiles();
+            if (files != null) {
+                for (final File f : files) {
+                    listing.add(GsFileEntry.read(f));
+                }
+                if (cacheable) {
+                    GsFileUtils.sortFileEntries(listing, _dopt.sortOrder);
+                    _listingCache.write(folder, folderModTime, _dopt.sortOrder.toString(), listing);
+                }
+            }
+        }
+        return listing;
+    }
 
+    // Folders which list only their children, no virtual items
+    private boolean isListingCacheable(final File folder) {
+        return folder != null && !isVirtualFolder(folder) && !folder.equals(new File("/")) && !folder.equals(VIRTUAL_STORAGE_EMULATED);
+    }
+
+    /**
+     * Make listing of the current folder the shown data (this function is not called on the main thread)
+     *
+     * @param listing        Snapshots of the children of the current folder
+     * @param isSorted       Whether listing is already sorted by the current sort order
+     * @param prev           Shown list and its snapshots to compute changes against
+     * @return The list and snapshots which will be shown
+     */
+    private Pair<List<File>, Map<File, GsFileEntry>> showListing(
+            final List<GsFileEntry> listing,
+            final boolean isSorted,
+            final boolean folderChanged,
+            final @Nullable File toShow,
+            final Pair<List<File>, Map<File, GsFileEntry>> prev
+    ) {
+        final List<File> prevShownFiles = prev.first;
         final List<File> newData = new ArrayList<>();
 
         // Make sure /storage/emulated/0 is browsable, even though filesystem says it's not accessible
@@ -745,28 +971,63 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
             newData.addAll(_dopt.favouriteFiles);
         }
 
-        if (_currentFolder.isDirectory() && _currentFolder.canRead()) {
-            GsCollectionUtils.addAll(newData, _currentFolder.listFiles());
+        // Lowercase names of files in the folder, to detect accessory folders without probing
+        final Set<String> listedFiles = new HashSet<>();
+        final Map<File, GsFileEntry> entries = new HashMap<>();
+        for (final GsFileEntry entry : listing) {
+            entries.put(entry.file, entry);
+            if (entry.isFile) {
+                listedFiles.add(entry.name.toLowerCase());
+            }
+            newData.add(entry.file);
         }
 
-        GsCollectionUtils.keepIf(newData, this::accept);
+        // Read all attributes once, everything below works from the snapshot
+        for (final File f : newData) {
+            if (!entries.containsKey(f)) {
+                entries.put(f, readEntry(resolveVirtualFile(f)));
+            }
+        }
+
+        GsCollectionUtils.keepIf(newData, f -> accept(entries.get(f), listedFiles));
         GsCollectionUtils.deduplicate(newData);
 
         // Don't sort recent or virtual root items - use the default order
-        if (isCurrentFolderSortable()) {
-            GsFileUtils.sortFiles(newData, _dopt.sortOrder);
+        if (isCurrentFolderSortable() && !isSorted) {
+            final Map<GsFileEntry, File> displayFiles = new IdentityHashMap<>();
+            final List<GsFileEntry> sortable = new ArrayList<>();
+            for (final File f : newData) {
+                final GsFileEntry entry = entries.get(f);
+                displayFiles.put(entry, f);
+                sortable.add(entry);
+            }
+            GsFileUtils.sortFileEntries(sortable, _dopt.sortOrder);
+            newData.clear();
+            for (final GsFileEntry entry : sortable) {
+                newData.add(displayFiles.get(entry));
+            }
         }
 
         // Testing if modtimes have changed (modtimes generally only increase)
-        final long modSum = GsCollectionUtils.accumulate(newData, (f, s) -> s + f.lastModified(), 0L);
+        final long modSum = GsCollectionUtils.accumulate(newData, (f, s) -> s + entries.get(f).lastModified, 0L);
         final boolean modSumChanged = modSum != _prevModSum;
 
         final File goUp = getCurrentParent();
 
         if (folderChanged || modSumChanged || !newData.equals(_adapterData)) {
+            final Map<File, RowModel> rows = buildRowModels(_currentFolder, newData, goUp, entries);
             final ArrayList<File> filteredData = new ArrayList<>();
             _filter._filter(newData, filteredData);
 
+            // Compute granular changes to the shown list here, so that only changed rows are rebound
+            final List<File> shownFiles = new ArrayList<>();
+            if (goUp != null) {
+                shownFiles.add(goUp);
+            }
+            shownFiles.addAll(filteredData);
+            final DiffUtil.DiffResult diff = folderChanged ? null : DiffUtil.calculateDiff(
+                    new ListingDiffCallback(prevShownFiles, shownFiles, prev.second, entries));
+
             _recyclerView.post(() -> {
                 // Modify all these values in the UI thread
                 _goUpFile = goUp;
@@ -778,6 +1039,9 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
                 }
                 _adapterData.addAll(newData);
                 _adapterDataFiltered.addAll(filteredData);
+                _listingEntries = entries;
+                _rowModels = rows;
+                _extraEntries.clear();
                 _currentSelection.retainAll(_adapterDataFiltered);
                 _prevModSum = modSum;
 
@@ -785,8 +1049,13 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
                     _fileIdMap.clear();
                 }
 
-                // TODO - add logic to notify the changed bits
-                notifyDataSetChanged();
+                // The diff is only valid if the shown list was not changed (e.g. filtered) in the meantime
+                if (diff != null && prevShownFiles == _shownFiles) {
+                    diff.dispatchUpdatesTo(GsFileBrowserListAdapter.this);
+                } else {
+                    notifyDataSetChanged();
+                }
+                _shownFiles = shownFiles;
 
                 if (folderChanged) {
                     _recyclerView.post(() -> {
@@ -804,8 +1073,10 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
                     _dopt.listener.onFsViewerDoUiUpdate(GsFileBrowserListAdapter.this);
                 }
             });
+            return Pair.create(shownFiles, entries);
         } else {
             postScrollToAndFlash(toShow);
+            return prev;
         }
     }
 
@@ -814,28 +1085,58 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
     }
 
     public static boolean canWrite(final File file, final File mountedStorageFolder) {
-        return file != null && (file.canWrite() || file.equals(mountedStorageFolder) || GsFileUtils.isChild(mountedStorageFolder, file));
+        return file != null && (file.canWrite() || isMountedStorage(file, mountedStorageFolder));
+    }
+
+    private static boolean isMountedStorage(final File file, final File mountedStorageFolder) {
+        return file.equals(mountedStorageFolder) || GsFileUtils.isChild(mountedStorageFolder, file);
+    }
+
+    private GsFileEntry readEntry(final File file) {
+        if (isVirtualFolder(file)) {
+            return GsFileEntry.virtualFolder(file);
+        }
+        final GsFileEntry indexed = _dopt.fileIndex != null ? _dopt.fileIndex.get(file) : null;
+        return indexed != null ? indexed : GsFileEntry.read(file);
     }
 
     public boolean accept(File file) {
-        file = resolveVirtualFile(file);
-        final boolean isDirectory = GsFileUtils.isDirectory(file);
-        final File parent = file.getParentFile();
-        final String name = file.getName().toLowerCase();
-        final boolean filterYes = isDirectory || _dopt.fileOverallFilter == null || _dopt.fileOverallFilter.callback(_context, file);
-        final boolean dotYes = _dopt.sortOrder.showDotFiles || !name.startsWith(".") && !isAccessoryFolder(parent, name, file);
-        final boolean selFileYes = _dopt.doSelectFile || isDirectory;
-        return filterYes && dotYes && selFileYes;
+        return accept(readEntry(resolveVirtualFile(file)), null);
     }
 
     public boolean accept(final File dir, final String filename) {
         return accept(new File(dir, filename));
     }
 
-    private boolean isAccessoryFolder(File dir, String filename, File file) {
-        return file.isDirectory() &&
-                ((filename.endsWith("_files") && new File(dir, filename.replaceFirst("_files$", ".html")).isFile()) ||
-                        (filename.endsWith(".assets") && new File(dir, filename.replaceFirst("\\.assets$", ".md")).isFile()));
+    /**
+     * @param entry       Snapshot of the (resolved) file
+     * @param listedFiles Lowercase names of the files in the current folder, null to check on disk
+     */
+    private boolean accept(final GsFileEntry entry, @Nullable final Set<String> listedFiles) {
+        final String name = entry.name.toLowerCase();
+        final boolean filterYes = entry.isDirectory || _dopt.fileOverallFilter == null || _dopt.fileOverallFilter.callback(_context, entry.file);
+        final boolean dotYes = _dopt.sortOrder.showDotFiles || !name.startsWith(".") && !isAccessoryFolder(entry, name, listedFiles);
+        final boolean selFileYes = _dopt.doSelectFile || entry.isDirectory;
+        return filterYes && dotYes && selFileYes;
+    }
+
+    private boolean isAccessoryFolder(final GsFileEntry entry, final String filename, @Nullable final Set<String> listedFiles) {
+        final String owner;
+        if (!entry.isDirectory) {
+            return false;
+        } else if (filename.endsWith("_files")) {
+            owner = filename.replaceFirst("_files$", ".html");
+        } else if (filename.endsWith(".assets")) {
+            owner = filename.replaceFirst("\\.assets$", ".md");
+        } else {
+            return false;
+        }
+
+        final File dir = entry.file.getParentFile();
+        if (listedFiles != null && _currentFolder != null && _currentFolder.equals(dir)) {
+            return listedFiles.contains(owner);
+        }
+        return new File(dir, owner).isFile();
     }
 
     public GsFileBrowserOptions.Options getFsOptions() {
@@ -892,10 +1193,46 @@ public class GsFileBrowserListAdapter extends RecyclerView.Adapter<GsFileBrowser
         protected void publishResults(CharSequence constraint, FilterResults results) {
             _adapter._adapterDataFiltered.clear();
             _adapter._adapterDataFiltered.addAll((ArrayList<File>) results.values);
+            _adapter._shownFiles = new ArrayList<>(_adapter._adapterDataFiltered);
             _adapter.notifyDataSetChanged();
         }
     }
 
+    // Diff between two listings. Rows are the same file, contents are the same if the attributes did not change.
+    private static class ListingDiffCallback extends DiffUtil.Callback {
+        private final List<File> _oldFiles, _newFiles;
+        private final Map<File, GsFileEntry> _oldEntries, _newEntries;
+
+        private ListingDiffCallback(final List<File> oldFiles, final List<File> newFiles, final Map<File, GsFileEntry> oldEntries, final Map<File, GsFileEntry> newEntries) {
+            _oldFiles = oldFiles;
+            _newFiles = newFiles;
+            _oldEntries = oldEntries;
+            _newEntries = newEntries;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return _oldFiles.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return _newFiles.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(final int oldPos, final int newPos) {
+            return _oldFiles.get(oldPos).equals(_newFiles.get(newPos));
+        }
+
+        @Override
+        public boolean areContentsTheSame(final int oldPos, final int newPos) {
+            final GsFileEntry oldEntry = _oldEntries.get(_oldFiles.get(oldPos));
+            final GsFileEntry newEntry = _newEntries.get(_newFiles.get(newPos));
+            return oldEntry != null && newEntry != null && oldEntry.hasSameAttributes(newEntry);
+        }
+    }
+
     @SuppressWarnings({"WeakerAccess", "unused"})
     public static class FilesystemViewerViewHolder extends RecyclerView.ViewHolder {
         //########################
@@ -17,6 +17,7 @@ import androidx.annotation.ColorRes;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.StringRes;
 
+import net.gsantner.opoc.util.GsFileTreeIndex;
 import net.gsantner.opoc.util.GsFileUtils;
 import net.gsantner.opoc.wrapper.GsCallback;
 
@@ -134,6 +135,7 @@ public class GsFileBrowserOptions {
         public final Map<File, File> storageMaps = new LinkedHashMap<>();
         public final Map<File, Integer> iconMaps = new HashMap<>();
         public Collection<File> favouriteFiles, recentFiles, popularFiles = null;
+        public GsFileTreeIndex fileIndex = null; // Consulted instead of the disk for folders it covers
         public GsCallback.a1<CharSequence> setTitle = null, setSubtitle = null;
 
         public void addVirtualFile(final String name, final File target, final int icon) {
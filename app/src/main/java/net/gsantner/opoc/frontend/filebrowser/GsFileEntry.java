@@ -0,0 +1,84 @@
+/*#######################################################
+ *
+ * SPDX-FileCopyrightText: 2025 Gregor Santner <gsantner AT mailbox DOT org>
+ * SPDX-License-Identifier: Unlicense OR CC0-1.0
+ *
+ * Written 2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+#########################################################*/
+package net.gsantner.opoc.frontend.filebrowser;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Immutable snapshot of the attributes of a file, read once when a folder is listed.
+ * Sorting, filtering and displaying a listing work from the snapshot, so that the
+ * filesystem is not queried again for every comparison or bind.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class GsFileEntry {
+    public final File file;
+    public final String name;
+    public final boolean isDirectory;
+    public final boolean isFile;
+    public final boolean canWrite;
+    public final long length;
+    public final long lastModified;
+
+    GsFileEntry(final File file, final boolean isDirectory, final boolean isFile, final boolean canWrite, final long length, final long lastModified) {
+        this.file = file;
+        this.name = file.getName();
+        this.isDirectory = isDirectory;
+        this.isFile = isFile;
+        this.canWrite = canWrite;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Read attributes of file. Uses a single stat call where NIO is available.
+     *
+     * @param file File to read
+     * @return Snapshot, all values false / 0 if the file does not exist
+     */
+    public static GsFileEntry read(@NonNull final File file) {
+        final boolean canWrite = file.canWrite();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            try {
+                final BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                return new GsFileEntry(file, attrs.isDirectory(), attrs.isRegularFile(), canWrite, attrs.size(), attrs.lastModifiedTime().toMillis());
+            } catch (Exception ignored) {
+                // Fall through to the java.io way, e.g. for not existing files
+            }
+        }
+
+        final boolean isDirectory = file.isDirectory();
+        return new GsFileEntry(file, isDirectory, !isDirectory && file.isFile(), canWrite, file.length(), file.lastModified());
+    }
+
+    /**
+     * Snapshot of a folder which does not exist on disk (e.g. recent files), reported as directory
+     */
+    public static GsFileEntry virtualFolder(@NonNull final File file) {
+        return new GsFileEntry(file, true, false, false, 0, 0);
+    }
+
+    // True if both snapshots show the same state (not necessarily of the same file)
+    public boolean hasSameAttributes(@NonNull final GsFileEntry other) {
+        return isDirectory == other.isDirectory && isFile == other.isFile && canWrite == other.canWrite &&
+                length == other.length && lastModified == other.lastModified && name.equals(other.name);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -0,0 +1,266 @@
+/*#######################################################
+ *
+ * SPDX-FileCopyrightText: 2025 Gregor Santner <gsantner AT mailbox DOT org>
+ * SPDX-License-Identifier: Unlicense OR CC0-1.0
+ *
+ * Written 2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+#########################################################*/
+package net.gsantner.opoc.frontend.filebrowser;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Small persistent cache of folder listings (snapshots of all children of a folder).
+ * <p>
+ * A listing is only returned while the modification time of the folder is unchanged, i.e.
+ * no child was added, removed or renamed. Attributes of children (size, mtime) may be outdated,
+ * so callers should reconcile with a live listing if they need exact values.
+ * <p>
+ * Listings are stored in the order they were written in, together with a caller defined sort key.
+ * Recently used listings are additionally kept in memory. A listing is only written to disk if it
+ * differs from the cached one, and old listings are removed every {@link #TRIM_EVERY_WRITES} writes.
+ * <p>
+ * Listings of folders modified within {@link #MOD_TIME_GRANULARITY_MS} before they were listed are
+ * not cached, as a following change could keep the same (coarse) modification time.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class GsFolderListingCache {
+    private static final int VERSION = 1;
+    private static final int MAX_FOLDERS_ON_DISK = 200;
+    private static final int MAX_FOLDERS_IN_MEMORY = 32;
+    private static final int TRIM_EVERY_WRITES = 20;
+    private static final long MOD_TIME_GRANULARITY_MS = 2000; // FAT and some network filesystems
+    private static final int FLAG_DIRECTORY = 1, FLAG_FILE = 2, FLAG_WRITEABLE = 4;
+
+    private static GsFolderListingCache _instance;
+
+    private static class Listing {
+        final long folderModTime;
+        final String sortKey;
+        final List<GsFileEntry> entries;
+
+        Listing(final long folderModTime, final String sortKey, final List<GsFileEntry> entries) {
+            this.folderModTime = folderModTime;
+            this.sortKey = sortKey;
+            this.entries = entries;
+        }
+    }
+
+    private final File _cacheDir;
+    private int _writesUntilTrim = 0; // First write trims what is left from previous runs
+    private final Map<String, Listing> _memory = new LinkedHashMap<String, Listing>(MAX_FOLDERS_IN_MEMORY + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Listing> eldest) {
+            return size() > MAX_FOLDERS_IN_MEMORY;
+        }
+    };
+
+    public GsFolderListingCache(final File cacheDir) {
+        _cacheDir = cacheDir;
+    }
+
+    public static synchronized GsFolderListingCache get(final Context context) {
+        if (_instance == null) {
+            _instance = new GsFolderListingCache(new File(context.getApplicationContext().getCacheDir(), "folder_listings"));
+        }
+        return _instance;
+    }
+
+    /**
+     * Get the cached listing of a folder
+     *
+     * @param folder  Folder to get the listing of
+     * @param sortKey Key of the order the listing was stored in, null to accept any order
+     * @return Snapshots of the children of folder, or null if nothing valid is cached
+     */
+    @Nullable
+    public List<GsFileEntry> read(@NonNull final File folder, @Nullable final String sortKey) {
+        return read(folder, sortKey, folder.lastModified());
+    }
+
+    /**
+     * Get the cached listing of a folder
+     *
+     * @param folder        Folder to get the listing of
+     * @param sortKey       Key of the order the listing was stored in, null to accept any order
+     * @param folderModTime Current modification time of folder, the listing must have been taken at it
+     * @return Snapshots of the children of folder, or null if nothing valid is cached
+     */
+    @Nullable
+    public List<GsFileEntry> read(@NonNull final File folder, @Nullable final String sortKey, final long folderModTime) {
+        final String path = folder.getAbsolutePath();
+        Listing listing;
+        synchronized (_memory) {
+            listing = _memory.get(path);
+        }
+
+        if (listing == null || listing.folderModTime != folderModTime) {
+            listing = readFromDisk(folder);
+            if (listing == null) {
+                return null;
+            }
+            synchronized (_memory) {
+                _memory.put(path, listing);
+            }
+        }
+
+        final boolean valid = folderModTime != 0 && listing.folderModTime == folderModTime && (sortKey == null || sortKey.equals(listing.sortKey));
+        return valid ? listing.entries : null;
+    }
+
+    /**
+     * Store the listing of a folder
+     *
+     * @param folder        Folder the listing belongs to
+     * @param folderModTime Modification time of folder, taken <b>before</b> listing it
+     * @param sortKey       Key of the order of entries
+     * @param entries       Snapshots of all children of folder
+     */
+    public void write(@NonNull final File folder, final long folderModTime, @NonNull final String sortKey, @NonNull final List<GsFileEntry> entries) {
+        if (folderModTime == 0 || System.currentTimeMillis() - folderModTime < MOD_TIME_GRANULARITY_MS) {
+            return;
+        }
+
+        final Listing listing = new Listing(folderModTime, sortKey, Collections.unmodifiableList(new ArrayList<>(entries)));
+        final Listing previous;
+        synchronized (_memory) {
+            previous = _memory.put(folder.getAbsolutePath(), listing);
+        }
+
+        if (isSameListing(previous, listing) || (!_cacheDir.isDirectory() && !_cacheDir.mkdirs())) {
+            return;
+        }
+
+        final File target = getCacheFile(folder);
+        final File temp = new File(_cacheDir, target.getName() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(folder.getAbsolutePath());
+            out.writeLong(folderModTime);
+            out.writeUTF(sortKey);
+            out.writeInt(entries.size());
+            for (final GsFileEntry entry : entries) {
+                out.writeUTF(entry.name);
+                out.writeByte((entry.isDirectory ? FLAG_DIRECTORY : 0) | (entry.isFile ? FLAG_FILE : 0) | (entry.canWrite ? FLAG_WRITEABLE : 0));
+                out.writeLong(entry.length);
+                out.writeLong(entry.lastModified);
+            }
+        } catch (Exception e) {
+            Log.d(GsFolderListingCache.class.getName(), e.toString());
+            temp.delete();
+            return;
+        }
+
+        if (!temp.renameTo(target)) {
+            temp.delete();
+        }
+
+        final boolean trimNow;
+        synchronized (this) {
+            trimNow = --_writesUntilTrim <= 0;
+            if (trimNow) {
+                _writesUntilTrim = TRIM_EVERY_WRITES;
+            }
+        }
+        if (trimNow) {
+            trim();
+        }
+    }
+
+    // The memory and disk copies of a listing are written together, so an unchanged listing is already on disk
+    private static boolean isSameListing(@Nullable final Listing a, @NonNull final Listing b) {
+        if (a == null || a.folderModTime != b.folderModTime || !a.sortKey.equals(b.sortKey) || a.entries.size() != b.entries.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.entries.size(); i++) {
+            if (!a.entries.get(i).hasSameAttributes(b.entries.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drop everything cached for folder
+     */
+    public void invalidate(@NonNull final File folder) {
+        synchronized (_memory) {
+            _memory.remove(folder.getAbsolutePath());
+        }
+        getCacheFile(folder).delete();
+    }
+
+    @Nullable
+    private Listing readFromDisk(final File folder) {
+        final File file = getCacheFile(folder);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION || !folder.getAbsolutePath().equals(in.readUTF())) {
+                return null;
+            }
+            final long folderModTime = in.readLong();
+            final String sortKey = in.readUTF();
+            final int count = in.readInt();
+            final List<GsFileEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final File child = new File(folder, in.readUTF());
+                final int flags = in.readByte();
+                final long length = in.readLong();
+                final long lastModified = in.readLong();
+                entries.add(new GsFileEntry(child, (flags & FLAG_DIRECTORY) != 0, (flags & FLAG_FILE) != 0, (flags & FLAG_WRITEABLE) != 0, length, lastModified));
+            }
+            return new Listing(folderModTime, sortKey, Collections.unmodifiableList(entries));
+        } catch (Exception e) {
+            Log.d(GsFolderListingCache.class.getName(), e.toString());
+            file.delete();
+            return null;
+        }
+    }
+
+    // Different folders may share a file (hash collision), the stored path tells them apart
+    private File getCacheFile(final File folder) {
+        return new File(_cacheDir, Integer.toHexString(folder.getAbsolutePath().hashCode()) + ".listing");
+    }
+
+    // Remove the least recently written listings
+    private void trim() {
+        final File[] files = _cacheDir.listFiles();
+        if (files != null && files.length > MAX_FOLDERS_ON_DISK) {
+            final long[] modTimes = new long[files.length];
+            for (int i = 0; i < files.length; i++) {
+                modTimes[i] = files[i].lastModified();
+            }
+            final long[] sorted = modTimes.clone();
+            Arrays.sort(sorted);
+            final long threshold = sorted[files.length - MAX_FOLDERS_ON_DISK];
+            for (int i = 0; i < files.length; i++) {
+                if (modTimes[i] < threshold) {
+                    files[i].delete();
+                }
+            }
+        }
+    }
+}
@@ -10,6 +10,107 @@ import java.util.Comparator;
  * after their non-padded equivalents
  */
 public class AlphanumComparator implements Comparator<String> {
+    // Numbers with more significant digits are compared digit by digit
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    /**
+     * A string split into chunks once, for repeated comparisons (e.g. when sorting).
+     * Ordering is the same as {@link AlphanumComparator#compare(String, String)}.
+     */
+    public static final class Key implements Comparable<Key> {
+        private final String _s;
+        private final int[] _chunks;     // Per chunk: end index, leading zeros (numeric chunks only)
+        private final long[] _values;    // Per chunk: value of numeric chunks, -1 if too long. Null if there are none
+        private final boolean _firstIsDigit;
+
+        public Key(final String s) {
+            _s = s == null ? "" : s;
+            final int length = _s.length();
+            int chunks = 0;
+            for (int i = 0; i < length; i++) {
+                if (i == 0 || isDigit(_s.charAt(i)) != isDigit(_s.charAt(i - 1))) {
+                    chunks++;
+                }
+            }
+            _firstIsDigit = length > 0 && isDigit(_s.charAt(0));
+            _chunks = new int[2 * chunks];
+            _values = (_firstIsDigit || chunks > 1) ? new long[chunks] : null;
+
+            for (int c = 0, start = 0; c < chunks; c++) {
+                final int end = getChunkEnd(_s, start);
+                _chunks[2 * c] = end;
+                if (isDigitChunk(c)) {
+                    final int zeros = countLeadingZeros(_s, start, end);
+                    _chunks[2 * c + 1] = zeros;
+                    long value = -1;
+                    if (end - start - zeros <= MAX_NUMERIC_DIGITS) {
+                        value = 0;
+                        for (int i = start + zeros; i < end; i++) {
+                            value = value * 10 + (_s.charAt(i) - '0');
+                        }
+                    }
+                    _values[c] = value;
+                }
+                start = end;
+            }
+        }
+
+        public String getString() {
+            return _s;
+        }
+
+        private boolean isDigitChunk(final int chunk) {
+            return ((chunk & 1) == 0) == _firstIsDigit;
+        }
+
+        @Override
+        public int compareTo(final Key other) {
+            final String s1 = _s, s2 = other._s;
+            final boolean empty1 = s1.isEmpty(), empty2 = s2.isEmpty();
+            if (empty1 || empty2) {
+                return empty1 == empty2 ? 0 : (empty1 ? 1 : -1);
+            }
+
+            final int[] chunks1 = _chunks, chunks2 = other._chunks;
+            final int chunks = Math.min(chunks1.length, chunks2.length);
+            for (int c = 0, start1 = 0, start2 = 0; c < chunks; c += 2) {
+                final int end1 = chunks1[c], end2 = chunks2[c];
+
+                int result;
+                if (isDigitChunk(c / 2) && other.isDigitChunk(c / 2)) {
+                    final int zeros1 = chunks1[c + 1], zeros2 = chunks2[c + 1];
+                    result = (end1 - start1 - zeros1) - (end2 - start2 - zeros2);
+                    if (result == 0) {
+                        final long value1 = _values[c / 2], value2 = other._values[c / 2];
+                        if (value1 >= 0 && value2 >= 0) {
+                            result = Long.compare(value1, value2);
+                        } else {
+                            result = compareRegions(s1, start1 + zeros1, end1, s2, start2 + zeros2, end2, false);
+                        }
+                        if (result == 0) {
+                            result = zeros1 - zeros2;
+                        }
+                    }
+                } else {
+                    result = compareRegionsCaseTiebreak(s1, start1, end1, s2, start2, end2);
+                }
+
+                if (result != 0) {
+                    return result;
+                }
+                start1 = end1;
+                start2 = end2;
+            }
+
+            return Integer.compare(s1.length(), s2.length());
+        }
+
+        @Override
+        public String toString() {
+            return _s;
+        }
+    }
+
     private static boolean isDigit(char ch) {
         // ASCII digits only, intentionally excludes Unicode digit characters
         return ch >= '0' && ch <= '9';
@@ -95,6 +196,34 @@ public class AlphanumComparator implements Comparator<String> {
         return n1 - n2;
     }
 
+    /**
+     * Same result as comparing case-insensitively first and, if equal, case-sensitively.
+     * Needs only a single pass over both regions.
+     */
+    private static int compareRegionsCaseTiebreak(String s1, int start1, int end1, String s2, int start2, int end2) {
+        int n1 = end1 - start1;
+        int n2 = end2 - start2;
+        int minLen = Math.min(n1, n2);
+        int caseResult = 0;
+
+        for (int i = 0; i < minLen; i++) {
+            char c1 = s1.charAt(start1 + i);
+            char c2 = s2.charAt(start2 + i);
+
+            if (c1 != c2) {
+                char f1 = Character.toLowerCase(Character.toUpperCase(c1));
+                char f2 = Character.toLowerCase(Character.toUpperCase(c2));
+                if (f1 != f2) {
+                    return f1 - f2;
+                }
+                if (caseResult == 0) {
+                    caseResult = c1 - c2;
+                }
+            }
+        }
+        return n1 != n2 ? n1 - n2 : caseResult;
+    }
+
     /**
      * Compare two strings alphanumerically
      *
@@ -0,0 +1,416 @@
+/*#######################################################
+ *
+ * SPDX-FileCopyrightText: 2025 Gregor Santner <gsantner AT mailbox DOT org>
+ * SPDX-License-Identifier: Unlicense OR CC0-1.0
+ *
+ * Written 2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+#########################################################*/
+package net.gsantner.opoc.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.gsantner.opoc.wrapper.GsCallback;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copy, move or delete files and folders (recursively), typically on a background thread.
+ * <p>
+ * The operation is planned up front: all folders are walked once, so that the number of files
+ * and bytes is known for progress reporting. Files are copied with {@link FileChannel#transferTo}.
+ * Moves try a rename first (works if source and destination are on the same filesystem)
+ * and fall back to copy and delete.
+ * <p>
+ * The operation can be cancelled at any time. A partially copied file is removed,
+ * items which were already processed completely are kept.
+ * <p>
+ * Links to folders are followed when copying, except for links to a folder which contains them (loops),
+ * these are reported as failed. Destinations are reserved when items are added (see {@link #hasDest(File)}),
+ * and an existing destination is only replaced if requested.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class GsFileOperation {
+    public enum Mode {
+        COPY, MOVE, DELETE
+    }
+
+    public static class Progress {
+        public final int filesDone, filesTotal;
+        public final long bytesDone, bytesTotal;
+        public final @Nullable File current;
+
+        Progress(final int filesDone, final int filesTotal, final long bytesDone, final long bytesTotal, final @Nullable File current) {
+            this.filesDone = filesDone;
+            this.filesTotal = filesTotal;
+            this.bytesDone = bytesDone;
+            this.bytesTotal = bytesTotal;
+            this.current = current;
+        }
+
+        // Progress in percent, by bytes if there are any, else by files
+        public int getPercent() {
+            if (bytesTotal > 0) {
+                return (int) (100 * bytesDone / bytesTotal);
+            }
+            return filesTotal > 0 ? (100 * filesDone / filesTotal) : 100;
+        }
+    }
+
+    private static class Item {
+        final File src;
+        final File dest;
+        final boolean replaceExisting;
+        Node plan;
+
+        Item(final File src, final File dest, final boolean replaceExisting) {
+            this.src = src;
+            this.dest = dest;
+            this.replaceExisting = replaceExisting;
+        }
+    }
+
+    // A file or folder of the planned tree
+    private static class Node {
+        final File file;
+        final boolean isDirectory;
+        final List<Node> children = new ArrayList<>();
+        long bytes;     // Including all children
+        int files;      // Including all children
+        boolean isLinkLoop; // Link to a folder containing it, not walked
+
+        Node(final File file, final boolean isDirectory) {
+            this.file = file;
+            this.isDirectory = isDirectory;
+        }
+    }
+
+    private static final long TRANSFER_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final ExecutorService _executor = Executors.newSingleThreadExecutor();
+
+    private final Mode _mode;
+    private final List<Item> _items = new ArrayList<>();
+    private final Set<File> _dests = new HashSet<>();
+    private final List<File> _failed = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean _cancelled = new AtomicBoolean(false);
+    private GsCallback.b1<File> _deleter = File::delete;
+    private GsCallback.a1<Progress> _progressListener;
+
+    private int _filesTotal, _filesDone;
+    private long _bytesTotal, _bytesDone;
+    private File _current;
+    private long _lastProgressReport;
+
+    public GsFileOperation(final Mode mode) {
+        _mode = mode;
+    }
+
+    public Mode getMode() {
+        return _mode;
+    }
+
+    /**
+     * Add a file or folder to the operation
+     *
+     * @param src             File or folder to copy, move or delete
+     * @param dest            Destination path (including the name), ignored for {@link Mode#DELETE}
+     * @param replaceExisting Delete dest before copying / moving, if it exists
+     */
+    public GsFileOperation add(@NonNull final File src, @Nullable final File dest, final boolean replaceExisting) {
+        _items.add(new Item(src, dest, replaceExisting));
+        if (dest != null) {
+            _dests.add(dest.getAbsoluteFile());
+        }
+        return this;
+    }
+
+    public GsFileOperation add(@NonNull final File src) {
+        return add(src, null, false);
+    }
+
+    public boolean isEmpty() {
+        return _items.isEmpty();
+    }
+
+    /**
+     * Check if an item was already added with dest as destination, e.g. to choose a free name for another item
+     */
+    public boolean hasDest(@NonNull final File dest) {
+        return _dests.contains(dest.getAbsoluteFile());
+    }
+
+    /**
+     * Set how single files and empty folders are deleted, e.g. to support storage access framework folders
+     */
+    public GsFileOperation setDeleter(@NonNull final GsCallback.b1<File> deleter) {
+        _deleter = deleter;
+        return this;
+    }
+
+    /**
+     * Set a listener for progress. It is called on the thread running the operation, at most every {@link #PROGRESS_INTERVAL_MS}
+     */
+    public GsFileOperation setProgressListener(@Nullable final GsCallback.a1<Progress> listener) {
+        _progressListener = listener;
+        return this;
+    }
+
+    public void cancel() {
+        _cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return _cancelled.get();
+    }
+
+    // Files and folders which could not be processed
+    public List<File> getFailed() {
+        synchronized (_failed) {
+            return new ArrayList<>(_failed);
+        }
+    }
+
+    /**
+     * Run the operation on a shared background thread. Operations are run one after another.
+     *
+     * @param onFinished Called on the background thread once the operation is finished or cancelled
+     */
+    public void start(@Nullable final GsCallback.a1<GsFileOperation> onFinished) {
+        _executor.execute(() -> {
+            run();
+            if (onFinished != null) {
+                onFinished.callback(this);
+            }
+        });
+    }
+
+    /**
+     * Run the operation on the calling thread
+     *
+     * @return true if all items were processed successfully
+     */
+    public boolean run() {
+        _filesTotal = _filesDone = 0;
+        _bytesTotal = _bytesDone = 0;
+        for (final Item item : _items) {
+            item.plan = plan(item.src, _mode != Mode.DELETE);
+            _filesTotal += item.plan.files;
+            _bytesTotal += item.plan.bytes;
+        }
+        reportProgress(true);
+
+        for (final Item item : _items) {
+            if (isCancelled()) {
+                break;
+            }
+            if (!item.src.exists()) {
+                _failed.add(item.src);
+                continue;
+            }
+
+            switch (_mode) {
+                case DELETE: {
+                    delete(item.plan, true);
+                    break;
+                }
+                case COPY:
+                case MOVE: {
+                    if (prepareDest(item)) {
+                        final boolean isMove = _mode == Mode.MOVE;
+                        if (isMove && item.src.renameTo(item.dest)) {
+                            _filesDone += item.plan.files;
+                            _bytesDone += item.plan.bytes;
+                        } else if (copy(item.plan, item.dest, isMove) && isMove) {
+                            delete(plan(item.src, false), false);
+                        }
+                    } else {
+                        _failed.add(item.src);
+                    }
+                    break;
+                }
+            }
+            reportProgress(false);
+        }
+
+        _current = null;
+        reportProgress(true);
+        return !isCancelled() && _failed.isEmpty();
+    }
+
+    // Walk file once, collecting folder structure, file count and size. Links to folders must not be followed for deletion.
+    private Node plan(final File file, final boolean followLinks) {
+        return plan(file, followLinks, new HashSet<>());
+    }
+
+    // ancestors: Canonical paths of the folders being walked, to detect links back to one of them
+    private Node plan(final File file, final boolean followLinks, final Set<String> ancestors) {
+        final boolean isDirectory = file.isDirectory() && (followLinks || !isSymlink(file));
+        final Node node = new Node(file, isDirectory);
+        final String canonical = isDirectory && followLinks ? getCanonicalPath(file) : null;
+        if (canonical != null && !ancestors.add(canonical)) {
+            node.isLinkLoop = true;
+        } else if (isDirectory) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                for (final File child : children) {
+                    final Node childNode = plan(child, followLinks, ancestors);
+                    node.children.add(childNode);
+                    node.files += childNode.files;
+                    node.bytes += childNode.bytes;
+                }
+            }
+            ancestors.remove(canonical);
+        } else {
+            node.files = 1;
+            node.bytes = followLinks ? file.length() : 0;
+        }
+        return node;
+    }
+
+    // Destination must be free and not inside of the source
+    private boolean prepareDest(final Item item) {
+        final String srcPath = item.src.getAbsolutePath();
+        if (item.dest == null || item.dest.getAbsolutePath().equals(srcPath) || item.dest.getAbsolutePath().startsWith(srcPath + File.separator)) {
+            return false;
+        }
+        if (item.dest.exists()) {
+            return item.replaceExisting && delete(plan(item.dest, false), false);
+        }
+        return true;
+    }
+
+    private boolean copy(final Node node, final File dest, final boolean keepModTime) {
+        if (isCancelled()) {
+            return false;
+        }
+
+        _current = node.file;
+        if (node.isLinkLoop) {
+            _failed.add(node.file);
+            return false;
+        }
+
+        final boolean created;
+        boolean ok;
+        if (node.isDirectory) {
+            ok = created = dest.mkdir() || dest.isDirectory();
+            if (created) {
+                for (final Node child : node.children) {
+                    ok &= copy(child, new File(dest, child.file.getName()), keepModTime);
+                }
+            } else {
+                _filesDone += node.files;
+                _bytesDone += node.bytes;
+            }
+        } else {
+            final long bytesBefore = _bytesDone;
+            ok = created = transfer(node.file, dest);
+            _bytesDone = bytesBefore + node.bytes;
+            _filesDone++;
+        }
+
+        if (ok && keepModTime) {
+            dest.setLastModified(node.file.lastModified());
+        } else if (!created && !isCancelled()) {
+            _failed.add(node.file);
+        }
+        reportProgress(false);
+        return ok;
+    }
+
+    private boolean transfer(final File src, final File dest) {
+        boolean ok = false;
+        try (final FileInputStream is = new FileInputStream(src); final FileOutputStream os = new FileOutputStream(dest)) {
+            final FileChannel in = is.getChannel(), out = os.getChannel();
+            final long size = in.size();
+            long position = 0;
+            while (position < size && !isCancelled()) {
+                final long count = in.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+                _bytesDone += count;
+                reportProgress(false);
+            }
+            ok = position >= size;
+        } catch (IOException ignored) {
+        }
+
+        if (!ok) {
+            dest.delete();
+        }
+        return ok;
+    }
+
+    // Children first, then the node itself
+    private boolean delete(final Node node, final boolean countProgress) {
+        if (isCancelled()) {
+            return false;
+        }
+
+        boolean ok = true;
+        for (final Node child : node.children) {
+            ok &= delete(child, countProgress);
+        }
+
+        _current = node.file;
+        if (ok) {
+            ok = _deleter.callback(node.file) || !node.file.exists();
+            if (!ok) {
+                _failed.add(node.file);
+            }
+        }
+        if (countProgress && !node.isDirectory) {
+            _filesDone++;
+            reportProgress(false);
+        }
+        return ok;
+    }
+
+    private void reportProgress(final boolean force) {
+        final long now = System.currentTimeMillis();
+        if (_progressListener != null && (force || (now - _lastProgressReport) >= PROGRESS_INTERVAL_MS)) {
+            _lastProgressReport = now;
+            _progressListener.callback(new Progress(_filesDone, _filesTotal, _bytesDone, _bytesTotal, _current));
+        }
+    }
+
+    @Nullable
+    private static String getCanonicalPath(final File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // A file is a link if its canonical path differs from the one of its (canonical) parent plus name
+    private static boolean isSymlink(final File file) {
+        try {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            if (parent == null) {
+                return false;
+            }
+            final File expected = new File(parent.getCanonicalFile(), file.getName());
+            return !expected.getCanonicalFile().equals(expected.getAbsoluteFile());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,500 @@
+/*#######################################################
+ *
+ * SPDX-FileCopyrightText: 2025 Gregor Santner <gsantner AT mailbox DOT org>
+ * SPDX-License-Identifier: Unlicense OR CC0-1.0
+ *
+ * Written 2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+#########################################################*/
+package net.gsantner.opoc.util;
+
+import android.os.FileObserver;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
+import net.gsantner.opoc.wrapper.GsCallback;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of all files and folders below a root folder (e.g. the notebook).
+ * <p>
+ * The index is built once in the background. Afterwards it is kept current by a {@link FileObserver}
+ * per folder (FileObserver is not recursive) and by a periodic reconciliation, which relists folders
+ * whose modification time changed. Folders beyond {@link #MAX_WATCHED_FOLDERS} are only reconciled.
+ * <p>
+ * Ignored files and folders (e.g. .git) are kept as children of their folder, so that listings are complete,
+ * but ignored folders are not descended into or watched and ignored entries are left out of queries.
+ * <p>
+ * Queries never touch the disk. Files which are not covered by the index (outside of the root,
+ * inside ignored folders, behind links or not indexed yet) are reported as unknown, so that callers can fall back to the disk.
+ * All changes are applied on one background thread, queries can be made from any thread.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class GsFileTreeIndex {
+    private static final int MAX_WATCHED_FOLDERS = 2000;
+    private static final long RECONCILE_INTERVAL_MS = 5 * 60 * 1000;
+    private static final int WATCH_MASK = FileObserver.CREATE | FileObserver.DELETE | FileObserver.MOVED_FROM
+            | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE | FileObserver.ATTRIB
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static GsFileTreeIndex _instance;
+
+    // Children of an indexed folder, and the modification time of the folder when they were listed
+    private static class Folder {
+        final Map<String, GsFileEntry> children = new HashMap<>();
+        long modTime;
+        FileObserver observer;
+
+        Folder(final long modTime) {
+            this.modTime = modTime;
+        }
+    }
+
+    private final File _root;
+    private final GsFileWalker _ignore;
+    private final Map<File, Folder> _folders = new HashMap<>(); // Guarded by this
+    private final List<GsCallback.a1<File>> _listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService _executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "GsFileTreeIndex");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private volatile boolean _ready = false;
+    private volatile boolean _stopped = false;
+    private boolean _watching = false;
+    private int _watchedCount = 0;
+
+    /**
+     * @param root         Folder to index
+     * @param ignoredNames Names of files and folders to not descend into or query, see {@link GsFileWalker#setIgnoredNames}
+     */
+    public GsFileTreeIndex(@NonNull final File root, @Nullable final Collection<String> ignoredNames) {
+        _root = root.getAbsoluteFile();
+        _ignore = new GsFileWalker().setIgnoredNames(ignoredNames, false, null);
+    }
+
+    /**
+     * Get the shared index of root, it is started on first use. A shared index of another root is stopped.
+     */
+    public static synchronized GsFileTreeIndex get(@NonNull final File root, @Nullable final Collection<String> ignoredNames) {
+        if (_instance == null || !_instance._root.equals(root.getAbsoluteFile())) {
+            if (_instance != null) {
+                _instance.stop();
+            }
+            _instance = new GsFileTreeIndex(root, ignoredNames).start(true);
+        }
+        return _instance;
+    }
+
+    /**
+     * @return The shared index, null if none was started
+     */
+    public static synchronized @Nullable GsFileTreeIndex getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Build the index in the background and keep it current
+     *
+     * @param watch Watch folders for changes, else changes are only picked up by reconciliation
+     */
+    public GsFileTreeIndex start(final boolean watch) {
+        _watching = watch;
+        _executor.execute(this::build);
+        _executor.scheduleWithFixedDelay(this::reconcile, RECONCILE_INTERVAL_MS, RECONCILE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public void stop() {
+        _stopped = true;
+        _executor.shutdownNow();
+        synchronized (this) {
+            for (final Folder folder : _folders.values()) {
+                unwatch(folder);
+            }
+            _folders.clear();
+            _ready = false;
+        }
+    }
+
+    /**
+     * Reconcile the index with the disk soon, e.g. when the app returns to foreground
+     */
+    public void reconcileSoon() {
+        execute(this::reconcile);
+    }
+
+    /**
+     * @param listener Called on a background thread with the folder whose children changed
+     */
+    public void addChangeListener(@NonNull final GsCallback.a1<File> listener) {
+        _listeners.add(listener);
+    }
+
+    public void removeChangeListener(@Nullable final GsCallback.a1<File> listener) {
+        _listeners.remove(listener);
+    }
+
+    //########################
+    //## Queries
+    //########################
+
+    public File getRoot() {
+        return _root;
+    }
+
+    public boolean isReady() {
+        return _ready;
+    }
+
+    // Number of indexed files and folders
+    public synchronized int size() {
+        int size = 0;
+        for (final Folder folder : _folders.values()) {
+            size += folder.children.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Snapshots of the children of folder, null if the folder is not indexed
+     */
+    public synchronized @Nullable List<GsFileEntry> list(@NonNull final File folder) {
+        final Folder indexed = _ready ? _folders.get(folder.getAbsoluteFile()) : null;
+        return indexed != null ? new ArrayList<>(indexed.children.values()) : null;
+    }
+
+    /**
+     * @return true if the index knows whether file exists, i.e. the parent of file is indexed
+     */
+    public synchronized boolean covers(@NonNull final File file) {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        return _ready && parent != null && _folders.containsKey(parent);
+    }
+
+    // True if folder is indexed and changes are reported as they happen
+    public synchronized boolean isWatched(@NonNull final File folder) {
+        final Folder indexed = _ready ? _folders.get(folder.getAbsoluteFile()) : null;
+        return indexed != null && indexed.observer != null;
+    }
+
+    /**
+     * @return Snapshot of file, null if it does not exist or is not covered
+     */
+    public synchronized @Nullable GsFileEntry get(@NonNull final File file) {
+        final File abs = file.getAbsoluteFile();
+        final Folder parent = _ready && abs.getParentFile() != null ? _folders.get(abs.getParentFile()) : null;
+        return parent != null ? parent.children.get(abs.getName()) : null;
+    }
+
+    /**
+     * @return All indexed files and folders accepted by filter, in no particular order. Ignored ones are left out.
+     */
+    public synchronized List<GsFileEntry> query(@NonNull final GsCallback.b1<GsFileEntry> filter) {
+        final List<GsFileEntry> result = new ArrayList<>();
+        for (final Folder folder : _folders.values()) {
+            for (final GsFileEntry entry : folder.children.values()) {
+                if (!_ignore.isIgnored(entry.name) && filter.callback(entry)) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Files and folders with part in their name
+    public List<GsFileEntry> findByName(@NonNull final String part, final boolean ignoreCase) {
+        final String search = ignoreCase ? part.toLowerCase(Locale.ROOT) : part;
+        return query(entry -> (ignoreCase ? entry.name.toLowerCase(Locale.ROOT) : entry.name).contains(search));
+    }
+
+    /**
+     * @param extensions Lowercase extensions including the dot, e.g. ".md"
+     * @return Files with one of the extensions
+     */
+    public List<GsFileEntry> findByExtension(@NonNull final Collection<String> extensions) {
+        final Set<String> search = new HashSet<>(extensions);
+        return query(entry -> {
+            final int dot = entry.name.lastIndexOf('.');
+            return entry.isFile && dot >= 0 && search.contains(entry.name.substring(dot).toLowerCase(Locale.ROOT));
+        });
+    }
+
+    // Most recently modified files, newest first
+    public List<GsFileEntry> getRecent(final int max) {
+        final List<GsFileEntry> files = query(entry -> entry.isFile);
+        GsCollectionUtils.keySort(files, entry -> -entry.lastModified);
+        return files.size() > max ? new ArrayList<>(files.subList(0, max)) : files;
+    }
+
+    //########################
+    //## Maintenance, only called on the index thread (or by tests)
+    //########################
+
+    void build() {
+        final Map<File, Folder> folders = readTree(_root, true);
+        synchronized (this) {
+            for (final Folder folder : _folders.values()) {
+                unwatch(folder);
+            }
+            _folders.clear();
+            addFolders(folders);
+            _ready = true;
+        }
+        notifyChanged(_root);
+    }
+
+    // Relist all folders whose modification time changed, and all which are not watched
+    void reconcile() {
+        final Map<File, Boolean> check = new HashMap<>();
+        synchronized (this) {
+            if (!_ready) {
+                return;
+            }
+            for (final Map.Entry<File, Folder> folder : _folders.entrySet()) {
+                check.put(folder.getKey(), folder.getValue().observer == null);
+            }
+        }
+
+        if (!check.containsKey(_root)) {
+            // Root could not be listed before, e.g. due to missing permission
+            build();
+            return;
+        }
+
+        for (final Map.Entry<File, Boolean> folder : check.entrySet()) {
+            if (_stopped) {
+                return;
+            }
+            final long modTime = folder.getKey().lastModified();
+            final Long recorded = getModTime(folder.getKey());
+            if (recorded != null && (folder.getValue() || modTime != recorded)) {
+                relist(folder.getKey());
+            }
+        }
+    }
+
+    // Apply a change reported by the observer of folder
+    void handleEvent(final File folder, final int event, @Nullable final String name) {
+        if ((event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0) {
+            final File parent = folder.getParentFile();
+            if (parent != null) {
+                refreshChild(parent, folder.getName());
+            }
+        } else if (name != null) {
+            refreshChild(folder, name);
+        }
+    }
+
+    private synchronized Long getModTime(final File folder) {
+        final Folder indexed = _folders.get(folder);
+        return indexed != null ? indexed.modTime : null;
+    }
+
+    private Folder readFolder(final File dir) {
+        final long modTime = dir.lastModified();
+        final List<GsFileEntry> entries = GsFileWalker.listFolder(dir);
+        if (entries == null) {
+            return null;
+        }
+        final Folder folder = new Folder(modTime);
+        for (final GsFileEntry entry : entries) {
+            folder.children.put(entry.name, entry);
+        }
+        return folder;
+    }
+
+    // Whether entry is a folder whose children are indexed too
+    private boolean isFolderToIndex(final GsFileEntry entry) {
+        return entry.isDirectory && !_ignore.isIgnored(entry.name) && !GsFileUtils.isSymbolicLink(entry.file);
+    }
+
+    // Read top and all folders below it from disk, without holding the lock
+    private Map<File, Folder> readTree(final File top, final boolean parallel) {
+        final Map<File, Folder> folders = new ConcurrentHashMap<>();
+        final GsFileWalker walker = new GsFileWalker()
+                .setCancelledCheck(() -> _stopped)
+                .setLister(dir -> {
+                    final Folder folder = readFolder(dir);
+                    if (folder == null) {
+                        return null;
+                    }
+                    folders.put(dir, folder);
+                    return new ArrayList<>(folder.children.values());
+                });
+        if (parallel) {
+            walker.setParallel();
+        }
+        walker.walk(top, (entry, depth) -> !_ignore.isIgnored(entry.name));
+        return folders;
+    }
+
+    // Caller holds the lock
+    private void addFolders(final Map<File, Folder> folders) {
+        for (final Map.Entry<File, Folder> folder : folders.entrySet()) {
+            final Folder prev = _folders.put(folder.getKey(), folder.getValue());
+            if (prev != null) {
+                unwatch(prev);
+            }
+            watch(folder.getKey(), folder.getValue());
+        }
+    }
+
+    // Remove folder and all folders below it, caller holds the lock
+    private void removeTree(final File folder) {
+        final String prefix = folder.getPath() + File.separator;
+        final Iterator<Map.Entry<File, Folder>> iter = _folders.entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<File, Folder> indexed = iter.next();
+            if (indexed.getKey().equals(folder) || indexed.getKey().getPath().startsWith(prefix)) {
+                unwatch(indexed.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    // Bring one child of dir in line with the disk
+    private void refreshChild(final File dir, final String name) {
+        final File file = new File(dir, name);
+        final GsFileEntry entry = GsFileEntry.read(file);
+        final boolean exists = entry.isDirectory || entry.isFile || file.exists();
+        final boolean isFolderToIndex = exists && isFolderToIndex(entry);
+        final long dirModTime = dir.lastModified();
+
+        final boolean isNewFolder;
+        synchronized (this) {
+            final Folder folder = _folders.get(dir);
+            if (folder == null) {
+                return;
+            }
+            final GsFileEntry prev = exists ? folder.children.put(name, entry) : folder.children.remove(name);
+            if (prev != null && prev.isDirectory && !isFolderToIndex) {
+                removeTree(file);
+            }
+            // Children are current now, so reconciliation can skip dir
+            folder.modTime = dirModTime;
+            isNewFolder = isFolderToIndex && !_folders.containsKey(file);
+        }
+
+        if (isNewFolder) {
+            final Map<File, Folder> added = readTree(file, false);
+            synchronized (this) {
+                if (_folders.containsKey(dir)) {
+                    addFolders(added);
+                }
+            }
+        }
+        notifyChanged(dir);
+    }
+
+    private void relist(final File dir) {
+        final Folder fresh = readFolder(dir);
+        final List<File> candidates = new ArrayList<>();
+        if (fresh != null) {
+            for (final GsFileEntry entry : fresh.children.values()) {
+                if (isFolderToIndex(entry)) {
+                    candidates.add(entry.file);
+                }
+            }
+        }
+
+        final List<File> added = new ArrayList<>();
+        boolean changed = false;
+        synchronized (this) {
+            final Folder folder = _folders.get(dir);
+            if (folder == null) {
+                return;
+            }
+            if (fresh == null) {
+                removeTree(dir);
+                changed = true;
+            } else {
+                for (final GsFileEntry prev : folder.children.values()) {
+                    final GsFileEntry now = fresh.children.get(prev.name);
+                    changed |= now == null || !now.hasSameAttributes(prev);
+                    if (prev.isDirectory && (now == null || !now.isDirectory)) {
+                        removeTree(prev.file);
+                    }
+                }
+                changed |= fresh.children.size() != folder.children.size();
+                fresh.observer = folder.observer;
+                _folders.put(dir, fresh);
+                for (final File candidate : candidates) {
+                    if (!_folders.containsKey(candidate)) {
+                        added.add(candidate);
+                    }
+                }
+            }
+        }
+
+        for (final File folder : added) {
+            final Map<File, Folder> tree = readTree(folder, false);
+            synchronized (this) {
+                if (_folders.containsKey(dir)) {
+                    addFolders(tree);
+                }
+            }
+        }
+        if (changed) {
+            notifyChanged(dir);
+        }
+    }
+
+    // Caller holds the lock
+    private void watch(final File dir, final Folder folder) {
+        if (!_watching || _stopped || _watchedCount >= MAX_WATCHED_FOLDERS) {
+            return;
+        }
+        folder.observer = new FileObserver(dir.getPath(), WATCH_MASK) {
+            @Override
+            public void onEvent(final int event, @Nullable final String path) {
+                execute(() -> handleEvent(dir, event & FileObserver.ALL_EVENTS, path));
+            }
+        };
+        folder.observer.startWatching();
+        _watchedCount++;
+    }
+
+    // Caller holds the lock
+    private void unwatch(final Folder folder) {
+        if (folder.observer != null) {
+            folder.observer.stopWatching();
+            folder.observer = null;
+            _watchedCount--;
+        }
+    }
+
+    private void execute(final Runnable runnable) {
+        try {
+            _executor.execute(runnable);
+        } catch (RejectedExecutionException ignored) {
+            // Stopped
+        }
+    }
+
+    private void notifyChanged(final File folder) {
+        for (final GsCallback.a1<File> listener : _listeners) {
+            listener.callback(folder);
+        }
+    }
+}
@@ -23,6 +23,8 @@ import androidx.annotation.RequiresApi;
 
 import net.gsantner.opoc.format.GsTextUtils;
 import net.gsantner.opoc.frontend.filebrowser.GsFileBrowserListAdapter;
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
+import net.gsantner.opoc.wrapper.GsCallback;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
@@ -41,12 +43,8 @@ import java.io.Serializable;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.nio.file.FileSystems;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.PathMatcher;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
@@ -56,6 +54,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -781,32 +780,48 @@ public class GsFileUtils {
 
     public static final String SORT_BY_NAME = "NAME", SORT_BY_FILESIZE = "FILESIZE", SORT_BY_MTIME = "MTIME", SORT_BY_MIMETYPE = "MIMETYPE";
 
+    // Lists with at least this many entries are sorted in parallel (where available)
+    private static final int PARALLEL_SORT_MIN_SIZE = 5000;
+
     /**
-     * Get a key which can be use to sort File objects
-     * This is highly performant as each file is processed exactly once.
+     * Key to sort a file by, created once per file.
+     * Numbers are kept as primitives and the name is split into natural order chunks ahead,
+     * so that comparisons do no parsing or allocation.
      * Inspired by python's sort
-     *
-     * @param sortBy String key of what to sort
-     * @param file   The file object to get the
-     * @return A key which can be used for comparisons / sorting
      */
-    private static String makeSortKey(final String sortBy, final File file) {
-        final String name = file.getName().toLowerCase();
-        switch (sortBy) {
-            case SORT_BY_MTIME: {
-                return file.lastModified() + name;
-            }
-            case SORT_BY_FILESIZE: {
-                return String.format("%015d", file.length()) + name;
+    private static final class FileSortKey {
+        final GsFileEntry entry;
+        final boolean isDirectory;
+        final long number;
+        final AlphanumComparator.Key type;
+        final AlphanumComparator.Key name;
+
+        FileSortKey(final String sortBy, final GsFileEntry entry) {
+            this.entry = entry;
+            this.isDirectory = entry.isDirectory;
+            this.number = SORT_BY_MTIME.equals(sortBy) ? entry.lastModified : (SORT_BY_FILESIZE.equals(sortBy) ? entry.length : 0);
+            this.type = SORT_BY_MIMETYPE.equals(sortBy) ? new AlphanumComparator.Key(getMimeType(entry.file).toLowerCase()) : null;
+            this.name = new AlphanumComparator.Key(entry.name.toLowerCase());
+        }
+    }
+
+    private static Comparator<FileSortKey> makeSortKeyComparator(final SortOrder order) {
+        final boolean byNumber = SORT_BY_MTIME.equals(order.sortByType) || SORT_BY_FILESIZE.equals(order.sortByType);
+        final boolean byType = SORT_BY_MIMETYPE.equals(order.sortByType);
+        final int direction = order.reverse ? -1 : 1;
+        return (a, b) -> {
+            if (order.folderFirst && a.isDirectory != b.isDirectory) {
+                return a.isDirectory ? -1 : 1;
             }
-            case SORT_BY_MIMETYPE: {
-                return getMimeType(file).toLowerCase() + name;
+            int result = byNumber ? Long.compare(a.number, b.number) : 0;
+            if (result == 0 && byType) {
+                result = a.type.compareTo(b.type);
             }
-            case SORT_BY_NAME:
-            default: {
-                return name;
+            if (result == 0) {
+                result = a.name.compareTo(b.name);
             }
-        }
+            return direction * result;
+        };
     }
 
     public static class SortOrder {
@@ -845,21 +860,33 @@ public class GsFileUtils {
 
     public static void sortFiles(final Collection<File> filesToSort, final SortOrder order) {
         if (filesToSort != null && !filesToSort.isEmpty()) {
-            try {
-                final boolean copy = !(filesToSort instanceof List);
-                final List<File> sortable = copy ? new ArrayList<>(filesToSort) : (List<File>) filesToSort;
+            final List<GsFileEntry> entries = GsCollectionUtils.map(filesToSort, (f) -> GsFileEntry.read(f));
+            sortFileEntries(entries, order);
+            filesToSort.clear();
+            filesToSort.addAll(GsCollectionUtils.map(entries, (e) -> e.file));
+        }
+    }
 
-                GsCollectionUtils.keySort(sortable, (f) -> makeSortKey(order.sortByType, f), new AlphanumComparator());
-                if (order.reverse) {
-                    Collections.reverse(sortable);
+    /**
+     * Sort snapshots of files. The filesystem is not accessed (except for mime type detection).
+     */
+    public static void sortFileEntries(final List<GsFileEntry> entriesToSort, final SortOrder order) {
+        if (entriesToSort != null && !entriesToSort.isEmpty()) {
+            try {
+                final FileSortKey[] keys = new FileSortKey[entriesToSort.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = new FileSortKey(order.sortByType, entriesToSort.get(i));
                 }
-                if (order.folderFirst) {
-                    GsCollectionUtils.keySort(sortable, (f) -> !f.isDirectory());
+
+                final Comparator<FileSortKey> comparator = makeSortKeyComparator(order);
+                if (keys.length >= PARALLEL_SORT_MIN_SIZE && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                    Arrays.parallelSort(keys, comparator);
+                } else {
+                    Arrays.sort(keys, comparator);
                 }
 
-                if (copy) {
-                    filesToSort.clear();
-                    filesToSort.addAll(sortable);
+                for (int i = 0; i < keys.length; i++) {
+                    entriesToSort.set(i, keys[i].entry);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -917,13 +944,20 @@ public class GsFileUtils {
     }
 
     public static File findNonConflictingDest(final File destDir, final String name) {
+        return findNonConflictingDest(destDir, name, null);
+    }
+
+    /**
+     * @param isReserved Optional check for destinations which are taken, even though they do not exist yet
+     */
+    public static File findNonConflictingDest(final File destDir, final String name, @Nullable final GsCallback.b1<File> isReserved) {
         File dest = new File(destDir, name);
         final String[] splits = name.split("\\.");
         final String baseName = splits[0];
         splits[0] = "";
         final String extension = String.join(".", splits);
         int i = 1;
-        while (dest.exists()) {
+        while (dest.exists() || (isReserved != null && isReserved.callback(dest))) {
             dest = new File(destDir, String.format("%s_%d%s", baseName, i, extension));
             i++;
         }
@@ -1000,18 +1034,17 @@ public class GsFileUtils {
             glob = glob.startsWith("glob:") ? glob : "glob:" + glob;
 
             final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(glob);
-            final List<File> found = new ArrayList<>();
-            Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs) {
-                    if (matcher.matches(path)) {
-                        found.add(path.toFile());
-                    }
-                    return FileVisitResult.CONTINUE;
+            final List<File> found = Collections.synchronizedList(new ArrayList<>());
+            new GsFileWalker().setParallel().walk(root, (entry, depth) -> {
+                if (!entry.isDirectory && matcher.matches(entry.file.toPath())) {
+                    found.add(entry.file);
                 }
+                return true;
             });
-            return found;
-        } catch (IOException e) {
+            final List<File> sorted = new ArrayList<>(found);
+            Collections.sort(sorted);
+            return sorted;
+        } catch (Exception e) {
             Log.d(GsFileUtils.class.getName(), e.toString());
         }
         return null;
@@ -0,0 +1,270 @@
+/*#######################################################
+ *
+ * SPDX-FileCopyrightText: 2025 Gregor Santner <gsantner AT mailbox DOT org>
+ * SPDX-License-Identifier: Unlicense OR CC0-1.0
+ *
+ * Written 2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ * To the extent possible under law, the author(s) have dedicated all copyright and related and neighboring rights to this software to the public domain worldwide. This software is distributed without any warranty.
+ * You should have received a copy of the CC0 Public Domain Dedication along with this software. If not, see <http://creativecommons.org/publicdomain/zero/1.0/>.
+#########################################################*/
+package net.gsantner.opoc.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
+import net.gsantner.opoc.wrapper.GsCallback;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * Recursive directory walker, optionally listing multiple folders in parallel.
+ * <p>
+ * Every entry below the root (not the root itself) is passed to a {@link Visitor}, unless its name is ignored.
+ * Entries directly in the root have depth 1. Folders are descended into as long as they are not deeper than
+ * the max depth, the visitor agrees and they are not links (unless links are followed).
+ * <p>
+ * With more than one thread, folders are listed by a small pool sharing one queue of pending folders.
+ * The visitor is then called concurrently and the order of entries is not defined.
+ */
+@SuppressWarnings({"WeakerAccess", "unused", "UnusedReturnValue"})
+public class GsFileWalker {
+    public interface Visitor {
+        /**
+         * @param entry Snapshot of the file or folder
+         * @param depth Depth of the entry, 1 for entries directly in the root
+         * @return false to not descend into entry (only relevant for folders)
+         */
+        boolean onEntry(GsFileEntry entry, int depth);
+    }
+
+    private int _maxDepth = Integer.MAX_VALUE;
+    private int _threads = 1;
+    private boolean _followLinks = false;
+    private boolean _ignoreCase = false;
+    private final Set<String> _ignoredExactNames = new HashSet<>();
+    private final List<Pattern> _ignoredNamePatterns = new ArrayList<>();
+    private GsCallback.b0 _isCancelled = () -> false;
+    private GsCallback.r1<List<GsFileEntry>, File> _lister = GsFileWalker::listFolder;
+
+    public GsFileWalker setMaxDepth(final int maxDepth) {
+        _maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * @param threads Number of folders listed in parallel, 1 to walk on the calling thread only
+     */
+    public GsFileWalker setThreads(final int threads) {
+        _threads = Math.max(1, threads);
+        return this;
+    }
+
+    // Use all but one core (which is kept for the UI)
+    public GsFileWalker setParallel() {
+        return setThreads(Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    public GsFileWalker setFollowLinks(final boolean followLinks) {
+        _followLinks = followLinks;
+        return this;
+    }
+
+    public GsFileWalker setCancelledCheck(@NonNull final GsCallback.b0 isCancelled) {
+        _isCancelled = isCancelled;
+        return this;
+    }
+
+    /**
+     * Set how folders are listed, e.g. to take listings from a cache
+     *
+     * @param lister Returns snapshots of the children of a folder, or null if it can't be listed
+     */
+    public GsFileWalker setLister(@NonNull final GsCallback.r1<List<GsFileEntry>, File> lister) {
+        _lister = lister;
+        return this;
+    }
+
+    /**
+     * Ignore files and folders by name. Ignored folders are not descended into.
+     * A pattern in quotes ("name") matches the exact name, other patterns are regular expressions
+     * where a '*' which doesn't follow a '.' matches anything.
+     *
+     * @param patterns         Patterns to ignore
+     * @param ignoreCase       Match names case-insensitively
+     * @param onInvalidPattern Called with patterns which can't be compiled, may be null
+     */
+    public GsFileWalker setIgnoredNames(@Nullable final Collection<String> patterns, final boolean ignoreCase, @Nullable final GsCallback.a1<String> onInvalidPattern) {
+        _ignoreCase = ignoreCase;
+        _ignoredExactNames.clear();
+        _ignoredNamePatterns.clear();
+        return addIgnoredNames(patterns, onInvalidPattern);
+    }
+
+    public GsFileWalker addIgnoredNames(@Nullable final Collection<String> patterns, @Nullable final GsCallback.a1<String> onInvalidPattern) {
+        for (String pattern : (patterns != null ? patterns : new ArrayList<String>())) {
+            pattern = _ignoreCase ? pattern.toLowerCase(Locale.ROOT) : pattern;
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            if (pattern.startsWith("\"")) {
+                pattern = pattern.replace("\"", "");
+                if (!pattern.isEmpty()) {
+                    _ignoredExactNames.add(pattern);
+                }
+            } else {
+                try {
+                    _ignoredNamePatterns.add(Pattern.compile(pattern.replaceAll("(?<![.])[*]", ".*")));
+                } catch (Exception ex) {
+                    if (onInvalidPattern != null) {
+                        onInvalidPattern.callback(pattern);
+                    }
+                }
+            }
+        }
+        return this;
+    }
+
+    public boolean isIgnored(final String name) {
+        final String test = _ignoreCase ? name.toLowerCase(Locale.ROOT) : name;
+        if (_ignoredExactNames.contains(test)) {
+            return true;
+        }
+        for (final Pattern pattern : _ignoredNamePatterns) {
+            if (pattern.matcher(test).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walk all entries below root. Returns once the walk is complete or cancelled.
+     *
+     * @param root    Folder to walk
+     * @param visitor Called for every entry, concurrently if multiple threads are used
+     */
+    public void walk(@NonNull final File root, @NonNull final Visitor visitor) {
+        if (_threads <= 1) {
+            walkSequential(root, visitor);
+        } else {
+            walkParallel(root, visitor);
+        }
+    }
+
+    private void walkSequential(final File root, final Visitor visitor) {
+        final ArrayDeque<File> folders = new ArrayDeque<>();
+        final ArrayDeque<Integer> depths = new ArrayDeque<>();
+        folders.add(root);
+        depths.add(0);
+        while (!folders.isEmpty() && !_isCancelled.callback()) {
+            final File folder = folders.pollLast();
+            final int depth = depths.pollLast();
+            for (final GsFileEntry child : visitFolder(folder, depth, visitor)) {
+                folders.addLast(child.file);
+                depths.addLast(depth + 1);
+            }
+        }
+    }
+
+    private void walkParallel(final File root, final Visitor visitor) {
+        final ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        final AtomicInteger pending = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<RuntimeException> error = new AtomicReference<>();
+        try {
+            submitFolder(pool, root, 0, visitor, pending, done, error);
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+
+    private void submitFolder(
+            final ExecutorService pool,
+            final File folder,
+            final int depth,
+            final Visitor visitor,
+            final AtomicInteger pending,
+            final CountDownLatch done,
+            final AtomicReference<RuntimeException> error
+    ) {
+        pending.incrementAndGet();
+        try {
+            pool.execute(() -> {
+                try {
+                    if (!_isCancelled.callback() && !pool.isShutdown() && error.get() == null) {
+                        for (final GsFileEntry child : visitFolder(folder, depth, visitor)) {
+                            submitFolder(pool, child.file, depth + 1, visitor, pending, done, error);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        done.countDown();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool was shut down because the walk was interrupted, handle like a cancellation
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+    }
+
+    // Visit all children of folder, return the folders to descend into
+    private List<GsFileEntry> visitFolder(final File folder, final int depth, final Visitor visitor) {
+        final List<GsFileEntry> descend = new ArrayList<>();
+        final List<GsFileEntry> children = depth < _maxDepth ? _lister.callback(folder) : null;
+        if (children == null) {
+            return descend;
+        }
+
+        for (final GsFileEntry child : children) {
+            if (_isCancelled.callback()) {
+                break;
+            }
+            if (isIgnored(child.name)) {
+                continue;
+            }
+            if (visitor.onEntry(child, depth + 1) && child.isDirectory && (depth + 1) < _maxDepth && (_followLinks || !GsFileUtils.isSymbolicLink(child.file))) {
+                descend.add(child);
+            }
+        }
+        return descend;
+    }
+
+    public static List<GsFileEntry> listFolder(final File folder) {
+        final File[] files = folder.canRead() ? folder.listFiles() : null;
+        if (files == null) {
+            return null;
+        }
+        final List<GsFileEntry> entries = new ArrayList<>(files.length);
+        for (final File file : files) {
+            entries.add(GsFileEntry.read(file));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,226 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.plaintext.highlight;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.gson.Gson;
+
+import net.gsantner.opoc.util.GsBenchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+public class CompiledSyntaxTest {
+    private static final String LANGUAGES_DIR = "src/main/assets/highlight/languages/";
+
+    private static final String JAVA_SOURCE = "package a.b;\n"
+            + "/* block\n comment */\n"
+            + "public class Foo extends Bar {\n"
+            + "    private static final int MAX_VALUE = 42; // return in a comment\n"
+            + "    String s = \"if \\n else\";\n"
+            + "    char c = '\\t'; String t = \"NONE of THIS\"; // call(x) with TODO\n"
+            + "    /* List<String> l = Foo.get(1); */ Map<String, Integer> m = new HashMap<>();\n"
+            + "    public void run(int x) {\n"
+            + "        if (x > 1.5e3) { return; } else { call(x); }\n"
+            + "    }\n"
+            + "}\n";
+    private static final String CPP_SOURCE = "#include <stdio.h>\n"
+            + "/* block comment */\n"
+            + "static inline int add(int a, int b) { return a + b; } // sum\n"
+            + "int main() { const char *s = \"x\\n\"; for (size_t i = 0; i < 10; i++) { printf(s); } return 0; }\n"
+            + "/* if (x) call(y); */ char t = '\\0'; // while sizeof(int)\n";
+    private static final String PYTHON_SOURCE = "import os\n"
+            + "def run(x, y=1.5):\n"
+            + "    '''docstring'''\n"
+            + "    if x is None or not y:  # comment\n"
+            + "        return len(\"abc\\n\")\n"
+            + "    return True\n"
+            + "print(\"None \\t\") # return len(x) if True\n";
+
+    private static Syntax loadSyntax(final String lang) throws IOException {
+        try (Reader reader = new FileReader(LANGUAGES_DIR + lang + ".json")) {
+            return new Gson().fromJson(reader, Syntax.class);
+        }
+    }
+
+    // One distinct color per rule type
+    private static Map<String, Integer> colorsOf(final Syntax syntax) {
+        final Map<String, Integer> colors = new HashMap<>();
+        for (final Syntax.Rule rule : syntax.rules) {
+            if (!colors.containsKey(rule.type)) {
+                colors.put(rule.type, colors.size() + 1);
+            }
+        }
+        return colors;
+    }
+
+    private static List<int[]> tokens(final CompiledSyntax compiled, final CharSequence text) {
+        final List<int[]> tokens = new ArrayList<>();
+        compiled.findTokens(text, (token, start, end) -> tokens.add(new int[]{token, start, end}));
+        return tokens;
+    }
+
+    private static String tokenAt(final CompiledSyntax compiled, final String text, final String needle) {
+        final int pos = text.indexOf(needle);
+        for (final int[] token : tokens(compiled, text)) {
+            if (token[1] <= pos && pos < token[2]) {
+                return compiled.getTokenType(token[0]);
+            }
+        }
+        return null;
+    }
+
+    // Color visible per char, spans reported later are drawn on top
+    private static int[] visibleColors(final CompiledSyntax compiled, final String text) {
+        final int[] visible = new int[text.length()];
+        for (final int[] token : tokens(compiled, text)) {
+            Arrays.fill(visible, token[1], token[2], compiled.getTokenColor(token[0]));
+        }
+        return visible;
+    }
+
+    // Color visible per char when every rule is applied on its own, in order of definition
+    private static int[] visibleColorsPerRule(final Syntax syntax, final Map<String, Integer> colors, final String text) {
+        final int[] visible = new int[text.length()];
+        for (final Syntax.Rule rule : syntax.rules) {
+            final Matcher m = rule.getPattern().matcher(text);
+            while (m.find()) {
+                Arrays.fill(visible, m.start(), m.end(), colors.get(rule.type));
+            }
+        }
+        return visible;
+    }
+
+    @Test
+    public void tokensAreOrderedAndNestedInsideOfTokens() throws IOException {
+        for (final String lang : new String[]{"java", "cpp", "python"}) {
+            final Syntax syntax = loadSyntax(lang);
+            final CompiledSyntax compiled = new CompiledSyntax(syntax.rules, colorsOf(syntax));
+            final List<int[]> outer = new ArrayList<>();
+            for (final int[] token : tokens(compiled, JAVA_SOURCE + CPP_SOURCE + PYTHON_SOURCE)) {
+                assertThat(token[2]).isGreaterThan(token[1]);
+                while (!outer.isEmpty() && outer.get(outer.size() - 1)[2] <= token[1]) {
+                    outer.remove(outer.size() - 1);
+                }
+                if (!outer.isEmpty()) {
+                    // Nested tokens are inside of the containing token and of a rule defined later
+                    final int[] parent = outer.get(outer.size() - 1);
+                    assertThat(token[1]).isGreaterThanOrEqualTo(parent[1]);
+                    assertThat(token[2]).isLessThanOrEqualTo(parent[2]);
+                    assertThat(token[0]).isLessThan(parent[0]);
+                }
+                outer.add(token);
+            }
+        }
+    }
+
+    @Test
+    public void highlightsLikeRulesAppliedOneByOne() throws IOException {
+        final String[][] inputs = {{"cpp", CPP_SOURCE}, {"java", JAVA_SOURCE}, {"python", PYTHON_SOURCE}};
+        for (final String[] input : inputs) {
+            final Syntax syntax = loadSyntax(input[0]);
+            final Map<String, Integer> colors = colorsOf(syntax);
+            final CompiledSyntax compiled = new CompiledSyntax(syntax.rules, colors);
+            final int[] expected = visibleColorsPerRule(syntax, colors, input[1]);
+            final int[] actual = visibleColors(compiled, input[1]);
+            for (int i = 0; i < expected.length; i++) {
+                assertThat(actual[i]).as(input[0] + " at " + i + ": " + input[1].substring(i, Math.min(i + 20, input[1].length()))).isEqualTo(expected[i]);
+            }
+        }
+    }
+
+    @Test
+    public void javaTokensAreRecognized() throws IOException {
+        final Syntax syntax = loadSyntax("java");
+        final CompiledSyntax compiled = new CompiledSyntax(syntax.rules, colorsOf(syntax));
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "public")).isEqualTo("KEYWORDS");
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "if (x")).isEqualTo("KEYWORDS_CONTROL");
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "int x")).isEqualTo("TYPES");
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "42")).isEqualTo("NUMBER");
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "MAX_VALUE")).isEqualTo("CONSTANT");
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "call(x);")).isEqualTo("FUNCTION");
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "block")).isEqualTo("BLOCK_COMMENT");
+        // Only rules defined later are matched again inside of other tokens
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "return in a comment")).isEqualTo("LINE_COMMENT");
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "if \\n")).isEqualTo("STRING");
+        final int[] visible = visibleColors(compiled, JAVA_SOURCE);
+        assertThat(visible[JAVA_SOURCE.indexOf("\\n else")]).isEqualTo(colorsOf(syntax).get("ESCAPE_CHAR"));
+        assertThat(visible[JAVA_SOURCE.indexOf("call(x) with")]).isEqualTo(colorsOf(syntax).get("FUNCTION"));
+    }
+
+    @Test
+    public void rulesWithoutColorAreSkipped() throws IOException {
+        final Syntax syntax = loadSyntax("java");
+        final Map<String, Integer> colors = new HashMap<>();
+        colors.put("KEYWORDS", 0xff008ad8);
+        final CompiledSyntax compiled = new CompiledSyntax(syntax.rules, colors);
+        assertThat(compiled.getTokenCount()).isEqualTo(1);
+        assertThat(compiled.getTokenColor(0)).isEqualTo(0xff008ad8);
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "if (x")).isNull();
+        assertThat(tokenAt(compiled, JAVA_SOURCE, "public")).isEqualTo("KEYWORDS");
+    }
+
+    @Test
+    public void regionScanFindsSameTokensAsFullScan() throws IOException {
+        final Syntax syntax = loadSyntax("java");
+        final CompiledSyntax compiled = new CompiledSyntax(syntax.rules, colorsOf(syntax));
+        final int start = JAVA_SOURCE.indexOf("public"), end = JAVA_SOURCE.length() / 2;
+
+        final List<String> expected = new ArrayList<>();
+        for (final int[] token : tokens(compiled, JAVA_SOURCE)) {
+            if (token[1] >= start && token[2] <= end) {
+                expected.add(Arrays.toString(token));
+            }
+        }
+
+        final List<String> actual = new ArrayList<>();
+        compiled.findTokens(JAVA_SOURCE, start, end, (token, s, e) -> {
+            assertThat(s).isGreaterThanOrEqualTo(start);
+            assertThat(e).isLessThanOrEqualTo(end);
+            actual.add(Arrays.toString(new int[]{token, s, e}));
+        });
+        assertThat(actual).isNotEmpty().containsAll(expected);
+    }
+
+    /**
+     * Compare the previous approach (one scan over the whole text per rule) with the compiled syntax
+     */
+    @Test
+    @Category(GsBenchmark.class)
+    public void benchmarkLargeSourceFiles() throws IOException {
+        final String[][] inputs = {{"cpp", CPP_SOURCE}, {"java", JAVA_SOURCE}, {"python", PYTHON_SOURCE}};
+        for (final String[] input : inputs) {
+            final Syntax syntax = loadSyntax(input[0]);
+            final Map<String, Integer> colors = colorsOf(syntax);
+            final StringBuilder sb = new StringBuilder();
+            while (sb.length() < 2 * 1024 * 1024) {
+                sb.append(input[1]);
+            }
+            final String text = sb.toString();
+            final String name = "CompiledSyntax " + input[0] + " " + text.length() / 1024 + " KiB";
+
+            for (int round = 0; round < 3; round++) {
+                GsBenchmark.measure(name + " / per rule", () -> visibleColorsPerRule(syntax, colors, text));
+                final int[] count = {0};
+                GsBenchmark.measure(name + " / compiled", () -> new CompiledSyntax(syntax.rules, colors).findTokens(text, (token, start, end) -> count[0]++));
+                assertThat(count[0]).isGreaterThan(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Calendar;
+
+public class TodoTxtArchiveTest {
+    private File root;
+    private File done;
+
+    @Before
+    public void before() throws IOException {
+        root = Files.createTempDirectory("markor_test").toFile();
+        done = new File(root, "done.txt");
+    }
+
+    @After
+    public void after() {
+        for (final File file : root.listFiles()) {
+            file.delete();
+        }
+        root.delete();
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void appendKeepsExistingContent() throws IOException {
+        assertThat(TodoTxtArchive.append(done, "x task 1")).isTrue();
+        assertThat(TodoTxtArchive.append(done, "x task 2\nx task 3")).isTrue();
+        assertThat(read(done)).isEqualTo("x task 1\nx task 2\nx task 3\n");
+
+        Files.write(done.toPath(), "x without line break".getBytes(StandardCharsets.UTF_8));
+        assertThat(TodoTxtArchive.append(done, "x task 4")).isTrue();
+        assertThat(read(done)).isEqualTo("x without line break\nx task 4\n");
+    }
+
+    @Test
+    public void rotateYearly() {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(2024, Calendar.JUNE, 1);
+        final File archive = TodoTxtArchive.getArchiveFile(done, TodoTxtArchive.ROTATE_YEARLY, 10, calendar.getTimeInMillis());
+        assertThat(archive).isEqualTo(new File(root, "done.2024.txt"));
+        assertThat(TodoTxtArchive.getArchiveFile(done, TodoTxtArchive.ROTATE_NONE, 10, calendar.getTimeInMillis())).isEqualTo(done);
+    }
+
+    @Test
+    public void rotateBySize() throws IOException {
+        Files.write(done.toPath(), new byte[(int) TodoTxtArchive.ROTATE_MAX_SIZE - 5]);
+        assertThat(TodoTxtArchive.getArchiveFile(done, TodoTxtArchive.ROTATE_SIZE, 5, 0)).isEqualTo(done);
+        assertThat(done.exists()).isTrue();
+
+        assertThat(TodoTxtArchive.getArchiveFile(done, TodoTxtArchive.ROTATE_SIZE, 6, 0)).isEqualTo(done);
+        assertThat(done.exists()).isFalse();
+        assertThat(new File(root, "done.1.txt").length()).isEqualTo(TodoTxtArchive.ROTATE_MAX_SIZE - 5);
+
+        Files.write(done.toPath(), new byte[(int) TodoTxtArchive.ROTATE_MAX_SIZE]);
+        TodoTxtArchive.getArchiveFile(done, TodoTxtArchive.ROTATE_SIZE, 1, 0);
+        assertThat(new File(root, "done.2.txt").exists()).isTrue();
+    }
+}
@@ -0,0 +1,66 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.gsantner.opoc.wrapper.GsCallback;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TodoTxtBatchEditTest {
+
+    private static String apply(final GsCallback.r1<String, String> transform, final String lines) {
+        return TodoTxtBatchEdit.transformLines(lines, Collections.singletonList(transform));
+    }
+
+    @Test
+    public void setsPriority() {
+        assertThat(apply(TodoTxtBatchEdit.setPriority('B'), "(A) call mom\n  call dad\ncall (C) someone"))
+                .isEqualTo("(B) call mom\n(B) call dad\n(B) call (C) someone");
+        assertThat(apply(TodoTxtBatchEdit.setPriority(TodoTxtTask.PRIORITY_NONE), "(A) call mom\n call dad"))
+                .isEqualTo("call mom\ncall dad");
+    }
+
+    @Test
+    public void togglesDone() {
+        final GsCallback.r1<String, String> toggle = TodoTxtBatchEdit.toggleDone("x 2025-01-02 ");
+        assertThat(apply(toggle, "(A) call mom\ncall dad\nx 2025-01-01 call someone"))
+                .isEqualTo("x 2025-01-02 call mom pri:A\nx 2025-01-02 call dad\ncall someone");
+        assertThat(apply(toggle, "x 2025-01-02 call mom pri:A")).isEqualTo("(A) call mom");
+    }
+
+    @Test
+    public void setsAndClearsDueDate() {
+        assertThat(apply(TodoTxtBatchEdit.setDueDate("2025-02-02"), "call due:2025-01-01 @home\ncall  "))
+                .isEqualTo("call due:2025-02-02 @home\ncall due:2025-02-02");
+        assertThat(apply(TodoTxtBatchEdit.clearDueDate(), "call due:2025-01-01 @home\ncall"))
+                .isEqualTo("call @home\ncall");
+    }
+
+    @Test
+    public void addsAndRemovesItems() {
+        assertThat(apply(TodoTxtBatchEdit.appendUniqueItem("+work"), "call +work\ncall\n"))
+                .isEqualTo("call +work\ncall +work\n +work");
+        assertThat(apply(TodoTxtBatchEdit.removeItem("+work"), "call +work now\ncall +work\ncall +workshop"))
+                .isEqualTo("call now\ncall\ncall +workshop");
+        assertThat(apply(TodoTxtBatchEdit.appendUniqueItem("+$1"), "call")).isEqualTo("call +$1");
+    }
+
+    @Test
+    public void appliesTransformationsInOrder() {
+        final String result = TodoTxtBatchEdit.transformLines("(A) call +old\nx mail +old", Arrays.asList(
+                TodoTxtBatchEdit.removeItem("+old"),
+                TodoTxtBatchEdit.appendUniqueItem("+new"),
+                TodoTxtBatchEdit.setPriority('C')));
+        assertThat(result).isEqualTo("(C) call +new\n(C) x mail +new");
+    }
+}
@@ -0,0 +1,107 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.gsantner.markor.format.todotxt.TodoTxtTask.TodoDueState;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class TodoTxtIndexTest {
+    private static final String TODAY = "2025-06-15";
+    private static final TodoTxtFilter.TYPE[] TYPES = {TodoTxtFilter.TYPE.PROJECT, TodoTxtFilter.TYPE.CONTEXT, TodoTxtFilter.TYPE.PRIORITY};
+
+    // Replace text like an editor does, notifying the index before and after
+    private static void replace(final TodoTxtIndex index, final StringBuilder text, final int start, final int end, final String replacement) {
+        index.onBeforeChange(text, start, end - start);
+        text.replace(start, end, replacement);
+        index.onChange(text, start, replacement.length());
+    }
+
+    // Everything the index answers, to compare indexes
+    private static List<String> describe(final TodoTxtIndex index) {
+        final List<String> result = new ArrayList<>();
+        for (final TodoTxtTask task : index.getTasks()) {
+            result.add(task.getLine());
+        }
+        for (final TodoTxtFilter.TYPE type : TYPES) {
+            result.add(type + " - " + index.getCount(type, null));
+            for (final String key : index.getKeys(type)) {
+                result.add(type + " " + key + " " + index.getCount(type, key));
+            }
+        }
+        for (final TodoDueState state : TodoDueState.values()) {
+            result.add(state + " " + index.getDueCount(state, TODAY));
+        }
+        return result;
+    }
+
+    @Test
+    public void indexesKeysAndDueStates() {
+        final TodoTxtIndex index = new TodoTxtIndex("(A) call mom @phone +family due:2025-06-15\n"
+                + "x done task @phone +work due:2025-01-01\n"
+                + "\n"
+                + "write report +work +work due:2025-07-01\n"
+                + "plain task");
+
+        assertThat(index.getLineCount()).isEqualTo(5);
+        assertThat(index.getKeys(TodoTxtFilter.TYPE.PROJECT)).containsExactly("family", "work");
+        assertThat(index.getCount(TodoTxtFilter.TYPE.PROJECT, "work")).isEqualTo(1);
+        assertThat(index.getCount(TodoTxtFilter.TYPE.PROJECT, null)).isEqualTo(1);
+        assertThat(index.getKeys(TodoTxtFilter.TYPE.CONTEXT)).containsExactly("phone");
+        assertThat(index.getCount(TodoTxtFilter.TYPE.CONTEXT, null)).isEqualTo(2);
+        assertThat(index.getKeys(TodoTxtFilter.TYPE.PRIORITY)).containsExactly("A");
+        assertThat(index.getDueCount(TodoDueState.TODAY, TODAY)).isEqualTo(1);
+        assertThat(index.getDueCount(TodoDueState.OVERDUE, TODAY)).isEqualTo(1);
+        assertThat(index.getDueCount(TodoDueState.FUTURE, TODAY)).isEqualTo(1);
+        assertThat(index.getDueCount(TodoDueState.NONE, TODAY)).isEqualTo(1);
+        assertThat(index.findLines(TodoTxtTask::isDone)).containsExactly(1);
+    }
+
+    @Test
+    public void editsUpdateIndex() {
+        final StringBuilder text = new StringBuilder("a +p\nb @c\nc");
+        final TodoTxtIndex index = new TodoTxtIndex(text);
+
+        replace(index, text, 4, 4, " @d\n(B) new +q");
+        assertThat(text.toString()).isEqualTo("a +p @d\n(B) new +q\nb @c\nc");
+        assertThat(describe(index)).isEqualTo(describe(new TodoTxtIndex(text)));
+        assertThat(index.getKeys(TodoTxtFilter.TYPE.PROJECT)).containsExactly("p", "q");
+
+        replace(index, text, 0, text.indexOf("b @c"), "");
+        assertThat(describe(index)).isEqualTo(describe(new TodoTxtIndex(text)));
+        assertThat(index.getKeys(TodoTxtFilter.TYPE.PROJECT)).isEmpty();
+
+        replace(index, text, 0, 0, "x ");
+        assertThat(index.getKeys(TodoTxtFilter.TYPE.CONTEXT)).isEmpty();
+    }
+
+    @Test
+    public void randomEditsMatchRebuild() {
+        final String[] inserts = {"\n", "x ", "(A) ", "+p", "@c", " ", "due:2025-06-1", "word", "\n\n", "+q @d"};
+        final Random random = new Random(3);
+        final StringBuilder text = new StringBuilder();
+        final TodoTxtIndex index = new TodoTxtIndex(text);
+        for (int n = 0; n < 3000; n++) {
+            final int start = random.nextInt(text.length() + 1);
+            final int end = random.nextInt(4) == 0 ? Math.min(text.length(), start + random.nextInt(12)) : start;
+            replace(index, text, start, end, random.nextBoolean() ? inserts[random.nextInt(inserts.length)] : "");
+            if (n % 100 == 0) {
+                assertThat(describe(index)).isEqualTo(describe(new TodoTxtIndex(text)));
+            }
+        }
+        assertThat(describe(index)).isEqualTo(describe(new TodoTxtIndex(text)));
+        assertThat(index.getLineCount()).isEqualTo(Arrays.asList(text.toString().split("\n", -1)).size());
+    }
+}
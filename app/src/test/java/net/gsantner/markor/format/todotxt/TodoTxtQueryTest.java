@@ -0,0 +1,126 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.gsantner.opoc.util.GsBenchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EmptyStackException;
+import java.util.List;
+import java.util.Random;
+
+public class TodoTxtQueryTest {
+
+    private static final String[] QUERIES = {
+            "+work",
+            "@phone | @home",
+            "(pri:A | pri:B | pri:C) & !+work & due< & due> | !+ | @",
+            "pri & !done",
+            "!pri & due",
+            "due= | due< & call",
+            "mom & +family | pri:B",
+            "!(call | +work) & @phone",
+            "T | T | T & F",
+            "CALL & !(@phone)",
+            "pri:a | pri:Z | prix",
+            "+ & @ & due> & !done",
+            "!!+work",
+            "+work &",
+            "( +work",
+            "+work )",
+            "& | +work",
+            "| +work",
+            "+work @phone",
+            "",
+    };
+
+    // Evaluation of the query element by element, as before query plans
+    private static boolean isMatchExpression(final TodoTxtTask task, final String query) {
+        try {
+            return TodoTxtFilter.evaluateExpression(TodoTxtFilter.parseQuery(task, query));
+        } catch (EmptyStackException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static List<TodoTxtTask> randomTasks(final Random random, final int count) {
+        final String[] dates = {"2000-01-01", TodoTxtTask.getToday(), "9999-01-01"};
+        final String[] words = {"call", "mom", "Call", "T", "F", "+work", "+family", "@phone", "@home", "pri:A", "x", "CALL"};
+        final List<TodoTxtTask> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final StringBuilder line = new StringBuilder();
+            if (random.nextInt(4) == 0) {
+                line.append("x ");
+            }
+            if (random.nextInt(2) == 0) {
+                line.append('(').append((char) ('A' + random.nextInt(4))).append(") ");
+            }
+            final int wordCount = random.nextInt(5);
+            for (int w = 0; w < wordCount; w++) {
+                line.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            if (random.nextInt(2) == 0) {
+                line.append("due:").append(dates[random.nextInt(dates.length)]);
+            }
+            tasks.add(new TodoTxtTask(line));
+        }
+        return tasks;
+    }
+
+    @Test
+    public void matchesLikeExpression() {
+        final List<TodoTxtTask> tasks = randomTasks(new Random(3), 2000);
+        for (final String query : QUERIES) {
+            final TodoTxtQuery compiled = TodoTxtQuery.compile(query);
+            for (final TodoTxtTask task : tasks) {
+                assertThat(compiled.matches(task)).as(query + " / " + task.getLine()).isEqualTo(isMatchExpression(task, query));
+            }
+        }
+    }
+
+    @Test
+    public void findsLikeExpression() {
+        final List<TodoTxtTask> tasks = randomTasks(new Random(5), 2000);
+        final TodoTxtQuery.Index index = new TodoTxtQuery.Index(tasks);
+        for (final String query : QUERIES) {
+            final BitSet found = TodoTxtQuery.compile(query).find(index);
+            for (int i = 0; i < tasks.size(); i++) {
+                assertThat(found.get(i)).as(query + " / " + tasks.get(i).getLine()).isEqualTo(isMatchExpression(tasks.get(i), query));
+            }
+        }
+    }
+
+    // Prints timings only, does not assert on them
+    @Test
+    @Category(GsBenchmark.class)
+    public void benchmark() {
+        final List<TodoTxtTask> tasks = randomTasks(new Random(1), 100000);
+        final String query = "(+work | @phone) & !done & call";
+        for (int round = 0; round < 3; round++) {
+            final int[] expressionCount = {0};
+            GsBenchmark.measure("Query 100k tasks / expression per task", () -> {
+                for (final TodoTxtTask task : tasks) {
+                    expressionCount[0] += isMatchExpression(task, query) ? 1 : 0;
+                }
+            });
+
+            final TodoTxtQuery.Index[] index = {null};
+            GsBenchmark.measure("Query 100k tasks / build index", () -> index[0] = new TodoTxtQuery.Index(tasks));
+
+            final int[] count = {0};
+            GsBenchmark.measure("Query 100k tasks / query index", () -> count[0] = TodoTxtQuery.compile(query).find(index[0]).cardinality());
+            assertThat(count[0]).isEqualTo(expressionCount[0]);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import java.io.File;
+
+public class TodoTxtSnapshotTest {
+    private static final File FILE = new File("todo.txt");
+
+    @Test
+    public void unchangedLinesKeepIdsAndTasks() {
+        final TodoTxtSnapshot first = TodoTxtSnapshot.create(null, FILE, "a +p\nb @c\nc", 1, 11);
+        final TodoTxtSnapshot second = TodoTxtSnapshot.create(first, FILE, "new\nc\na +p\nb @c changed", 2, 25);
+
+        assertThat(second.lines.size()).isEqualTo(4);
+        assertThat(second.lines.get(1).id).isEqualTo(first.lines.get(2).id);
+        assertThat(second.lines.get(1).index).isEqualTo(1);
+        assertThat(second.lines.get(2).id).isEqualTo(first.lines.get(0).id);
+        assertThat(second.lines.get(2).task == first.lines.get(0).task).isTrue();
+
+        // Changed and new lines get new ids
+        final long maxId = Math.max(first.lines.get(0).id, Math.max(first.lines.get(1).id, first.lines.get(2).id));
+        assertThat(second.lines.get(0).id > maxId).isTrue();
+        assertThat(second.lines.get(3).id > maxId).isTrue();
+        assertThat(second.lines.get(3).task.getContexts()).containsExactly("c");
+    }
+
+    @Test
+    public void duplicateLinesKeepDistinctIds() {
+        final TodoTxtSnapshot first = TodoTxtSnapshot.create(null, FILE, "same\nsame", 1, 9);
+        final TodoTxtSnapshot second = TodoTxtSnapshot.create(first, FILE, "same\nother\nsame", 2, 15);
+
+        assertThat(second.lines.get(0).id).isEqualTo(first.lines.get(0).id);
+        assertThat(second.lines.get(2).id).isEqualTo(first.lines.get(1).id);
+    }
+
+    @Test
+    public void sameContentReusesLines() {
+        final TodoTxtSnapshot first = TodoTxtSnapshot.create(null, FILE, "a\nb", 1, 3);
+        final TodoTxtSnapshot second = TodoTxtSnapshot.create(first, FILE, "a\nb", 5, 3);
+
+        assertThat(second.lines == first.lines).isTrue();
+        assertThat(second.modTime).isEqualTo(5L);
+        assertThat(second.filter("")).isEqualTo(second.lines);
+    }
+}
@@ -0,0 +1,161 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.gsantner.opoc.util.GsBenchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TodoTxtTaskFieldsTest {
+
+    // Field extraction with the task patterns, as done before the single pass parser
+    private static String[] parseWithPatterns(final String line) {
+        final String description = line
+                .replaceAll(TodoTxtTask.PATTERN_COMPLETION_DATE.pattern(), "")
+                .replaceAll(TodoTxtTask.PATTERN_PRIORITY_ANY.pattern(), "")
+                .replaceAll(TodoTxtTask.PATTERN_CREATION_DATE.pattern(), "")
+                .replaceAll(TodoTxtTask.PATTERN_CONTEXTS.pattern(), "")
+                .replaceAll(TodoTxtTask.PATTERN_PROJECTS.pattern(), "")
+                .replaceAll(TodoTxtTask.PATTERN_KEY_VALUE_PAIRS.pattern(), "");
+        final String priority = first(line, TodoTxtTask.PATTERN_PRIORITY_ANY, 1);
+        return new String[]{
+                Boolean.toString(TodoTxtTask.PATTERN_DONE.matcher(line).find()),
+                priority == null ? "~" : priority.toUpperCase(),
+                all(line, TodoTxtTask.PATTERN_CONTEXTS).toString(),
+                all(line, TodoTxtTask.PATTERN_PROJECTS).toString(),
+                first(line, TodoTxtTask.PATTERN_CREATION_DATE, 1),
+                first(line, TodoTxtTask.PATTERN_COMPLETION_DATE, 1),
+                first(line, TodoTxtTask.PATTERN_DUE_DATE, 3),
+                description,
+        };
+    }
+
+    private static String[] parse(final String line) {
+        final TodoTxtTaskFields fields = TodoTxtTaskFields.parse(line);
+        return new String[]{
+                Boolean.toString(fields.done),
+                Character.toString(fields.priority),
+                fields.contexts.toString(),
+                fields.projects.toString(),
+                fields.creationDate,
+                fields.completionDate,
+                fields.dueDate,
+                fields.description,
+        };
+    }
+
+    private static String first(final String line, final Pattern pattern, final int group) {
+        final Matcher m = pattern.matcher(line);
+        return m.find() ? m.group(group) : null;
+    }
+
+    private static List<String> all(final String line, final Pattern pattern) {
+        final List<String> ret = new ArrayList<>();
+        for (final Matcher m = pattern.matcher(line); m.find(); ) {
+            ret.add(m.group(1));
+        }
+        return ret;
+    }
+
+    @Test
+    public void extractsAllFields() {
+        final TodoTxtTaskFields fields = TodoTxtTaskFields.parse("x 2020-02-03 (b) 2020-01-01 call mom @phone +family due:2020-02-01 rec:1w");
+        assertThat(fields.done).isTrue();
+        assertThat(fields.completionDate).isEqualTo("2020-02-03");
+        assertThat(fields.priority).isEqualTo(TodoTxtTask.PRIORITY_NONE);
+        assertThat(fields.contexts).containsExactly("phone");
+        assertThat(fields.projects).containsExactly("family");
+        assertThat(fields.dueDate).isEqualTo("2020-02-01");
+        assertThat(fields.description).isEqualTo(" (b) 2020-01-01 call mom  ");
+
+        final TodoTxtTaskFields open = TodoTxtTaskFields.parse("(A) 2020-01-01 @@x ++y + @ due:2020-1-1");
+        assertThat(open.done).isFalse();
+        assertThat(open.priority).isEqualTo('A');
+        assertThat(open.creationDate).isEqualTo("2020-01-01");
+        assertThat(open.contexts).containsExactly("x");
+        assertThat(open.projects).containsExactly("y");
+        assertThat(open.dueDate).isNull();
+        assertThat(open.description).isEqualTo(" + @ ");
+    }
+
+    @Test
+    public void sameResultsAsPatterns() {
+        final String[] lines = {
+                "", "x", "x ", "X 2020-01-01", "x 2020-01-01 2019-12-31 task", "x 2020-01-01 task",
+                "(A) task", "(a)\ttask", "(A)task", "(A) x 2020-01-01 2019-01-01 task", "2020-01-01abc",
+                "2020-01-01@c +p", "@c", "@", "@@", "@@@", "+", "++", "+@x", "@+x", "task @c\t\t+p",
+                "due:2020-01-01", "a due:2020-01-01x due:2021-01-01", "xdue:2020-01-01", "http://x.org a:b:c 1abc:d a1:b",
+                "key:value key: :value K-E:Y_1 \u00A0@c", "task \r", "x  2020-01-01 task", "(A) (B) 2020-01-01 task",
+        };
+        for (final String line : lines) {
+            assertThat(parse(line)).as(line).containsExactly(parseWithPatterns(line));
+        }
+
+        final String[] parts = {
+                "x", "X", "(A)", "(z)", "(1)", "2020-01-01", "2020-1-01", "due:2020-01-01", "due:", "@c", "@", "@@",
+                "+p", "++", "+", "a:b", "ab:", ":b", "k:v-1_x", "word", "x:", "(", ")", "due:2020-01-01@c",
+        };
+        final String[] separators = {" ", " ", " ", "  ", "\t", ""};
+        final Random random = new Random(42);
+        for (int n = 0; n < 20000; n++) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(8); i >= 0; i--) {
+                sb.append(parts[random.nextInt(parts.length)]).append(separators[random.nextInt(separators.length)]);
+            }
+            final String line = sb.toString();
+            assertThat(parse(line)).as(line).containsExactly(parseWithPatterns(line));
+        }
+    }
+
+    /**
+     * Compares parsing a large todo.txt with the single pass parser and with the task patterns.
+     * Prints timings only, does not assert on them.
+     */
+    @Test
+    @Category(GsBenchmark.class)
+    public void benchmarkLargeTodoTxt() {
+        final String[] templates = {
+                "(A) 2024-01-%02d Call mom about the trip @phone +family due:2024-02-%02d",
+                "x 2024-03-%02d 2024-01-%02d Pay bills @home +finance rec:1m",
+                "2024-01-%02d Review pull request #%d @work +markor +opoc t:2024-01-01",
+                "Plain task without any structure, number %d and %d",
+        };
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            lines.add(String.format(templates[i % templates.length], 1 + i % 28, 1 + (i / 7) % 28));
+        }
+
+        for (int round = 0; round < 3; round++) {
+            final int[] patternCount = {0};
+            GsBenchmark.measure("Parse todo.txt with " + lines.size() + " lines / patterns", () -> {
+                for (final String line : lines) {
+                    patternCount[0] += parseWithPatterns(line)[7].length();
+                }
+            });
+
+            final int[] singlePassCount = {0};
+            GsBenchmark.measure("Parse todo.txt with " + lines.size() + " lines / single pass", () -> {
+                for (final String line : lines) {
+                    singlePassCount[0] += TodoTxtTaskFields.parse(line).description.length();
+                }
+            });
+            assertThat(singlePassCount[0]).isEqualTo(patternCount[0]);
+        }
+        assertThat(Arrays.asList(parse(lines.get(0)))).isEqualTo(Arrays.asList(parseWithPatterns(lines.get(0))));
+    }
+}
@@ -0,0 +1,79 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.gsantner.opoc.util.GsBenchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class TodoTxtTaskSortTest {
+    private static final String[] ORDERS = {
+            TodoTxtTask.SttTaskSimpleComparator.BY_PRIORITY, TodoTxtTask.SttTaskSimpleComparator.BY_CONTEXT,
+            TodoTxtTask.SttTaskSimpleComparator.BY_PROJECT, TodoTxtTask.SttTaskSimpleComparator.BY_CREATION_DATE,
+            TodoTxtTask.SttTaskSimpleComparator.BY_DUE_DATE, TodoTxtTask.SttTaskSimpleComparator.BY_DESCRIPTION,
+            TodoTxtTask.SttTaskSimpleComparator.BY_LINE, "unknown",
+    };
+
+    private static List<TodoTxtTask> randomTasks(final int count) {
+        final String[] parts = {
+                "x", "(A)", "(b)", "(C)", "2020-01-0", "due:2020-01-0", "@home", "@Work", "+p", "+q", "Call", "mom", " ", "",
+        };
+        final Random random = new Random(7);
+        final List<TodoTxtTask> tasks = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(6); i >= 0; i--) {
+                final String part = parts[random.nextInt(parts.length)];
+                sb.append(part.endsWith("-0") ? part + (1 + random.nextInt(9)) : part).append(' ');
+            }
+            tasks.add(new TodoTxtTask(sb.toString()));
+        }
+        return tasks;
+    }
+
+    @Test
+    public void sameOrderAsComparator() {
+        final List<TodoTxtTask> tasks = randomTasks(2000);
+        for (final String orderBy : ORDERS) {
+            for (final boolean descending : new boolean[]{false, true}) {
+                final List<TodoTxtTask> expected = new ArrayList<>(tasks);
+                Collections.sort(expected, new TodoTxtTask.SttTaskSimpleComparator(orderBy, descending));
+                final List<TodoTxtTask> sorted = TodoTxtTask.sortTasks(new ArrayList<>(tasks), orderBy, descending);
+                assertThat(TodoTxtTask.tasksToString(sorted)).as(orderBy + " " + descending).isEqualTo(TodoTxtTask.tasksToString(expected));
+            }
+        }
+    }
+
+    /**
+     * Compares sorting with precomputed keys and with the comparator.
+     * Prints timings only, does not assert on them.
+     */
+    @Test
+    @Category(GsBenchmark.class)
+    public void benchmarkLargeTodoTxt() {
+        final List<TodoTxtTask> tasks = randomTasks(50000);
+        for (int round = 0; round < 3; round++) {
+            final List<TodoTxtTask> expected = new ArrayList<>(tasks);
+            GsBenchmark.measure("Sort todo.txt with " + tasks.size() + " tasks / comparator", () ->
+                    Collections.sort(expected, new TodoTxtTask.SttTaskSimpleComparator(TodoTxtTask.SttTaskSimpleComparator.BY_CONTEXT, false)));
+
+            final List<TodoTxtTask> sorted = new ArrayList<>(tasks);
+            GsBenchmark.measure("Sort todo.txt with " + tasks.size() + " tasks / sort keys", () ->
+                    TodoTxtTask.sortTasks(sorted, TodoTxtTask.SttTaskSimpleComparator.BY_CONTEXT, false));
+            assertThat(sorted).isEqualTo(expected);
+        }
+    }
+}
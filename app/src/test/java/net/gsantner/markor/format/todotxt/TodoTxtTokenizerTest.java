@@ -0,0 +1,156 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.format.todotxt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.gsantner.markor.frontend.textview.SyntaxHighlighterBase;
+import net.gsantner.opoc.util.GsBenchmark;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TodoTxtTokenizerTest {
+
+    // Patterns as applied one by one by the regex based highlighter, with the token they correspond to
+    private static final Object[][] PATTERNS = {
+            {SyntaxHighlighterBase.URL, TodoTxtTokenizer.TOKEN_LINK, new int[]{0}},
+            {TodoTxtTask.PATTERN_CONTEXTS, TodoTxtTokenizer.TOKEN_CONTEXT, new int[]{0}},
+            {TodoTxtTask.PATTERN_PROJECTS, TodoTxtTokenizer.TOKEN_PROJECT, new int[]{0}},
+            {TodoTxtTask.PATTERN_KEY_VALUE_PAIRS, TodoTxtTokenizer.TOKEN_KEY_VALUE, new int[]{0}},
+            {TodoTxtTask.PATTERN_PRIORITY_A, TodoTxtTokenizer.TOKEN_PRIORITY_A, new int[]{0}},
+            {TodoTxtTask.PATTERN_PRIORITY_B, TodoTxtTokenizer.TOKEN_PRIORITY_A + 1, new int[]{0}},
+            {TodoTxtTask.PATTERN_PRIORITY_C, TodoTxtTokenizer.TOKEN_PRIORITY_A + 2, new int[]{0}},
+            {TodoTxtTask.PATTERN_PRIORITY_D, TodoTxtTokenizer.TOKEN_PRIORITY_A + 3, new int[]{0}},
+            {TodoTxtTask.PATTERN_PRIORITY_E, TodoTxtTokenizer.TOKEN_PRIORITY_A + 4, new int[]{0}},
+            {TodoTxtTask.PATTERN_PRIORITY_F, TodoTxtTokenizer.TOKEN_PRIORITY_A + 5, new int[]{0}},
+            {TodoTxtTask.PATTERN_PRIORITY_G_TO_Z, TodoTxtTokenizer.TOKEN_PRIORITY_OTHER, new int[]{0}},
+            {TodoTxtTask.PATTERN_CREATION_DATE, TodoTxtTokenizer.TOKEN_CREATION_DATE, new int[]{1}},
+            {TodoTxtTask.PATTERN_DUE_DATE, TodoTxtTokenizer.TOKEN_DUE_DATE, new int[]{2, 3}},
+            {TodoTxtTask.PATTERN_DONE, TodoTxtTokenizer.TOKEN_DONE, new int[]{0}},
+    };
+
+    private static final String[] WORDS = {
+            "x", "X", "(A)", "(b)", "(F)", "(Z)", "2025-01-02", "2025-1-2", "@home", "+work", "@@", "+", "@",
+            "@a@b", "++proj", "key:value", "a:b:c", "foo:", ":bar", "x:y", "te_st-1:zz", "http://example.com/a?b=c",
+            "(https://x.org/path)", "word", "task", "(A)x", "due:2025-06-1", "rec:+1w", "t:2025-01-01",
+    };
+
+    private static List<int[]> regexTokens(final String text) {
+        final List<int[]> tokens = new ArrayList<>();
+        for (final Object[] pattern : PATTERNS) {
+            final Matcher m = ((Pattern) pattern[0]).matcher(text);
+            while (m.find()) {
+                for (final int group : (int[]) pattern[2]) {
+                    if (m.end(group) > m.start(group)) {
+                        tokens.add(new int[]{(int) pattern[1], m.start(group), m.end(group)});
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static List<int[]> tokens(final String text) {
+        final List<int[]> tokens = new ArrayList<>();
+        TodoTxtTokenizer.findTokens(text, 0, text.length(), (token, start, end) -> tokens.add(new int[]{token, start, end}));
+        return tokens;
+    }
+
+    // Tokens applied to each character, in the order spans are applied (stable sort by start). Whitespace is skipped.
+    private static List<String> describe(final String text, final List<int[]> tokens) {
+        final List<int[]> sorted = new ArrayList<>(tokens);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a[1], b[1]));
+        final List<String> result = new ArrayList<>();
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                continue;
+            }
+            final StringBuilder sb = new StringBuilder().append(i).append(text.charAt(i)).append(':');
+            for (final int[] token : sorted) {
+                if (token[1] <= i && i < token[2]) {
+                    sb.append(' ').append(token[0]);
+                }
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    private static String randomLine(final Random random) {
+        final StringBuilder sb = new StringBuilder();
+        final int count = random.nextInt(8);
+        boolean due = false;
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "" : (random.nextInt(5) == 0 ? "\t" : " "));
+            // The regex highlighter skips a due date directly following another one, so use one per line
+            if (!due && random.nextInt(10) == 0) {
+                sb.append("due:2025-06-15");
+                due = true;
+            } else {
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void findsTokensOfLine() {
+        final String line = "x 2025-01-02 2025-01-01 call @mom +family due:2025-06-15 https://x.org";
+        assertThat(tokens(line)).hasSize(7);
+        assertThat(describe(line, tokens(line))).isEqualTo(describe(line, regexTokens(line)));
+
+        final String text = "(A) first\n(g) second @a\nx done";
+        final List<int[]> tokens = tokens(text);
+        assertThat(tokens.get(0)).containsExactly(TodoTxtTokenizer.TOKEN_PRIORITY_A, 0, 3);
+        assertThat(tokens.get(1)).containsExactly(TodoTxtTokenizer.TOKEN_PRIORITY_OTHER, 10, 13);
+        assertThat(tokens.get(3)).containsExactly(TodoTxtTokenizer.TOKEN_DONE, 24, 30);
+    }
+
+    @Test
+    public void regionCoversWholeLines() {
+        final String text = "a @b\n@c d\n+e";
+        final List<int[]> tokens = new ArrayList<>();
+        TodoTxtTokenizer.findTokens(text, 4, 8, (token, start, end) -> tokens.add(new int[]{token, start, end}));
+        assertThat(tokens).hasSize(1);
+        assertThat(tokens.get(0)).containsExactly(TodoTxtTokenizer.TOKEN_CONTEXT, 5, 7);
+    }
+
+    @Test
+    public void randomLinesMatchPatterns() {
+        final Random random = new Random(7);
+        for (int n = 0; n < 20000; n++) {
+            final String line = randomLine(random);
+            assertThat(describe(line, tokens(line))).as(line).isEqualTo(describe(line, regexTokens(line)));
+        }
+    }
+
+    // Prints timings only, does not assert on them
+    @Test
+    @Category(GsBenchmark.class)
+    public void benchmark() {
+        final Random random = new Random(1);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(randomLine(random)).append('\n');
+        }
+        final String text = sb.toString();
+
+        for (int round = 0; round < 3; round++) {
+            GsBenchmark.measure("Tokenize todo.txt with 20k lines / patterns", () -> regexTokens(text));
+            GsBenchmark.measure("Tokenize todo.txt with 20k lines / tokenizer", () -> tokens(text));
+        }
+    }
+}
@@ -11,6 +11,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -143,4 +144,52 @@ public class WikitextFileTests {
         }
     }
 
+    public static class MarkdownTranslationTest {
+        private static final String NL = "  " + String.format("%n");
+
+        private static String translate(final String wikitext) {
+            return new WikitextMarkdownTranslator(new File("/notebook/Page.txt"), new File("/notebook"), false, true).translate(wikitext);
+        }
+
+        @Test
+        public void inlineAndLinePrefixMarkupIsTranslated() {
+            String input = "====== Title ======\n"
+                    + "//ital// **bold** __mark__ ''code''\n"
+                    + "1. one\n"
+                    + "[*] done\n"
+                    + "[ ] open\n"
+                    + "x^{2} H_{2}O";
+            assertThat(translate(input)).isEqualTo("# Title" + NL
+                    + "*ital* **bold** <span style=\"background-color: #ffff00\">mark</span> `code`" + NL
+                    + "1. one" + NL
+                    + "- [x] done" + NL
+                    + "- [ ] open" + NL
+                    + "x<sup>2</sup> H<sub>2</sub>O" + NL);
+        }
+
+        @Test
+        public void trailingEmptyLinesAreDroppedLikeSplit() {
+            assertThat(translate("a\n\n\nb\n\n")).isEqualTo("a" + NL + NL + NL + "b" + NL);
+            assertThat(translate("a\r\nb\rc")).isEqualTo("a" + NL + "b" + NL + "c" + NL);
+            assertThat(translate("")).isEqualTo(NL);
+        }
+
+        @Test
+        public void codeBlockIsResolvedInlineWithoutInlineRules() {
+            String input = "before\n'''\nraw {{W}} //x//\n'''\nafter";
+            assertThat(translate(input)).isEqualTo("before" + NL + "\n```\nraw {{W}} //x//\n```\n" + NL + "after" + NL);
+        }
+
+        @Test
+        public void zimHeaderIsRemoved() {
+            String input = "Content-Type: text/x-zim-wiki\nWiki-Format: zim 0.4\nCreation-Date: 2019-03-31T14:48:06+02:00\n\ntext";
+            assertThat(translate(input)).isEqualTo(NL + NL + "text" + NL);
+        }
+
+        @Test
+        public void repeatedWebLinkIsTranslated() {
+            assertThat(translate("see [[http://x.org/a b|web+site]] and [[http://x.org/a b|web+site]]"))
+                    .isEqualTo("see [web&#43;site](http://x.org/a%20b) and [web&#43;site](http://x.org/a%20b)" + NL);
+        }
+    }
 }
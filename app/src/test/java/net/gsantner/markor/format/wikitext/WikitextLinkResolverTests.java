@@ -185,6 +185,22 @@ public class WikitextLinkResolverTests {
                 "[[#some-anchor-reference]]", "My_page/Another_page.txt");
     }
 
+    @Test
+    public void resolvesRelativeLinkFromBuiltIndex() throws InterruptedException {
+        assertTrue(WikitextNotebookIndex.awaitIndexed(notebookRoot.toFile(), 5000));
+        assertResolvedLinkAndDescription("My_page/Yet_another_page.txt", null,
+                "[[Yet another page]]", "My_page/Yet_another_page/Strange_page.txt");
+        assertResolvedLinkAndDescription(null, null, "[[No such page]]", "My_page/Another_page.txt");
+    }
+
+    @Test
+    public void resolvesRelativeLinkToNewPageAfterInvalidation() throws IOException {
+        assertResolvedLinkAndDescription(null, null, "[[Brand new page]]", "My_page/Another_page.txt");
+        Files.createFile(notebookRoot.resolve("My_page/Brand_new_page.txt"));
+        WikitextNotebookIndex.invalidate();
+        assertResolvedLinkAndDescription("My_page/Brand_new_page.txt", null, "[[Brand new page]]", "My_page/Another_page.txt");
+    }
+
     private void assertResolvedLinkAndDescription(String expectedLinkRelativeToRoot, String expectedDescription, String wikitextLink, String currentPageRelativeToRoot) {
         WikitextLinkResolver resolver = WikitextLinkResolver.resolve(wikitextLink, notebookRoot.toFile(), notebookRoot.resolve(currentPageRelativeToRoot).toFile(), false);
         String expectedLink = expectedLinkRelativeToRoot != null ? notebookRoot.resolve(expectedLinkRelativeToRoot).toString() : null;
@@ -0,0 +1,322 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.frontend.textview;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import android.text.Spannable;
+
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class SyntaxHighlighterBaseTest {
+
+    private static final String[] LINES = {
+            "# Heading",
+            "## Sub heading to call",
+            "call mom @home",
+            "- item @work",
+            "- call",
+            "plain text without marks",
+            "x done call",
+            "```",
+            "code @inside ```",
+            "",
+            "@start and call at the end",
+    };
+    private static final String[] INSERTS = {"call ", "@", "# ", "\n", "x", "- ", "```"};
+
+    private static final Object[][] PATTERNS = {
+            {"heading", Pattern.compile("(?m)^#+ .*$")},
+            {"call", Pattern.compile("\\bcall\\b")},
+            {"tag", Pattern.compile("@\\w+")},
+            // Starts at the preceding line break, so the span belongs to the line of its last character
+            {"item", Pattern.compile("\\n- ")},
+    };
+    private static final Pattern FENCE = Pattern.compile("(?s)```.*?```");
+
+    // Plain span, the kind tells spans of different computes apart
+    private static final class Mark {
+        final String kind;
+
+        Mark(final String kind) {
+            this.kind = kind;
+        }
+    }
+
+    private static class TestHighlighter extends SyntaxHighlighterBase {
+        private final boolean _lineLocal;
+
+        TestHighlighter(final boolean lineLocal) {
+            super(null);
+            _lineLocal = lineLocal;
+        }
+
+        @Override
+        protected boolean isLineLocal() {
+            return _lineLocal;
+        }
+
+        @Override
+        protected void generateSpans() {
+            for (final Object[] pattern : PATTERNS) {
+                createSpanForMatches((Pattern) pattern[1], m -> new Mark((String) pattern[0]));
+            }
+        }
+
+        @Override
+        protected void generateNonLocalSpans() {
+            createSpanForMatches(FENCE, m -> new Mark("fence"));
+        }
+    }
+
+    // Spannable like SpannableStringBuilder where it matters here: each span object is attached at most once
+    private static final class TestSpannable implements Spannable {
+        final StringBuilder text;
+        final Map<Object, int[]> spans = new IdentityHashMap<>(); // Span -> start, end, flags
+        int reattached = 0; // Spans set again while attached, i.e. moved away from their previous place
+
+        TestSpannable(final CharSequence text) {
+            this.text = new StringBuilder(text);
+        }
+
+        // Replace [start, end) like an edit in the editor. Spans are moved along, like SpannableStringBuilder does.
+        void replace(final int start, final int end, final String with) {
+            text.replace(start, end, with);
+            final int delta = with.length() - (end - start);
+            for (final int[] range : spans.values()) {
+                for (int i = 0; i < 2; i++) {
+                    range[i] = range[i] >= end ? range[i] + delta : Math.min(range[i], start);
+                }
+            }
+        }
+
+        @Override
+        public void setSpan(final Object what, final int start, final int end, final int flags) {
+            if (spans.containsKey(what)) {
+                reattached++;
+            }
+            spans.put(what, new int[]{start, end, flags});
+        }
+
+        @Override
+        public void removeSpan(final Object what) {
+            spans.remove(what);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T[] getSpans(final int start, final int end, final Class<T> type) {
+            final List<Object> result = new ArrayList<>();
+            for (final Map.Entry<Object, int[]> span : spans.entrySet()) {
+                if (type.isInstance(span.getKey()) && span.getValue()[1] >= start && span.getValue()[0] <= end) {
+                    result.add(span.getKey());
+                }
+            }
+            return result.toArray((T[]) Array.newInstance(type, 0));
+        }
+
+        @Override
+        public int getSpanStart(final Object tag) {
+            return spans.containsKey(tag) ? spans.get(tag)[0] : -1;
+        }
+
+        @Override
+        public int getSpanEnd(final Object tag) {
+            return spans.containsKey(tag) ? spans.get(tag)[1] : -1;
+        }
+
+        @Override
+        public int getSpanFlags(final Object tag) {
+            return spans.containsKey(tag) ? spans.get(tag)[2] : 0;
+        }
+
+        @Override
+        public int nextSpanTransition(final int start, final int limit, final Class type) {
+            return limit;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return text.substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    private static String randomText(final Random random, final int minLength) {
+        final StringBuilder sb = new StringBuilder();
+        while (sb.length() < minLength) {
+            sb.append(LINES[random.nextInt(LINES.length)]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // Applied spans intersecting region (null = all), as sorted "start-end kind"
+    private static List<String> describe(final TestSpannable spannable, final int[] region) {
+        final List<String> result = new ArrayList<>();
+        for (final Map.Entry<Object, int[]> span : spannable.spans.entrySet()) {
+            final int[] range = span.getValue();
+            if (region == null || (range[1] > region[0] && range[0] < region[1])) {
+                result.add(range[0] + "-" + range[1] + " " + ((Mark) span.getKey()).kind);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    // Spans of a new highlighter which computes everything
+    private static List<String> fullRecompute(final CharSequence text, final boolean lineLocal, final int[] region) {
+        final TestSpannable spannable = new TestSpannable(text);
+        new TestHighlighter(lineLocal).setSpannable(spannable).recompute().applyDynamic();
+        assertThat(spannable.reattached).isEqualTo(0);
+        return describe(spannable, region);
+    }
+
+    // Random edit of the spannable, reported to the highlighter like the editor does
+    private static void edit(final Random random, final TestSpannable spannable, final SyntaxHighlighterBase hl) {
+        final String text = spannable.toString();
+        final int pos = random.nextInt(text.length() + 1);
+        final int lineStart = text.lastIndexOf('\n', pos - 1) + 1;
+        final int lineEnd = text.indexOf('\n', pos) + 1;
+        final int start, end;
+        final String with;
+        switch (random.nextInt(3)) {
+            case 0: {
+                start = end = lineStart;
+                with = LINES[random.nextInt(LINES.length)] + "\n";
+                break;
+            }
+            case 1: {
+                start = lineStart;
+                end = lineEnd > 0 ? lineEnd : text.length();
+                with = "";
+                break;
+            }
+            default: {
+                start = pos;
+                end = Math.min(text.length(), pos + random.nextInt(3));
+                with = INSERTS[random.nextInt(INSERTS.length)];
+            }
+        }
+        spannable.replace(start, end, with);
+        hl.fixup(start, end - start, with.length());
+    }
+
+    @Test
+    public void lineLocalSpansAfterEditsEqualFullRecompute() {
+        final Random random = new Random(11);
+        final TestSpannable spannable = new TestSpannable(randomText(random, 3000));
+        final SyntaxHighlighterBase hl = new TestHighlighter(true).setSpannable(spannable);
+        hl.recompute().applyDynamic();
+
+        for (int n = 0; n < 300; n++) {
+            edit(random, spannable, hl);
+            if (random.nextBoolean()) {
+                hl.clearDynamic().recompute().applyDynamic();
+            } else {
+                // Like the editor computing in the background, while the previous spans are still applied
+                hl.compute();
+                hl.clearDynamic().setComputed().applyDynamic();
+            }
+            assertThat(spannable.reattached).as("edit %d", n).isEqualTo(0);
+            assertThat(describe(spannable, null)).as("edit %d", n).isEqualTo(fullRecompute(spannable, true, null));
+        }
+    }
+
+    @Test
+    public void repeatedLinesGetTheirOwnSpans() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            sb.append("call @home\n");
+        }
+        final TestSpannable spannable = new TestSpannable(sb);
+        final SyntaxHighlighterBase hl = new TestHighlighter(true).setSpannable(spannable);
+        for (int round = 0; round < 3; round++) {
+            spannable.replace(0, 0, "call @work\n");
+            hl.fixup(0, 0, "call @work\n".length());
+            hl.clearDynamic().recompute().applyDynamic();
+
+            // Every line has its own span objects, none was moved away from another line
+            assertThat(spannable.reattached).isEqualTo(0);
+            assertThat(spannable.spans.size()).isEqualTo(2 * (51 + round));
+            assertThat(describe(spannable, null)).isEqualTo(fullRecompute(spannable, true, null));
+        }
+    }
+
+    @Test
+    public void viewportSpansAfterScrollingAndEditsEqualFullRecompute() {
+        final Random random = new Random(13);
+        final TestSpannable spannable = new TestSpannable(randomText(random, 6 * SyntaxHighlighterBase.VIEWPORT_BLOCK_SIZE));
+        final SyntaxHighlighterBase hl = new TestHighlighter(false).setSpannable(spannable).setViewportMode(true);
+
+        for (int n = 0; n < 200; n++) {
+            if (n % 5 == 4) {
+                edit(random, spannable, hl);
+            }
+            final int length = spannable.length();
+            // Every other region starts or ends close to a block boundary, which is moved to the next line start
+            final int boundary = (1 + random.nextInt(5)) * SyntaxHighlighterBase.VIEWPORT_BLOCK_SIZE + random.nextInt(40) - 20;
+            final int start = n % 2 == 0 ? random.nextInt(length) : Math.max(0, boundary - (n % 4 == 1 ? 0 : 2000));
+            final int[] region = {start, Math.min(length, start + 1 + random.nextInt(4000))};
+            if (n % 5 == 4 || !hl.isComputed(region)) {
+                hl.clearDynamic().recompute(region);
+            }
+            assertThat(hl.isComputed(region)).as("region %d", n).isTrue();
+            hl.clearDynamic().applyDynamic(region);
+
+            assertThat(spannable.reattached).as("region %d", n).isEqualTo(0);
+            assertThat(describe(spannable, region)).as("region %d", n).isEqualTo(fullRecompute(spannable, false, region));
+        }
+    }
+
+    @Test
+    public void viewportBlocksAreReusedUntilTextChanges() {
+        final Random random = new Random(17);
+        final TestSpannable spannable = new TestSpannable(randomText(random, 4 * SyntaxHighlighterBase.VIEWPORT_BLOCK_SIZE));
+        final SyntaxHighlighterBase hl = new TestHighlighter(false).setSpannable(spannable).setViewportMode(true);
+        final int[] top = {0, 100}, bottom = {spannable.length() - 100, spannable.length()};
+
+        hl.recompute(top).applyDynamic(top);
+        final List<Object> topSpans = new ArrayList<>(spannable.spans.keySet());
+        hl.clearDynamic().recompute(bottom).applyDynamic(bottom);
+        assertThat(hl.isComputed(top)).isFalse();
+
+        // Scrolling back reuses the spans of the cached block
+        hl.clearDynamic().recompute(top).applyDynamic(top);
+        assertThat(new ArrayList<>(spannable.spans.keySet())).containsExactlyInAnyOrderElementsOf(topSpans);
+
+        // An edit invalidates all blocks
+        spannable.replace(0, 0, "call\n");
+        hl.fixup(0, 0, 5);
+        hl.clearDynamic().recompute(top).applyDynamic(top);
+        assertThat(spannable.spans.keySet()).doesNotContainAnyElementsOf(topSpans);
+        assertThat(describe(spannable, top)).isEqualTo(fullRecompute(spannable, false, top));
+    }
+}
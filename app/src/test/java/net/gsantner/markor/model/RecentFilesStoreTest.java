@@ -0,0 +1,87 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.markor.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class RecentFilesStoreTest {
+    private File root;
+    private File storeFile;
+    private String a, b, c;
+
+    @Before
+    public void before() throws IOException {
+        root = Files.createTempDirectory("markor_test").toFile();
+        storeFile = new File(root, "recent_files.bin");
+        a = createFile("a.md");
+        b = createFile("b.md");
+        c = createFile("c.md");
+    }
+
+    @After
+    public void after() {
+        for (final File file : root.listFiles()) {
+            file.delete();
+        }
+        root.delete();
+    }
+
+    private String createFile(final String name) throws IOException {
+        final File file = new File(root, name);
+        Files.write(file.toPath(), name.getBytes());
+        return file.getAbsolutePath();
+    }
+
+    @Test
+    public void recentAndPopularOrder() {
+        final RecentFilesStore store = new RecentFilesStore(storeFile);
+        store.addAccess(a);
+        store.addAccess(b);
+        store.addAccess(a);
+        store.addAccess(c);
+
+        assertThat(store.getRecent()).isEqualTo(Arrays.asList(c, a, b));
+        assertThat(store.getPopular()).isEqualTo(Arrays.asList(a, c, b));
+        assertThat(store.getAccessCount(a)).isEqualTo(2);
+
+        store.remove(c);
+        assertThat(store.getRecent()).isEqualTo(Arrays.asList(a, b));
+    }
+
+    @Test
+    public void persistAndLoad() {
+        final RecentFilesStore store = new RecentFilesStore(storeFile);
+        store.addAll(Arrays.asList(b, a), Arrays.asList(3, 0));
+        store.addAccess(c);
+        store.persist();
+
+        final RecentFilesStore loaded = new RecentFilesStore(storeFile);
+        assertThat(loaded.getRecent()).isEqualTo(Arrays.asList(c, b, a));
+        assertThat(loaded.getAccessCount(b)).isEqualTo(3);
+        assertThat(loaded.getAccessCount(a)).isEqualTo(1);
+    }
+
+    @Test
+    public void missingFilesAreLeftOut() {
+        final RecentFilesStore store = new RecentFilesStore(storeFile);
+        final String missing = new File(root, "missing.md").getAbsolutePath();
+        store.addAll(Arrays.asList(a, missing, b), Arrays.asList(1, 1, 1));
+
+        assertThat(store.getRecent()).isEqualTo(Arrays.asList(a, b));
+        assertThat(store.filterExisting(Arrays.asList(missing, b))).containsExactly(new File(b));
+    }
+}
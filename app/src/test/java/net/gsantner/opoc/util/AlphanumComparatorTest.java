@@ -0,0 +1,102 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.opoc.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class AlphanumComparatorTest {
+    private final AlphanumComparator comparator = new AlphanumComparator();
+
+    @Test
+    public void naturalOrder() {
+        final List<String> names = new ArrayList<>(Arrays.asList("file10.md", "file2.md", "File1.md", "file01.md", "", "file1.md"));
+        names.sort(comparator);
+        assertThat(names).containsExactly("File1.md", "file1.md", "file01.md", "file2.md", "file10.md", "");
+    }
+
+    @Test
+    public void keyOrderEqualsComparatorOrder() {
+        final Random random = new Random(42);
+        final String[] parts = {"a", "B", "note", "Note", "0", "007", "12", "9", "-", ".md", "\u00e4", "\u00c4", "12345678901234567890", "x"};
+        final List<String> names = new ArrayList<>();
+        names.add("");
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(5); j >= 0; j--) {
+                sb.append(parts[random.nextInt(parts.length)]);
+            }
+            names.add(sb.toString());
+        }
+
+        for (int i = 0; i < names.size(); i++) {
+            final String a = names.get(i), b = names.get(random.nextInt(names.size()));
+            final int expected = Integer.signum(comparator.compare(a, b));
+            assertThat(Integer.signum(new AlphanumComparator.Key(a).compareTo(new AlphanumComparator.Key(b))))
+                    .as("'%s' vs '%s'", a, b).isEqualTo(expected);
+        }
+    }
+
+    // Like GsFileUtils.FileSortKey
+    private static final class MtimeKey {
+        final long mtime;
+        final AlphanumComparator.Key name;
+
+        MtimeKey(final long mtime, final String name) {
+            this.mtime = mtime;
+            this.name = new AlphanumComparator.Key(name.toLowerCase());
+        }
+    }
+
+    /**
+     * Sorting by mtime: a string key (mtime + name) compared with the comparator, like before
+     * GsFileUtils.sortFileEntries used typed keys, vs. a primitive mtime and a {@link AlphanumComparator.Key}
+     */
+    @Test
+    @Category(GsBenchmark.class)
+    public void benchmarkSortKeys() {
+        for (final int count : new int[]{10000, 100000}) {
+            final Random random = new Random(count);
+            final long[] mtimes = new long[count];
+            final String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                mtimes[i] = 1600000000000L + random.nextInt(1000000) * 1000L;
+                names[i] = "note " + random.nextInt(count) + (random.nextBoolean() ? " draft" : "") + ".md";
+            }
+
+            for (int round = 0; round < 3; round++) {
+                final String[] stringKeys = new String[count];
+                GsBenchmark.measure("Sort " + count + " files by mtime / string keys", () -> {
+                    for (int i = 0; i < count; i++) {
+                        stringKeys[i] = mtimes[i] + names[i].toLowerCase();
+                    }
+                    Arrays.sort(stringKeys, comparator);
+                });
+
+                final MtimeKey[] typedKeys = new MtimeKey[count];
+                GsBenchmark.measure("Sort " + count + " files by mtime / typed keys", () -> {
+                    for (int i = 0; i < count; i++) {
+                        typedKeys[i] = new MtimeKey(mtimes[i], names[i]);
+                    }
+                    Arrays.sort(typedKeys, (a, b) -> {
+                        final int result = Long.compare(a.mtime, b.mtime);
+                        return result != 0 ? result : a.name.compareTo(b.name);
+                    });
+                });
+                assertThat(typedKeys[0].mtime).isEqualTo(Arrays.stream(mtimes).min().getAsLong());
+            }
+        }
+    }
+}
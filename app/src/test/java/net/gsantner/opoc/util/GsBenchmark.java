@@ -0,0 +1,33 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.opoc.util;
+
+import java.util.Locale;
+
+/**
+ * JUnit category of timing tests, which are excluded from the normal unit tests.
+ * Run them with: ./gradlew testFlavorDefaultDebugUnitTest -Pbenchmark
+ * <p>
+ * Benchmarks print their timings through {@link #measure(String, Runnable)}, so all of them share one output format.
+ */
+public interface GsBenchmark {
+
+    /**
+     * Run action once and print how long it took
+     *
+     * @param name What was measured, e.g. "TodoTxtQuery 100k tasks / query"
+     * @return Duration in milliseconds
+     */
+    static long measure(final String name, final Runnable action) {
+        final long start = System.nanoTime();
+        action.run();
+        final long ms = (System.nanoTime() - start) / 1000000;
+        System.out.println(String.format(Locale.ENGLISH, "[benchmark] %-60s %6d ms", name, ms));
+        return ms;
+    }
+}
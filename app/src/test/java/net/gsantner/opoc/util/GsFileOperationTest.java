@@ -0,0 +1,141 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.opoc.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class GsFileOperationTest {
+    private File temp;
+
+    @Before
+    public void before() throws IOException {
+        temp = Files.createTempDirectory("markor_test").toFile();
+    }
+
+    @After
+    public void after() {
+        new GsFileOperation(GsFileOperation.Mode.DELETE).add(temp).run();
+    }
+
+    private File write(final File file, final int size) throws IOException {
+        file.getParentFile().mkdirs();
+        try (final FileOutputStream os = new FileOutputStream(file)) {
+            os.write(new byte[size]);
+        }
+        return file;
+    }
+
+    private File createTree() throws IOException {
+        final File src = new File(temp, "src");
+        write(new File(src, "a.md"), 100);
+        write(new File(src, "sub/b.md"), 5000);
+        write(new File(src, "sub/empty.txt"), 0);
+        new File(src, "emptyfolder").mkdirs();
+        return src;
+    }
+
+    @Test
+    public void copyFolder() throws IOException {
+        final File src = createTree();
+        final File dest = new File(temp, "dest");
+        assertThat(new GsFileOperation(GsFileOperation.Mode.COPY).add(src, dest, false).run()).isTrue();
+
+        assertThat(new File(dest, "a.md").length()).isEqualTo(100);
+        assertThat(new File(dest, "sub/b.md").length()).isEqualTo(5000);
+        assertThat(new File(dest, "sub/empty.txt").isFile()).isTrue();
+        assertThat(new File(dest, "emptyfolder").isDirectory()).isTrue();
+        assertThat(new File(src, "sub/b.md").isFile()).isTrue();
+    }
+
+    @Test
+    public void moveFolder() throws IOException {
+        final File src = createTree();
+        final File dest = new File(temp, "dest");
+        assertThat(new GsFileOperation(GsFileOperation.Mode.MOVE).add(src, dest, false).run()).isTrue();
+
+        assertThat(src.exists()).isFalse();
+        assertThat(new File(dest, "sub/b.md").length()).isEqualTo(5000);
+    }
+
+    @Test
+    public void deleteFolder() throws IOException {
+        final File src = createTree();
+        assertThat(new GsFileOperation(GsFileOperation.Mode.DELETE).add(src).run()).isTrue();
+        assertThat(src.exists()).isFalse();
+    }
+
+    @Test
+    public void existingDestinationIsOnlyReplacedIfRequested() throws IOException {
+        final File src = write(new File(temp, "a.md"), 10);
+        final File dest = write(new File(temp, "dest/a.md"), 20);
+
+        assertThat(new GsFileOperation(GsFileOperation.Mode.COPY).add(src, dest, false).run()).isFalse();
+        assertThat(dest.length()).isEqualTo(20);
+
+        assertThat(new GsFileOperation(GsFileOperation.Mode.COPY).add(src, dest, true).run()).isTrue();
+        assertThat(dest.length()).isEqualTo(10);
+    }
+
+    @Test
+    public void folderIsNotCopiedIntoItself() throws IOException {
+        final File src = createTree();
+        final GsFileOperation op = new GsFileOperation(GsFileOperation.Mode.COPY).add(src, new File(src, "sub/copy"), false);
+        assertThat(op.run()).isFalse();
+        assertThat(op.getFailed()).containsExactly(src);
+    }
+
+    @Test
+    public void cancelledOperationStops() throws IOException {
+        final File src = createTree();
+        final File dest = new File(temp, "dest");
+        final GsFileOperation op = new GsFileOperation(GsFileOperation.Mode.COPY).add(src, dest, false);
+        op.cancel();
+        assertThat(op.run()).isFalse();
+        assertThat(dest.exists()).isFalse();
+    }
+
+    @Test
+    public void linkToContainingFolderIsNotFollowed() throws IOException {
+        final File src = createTree();
+        final File loop = new File(src, "sub/loop");
+        Files.createSymbolicLink(loop.toPath(), src.toPath());
+        final File dest = new File(temp, "dest");
+
+        final GsFileOperation op = new GsFileOperation(GsFileOperation.Mode.COPY).add(src, dest, false);
+        assertThat(op.run()).isFalse();
+        assertThat(op.getFailed()).containsExactly(loop);
+        assertThat(new File(dest, "sub/b.md").length()).isEqualTo(5000);
+        assertThat(new File(dest, "sub/loop").exists()).isFalse();
+    }
+
+    @Test
+    public void keptNamesAreUniqueWithinOperation() throws IOException {
+        final File destDir = new File(temp, "dest");
+        write(new File(destDir, "a.md"), 1);
+        final File src1 = write(new File(temp, "one/a.md"), 10), src2 = write(new File(temp, "two/a.md"), 20);
+
+        final GsFileOperation op = new GsFileOperation(GsFileOperation.Mode.COPY);
+        op.add(src1, GsFileUtils.findNonConflictingDest(destDir, "a.md", op::hasDest), false);
+        op.add(src2, GsFileUtils.findNonConflictingDest(destDir, "a.md", op::hasDest), false);
+        assertThat(op.hasDest(new File(destDir, "a_1.md"))).isTrue();
+        assertThat(op.run()).isTrue();
+
+        assertThat(new File(destDir, "a.md").length()).isEqualTo(1);
+        assertThat(new File(destDir, "a_1.md").length()).isEqualTo(10);
+        assertThat(new File(destDir, "a_2.md").length()).isEqualTo(20);
+    }
+}
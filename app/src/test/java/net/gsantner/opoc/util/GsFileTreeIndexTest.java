@@ -0,0 +1,130 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.opoc.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class GsFileTreeIndexTest {
+    private File root;
+    private GsFileTreeIndex index;
+
+    @Before
+    public void before() throws IOException {
+        root = Files.createTempDirectory("markor_test").toFile();
+        for (final String path : Arrays.asList("a.md", "b.txt", "x/c.md", "x/y/d.md", ".git/config")) {
+            final File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+        index = new GsFileTreeIndex(root, Collections.singletonList("\".git\""));
+        index.build();
+    }
+
+    @After
+    public void after() {
+        index.stop();
+        new GsFileOperation(GsFileOperation.Mode.DELETE).add(root).run();
+    }
+
+    private Set<String> names(final List<GsFileEntry> entries) {
+        final Set<String> names = new TreeSet<>();
+        for (final GsFileEntry entry : entries) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    @Test
+    public void buildIndexesTree() {
+        assertThat(index.isReady()).isTrue();
+        assertThat(names(index.list(root))).containsExactly(".git", "a.md", "b.txt", "x");
+        assertThat(names(index.list(new File(root, "x/y")))).containsExactly("d.md");
+        assertThat(index.get(new File(root, "x/c.md")).isFile).isTrue();
+        assertThat(index.size()).isEqualTo(7);
+    }
+
+    @Test
+    public void ignoredFoldersAreListedButNotIndexed() {
+        assertThat(index.covers(new File(root, "a.md"))).isTrue();
+        assertThat(index.covers(new File(root, "missing.md"))).isTrue();
+        assertThat(index.get(new File(root, "missing.md"))).isNull();
+        assertThat(index.get(new File(root, ".git")).isDirectory).isTrue();
+        assertThat(index.list(new File(root, ".git"))).isNull();
+        assertThat(index.covers(new File(root, ".git/config"))).isFalse();
+        assertThat(index.covers(root)).isFalse();
+        assertThat(names(index.findByName("git", false))).isEmpty();
+    }
+
+    @Test
+    public void ignoredFoldersAreNotDescendedIntoOnChanges() throws IOException {
+        new File(root, "x/.git").mkdir();
+        new File(root, "x/.git/HEAD").createNewFile();
+        index.handleEvent(new File(root, "x"), 0, ".git");
+        assertThat(names(index.list(new File(root, "x")))).containsExactly(".git", "c.md", "y");
+        assertThat(index.list(new File(root, "x/.git"))).isNull();
+
+        new File(root, "y/.git").mkdirs();
+        index.reconcile();
+        assertThat(names(index.list(new File(root, "y")))).containsExactly(".git");
+        assertThat(index.list(new File(root, "y/.git"))).isNull();
+    }
+
+    @Test
+    public void queries() throws IOException {
+        assertThat(names(index.findByName("D.M", true))).containsExactly("d.md");
+        assertThat(names(index.findByName("D.M", false))).isEmpty();
+        assertThat(names(index.findByExtension(Collections.singletonList(".md")))).containsExactly("a.md", "c.md", "d.md");
+
+        final File newest = new File(root, "x/c.md");
+        assertThat(newest.setLastModified(System.currentTimeMillis() + 60000)).isTrue();
+        index.reconcile();
+        assertThat(index.getRecent(1).get(0).file).isEqualTo(newest);
+    }
+
+    @Test
+    public void reconcilePicksUpChanges() throws IOException {
+        new File(root, "z/w").mkdirs();
+        new File(root, "z/w/e.md").createNewFile();
+        new GsFileOperation(GsFileOperation.Mode.DELETE).add(new File(root, "x")).run();
+        index.reconcile();
+
+        assertThat(names(index.list(root))).containsExactly(".git", "a.md", "b.txt", "z");
+        assertThat(names(index.list(new File(root, "z/w")))).containsExactly("e.md");
+        assertThat(index.list(new File(root, "x/y"))).isNull();
+    }
+
+    @Test
+    public void eventsUpdateFolder() throws IOException {
+        final File folder = new File(root, "x");
+        new File(folder, "new.md").createNewFile();
+        new File(folder, "sub").mkdir();
+        new File(folder, "sub/f.md").createNewFile();
+        new File(folder, "c.md").delete();
+        index.handleEvent(folder, 0, "new.md");
+        index.handleEvent(folder, 0, "sub");
+        index.handleEvent(folder, 0, "c.md");
+
+        assertThat(names(index.list(folder))).containsExactly("new.md", "sub", "y");
+        assertThat(names(index.list(new File(folder, "sub")))).containsExactly("f.md");
+    }
+}
@@ -0,0 +1,161 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package net.gsantner.opoc.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GsFileWalkerTest {
+    private File root;
+
+    @Before
+    public void before() throws IOException {
+        root = Files.createTempDirectory("markor_test").toFile();
+        for (final String path : Arrays.asList("a.md", "x/b.md", "x/y/c.md", "x/y/z/d.md", ".git/config", "w/e.md", "w/v/f.md")) {
+            final File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+    }
+
+    @After
+    public void after() {
+        new GsFileOperation(GsFileOperation.Mode.DELETE).add(root).run();
+    }
+
+    private Set<String> walk(final GsFileWalker walker) {
+        final Set<String> found = Collections.synchronizedSet(new TreeSet<>());
+        walker.walk(root, (entry, depth) -> {
+            found.add(entry.file.getAbsolutePath().substring(root.getAbsolutePath().length() + 1) + (entry.isDirectory ? "/" : ""));
+            return true;
+        });
+        return new TreeSet<>(found);
+    }
+
+    @Test
+    public void walkAll() {
+        assertThat(walk(new GsFileWalker())).containsExactly(
+                ".git/", ".git/config", "a.md", "w/", "w/e.md", "w/v/", "w/v/f.md",
+                "x/", "x/b.md", "x/y/", "x/y/c.md", "x/y/z/", "x/y/z/d.md");
+    }
+
+    @Test
+    public void parallelWalkFindsTheSameEntries() {
+        final GsFileWalker sequential = new GsFileWalker().setIgnoredNames(Collections.singletonList("\".git\""), false, null);
+        final GsFileWalker parallel = new GsFileWalker().setIgnoredNames(Collections.singletonList("\".git\""), false, null).setThreads(4);
+        assertThat(walk(parallel)).isEqualTo(walk(sequential));
+    }
+
+    @Test
+    public void maxDepthAndIgnoredNames() {
+        final GsFileWalker walker = new GsFileWalker()
+                .setMaxDepth(2)
+                .setIgnoredNames(Arrays.asList("\".GIT\"", "W*"), true, null)
+                .setThreads(2);
+        assertThat(walk(walker)).containsExactly("a.md", "x/", "x/b.md", "x/y/");
+    }
+
+    @Test
+    public void interruptedParallelWalkStopsWithoutErrors() {
+        for (int round = 0; round < 20; round++) {
+            final AtomicInteger visited = new AtomicInteger();
+            // The interrupted caller shuts the pool down while the first folder is still visited
+            Thread.currentThread().interrupt();
+            new GsFileWalker().setThreads(4).walk(root, (entry, depth) -> {
+                final long until = System.currentTimeMillis() + 1000;
+                while (!Thread.currentThread().isInterrupted() && System.currentTimeMillis() < until) {
+                    Thread.yield();
+                }
+                visited.incrementAndGet();
+                return true;
+            });
+            assertThat(Thread.interrupted()).isTrue();
+            // Only the entries of the first folder, the walk does not descend
+            assertThat(visited.get()).isLessThanOrEqualTo(4);
+        }
+    }
+
+    // Recursive walk, like the file search before GsFileWalker. Reads the same snapshot per entry as the walker.
+    private static int walkRecursive(final File folder) {
+        final File[] children = folder.listFiles();
+        int count = 0;
+        if (children != null) {
+            for (final File child : children) {
+                count += 1 + (GsFileEntry.read(child).isDirectory ? walkRecursive(child) : 0);
+            }
+        }
+        return count;
+    }
+
+    private void benchmarkWalk(final String name, final File tree) {
+        for (int round = 0; round < 3; round++) {
+            final int[] recursive = {0};
+            GsBenchmark.measure(name + " / recursive", () -> recursive[0] = walkRecursive(tree));
+            for (final int threads : new int[]{1, 4}) {
+                final AtomicInteger count = new AtomicInteger();
+                GsBenchmark.measure(name + " / walker, " + threads + " threads", () -> new GsFileWalker().setThreads(threads).walk(tree, (entry, depth) -> {
+                    count.incrementAndGet();
+                    return true;
+                }));
+                assertThat(count.get()).isEqualTo(recursive[0]);
+            }
+        }
+    }
+
+    @Test
+    @Category(GsBenchmark.class)
+    public void benchmarkDeepTree() throws IOException {
+        // 10 chains of 100 nested folders, each folder has 10 files
+        final File tree = new File(root, "deep");
+        for (int chain = 0; chain < 10; chain++) {
+            File folder = new File(tree, "chain" + chain);
+            for (int depth = 0; depth < 100; depth++) {
+                folder = new File(folder, "d" + depth);
+                folder.mkdirs();
+                for (int i = 0; i < 10; i++) {
+                    new File(folder, "f" + i + ".md").createNewFile();
+                }
+            }
+        }
+        benchmarkWalk("GsFileWalker deep tree, 11k entries", tree);
+    }
+
+    @Test
+    @Category(GsBenchmark.class)
+    public void benchmarkWideTree() throws IOException {
+        // One folder with 10000 files and 100 folders with 100 files each
+        final File tree = new File(root, "wide");
+        tree.mkdirs();
+        for (int i = 0; i < 10000; i++) {
+            new File(tree, "f" + i + ".md").createNewFile();
+        }
+        for (int f = 0; f < 100; f++) {
+            final File folder = new File(tree, "d" + f);
+            folder.mkdirs();
+            for (int i = 0; i < 100; i++) {
+                new File(folder, "f" + i + ".md").createNewFile();
+            }
+        }
+        benchmarkWalk("GsFileWalker wide tree, 20k entries", tree);
+    }
+}
@@ -1,11 +1,20 @@
 package other.de.stanetz.jpencconverter.cryption;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 import other.de.stanetz.jpencconverter.JavaPasswordbasedCryption;
 
@@ -52,6 +61,103 @@ public class JavaPasswordbasedCryptionTest {
         assertEquals(text, decrypt);
     }
 
+    @Test
+    public void roundtripWithCachedKeys() {
+        for (JavaPasswordbasedCryption.Version version : JavaPasswordbasedCryption.Version.values()) {
+            testee = new JavaPasswordbasedCryption(version, RANDOM);
+            final byte[] first = testee.encrypt("first", "Test".toCharArray());
+            final byte[] second = testee.encrypt("first", "Test".toCharArray());
+            assertFalse(Arrays.equals(first, second));
+            assertEquals("first", JavaPasswordbasedCryption.getDecryptedText(first, "Test".toCharArray()));
+            assertEquals("first", JavaPasswordbasedCryption.getDecryptedText(second, "Test".toCharArray()));
+            assertThrows(JavaPasswordbasedCryption.EncryptionFailedException.class,
+                    () -> JavaPasswordbasedCryption.getDecryptedText(first, "Wrong".toCharArray()));
+
+            JavaPasswordbasedCryption.clearKeyCache();
+            assertEquals("first", JavaPasswordbasedCryption.getDecryptedText(second, "Test".toCharArray()));
+        }
+    }
+
+    @Test
+    public void everyEncryptionUsesNewSalt() throws IOException {
+        // Header: version name, 32 bytes nonce, 64 bytes salt
+        final int saltStart = JavaPasswordbasedCryption.Version.NAME_LENGTH + 32, saltEnd = saltStart + 64;
+        for (JavaPasswordbasedCryption.Version version : JavaPasswordbasedCryption.Version.values()) {
+            testee = new JavaPasswordbasedCryption(version, RANDOM);
+            final byte[] first = testee.encrypt("first", "Test".toCharArray());
+            final byte[] second = testee.encrypt("first", "Test".toCharArray());
+            assertFalse(Arrays.equals(Arrays.copyOfRange(first, saltStart, saltEnd), Arrays.copyOfRange(second, saltStart, saltEnd)));
+            if (version.isSegmented()) {
+                final byte[] streamed = encryptStream("first".getBytes(StandardCharsets.UTF_8), "Test");
+                assertFalse(Arrays.equals(Arrays.copyOfRange(second, saltStart, saltEnd), Arrays.copyOfRange(streamed, saltStart, saltEnd)));
+            }
+        }
+    }
+
+    @Test
+    public void segmentedStreamRoundtrip() throws IOException {
+        testee = new JavaPasswordbasedCryption(JavaPasswordbasedCryption.Version.V002, RANDOM);
+        // Empty, less than one segment, exactly one segment and multiple segments
+        for (final int size : new int[]{0, 100, 64 * 1024, 3 * 64 * 1024 + 17}) {
+            final byte[] plain = new byte[size];
+            RANDOM.nextBytes(plain);
+            final byte[] encrypted = encryptStream(plain, "Test");
+            assertEquals(JavaPasswordbasedCryption.Version.V002, JavaPasswordbasedCryption.getVersion(encrypted));
+            assertArrayEquals(plain, decryptStream(encrypted, "Test"));
+        }
+    }
+
+    @Test
+    public void segmentedStreamDetectsModification() throws IOException {
+        testee = new JavaPasswordbasedCryption(JavaPasswordbasedCryption.Version.V002, RANDOM);
+        final byte[] plain = new byte[2 * 64 * 1024 + 5];
+        final byte[] encrypted = encryptStream(plain, "Test");
+        final int headerLength = 4 + 32 + 64;
+        final int segmentLength = 64 * 1024 + 16;
+
+        final byte[] modified = encrypted.clone();
+        modified[headerLength + segmentLength + 3] ^= 1;
+        assertThrows(JavaPasswordbasedCryption.EncryptionFailedException.class, () -> decryptStream(modified, "Test"));
+
+        // Truncated at a segment boundary and within a segment
+        final byte[] withoutLastSegment = Arrays.copyOf(encrypted, headerLength + 2 * segmentLength);
+        assertThrows(JavaPasswordbasedCryption.EncryptionFailedException.class, () -> decryptStream(withoutLastSegment, "Test"));
+        final byte[] truncated = Arrays.copyOf(encrypted, encrypted.length - 1);
+        assertThrows(JavaPasswordbasedCryption.EncryptionFailedException.class, () -> decryptStream(truncated, "Test"));
+
+        assertThrows(JavaPasswordbasedCryption.EncryptionFailedException.class, () -> decryptStream(encrypted, "Wrong"));
+    }
+
+    @Test
+    public void decryptingStreamReadsSingleBlockVersions() throws IOException {
+        testee = new JavaPasswordbasedCryption(JavaPasswordbasedCryption.Version.V001, RANDOM);
+        final byte[] encrypted = testee.encrypt("text", "Test".toCharArray());
+        assertEquals("text", new String(decryptStream(encrypted, "Test"), StandardCharsets.UTF_8));
+    }
+
+    private byte[] encryptStream(final byte[] plain, final String password) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (final OutputStream out = testee.encryptingOutputStream(result, password.toCharArray())) {
+            // Odd chunk size, to not align with segments
+            for (int i = 0; i < plain.length; i += 1000) {
+                out.write(plain, i, Math.min(1000, plain.length - i));
+            }
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] decryptStream(final byte[] encrypted, final String password) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (final InputStream in = JavaPasswordbasedCryption.decryptingInputStream(new ByteArrayInputStream(encrypted), password.toCharArray())) {
+            final byte[] buffer = new byte[777];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                result.write(buffer, 0, count);
+            }
+        }
+        return result.toByteArray();
+    }
+
     @Test
     public void getVersion() {
         final byte[] bytes = "V001".getBytes(StandardCharsets.US_ASCII);
@@ -0,0 +1,164 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package other.de.stanetz.jpencconverter;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory cache of keys derived from a password, as key derivation is slow on purpose.
+ * <p>
+ * Keys are looked up by version, salt and a fingerprint of the password. The fingerprint is a salted
+ * hash with a random value which is only kept in memory, the password itself is never stored.
+ * Fingerprints are only kept in byte arrays, which are wiped together with their key, so that they
+ * can't be used to guess the password without key derivation once the key is gone.
+ * <p>
+ * Expired keys are wiped on every access of the cache, all keys can be wiped at any time with {@link #clear()}.
+ * Only decryption benefits from the cache: every encryption uses a new random salt, so its key is always derived.
+ */
+final class DerivedKeyCache {
+    static final long MAX_AGE_MS = 5 * 60 * 1000;
+    private static final int MAX_KEYS = 1000;
+    private static final byte[] FINGERPRINT_SALT = new byte[32];
+
+    static {
+        new SecureRandom().nextBytes(FINGERPRINT_SALT);
+    }
+
+    // Fingerprint and salt, compared by content
+    private static final class Id {
+        final byte[] bytes;
+
+        Id(final byte[] fingerprint, final byte[] salt) {
+            bytes = Arrays.copyOf(fingerprint, fingerprint.length + salt.length);
+            System.arraycopy(salt, 0, bytes, fingerprint.length, salt.length);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Id && Arrays.equals(bytes, ((Id) other).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+    }
+
+    private static final class Entry {
+        final byte[] key;
+        final long createdAt;
+
+        Entry(final byte[] key) {
+            this.key = key;
+            this.createdAt = System.currentTimeMillis();
+        }
+
+        boolean isExpired(final long now) {
+            return (now - createdAt) > MAX_AGE_MS || now < createdAt;
+        }
+    }
+
+    private static final Map<Id, Entry> _keys = new LinkedHashMap<Id, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Id, Entry> eldest) {
+            if (size() > MAX_KEYS) {
+                wipe(eldest);
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private DerivedKeyCache() {
+    }
+
+    /**
+     * Salted hash of version and password, used to look up keys without storing the password.
+     * The caller should wipe it after use.
+     */
+    static byte[] fingerprint(final JavaPasswordbasedCryption.Version version, final char[] password) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(FINGERPRINT_SALT);
+            digest.update(version.name().getBytes(StandardCharsets.US_ASCII));
+            final ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+            final byte[] passwordBytes = new byte[bytes.remaining()];
+            bytes.get(passwordBytes);
+            digest.update(passwordBytes);
+            Arrays.fill(passwordBytes, (byte) 0);
+            if (bytes.hasArray()) {
+                Arrays.fill(bytes.array(), (byte) 0);
+            }
+            return digest.digest();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return A copy of the cached key for fingerprint and salt, or null
+     */
+    static synchronized byte[] get(final byte[] fingerprint, final byte[] salt) {
+        removeExpired();
+        if (fingerprint == null) {
+            return null;
+        }
+        final Id id = new Id(fingerprint, salt);
+        final Entry entry = _keys.get(id);
+        Arrays.fill(id.bytes, (byte) 0);
+        return entry != null ? entry.key.clone() : null;
+    }
+
+    static synchronized void put(final byte[] fingerprint, final byte[] salt, final byte[] key) {
+        removeExpired();
+        if (fingerprint != null) {
+            final Id id = new Id(fingerprint, salt);
+            final Entry prev = _keys.remove(id);
+            if (prev != null) {
+                Arrays.fill(prev.key, (byte) 0);
+            }
+            _keys.put(id, new Entry(key.clone()));
+        }
+    }
+
+    /**
+     * Wipe all cached keys
+     */
+    static synchronized void clear() {
+        for (final Map.Entry<Id, Entry> entry : _keys.entrySet()) {
+            wipe(entry);
+        }
+        _keys.clear();
+    }
+
+    // Wipe and remove all keys older than MAX_AGE_MS
+    private static void removeExpired() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<Id, Entry>> iter = _keys.entrySet().iterator();
+        while (iter.hasNext()) {
+            final Map.Entry<Id, Entry> entry = iter.next();
+            if (entry.getValue().isExpired(now)) {
+                wipe(entry);
+                iter.remove();
+            }
+        }
+    }
+
+    private static void wipe(final Map.Entry<Id, Entry> entry) {
+        Arrays.fill(entry.getKey().bytes, (byte) 0);
+        Arrays.fill(entry.getValue().key, (byte) 0);
+    }
+}
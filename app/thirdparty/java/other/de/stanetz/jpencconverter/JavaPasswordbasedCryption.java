@@ -5,7 +5,14 @@ import android.os.Build;
 
 import androidx.annotation.RequiresApi;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -33,6 +40,9 @@ import javax.crypto.spec.SecretKeySpec;
  *     <li>nonce bytes - bytes as nonce for cipher depends. The length  on version.</li>
  *     <li>content bytes - the encrypted content-bytes.</li>
  * </ul>
+ * Segmented versions (e.g. {@link Version#V002}) encrypt the content in authenticated segments,
+ * so that large content can be encrypted and decrypted as a stream, see {@link #encryptingOutputStream}
+ * and {@link #decryptingInputStream}.
  * This Class need Android KitKat to run om android devices.
  */
 // COPIED FROM https://gitlab.com/opensource21/jpencconverter/-/blob/v0.2.1/src/main/java/de/stanetz/jpencconverter/cryption/JavaPasswordbasedCryption.java
@@ -70,7 +80,7 @@ public class JavaPasswordbasedCryption {
     }
 
 
-    private static Version getVersionForAndroid(int apiVersion) {
+    public static Version getVersionForAndroid(int apiVersion) {
         if (apiVersion >= 26) {
             return Version.V001;
         } else if (apiVersion >= 23) {
@@ -91,6 +101,47 @@ public class JavaPasswordbasedCryption {
         return Version.valueOf(new String(versionBytes, StandardCharsets.US_ASCII));
     }
 
+    /**
+     * Decrypt a stream of encrypted bytes of any version. The stream is decrypted while it is read
+     * for segmented versions, other versions are read and decrypted completely first.
+     * Reading throws {@link EncryptionFailedException} if the content can't be decrypted or was modified.
+     *
+     * @param encrypted stream of encrypted bytes with version, closed when the returned stream is closed.
+     * @param password  the password <b>Warning!</b> the array will be filled with 0!
+     * @return stream of decrypted bytes.
+     * @throws IOException when the header can't be read.
+     */
+    public static InputStream decryptingInputStream(InputStream encrypted, char[] password) throws IOException {
+        final DataInputStream in = new DataInputStream(encrypted);
+        final byte[] name = new byte[Version.NAME_LENGTH];
+        in.readFully(name);
+        final Version version = Version.valueOf(new String(name, StandardCharsets.US_ASCII));
+        final JavaPasswordbasedCryption cryption = new JavaPasswordbasedCryption(version, null);
+
+        if (!version.segmented) {
+            final ByteArrayOutputStream all = new ByteArrayOutputStream();
+            all.write(name);
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                all.write(buffer, 0, count);
+            }
+            in.close();
+            return new ByteArrayInputStream(cryption.decryptBytes(all.toByteArray(), password));
+        }
+
+        final byte[] nonce = new byte[version.nonceLenth];
+        final byte[] salt = new byte[version.keySaltLength];
+        in.readFully(nonce);
+        in.readFully(salt);
+        try {
+            final SecretKey key = SegmentedCipherStreams.deriveSegmentKey(cryption.createKeyFromPassword(password, salt), nonce);
+            return new SegmentedCipherStreams.DecryptingInputStream(in, version.cipher, key, cryption.createHeader(nonce, salt));
+        } catch (GeneralSecurityException e) {
+            throw new EncryptionFailedException("Can't decrypt text.", e);
+        }
+    }
+
     /**
      * Decrypt the text.
      *
@@ -124,22 +175,62 @@ public class JavaPasswordbasedCryption {
      * @throws EncryptionFailedException when something goes wrong.
      */
     public byte[] encryptBytes(byte[] decryptedBytes, char[] password) throws EncryptionFailedException {
+        if (version.segmented) {
+            final ByteArrayOutputStream result = new ByteArrayOutputStream(decryptedBytes.length + 256);
+            try (final OutputStream out = encryptingOutputStream(result, password)) {
+                out.write(decryptedBytes);
+            } catch (IOException e) {
+                throw new EncryptionFailedException("Can't encrypt text.", e);
+            }
+            return result.toByteArray();
+        }
         try {
             final byte[] salt = getRandomBytes(version.keySaltLength);
             final byte[] nonce = getRandomBytes(version.nonceLenth);
             final SecretKey key = createKeyFromPassword(password, salt);
             final byte[] cryptedBytes = getCipher(key, Cipher.ENCRYPT_MODE, nonce).doFinal(decryptedBytes);
-            final byte[] result = new byte[Version.NAME_LENGTH + nonce.length + salt.length + cryptedBytes.length];
-            System.arraycopy(version.name().getBytes(StandardCharsets.US_ASCII), 0, result, 0, Version.NAME_LENGTH);
-            System.arraycopy(nonce, 0, result, Version.NAME_LENGTH, version.nonceLenth);
-            System.arraycopy(salt, 0, result, Version.NAME_LENGTH + version.nonceLenth, version.keySaltLength);
-            System.arraycopy(cryptedBytes, 0, result, Version.NAME_LENGTH + version.nonceLenth + version.keySaltLength, cryptedBytes.length);
+            final byte[] header = createHeader(nonce, salt);
+            final byte[] result = new byte[header.length + cryptedBytes.length];
+            System.arraycopy(header, 0, result, 0, header.length);
+            System.arraycopy(cryptedBytes, 0, result, header.length, cryptedBytes.length);
             return result;
         } catch (Exception e) {
             throw new EncryptionFailedException("Can't encrypt text.", e);
         }
     }
 
+    /**
+     * Create a stream which encrypts everything written to it. Needs a segmented version.
+     * The encryption is only complete after the stream was closed.
+     *
+     * @param out      stream to write the encrypted bytes with version to, closed when the returned stream is closed.
+     * @param password the password to create the key <b>Warning!</b> the array will be filled with 0!
+     * @return stream to write the decrypted bytes to.
+     * @throws EncryptionFailedException when something goes wrong.
+     * @throws IOException               when the header can't be written.
+     */
+    public OutputStream encryptingOutputStream(OutputStream out, char[] password) throws EncryptionFailedException, IOException {
+        if (!version.segmented) {
+            throw new IllegalStateException("Version " + version.name() + " can't encrypt streams");
+        }
+        try {
+            final byte[] salt = getRandomBytes(version.keySaltLength);
+            final byte[] nonce = getRandomBytes(version.nonceLenth);
+            final SecretKey key = SegmentedCipherStreams.deriveSegmentKey(createKeyFromPassword(password, salt), nonce);
+            return new SegmentedCipherStreams.EncryptingOutputStream(out, version.cipher, key, createHeader(nonce, salt));
+        } catch (GeneralSecurityException e) {
+            throw new EncryptionFailedException("Can't encrypt text.", e);
+        }
+    }
+
+    private byte[] createHeader(byte[] nonce, byte[] salt) {
+        final byte[] header = new byte[Version.NAME_LENGTH + version.nonceLenth + version.keySaltLength];
+        System.arraycopy(version.name().getBytes(StandardCharsets.US_ASCII), 0, header, 0, Version.NAME_LENGTH);
+        System.arraycopy(nonce, 0, header, Version.NAME_LENGTH, version.nonceLenth);
+        System.arraycopy(salt, 0, header, Version.NAME_LENGTH + version.nonceLenth, version.keySaltLength);
+        return header;
+    }
+
 
     /**
      * Decrypt the given bytes with the password.
@@ -168,6 +259,19 @@ public class JavaPasswordbasedCryption {
             if (currentVersion != version) {
                 throw new IllegalArgumentException("The current version " + currentVersion.name() + " differs from configured version " + version.name());
             }
+            if (version.segmented) {
+                try (final InputStream in = decryptingInputStream(new ByteArrayInputStream(encrypted), password)) {
+                    final ByteArrayOutputStream result = new ByteArrayOutputStream(encrypted.length);
+                    final byte[] buffer = new byte[8192];
+                    int count;
+                    while ((count = in.read(buffer)) > 0) {
+                        result.write(buffer, 0, count);
+                    }
+                    return result.toByteArray();
+                } catch (IOException e) {
+                    throw new EncryptionFailedException("Can't decrypt text.", e);
+                }
+            }
             int from = Version.NAME_LENGTH;
             int to = from + version.nonceLenth;
             final byte[] nonce = Arrays.copyOfRange(encrypted, from, to);
@@ -186,15 +290,36 @@ public class JavaPasswordbasedCryption {
         }
     }
 
+    /**
+     * Wipe all keys derived from passwords which are kept in memory.
+     * Call e.g. when the app goes to background.
+     */
+    public static void clearKeyCache() {
+        DerivedKeyCache.clear();
+    }
+
     private SecretKey createKeyFromPassword(char[] password, byte[] salt) {
+        final byte[] fingerprint = DerivedKeyCache.fingerprint(version, password);
         try {
+            final byte[] cached = DerivedKeyCache.get(fingerprint, salt);
+            if (cached != null) {
+                Arrays.fill(password, Character.MIN_VALUE);
+                return new SecretKeySpec(cached, version.keyAlgorithm);
+            }
+
             SecretKeyFactory secretKeyFactory = SecretKeyFactory.getInstance(version.keyFactory);
             KeySpec passwordBasedEncryptionKeySpec = new PBEKeySpec(password, salt, version.keyIterationCount, version.keyLength);
             Arrays.fill(password, Character.MIN_VALUE);
             SecretKey secretKeyFromPBKDF2 = secretKeyFactory.generateSecret(passwordBasedEncryptionKeySpec);
-            return new SecretKeySpec(secretKeyFromPBKDF2.getEncoded(), version.keyAlgorithm);
+            final byte[] key = secretKeyFromPBKDF2.getEncoded();
+            DerivedKeyCache.put(fingerprint, salt, key);
+            return new SecretKeySpec(key, version.keyAlgorithm);
         } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
             throw new EncryptionFailedException("Error creating key from password: " + e.getMessage(), e);
+        } finally {
+            if (fingerprint != null) {
+                Arrays.fill(fingerprint, (byte) 0);
+            }
         }
     }
 
@@ -236,7 +361,7 @@ public class JavaPasswordbasedCryption {
      */
     @SuppressWarnings("DeprecatedIsStillUsed")
     public enum Version {
-        V001("PBKDF2WithHmacSHA512", 10000, 256, "AES", 64, "AES/GCM/NoPadding", 32),
+        V001("PBKDF2WithHmacSHA512", 10000, 256, "AES", 64, "AES/GCM/NoPadding", 32, false),
 
         /**
          * Weaker version of V001. Needed for old android-devices.
@@ -244,7 +369,20 @@ public class JavaPasswordbasedCryption {
          * @deprecated please use {@link #V001} if possible.
          */
         @Deprecated
-        U001("PBKDF2WithHmacSHA1", 10000, 256, "AES", 64, "AES/GCM/NoPadding", 32);
+        U001("PBKDF2WithHmacSHA1", 10000, 256, "AES", 64, "AES/GCM/NoPadding", 32, false),
+
+        /**
+         * Like {@link #V001}, but the content is encrypted in segments which can be streamed.
+         */
+        V002("PBKDF2WithHmacSHA512", 10000, 256, "AES", 64, "AES/GCM/NoPadding", 32, true),
+
+        /**
+         * Weaker version of V002. Needed for old android-devices.
+         *
+         * @deprecated please use {@link #V002} if possible.
+         */
+        @Deprecated
+        U002("PBKDF2WithHmacSHA1", 10000, 256, "AES", 64, "AES/GCM/NoPadding", 32, true);
 
         /**
          * Define the length of the Versionnames.
@@ -257,8 +395,9 @@ public class JavaPasswordbasedCryption {
         private final int keySaltLength;
         private final String cipher;
         private final int nonceLenth;
+        private final boolean segmented;
 
-        Version(String keyFactory, int keyIterationCount, int keyLength, String keyAlgorithm, int keySaltLength, String cipher, int nonceLenth) {
+        Version(String keyFactory, int keyIterationCount, int keyLength, String keyAlgorithm, int keySaltLength, String cipher, int nonceLenth, boolean segmented) {
             this.keyFactory = keyFactory;
             this.keyIterationCount = keyIterationCount;
             this.keyLength = keyLength;
@@ -266,6 +405,28 @@ public class JavaPasswordbasedCryption {
             this.keySaltLength = keySaltLength;
             this.cipher = cipher;
             this.nonceLenth = nonceLenth;
+            this.segmented = segmented;
+        }
+
+        /**
+         * @return true if content of this version can be encrypted and decrypted as stream.
+         */
+        public boolean isSegmented() {
+            return segmented;
+        }
+
+        /**
+         * @return the segmented version with the same key derivation.
+         */
+        public Version toSegmented() {
+            switch (this) {
+                case V001:
+                    return V002;
+                case U001:
+                    return U002;
+                default:
+                    return this;
+            }
         }
     }
 
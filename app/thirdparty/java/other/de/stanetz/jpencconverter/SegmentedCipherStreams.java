@@ -0,0 +1,237 @@
+/*#######################################################
+ *
+ *   Maintained 2018-2025 by Gregor Santner <gsantner AT mailbox DOT org>
+ *   License of this file: Apache 2.0
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+#########################################################*/
+package other.de.stanetz.jpencconverter;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Streams for the segmented (streaming) container versions.
+ * <p>
+ * The header (version, nonce, salt) is the same as for single block versions. The plain content is split
+ * into segments of {@link #SEGMENT_SIZE} bytes, each encrypted and authenticated on its own with AES-GCM:
+ * <ul>
+ *     <li>The segment key is HMAC-SHA256(key derived from password, nonce of the header), unique per file.</li>
+ *     <li>The 12 byte GCM nonce of a segment holds the segment index and a flag for the last segment,
+ *     so that segments can't be reordered, dropped or truncated.</li>
+ *     <li>The header is authenticated as additional data of every segment.</li>
+ * </ul>
+ * Only one segment is kept in memory at a time.
+ */
+// Extends the container format of jpencconverter, see JavaPasswordbasedCryption
+final class SegmentedCipherStreams {
+    static final int SEGMENT_SIZE = 64 * 1024;
+    private static final int TAG_LENGTH = 16;
+    private static final int GCM_NONCE_LENGTH = 12;
+
+    private SegmentedCipherStreams() {
+    }
+
+    static SecretKey deriveSegmentKey(final SecretKey key, final byte[] nonce) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key.getEncoded(), "HmacSHA256"));
+        return new SecretKeySpec(mac.doFinal(nonce), "AES");
+    }
+
+    private static GCMParameterSpec segmentNonce(final int index, final boolean isLast) {
+        final byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (isLast ? 1 : 0);
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+    }
+
+    /**
+     * Encrypts everything written to it. The last segment is written on {@link #close()}.
+     */
+    static final class EncryptingOutputStream extends FilterOutputStream {
+        private final Cipher _cipher;
+        private final SecretKey _key;
+        private final byte[] _header;
+        private final byte[] _plain = new byte[SEGMENT_SIZE];
+        private int _plainLength = 0;
+        private int _index = 0;
+        private boolean _closed = false;
+
+        EncryptingOutputStream(final OutputStream out, final String cipher, final SecretKey segmentKey, final byte[] header) throws IOException {
+            super(out);
+            try {
+                _cipher = Cipher.getInstance(cipher);
+            } catch (GeneralSecurityException e) {
+                throw new JavaPasswordbasedCryption.EncryptionFailedException("Can't encrypt segments.", e);
+            }
+            _key = segmentKey;
+            _header = header;
+            out.write(header);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                // A full segment is only written once more data follows, the last one is written on close
+                if (_plainLength == SEGMENT_SIZE) {
+                    writeSegment(false);
+                }
+                final int count = Math.min(len, SEGMENT_SIZE - _plainLength);
+                System.arraycopy(b, off, _plain, _plainLength, count);
+                _plainLength += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!_closed) {
+                _closed = true;
+                try {
+                    writeSegment(true);
+                    out.flush();
+                } finally {
+                    out.close();
+                }
+            }
+        }
+
+        private void writeSegment(final boolean isLast) throws IOException {
+            try {
+                _cipher.init(Cipher.ENCRYPT_MODE, _key, segmentNonce(_index++, isLast));
+                _cipher.updateAAD(_header);
+                out.write(_cipher.doFinal(_plain, 0, _plainLength));
+                _plainLength = 0;
+            } catch (GeneralSecurityException e) {
+                throw new JavaPasswordbasedCryption.EncryptionFailedException("Can't encrypt segment.", e);
+            }
+        }
+    }
+
+    /**
+     * Decrypts a segmented container, of which the header was already read.
+     * Throws {@link JavaPasswordbasedCryption.EncryptionFailedException} if a segment can't be authenticated.
+     */
+    static final class DecryptingInputStream extends FilterInputStream {
+        private final Cipher _cipher;
+        private final SecretKey _key;
+        private final byte[] _header;
+        private final PushbackInputStream _in;
+        private final byte[] _segment = new byte[SEGMENT_SIZE + TAG_LENGTH];
+        private byte[] _plain = new byte[0];
+        private int _plainPosition = 0;
+        private int _index = 0;
+        private boolean _lastRead = false;
+
+        DecryptingInputStream(final InputStream in, final String cipher, final SecretKey segmentKey, final byte[] header) throws IOException {
+            this(new PushbackInputStream(in, 1), cipher, segmentKey, header);
+        }
+
+        private DecryptingInputStream(final PushbackInputStream in, final String cipher, final SecretKey segmentKey, final byte[] header) throws IOException {
+            super(in);
+            try {
+                _cipher = Cipher.getInstance(cipher);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+            _in = in;
+            _key = segmentKey;
+            _header = header;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (_plainPosition >= _plain.length) {
+                if (_lastRead) {
+                    return -1;
+                }
+                readSegment();
+            }
+            final int count = Math.min(len, _plain.length - _plainPosition);
+            System.arraycopy(_plain, _plainPosition, b, off, count);
+            _plainPosition += count;
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int count;
+            while (skipped < n && (count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) > 0) {
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return _plain.length - _plainPosition;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void readSegment() throws IOException {
+            int length = 0, count;
+            while (length < _segment.length && (count = _in.read(_segment, length, _segment.length - length)) > 0) {
+                length += count;
+            }
+
+            // It is the last segment if nothing follows
+            final int next = _in.read();
+            if (next >= 0) {
+                _in.unread(next);
+            }
+            _lastRead = next < 0;
+
+            if (length < TAG_LENGTH) {
+                throw new JavaPasswordbasedCryption.EncryptionFailedException("Truncated segment.", null);
+            }
+            try {
+                _cipher.init(Cipher.DECRYPT_MODE, _key, segmentNonce(_index++, _lastRead));
+                _cipher.updateAAD(_header);
+                _plain = _cipher.doFinal(_segment, 0, length);
+                _plainPosition = 0;
+            } catch (GeneralSecurityException e) {
+                throw new JavaPasswordbasedCryption.EncryptionFailedException("Can't decrypt segment.", e);
+            }
+        }
+    }
+}
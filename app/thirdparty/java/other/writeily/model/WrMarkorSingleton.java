@@ -11,20 +11,32 @@ package other.writeily.model;
 
 import android.app.Activity;
 import android.content.Context;
+import android.view.View;
+import android.widget.Toast;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
 import androidx.documentfile.provider.DocumentFile;
 
+import com.google.android.material.snackbar.Snackbar;
+
+import net.gsantner.markor.R;
 import net.gsantner.markor.frontend.MarkorDialogFactory;
 import net.gsantner.markor.util.MarkorContextUtils;
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
+import net.gsantner.opoc.util.GsFileOperation;
 import net.gsantner.opoc.util.GsFileUtils;
+import net.gsantner.opoc.util.GsFileWalker;
+import net.gsantner.opoc.wrapper.GsCallback;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class WrMarkorSingleton {
 
@@ -57,44 +69,30 @@ public class WrMarkorSingleton {
 
     public boolean moveFile(final File file, final File dest, final Context context) {
         if (saneMove(file, dest) && !dest.exists()) {
-            boolean renameSuccess;
-            try {
-                renameSuccess = file.renameTo(dest);
-            } catch (Exception e) {
-                renameSuccess = false;
-            }
-            return (renameSuccess || (copyFile(file, dest) && deleteFile(file, context)));
+            return new GsFileOperation(GsFileOperation.Mode.MOVE)
+                    .setDeleter(f -> deleteSingleFile(f, context))
+                    .add(file, dest, false)
+                    .run();
         }
         return false;
     }
 
     public boolean copyFile(final File file, final File dest) {
         if (saneCopy(file, dest) && !dest.exists()) {
-            if (file.isDirectory()) {
-                if (dest.mkdir()) {
-                    boolean success = true;
-                    for (final File dirFile : file.listFiles()) {
-                        // Merge not supported, dest here will always be available
-                        success &= this.copyFile(dirFile, new File(dest, dirFile.getName()));
-                    }
-                    return success;
-                }
-                return false;
-            } else {
-                GsFileUtils.copyFile(file, dest);
-                return true;
-            }
+            return new GsFileOperation(GsFileOperation.Mode.COPY).add(file, dest, false).run();
         }
         return false;
     }
 
     public boolean deleteFile(final File file, final Context context) {
-        if (file.isDirectory()) {
-            for (final File childFile : file.listFiles()) {
-                deleteFile(childFile, context);
-            }
-        }
+        return new GsFileOperation(GsFileOperation.Mode.DELETE)
+                .setDeleter(f -> deleteSingleFile(f, context))
+                .add(file)
+                .run();
+    }
 
+    // Delete a file or empty folder, through the storage access framework if required
+    private boolean deleteSingleFile(final File file, final Context context) {
         final MarkorContextUtils cu = new MarkorContextUtils(context);
         if (context != null && cu.isUnderStorageAccessFolder(context, file, file.isDirectory())) {
             final DocumentFile dof = cu.getDocumentFile(context, file, file.isDirectory());
@@ -104,17 +102,20 @@ public class WrMarkorSingleton {
         }
     }
 
-    public void deleteSelectedItems(final Collection<File> files, final Context context) {
+    public void deleteSelectedItems(final Collection<File> files, final Activity activity, @Nullable final GsCallback.a0 onFinished) {
+        final GsFileOperation op = new GsFileOperation(GsFileOperation.Mode.DELETE);
+        op.setDeleter(f -> deleteSingleFile(f, activity));
         for (final File file : files) {
-            deleteFile(file, context);
+            op.add(file);
         }
+        runWithProgress(op, activity, R.string.delete, onFinished);
     }
 
     private enum ConflictResolution {
         KEEP_BOTH, OVERWRITE, SKIP, ASK
     }
 
-    public void moveOrCopySelected(final List<File> files, final File destDir, final Activity activity, final boolean isMove) {
+    public void moveOrCopySelected(final List<File> files, final File destDir, final Activity activity, final boolean isMove, @Nullable final GsCallback.a0 onFinished) {
         if (destDir.isDirectory()) {
             boolean allSane = true;
             for (final File file : files) {
@@ -124,24 +125,30 @@ public class WrMarkorSingleton {
             if (allSane) {
                 final Stack<File> _files = new Stack<>();
                 _files.addAll(files);
-                _moveOrCopySelected(_files, destDir, activity, isMove, ConflictResolution.ASK, false);
+                final GsFileOperation op = new GsFileOperation(isMove ? GsFileOperation.Mode.MOVE : GsFileOperation.Mode.COPY);
+                op.setDeleter(f -> deleteSingleFile(f, activity));
+                _moveOrCopySelected(_files, destDir, activity, op, ConflictResolution.ASK, false, onFinished);
                 return;
             }
         }
+        if (onFinished != null) {
+            onFinished.callback();
+        }
     }
 
-    private void _moveOrCopySelected(final Stack<File> files, final File destDir, final Activity activity, final boolean isMove, ConflictResolution resolution, boolean preserveResolution) {
+    // Resolve conflicts (asking the user if needed), then run all collected moves / copies at once
+    private void _moveOrCopySelected(final Stack<File> files, final File destDir, final Activity activity, final GsFileOperation op, ConflictResolution resolution, boolean preserveResolution, @Nullable final GsCallback.a0 onFinished) {
+        final boolean isMove = op.getMode() == GsFileOperation.Mode.MOVE;
         while (!files.empty()) {
             final File file = files.pop();
             final File dest = new File(destDir, file.getName());
-            if (dest.exists()) {
+            // Destinations of items added before are taken too
+            if (dest.exists() || op.hasDest(dest)) {
                 // Special case - duplicate the file with new name if copying to same directory
                 if (resolution == ConflictResolution.KEEP_BOTH || (!isMove && file.equals(dest))) {
-                    moveOrCopy(activity, file, GsFileUtils.findNonConflictingDest(destDir, file.getName()), isMove);
+                    op.add(file, GsFileUtils.findNonConflictingDest(destDir, file.getName(), op::hasDest), false);
                 } else if (resolution == ConflictResolution.OVERWRITE) {
-                    if (deleteFile(dest, activity)) {
-                        moveOrCopy(activity, file, dest, isMove);
-                    }
+                    op.add(file, dest, true);
                 } else if (resolution == ConflictResolution.ASK) {
                     // Put the file back in
                     files.push(file);
@@ -154,23 +161,55 @@ public class WrMarkorSingleton {
                         } else if (option == 2 || option == 5) {
                             res = ConflictResolution.SKIP;
                         }
-                        _moveOrCopySelected(files, destDir, activity, isMove, res, option > 2);
+                        _moveOrCopySelected(files, destDir, activity, op, res, option > 2, onFinished);
                     });
                     return; // Process will be continued by callback
                 }
                 resolution = preserveResolution ? resolution : ConflictResolution.ASK;
             } else {
-                moveOrCopy(activity, file, dest, isMove);
+                op.add(file, dest, false);
             }
         }
+        runWithProgress(op, activity, isMove ? R.string.move : R.string.copy, onFinished);
     }
 
-    private void moveOrCopy(final Context context, final File src, final File dest, final boolean isMove) {
-        if (isMove) {
-            moveFile(src, dest, context);
-        } else {
-            copyFile(src, dest);
+    // Run op in background, showing progress with an option to cancel once it takes a while
+    private void runWithProgress(final GsFileOperation op, final Activity activity, @StringRes final int title, @Nullable final GsCallback.a0 onFinished) {
+        if (op.isEmpty()) {
+            if (onFinished != null) {
+                onFinished.callback();
+            }
+            return;
         }
+
+        final View view = activity.findViewById(android.R.id.content);
+        final AtomicReference<Snackbar> snackbar = new AtomicReference<>();
+        final String titleText = activity.getString(title);
+        op.setProgressListener(progress -> activity.runOnUiThread(() -> {
+            if (progress.current == null || view == null || activity.isFinishing()) {
+                return;
+            }
+            final String text = String.format(Locale.getDefault(), "%s %d%%  %s", titleText, progress.getPercent(),
+                    progress.current != null ? progress.current.getName() : "");
+            if (snackbar.get() == null && !op.isCancelled()) {
+                snackbar.set(Snackbar.make(view, text, Snackbar.LENGTH_INDEFINITE).setAction(android.R.string.cancel, v -> op.cancel()));
+                snackbar.get().show();
+            } else if (snackbar.get() != null) {
+                snackbar.get().setText(text);
+            }
+        }));
+
+        op.start(finished -> activity.runOnUiThread(() -> {
+            if (snackbar.get() != null) {
+                snackbar.get().dismiss();
+            }
+            if (!finished.isCancelled() && !finished.getFailed().isEmpty() && !activity.isFinishing()) {
+                Toast.makeText(activity, "❌ " + finished.getFailed().get(0).getName(), Toast.LENGTH_LONG).show();
+            }
+            if (onFinished != null) {
+                onFinished.callback();
+            }
+        }));
     }
 
     public boolean isDirectoryEmpty(ArrayList<File> files) {
@@ -178,27 +217,23 @@ public class WrMarkorSingleton {
     }
 
     /**
-     * Recursively add all files from the specified directory
+     * Add all files from the specified directory (not recursive), skipping hidden files
      *
      * @param sourceDir the directory to add files from
      */
     public ArrayList<File> addMarkdownFilesFromDirectory(File sourceDir, ArrayList<File> files) {
-        ArrayList<File> addedFiles = new ArrayList<>();
-
-        List<File> listedData = Arrays.asList(sourceDir.listFiles());
-        Collections.sort(listedData, (f1, f2) -> f1.getName().compareToIgnoreCase(f2.getName()));
-
-        for (File f : listedData) {
-            if (!f.getName().startsWith(".")) {
-                if (f.isDirectory()) {
-                    files.add(f);
-                } else {
-                    addedFiles.add(f);
-                }
-            }
+        final List<GsFileEntry> listedData = new ArrayList<>();
+        new GsFileWalker()
+                .setMaxDepth(1)
+                .setIgnoredNames(Collections.singletonList("\\..*"), false, null)
+                .walk(sourceDir, (entry, depth) -> listedData.add(entry));
+        Collections.sort(listedData, (f1, f2) -> f1.name.compareToIgnoreCase(f2.name));
+
+        // Directories appear first
+        final ArrayList<File> addedFiles = new ArrayList<>();
+        for (final GsFileEntry f : listedData) {
+            (f.isDirectory ? files : addedFiles).add(f.file);
         }
-
-        // Append addedFiles to files so directories appear first
         files.addAll(addedFiles);
         return files;
     }
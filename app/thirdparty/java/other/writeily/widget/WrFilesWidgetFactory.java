@@ -18,25 +18,25 @@ import android.widget.RemoteViewsService;
 import net.gsantner.markor.R;
 import net.gsantner.markor.model.AppSettings;
 import net.gsantner.markor.model.Document;
+import net.gsantner.markor.widget.FilesWidgetListingCache;
 import net.gsantner.opoc.frontend.filebrowser.GsFileBrowserListAdapter;
+import net.gsantner.opoc.frontend.filebrowser.GsFileEntry;
 import net.gsantner.opoc.util.GsFileUtils;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 public class WrFilesWidgetFactory implements RemoteViewsService.RemoteViewsFactory {
 
     private final Context _context;
-    private final List<File> _widgetFilesList;
+    private List<GsFileEntry> _widgetFilesList;
     private final int _appWidgetId;
 
     public WrFilesWidgetFactory(final Context context, final Intent intent) {
         _context = context;
         _appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, AppWidgetManager.INVALID_APPWIDGET_ID);
-        _widgetFilesList = new ArrayList<>();
+        _widgetFilesList = Collections.emptyList();
     }
 
     @Override
@@ -44,31 +44,33 @@ public class WrFilesWidgetFactory implements RemoteViewsService.RemoteViewsFacto
         onDataSetChanged();
     }
 
+    // Listings of folders are shared with other widgets and only read again when the folder changed
     @Override
     public void onDataSetChanged() {
-
-        _widgetFilesList.clear();
         final File dir = WrWidgetConfigure.getWidgetDirectory(_context, _appWidgetId);
         final AppSettings as = AppSettings.get(_context);
         final GsFileUtils.SortOrder order = as.getFolderSortOrder(dir);
 
         if (dir.equals(GsFileBrowserListAdapter.VIRTUAL_STORAGE_RECENTS)) {
-            _widgetFilesList.addAll(as.getRecentFiles());
+            _widgetFilesList = FilesWidgetListingCache.getEntries(as.getRecentFiles(), order);
         } else if (dir.equals(GsFileBrowserListAdapter.VIRTUAL_STORAGE_POPULAR)) {
-            _widgetFilesList.addAll(as.getPopularFiles());
+            _widgetFilesList = FilesWidgetListingCache.getEntries(as.getPopularFiles(), order);
         } else if (dir.equals(GsFileBrowserListAdapter.VIRTUAL_STORAGE_FAVOURITE)) {
-            _widgetFilesList.addAll(as.getFavouriteFiles());
+            _widgetFilesList = FilesWidgetListingCache.getEntries(as.getFavouriteFiles(), order);
         } else if (dir.exists() && dir.canRead()) {
-            final File[] all = dir.listFiles(file -> order.showDotFiles || !file.getName().startsWith("."));
-            _widgetFilesList.addAll(all != null ? Arrays.asList(all) : Collections.emptyList());
+            _widgetFilesList = FilesWidgetListingCache.get(_context, _appWidgetId, dir, order);
+            return;
+        } else {
+            _widgetFilesList = Collections.emptyList();
         }
 
-        GsFileUtils.sortFiles(_widgetFilesList, order);
+        // Not showing a folder (anymore), stop watching it
+        FilesWidgetListingCache.release(_appWidgetId);
     }
 
     @Override
     public void onDestroy() {
-        _widgetFilesList.clear();
+        _widgetFilesList = Collections.emptyList();
     }
 
     @Override
@@ -81,11 +83,11 @@ public class WrFilesWidgetFactory implements RemoteViewsService.RemoteViewsFacto
         final RemoteViews rowView = new RemoteViews(_context.getPackageName(), R.layout.widget_file_item);
         rowView.setTextViewText(R.id.widget_note_title, "???");
         if (position < _widgetFilesList.size()) {
-            final File file = _widgetFilesList.get(position);
-            final Intent fillInIntent = new Intent().putExtra(Document.EXTRA_FILE, file);
-            rowView.setTextViewText(R.id.widget_note_title, file.getName());
+            final GsFileEntry entry = _widgetFilesList.get(position);
+            final Intent fillInIntent = new Intent().putExtra(Document.EXTRA_FILE, entry.file);
+            rowView.setTextViewText(R.id.widget_note_title, entry.name);
             rowView.setOnClickFillInIntent(R.id.widget_note_title, fillInIntent);
-            final int icon = file.isDirectory() ? R.drawable.ic_folder_gray_24dp : R.drawable.ic_file_gray_24dp;
+            final int icon = entry.isDirectory ? R.drawable.ic_folder_gray_24dp : R.drawable.ic_file_gray_24dp;
             rowView.setTextViewCompoundDrawables(R.id.widget_note_title, icon, 0, 0, 0);
         }
         return rowView;
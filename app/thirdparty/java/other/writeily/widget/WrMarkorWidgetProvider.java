@@ -29,6 +29,7 @@ import net.gsantner.markor.activity.MainActivity;
 import net.gsantner.markor.activity.openeditor.OpenFromShortcutOrWidgetActivity;
 import net.gsantner.markor.model.AppSettings;
 import net.gsantner.markor.model.Document;
+import net.gsantner.markor.widget.FilesWidgetListingCache;
 import net.gsantner.opoc.util.GsFileUtils;
 
 import java.io.File;
@@ -114,6 +115,12 @@ public class WrMarkorWidgetProvider extends AppWidgetProvider {
         super.onUpdate(context, appWidgetManager, appWidgetIds);
     }
 
+    @Override
+    public void onDeleted(final Context context, final int[] appWidgetIds) {
+        FilesWidgetListingCache.release(appWidgetIds);
+        super.onDeleted(context, appWidgetIds);
+    }
+
     // Update all widget lists and shortcuts for all widgets
     public static void updateLauncherWidgets() {
         final Context context = ApplicationObject.get().getApplicationContext();